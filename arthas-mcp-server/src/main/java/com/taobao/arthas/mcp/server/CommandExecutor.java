@@ -1,6 +1,7 @@
 package com.taobao.arthas.mcp.server;
 
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * 命令执行器接口
@@ -45,6 +46,27 @@ public interface CommandExecutor {
 
     Map<String, Object> pullResults(String sessionId, String consumerId);
 
+    /**
+     * 订阅命令结果，代替 pullResults 轮询。
+     * 每产生一个结果就回调一次 listener，参数格式和 pullResults 的返回值相同。
+     * listener 在结果分发线程中调用，不能阻塞。
+     *
+     * @param sessionId session ID
+     * @param consumerId consumer ID
+     * @param listener 结果回调，会替换这个 consumer 之前的订阅
+     * @return 订阅结果，失败时包含 error
+     */
+    Map<String, Object> subscribeResults(String sessionId, String consumerId, Consumer<Map<String, Object>> listener);
+
+    /**
+     * 取消订阅，只有 listener 仍然是当前订阅时才会取消
+     *
+     * @param sessionId session ID
+     * @param consumerId consumer ID
+     * @param listener subscribeResults 时传入的 listener
+     */
+    void unsubscribeResults(String sessionId, String consumerId, Consumer<Map<String, Object>> listener);
+
     Map<String, Object> interruptJob(String sessionId);
 
     Map<String, Object> createSession();
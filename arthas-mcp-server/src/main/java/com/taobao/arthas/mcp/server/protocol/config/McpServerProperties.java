@@ -1,6 +1,7 @@
 package com.taobao.arthas.mcp.server.protocol.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.taobao.arthas.mcp.server.util.McpRequestExecutor;
 
 import java.time.Duration;
 import java.util.HashMap;
@@ -41,6 +42,13 @@ public class McpServerProperties {
 
     private final ServerProtocol protocol;
 
+    /**
+     * Request executor configuration
+     */
+    private final int workerThreads;
+    private final int workerQueueCapacity;
+    private final int maxConcurrentRequestsPerSession;
+
     /**
      * (Optional) response MIME type per tool name.
      */
@@ -62,6 +70,9 @@ public class McpServerProperties {
         this.initializationTimeout = builder.initializationTimeout;
         this.objectMapper = builder.objectMapper;
         this.protocol = builder.protocol;
+        this.workerThreads = builder.workerThreads;
+        this.workerQueueCapacity = builder.workerQueueCapacity;
+        this.maxConcurrentRequestsPerSession = builder.maxConcurrentRequestsPerSession;
     }
 
     /**
@@ -167,6 +178,42 @@ public class McpServerProperties {
         return protocol;
     }
 
+    /**
+     * Get number of threads handling MCP requests
+     * @return Worker threads
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Get max number of MCP requests waiting for a worker thread
+     * @return Worker queue capacity
+     */
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity;
+    }
+
+    /**
+     * Get max number of in-flight requests per MCP session, 0 means unlimited
+     * @return Max concurrent requests per session
+     */
+    public int getMaxConcurrentRequestsPerSession() {
+        return maxConcurrentRequestsPerSession;
+    }
+
+    /**
+     * Create the request executor described by this configuration
+     * @return A new request executor
+     */
+    public McpRequestExecutor createRequestExecutor() {
+        return McpRequestExecutor.builder()
+                .workerThreads(workerThreads)
+                .queueCapacity(workerQueueCapacity)
+                .maxConcurrentRequestsPerSession(maxConcurrentRequestsPerSession)
+                .build();
+    }
+
     public Map<String, String> getToolResponseMimeType() {
         return toolResponseMimeType;
     }
@@ -194,6 +241,9 @@ public class McpServerProperties {
         private Duration initializationTimeout = Duration.ofSeconds(30);
         private ObjectMapper objectMapper;
         private ServerProtocol protocol = ServerProtocol.STREAMABLE;
+        private int workerThreads = McpRequestExecutor.DEFAULT_WORKER_THREADS;
+        private int workerQueueCapacity = McpRequestExecutor.DEFAULT_QUEUE_CAPACITY;
+        private int maxConcurrentRequestsPerSession = McpRequestExecutor.DEFAULT_MAX_CONCURRENT_REQUESTS_PER_SESSION;
 
         public Builder() {
             // Private constructor to prevent direct instantiation
@@ -259,6 +309,21 @@ public class McpServerProperties {
             return this;
         }
 
+        public Builder workerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        public Builder workerQueueCapacity(int workerQueueCapacity) {
+            this.workerQueueCapacity = workerQueueCapacity;
+            return this;
+        }
+
+        public Builder maxConcurrentRequestsPerSession(int maxConcurrentRequestsPerSession) {
+            this.maxConcurrentRequestsPerSession = maxConcurrentRequestsPerSession;
+            return this;
+        }
+
         /**
          * Build McpServerProperties instance
          */
@@ -10,6 +10,7 @@ import com.taobao.arthas.mcp.server.protocol.spec.McpSchema;
 import com.taobao.arthas.mcp.server.session.ArthasCommandContext;
 import com.taobao.arthas.mcp.server.session.ArthasCommandSessionManager;
 import com.taobao.arthas.mcp.server.util.McpAuthExtractor;
+import com.taobao.arthas.mcp.server.util.McpRequestExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,12 +31,16 @@ class DefaultMcpStatelessServerHandler implements McpStatelessServerHandler {
 
 	private final ArthasCommandSessionManager commandSessionManager;
 
+	private final McpRequestExecutor requestExecutor;
+
 	public DefaultMcpStatelessServerHandler(Map<String, McpStatelessRequestHandler<?>> requestHandlers,
                                             Map<String, McpStatelessNotificationHandler> notificationHandlers,
-                                            CommandExecutor commandExecutor) {
+                                            CommandExecutor commandExecutor,
+                                            McpRequestExecutor requestExecutor) {
 		this.requestHandlers = requestHandlers;
 		this.notificationHandlers = notificationHandlers;
 		this.commandExecutor = commandExecutor;
+		this.requestExecutor = requestExecutor;
 		this.commandSessionManager = new ArthasCommandSessionManager(commandExecutor);
 	}
 
@@ -69,9 +74,10 @@ class DefaultMcpStatelessServerHandler implements McpStatelessServerHandler {
 			return f;
 		}
 		try {
+			// stateless 模式没有 MCP 会话，按 User ID 限制并发请求数
 			@SuppressWarnings("unchecked")
-			CompletableFuture<Object> result = (CompletableFuture<Object>) handler
-					.handle(ctx, commandContext, req.getParams());
+			CompletableFuture<Object> result = requestExecutor.submit(userId,
+					() -> (CompletableFuture<Object>) handler.handle(ctx, commandContext, req.getParams()));
 			return result.handle((r, ex) -> {
 				// Clean up session after execution
 				closeSession(binding);
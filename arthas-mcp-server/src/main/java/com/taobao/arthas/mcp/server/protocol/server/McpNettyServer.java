@@ -4,11 +4,13 @@
 
 package com.taobao.arthas.mcp.server.protocol.server;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.taobao.arthas.mcp.server.CommandExecutor;
 import com.taobao.arthas.mcp.server.protocol.spec.*;
 import com.taobao.arthas.mcp.server.util.Assert;
+import com.taobao.arthas.mcp.server.util.McpRequestExecutor;
 import com.taobao.arthas.mcp.server.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +44,8 @@ public class McpNettyServer {
 
 	private final CopyOnWriteArrayList<McpServerFeatures.ToolSpecification> tools = new CopyOnWriteArrayList<>();
 
+	private final ToolsListCache toolsListCache;
+
 	private final CopyOnWriteArrayList<McpSchema.ResourceTemplate> resourceTemplates = new CopyOnWriteArrayList<>();
 
 	private final ConcurrentHashMap<String, McpServerFeatures.ResourceSpecification> resources = new ConcurrentHashMap<>();
@@ -52,16 +56,21 @@ public class McpNettyServer {
 
 	private List<String> protocolVersions;
 
+	private final McpRequestExecutor requestExecutor;
+
 	McpNettyServer(McpStreamableServerTransportProvider mcpTransportProvider,
 				   ObjectMapper objectMapper, Duration requestTimeout,
 				   McpServerFeatures.McpServerConfig features,
-				   CommandExecutor commandExecutor) {
+				   CommandExecutor commandExecutor,
+				   McpRequestExecutor requestExecutor) {
 		this.mcpTransportProvider = mcpTransportProvider;
 		this.objectMapper = objectMapper;
+		this.requestExecutor = requestExecutor;
 		this.serverInfo = features.getServerInfo();
 		this.serverCapabilities = features.getServerCapabilities();
 		this.instructions = features.getInstructions();
 		this.tools.addAll(features.getTools());
+		this.toolsListCache = new ToolsListCache(objectMapper, this::listTools);
 		this.resources.putAll(features.getResources());
 		this.resourceTemplates.addAll(features.getResourceTemplates());
 		this.prompts.putAll(features.getPrompts());
@@ -72,7 +81,8 @@ public class McpNettyServer {
 		this.protocolVersions = mcpTransportProvider.protocolVersions();
 
 		mcpTransportProvider.setSessionFactory(new DefaultMcpStreamableServerSessionFactory(requestTimeout,
-				this::initializeRequestHandler, requestHandlers, notificationHandlers, commandExecutor));
+				this::initializeRequestHandler, requestHandlers, notificationHandlers, commandExecutor,
+				requestExecutor));
 	}
 
 	private Map<String, McpNotificationHandler> prepareNotificationHandlers(McpServerFeatures.McpServerConfig features) {
@@ -86,7 +96,7 @@ public class McpNettyServer {
 
 		if (Utils.isEmpty(rootsChangeConsumers)) {
 			rootsChangeConsumers = Collections.singletonList(
-					(exchange, roots) -> CompletableFuture.runAsync(() ->
+					(exchange, roots) -> this.requestExecutor.runAsync(() ->
 							logger.warn("Roots list changed notification, but no consumers provided. Roots list changed: {}", roots))
 			);
 		}
@@ -138,7 +148,7 @@ public class McpNettyServer {
 	// ---------------------------------------
 	private CompletableFuture<McpSchema.InitializeResult> initializeRequestHandler(
 			McpSchema.InitializeRequest initializeRequest) {
-		return CompletableFuture.supplyAsync(() -> {
+		return this.requestExecutor.supplyAsync(() -> {
 			logger.info("Client initialize request - Protocol: {}, Capabilities: {}, Info: {}",
 					initializeRequest.getProtocolVersion(), initializeRequest.getCapabilities(),
 					initializeRequest.getClientInfo());
@@ -169,12 +179,17 @@ public class McpNettyServer {
 		return this.serverInfo;
 	}
 
+	public McpRequestExecutor getRequestExecutor() {
+		return this.requestExecutor;
+	}
+
 	public CompletableFuture<Void> closeGracefully() {
-		return this.mcpTransportProvider.closeGracefully();
+		return this.mcpTransportProvider.closeGracefully().whenComplete((r, ex) -> this.requestExecutor.shutdown());
 	}
 
 	public void close() {
 		this.mcpTransportProvider.close();
+		this.requestExecutor.shutdown();
 	}
 
 	private McpNotificationHandler rootsListChangedNotificationHandler(
@@ -223,13 +238,14 @@ public class McpNettyServer {
 			return future;
 		}
 
-		return CompletableFuture.supplyAsync(() -> {
+		return McpRequestExecutor.supplyInline(() -> {
 			// Check for duplicate tool names
 			if (this.tools.stream().anyMatch(th -> th.getTool().getName().equals(toolSpecification.getTool().getName()))) {
 				throw new CompletionException(
 						new McpError("Tool with name '" + toolSpecification.getTool().getName() + "' already exists"));
 			}
 			this.tools.add(toolSpecification);
+			this.toolsListCache.invalidate();
 			logger.debug("Added tool handler: {}", toolSpecification.getTool().getName());
 			return null;
 		}).thenCompose(ignored -> {
@@ -256,11 +272,12 @@ public class McpNettyServer {
 			return future;
 		}
 
-		return CompletableFuture.supplyAsync(() -> {
+		return McpRequestExecutor.supplyInline(() -> {
 			boolean removed = this.tools.removeIf(spec -> spec.getTool().getName().equals(toolName));
 			if (!removed) {
 				throw new CompletionException(new McpError("Tool with name '" + toolName + "' not found"));
 			}
+			this.toolsListCache.invalidate();
 			logger.debug("Removed tool handler: {}", toolName);
 			return null;
 		}).thenCompose(ignored -> {
@@ -280,17 +297,26 @@ public class McpNettyServer {
 		return this.mcpTransportProvider.notifyClients(McpSchema.METHOD_NOTIFICATION_TOOLS_LIST_CHANGED, null);
 	}
 
-	private McpRequestHandler<McpSchema.ListToolsResult> toolsListRequestHandler() {
+	private McpRequestHandler<Object> toolsListRequestHandler() {
 		return (exchange, commandContext, params) -> {
-			List<McpSchema.Tool> tools = new ArrayList<>();
-			for (McpServerFeatures.ToolSpecification toolSpec : this.tools) {
-				tools.add(toolSpec.getTool());
+			try {
+				return CompletableFuture.completedFuture(this.toolsListCache.get());
+			}
+			catch (JsonProcessingException e) {
+				logger.warn("Failed to serialize tools list, send it without cache", e);
+				return CompletableFuture.completedFuture(new McpSchema.ListToolsResult(listTools(), null));
 			}
-
-			return CompletableFuture.completedFuture(new McpSchema.ListToolsResult(tools, null));
 		};
 	}
 
+	private List<McpSchema.Tool> listTools() {
+		List<McpSchema.Tool> tools = new ArrayList<>();
+		for (McpServerFeatures.ToolSpecification toolSpec : this.tools) {
+			tools.add(toolSpec.getTool());
+		}
+		return tools;
+	}
+
 	private McpRequestHandler<McpSchema.CallToolResult> toolsCallRequestHandler() {
 		return (exchange, commandContext, params) -> {
 			McpSchema.CallToolRequest callToolRequest = objectMapper.convertValue(params,
@@ -326,7 +352,7 @@ public class McpNettyServer {
 			return future;
 		}
 
-		return CompletableFuture.supplyAsync(() -> {
+		return McpRequestExecutor.supplyInline(() -> {
 			if (this.resources.putIfAbsent(resourceSpecification.getResource().getUri(), resourceSpecification) != null) {
 				throw new CompletionException(new McpError(
 						"Resource with URI '" + resourceSpecification.getResource().getUri() + "' already exists"));
@@ -357,7 +383,7 @@ public class McpNettyServer {
 			return future;
 		}
 
-		return CompletableFuture.supplyAsync(() -> {
+		return McpRequestExecutor.supplyInline(() -> {
 			McpServerFeatures.ResourceSpecification removed = this.resources.remove(resourceUri);
 			if (removed == null) {
 				throw new CompletionException(new McpError("Resource with URI '" + resourceUri + "' not found"));
@@ -428,7 +454,7 @@ public class McpNettyServer {
 			return future;
 		}
 
-		return CompletableFuture.supplyAsync(() -> {
+		return McpRequestExecutor.supplyInline(() -> {
 			McpServerFeatures.PromptSpecification existing = this.prompts
 				.putIfAbsent(promptSpecification.getPrompt().getName(), promptSpecification);
 			if (existing != null) {
@@ -462,7 +488,7 @@ public class McpNettyServer {
 			return future;
 		}
 
-		return CompletableFuture.supplyAsync(() -> {
+		return McpRequestExecutor.supplyInline(() -> {
 			McpServerFeatures.PromptSpecification removed = this.prompts.remove(promptName);
 			if (removed == null) {
 				throw new CompletionException(new McpError("Prompt with name '" + promptName + "' not found"));
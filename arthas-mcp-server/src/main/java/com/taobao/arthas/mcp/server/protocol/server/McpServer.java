@@ -11,6 +11,7 @@ import com.taobao.arthas.mcp.server.protocol.spec.McpSchema;
 import com.taobao.arthas.mcp.server.protocol.spec.McpStatelessServerTransport;
 import com.taobao.arthas.mcp.server.protocol.spec.McpStreamableServerTransportProvider;
 import com.taobao.arthas.mcp.server.util.Assert;
+import com.taobao.arthas.mcp.server.util.McpRequestExecutor;
 
 import java.time.Duration;
 import java.util.*;
@@ -46,6 +47,8 @@ public interface McpServer {
 
 		CommandExecutor commandExecutor;
 
+		McpRequestExecutor requestExecutor;
+
 		private final McpStreamableServerTransportProvider transportProvider;
 
 		final List<McpServerFeatures.ToolSpecification> tools = new ArrayList<>();
@@ -203,6 +206,16 @@ public interface McpServer {
 			return this;
 		}
 
+		/**
+		 * Executor for request handlers, owned and shut down by the built server. A default
+		 * bounded executor is created when not set.
+		 */
+		public StreamableServerNettySpecification requestExecutor(McpRequestExecutor requestExecutor) {
+			Assert.notNull(requestExecutor, "RequestExecutor must not be null");
+			this.requestExecutor = requestExecutor;
+			return this;
+		}
+
 		public McpNettyServer build() {
 			ObjectMapper mapper = this.objectMapper != null ? this.objectMapper : JsonParser.getObjectMapper();
 			Assert.notNull(this.commandExecutor, "CommandExecutor must be set before building");
@@ -210,7 +223,8 @@ public interface McpServer {
 					this.transportProvider, mapper, this.requestTimeout,
 					new McpServerFeatures.McpServerConfig(this.serverInfo, this.serverCapabilities, this.tools,
 							this.resources, this.resourceTemplates, this.prompts, this.rootsChangeHandlers, this.instructions
-					), this.commandExecutor
+					), this.commandExecutor,
+					this.requestExecutor != null ? this.requestExecutor : McpRequestExecutor.builder().build()
 			);
 		}
 	}
@@ -229,6 +243,8 @@ public interface McpServer {
 
 		CommandExecutor commandExecutor;
 
+		McpRequestExecutor requestExecutor;
+
 		final List<McpStatelessServerFeatures.ToolSpecification> tools = new ArrayList<>();
 
 		final Map<String, McpStatelessServerFeatures.ResourceSpecification> resources = new HashMap<>();
@@ -376,6 +392,16 @@ public interface McpServer {
 			return this;
 		}
 
+		/**
+		 * Executor for request handlers, owned and shut down by the built server. A default
+		 * bounded executor is created when not set.
+		 */
+		public StatelessServerNettySpecification requestExecutor(McpRequestExecutor requestExecutor) {
+			Assert.notNull(requestExecutor, "RequestExecutor must not be null");
+			this.requestExecutor = requestExecutor;
+			return this;
+		}
+
 		public McpStatelessNettyServer build() {
 			ObjectMapper mapper = this.objectMapper != null ? this.objectMapper : JsonParser.getObjectMapper();
 			return new McpStatelessNettyServer(
@@ -391,7 +417,8 @@ public interface McpServer {
 							this.prompts,
 							this.instructions
 					),
-					this.commandExecutor
+					this.commandExecutor,
+					this.requestExecutor != null ? this.requestExecutor : McpRequestExecutor.builder().build()
 			);
 		}
 
@@ -4,12 +4,14 @@
 
 package com.taobao.arthas.mcp.server.protocol.server;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.taobao.arthas.mcp.server.CommandExecutor;
 import com.taobao.arthas.mcp.server.protocol.spec.McpError;
 import com.taobao.arthas.mcp.server.protocol.spec.McpSchema;
 import com.taobao.arthas.mcp.server.protocol.spec.McpStatelessServerTransport;
+import com.taobao.arthas.mcp.server.util.McpRequestExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +44,8 @@ public class McpStatelessNettyServer {
 
 	private final CopyOnWriteArrayList<McpStatelessServerFeatures.ToolSpecification> tools = new CopyOnWriteArrayList<>();
 
+	private final ToolsListCache toolsListCache;
+
 	private final CopyOnWriteArrayList<McpSchema.ResourceTemplate> resourceTemplates = new CopyOnWriteArrayList<>();
 
 	private final ConcurrentHashMap<String, McpStatelessServerFeatures.ResourceSpecification> resources = new ConcurrentHashMap<>();
@@ -50,18 +54,23 @@ public class McpStatelessNettyServer {
 
 	private List<String> protocolVersions;
 
+	private final McpRequestExecutor requestExecutor;
+
 	public McpStatelessNettyServer(
 			McpStatelessServerTransport mcpTransport,
 			ObjectMapper objectMapper,
 			Duration requestTimeout,
 			McpStatelessServerFeatures.McpServerConfig features,
-			CommandExecutor commandExecutor) {
+			CommandExecutor commandExecutor,
+			McpRequestExecutor requestExecutor) {
 		this.mcpTransportProvider = mcpTransport;
 		this.objectMapper = objectMapper;
+		this.requestExecutor = requestExecutor;
 		this.serverInfo = features.getServerInfo();
 		this.serverCapabilities = features.getServerCapabilities();
 		this.instructions = features.getInstructions();
 		this.tools.addAll(features.getTools());
+		this.toolsListCache = new ToolsListCache(objectMapper, this::listTools);
 		this.resources.putAll(features.getResources());
 		this.resourceTemplates.addAll(features.getResourceTemplates());
 		this.prompts.putAll(features.getPrompts());
@@ -99,7 +108,8 @@ public class McpStatelessNettyServer {
 		Map<String, McpStatelessNotificationHandler> notificationHandlers = new HashMap<>();
 		notificationHandlers.put(McpSchema.METHOD_NOTIFICATION_INITIALIZED, (ctx, params) -> CompletableFuture.completedFuture(null));
 
-		McpStatelessServerHandler handler = new DefaultMcpStatelessServerHandler(requestHandlers, notificationHandlers, commandExecutor);
+		McpStatelessServerHandler handler = new DefaultMcpStatelessServerHandler(requestHandlers, notificationHandlers, commandExecutor,
+				requestExecutor);
 		mcpTransport.setMcpHandler(handler);
 	}
 
@@ -107,7 +117,7 @@ public class McpStatelessNettyServer {
 	// Lifecycle Management
 	// ---------------------------------------
 	private McpStatelessRequestHandler<McpSchema.InitializeResult> initializeRequestHandler() {
-		return (exchange, commandContext, params) -> CompletableFuture.supplyAsync(() -> {
+		return (exchange, commandContext, params) -> this.requestExecutor.supplyAsync(() -> {
 			McpSchema.InitializeRequest initializeRequest = objectMapper.convertValue(params, McpSchema.InitializeRequest.class);
 			
 			logger.info("Client initialize request - Protocol: {}, Capabilities: {}, Info: {}",
@@ -139,12 +149,17 @@ public class McpStatelessNettyServer {
 		return this.serverInfo;
 	}
 
+	public McpRequestExecutor getRequestExecutor() {
+		return this.requestExecutor;
+	}
+
 	public CompletableFuture<Void> closeGracefully() {
-		return this.mcpTransportProvider.closeGracefully();
+		return this.mcpTransportProvider.closeGracefully().whenComplete((r, ex) -> this.requestExecutor.shutdown());
 	}
 
 	public void close() {
 		this.mcpTransportProvider.close();
+		this.requestExecutor.shutdown();
 	}
 
 	private McpNotificationHandler rootsListChangedNotificationHandler(
@@ -193,14 +208,15 @@ public class McpStatelessNettyServer {
 			return future;
 		}
 
-		return CompletableFuture
-				.runAsync(() -> {
+		return McpRequestExecutor
+				.runInline(() -> {
 					if (this.tools.stream().anyMatch(th ->
 							th.getTool().getName().equals(toolSpecification.getTool().getName()))) {
 						throw new CompletionException(
 								new McpError("Tool with name '" + toolSpecification.getTool().getName() + "' already exists"));
 					}
 					this.tools.add(toolSpecification);
+					this.toolsListCache.invalidate();
 					logger.debug("Added tool handler: {}", toolSpecification.getTool().getName());
 				})
 				.exceptionally(ex -> {
@@ -222,14 +238,15 @@ public class McpStatelessNettyServer {
 			return future;
 		}
 
-		return CompletableFuture
-				.runAsync(() -> {
+		return McpRequestExecutor
+				.runInline(() -> {
 					boolean removed = this.tools.removeIf(
 							spec -> spec.getTool().getName().equals(toolName));
 					if (!removed) {
 						throw new CompletionException(
 								new McpError("Tool with name '" + toolName + "' not found"));
 					}
+					this.toolsListCache.invalidate();
 					logger.debug("Removed tool handler: {}", toolName);
 				})
 				.exceptionally(ex -> {
@@ -239,17 +256,26 @@ public class McpStatelessNettyServer {
 				});
 	}
 
-	private McpStatelessRequestHandler<McpSchema.ListToolsResult> toolsListRequestHandler() {
+	private McpStatelessRequestHandler<Object> toolsListRequestHandler() {
 		return (exchange, commandContext, params) -> {
-			List<McpSchema.Tool> tools = new ArrayList<>();
-			for (McpStatelessServerFeatures.ToolSpecification toolSpec : this.tools) {
-				tools.add(toolSpec.getTool());
+			try {
+				return CompletableFuture.completedFuture(this.toolsListCache.get());
+			}
+			catch (JsonProcessingException e) {
+				logger.warn("Failed to serialize tools list, send it without cache", e);
+				return CompletableFuture.completedFuture(new McpSchema.ListToolsResult(listTools(), null));
 			}
-
-			return CompletableFuture.completedFuture(new McpSchema.ListToolsResult(tools, null));
 		};
 	}
 
+	private List<McpSchema.Tool> listTools() {
+		List<McpSchema.Tool> tools = new ArrayList<>();
+		for (McpStatelessServerFeatures.ToolSpecification toolSpec : this.tools) {
+			tools.add(toolSpec.getTool());
+		}
+		return tools;
+	}
+
 	private McpStatelessRequestHandler<McpSchema.CallToolResult> toolsCallRequestHandler() {
 		return (context, commandContext, params) -> {
 			McpSchema.CallToolRequest callToolRequest = objectMapper.convertValue(params,
@@ -285,8 +311,8 @@ public class McpStatelessNettyServer {
 			return future;
 		}
 
-		return CompletableFuture
-				.runAsync(() -> {
+		return McpRequestExecutor
+				.runInline(() -> {
 					String uri = resourceSpecification.getResource().getUri();
 					if (this.resources.putIfAbsent(uri, resourceSpecification) != null) {
 						throw new CompletionException(new McpError("Resource with URI '" + uri + "' already exists"));
@@ -313,8 +339,8 @@ public class McpStatelessNettyServer {
 			return future;
 		}
 
-		return CompletableFuture
-				.runAsync(() -> {
+		return McpRequestExecutor
+				.runInline(() -> {
 					McpStatelessServerFeatures.ResourceSpecification removed = this.resources.remove(resourceUri);
 					if (removed == null) {
 						throw new CompletionException(new McpError("Resource with URI '" + resourceUri + "' not found"));
@@ -375,8 +401,8 @@ public class McpStatelessNettyServer {
 			return future;
 		}
 
-		return CompletableFuture
-				.runAsync(() -> {
+		return McpRequestExecutor
+				.runInline(() -> {
 					String name = promptSpecification.getPrompt().getName();
 					McpStatelessServerFeatures.PromptSpecification existing =
 							this.prompts.putIfAbsent(name, promptSpecification);
@@ -405,8 +431,8 @@ public class McpStatelessNettyServer {
 			return future;
 		}
 
-		return CompletableFuture
-				.runAsync(() -> {
+		return McpRequestExecutor
+				.runInline(() -> {
 					McpStatelessServerFeatures.PromptSpecification removed =
 							this.prompts.remove(promptName);
 					if (removed == null) {
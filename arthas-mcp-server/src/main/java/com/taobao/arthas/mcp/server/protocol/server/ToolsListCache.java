@@ -0,0 +1,68 @@
+package com.taobao.arthas.mcp.server.protocol.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.taobao.arthas.mcp.server.protocol.spec.McpSchema;
+import com.taobao.arthas.mcp.server.protocol.spec.SerializedResult;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Serialized tools/list result. The tool list only changes through addTool and removeTool,
+ * which call {@link #invalidate()}, so clients listing tools on every turn do not pay for
+ * serializing all the tool schemas again.
+ */
+class ToolsListCache {
+
+	private final ObjectMapper objectMapper;
+
+	private final Supplier<List<McpSchema.Tool>> toolsSupplier;
+
+	private final AtomicInteger version = new AtomicInteger();
+
+	private volatile Entry entry;
+
+	ToolsListCache(ObjectMapper objectMapper, Supplier<List<McpSchema.Tool>> toolsSupplier) {
+		this.objectMapper = objectMapper;
+		this.toolsSupplier = toolsSupplier;
+	}
+
+	/**
+	 * Must be called after the tool list is modified.
+	 */
+	void invalidate() {
+		version.incrementAndGet();
+		entry = null;
+	}
+
+	SerializedResult get() throws JsonProcessingException {
+		int currentVersion = version.get();
+		Entry current = entry;
+		if (current != null && current.version == currentVersion) {
+			return current.result;
+		}
+		SerializedResult result = SerializedResult.of(objectMapper,
+				new McpSchema.ListToolsResult(toolsSupplier.get(), null));
+		// the tool list may be modified while serializing, then the result is not cached
+		if (version.get() == currentVersion) {
+			entry = new Entry(currentVersion, result);
+		}
+		return result;
+	}
+
+	private static final class Entry {
+
+		private final int version;
+
+		private final SerializedResult result;
+
+		Entry(int version, SerializedResult result) {
+			this.version = version;
+			this.result = result;
+		}
+
+	}
+
+}
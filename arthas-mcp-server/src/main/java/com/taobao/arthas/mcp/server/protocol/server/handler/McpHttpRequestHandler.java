@@ -104,24 +104,22 @@ public class McpHttpRequestHandler {
 
 
     public CompletableFuture<Void> closeGracefully() {
-        return CompletableFuture.runAsync(() -> {
-            this.isClosing.set(true);
-            logger.debug("Initiating graceful shutdown of MCP handler");
+        this.isClosing.set(true);
+        logger.debug("Initiating graceful shutdown of MCP handler");
 
-            CompletableFuture<Void> statelessClose = CompletableFuture.completedFuture(null);
-            CompletableFuture<Void> streamableClose = CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> statelessClose = CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> streamableClose = CompletableFuture.completedFuture(null);
 
-            if (statelessHandler != null) {
-                statelessClose = statelessHandler.closeGracefully();
-            }
+        if (statelessHandler != null) {
+            statelessClose = statelessHandler.closeGracefully();
+        }
 
-            if (streamableHandler != null) {
-                streamableClose = streamableHandler.closeGracefully();
-            }
+        if (streamableHandler != null) {
+            streamableClose = streamableHandler.closeGracefully();
+        }
 
-            CompletableFuture.allOf(statelessClose, streamableClose).join();
-            logger.debug("Graceful shutdown completed");
-        });
+        return CompletableFuture.allOf(statelessClose, streamableClose)
+                .thenRun(() -> logger.debug("Graceful shutdown completed"));
     }
 
     private void sendError(ChannelHandlerContext ctx, HttpResponseStatus status, McpError mcpError) {
@@ -75,10 +75,8 @@ public class McpStatelessHttpRequestHandler {
      * @return A CompletableFuture that completes when shutdown is initiated
      */
     public CompletableFuture<Void> closeGracefully() {
-        return CompletableFuture.supplyAsync(() -> {
-            this.isClosing.set(true);
-            return null;
-        });
+        this.isClosing.set(true);
+        return CompletableFuture.completedFuture(null);
     }
 
     protected void handle(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
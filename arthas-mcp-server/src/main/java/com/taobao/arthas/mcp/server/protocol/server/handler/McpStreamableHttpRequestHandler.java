@@ -139,37 +139,44 @@ public class McpStreamableHttpRequestHandler {
 
         logger.debug("Attempting to broadcast message to {} active sessions", this.sessions.size());
 
-        return CompletableFuture.runAsync(() -> {
-            this.sessions.values().parallelStream().forEach(session -> {
-                try {
-                    session.sendNotification(method, params);
-                } catch (Exception e) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (McpStreamableServerSession session : this.sessions.values()) {
+            try {
+                futures.add(session.sendNotification(method, params).exceptionally(e -> {
                     logger.error("Failed to send message to session {}: {}", session.getId(), e.getMessage());
-                }
-            });
-        });
+                    return null;
+                }));
+            } catch (Exception e) {
+                logger.error("Failed to send message to session {}: {}", session.getId(), e.getMessage());
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
     }
 
     public CompletableFuture<Void> closeGracefully() {
-        return CompletableFuture.runAsync(() -> {
-            this.isClosing.set(true);
-            logger.debug("Initiating graceful shutdown with {} active sessions", this.sessions.size());
+        this.isClosing.set(true);
+        logger.debug("Initiating graceful shutdown with {} active sessions", this.sessions.size());
 
-            this.sessions.values().parallelStream().forEach(session -> {
-                try {
-                    session.closeGracefully();
-                } catch (Exception e) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (McpStreamableServerSession session : this.sessions.values()) {
+            try {
+                futures.add(session.closeGracefully().exceptionally(e -> {
                     logger.error("Failed to close session {}: {}", session.getId(), e.getMessage());
-                }
-            });
+                    return null;
+                }));
+            } catch (Exception e) {
+                logger.error("Failed to close session {}: {}", session.getId(), e.getMessage());
+            }
+        }
 
-            this.sessions.clear();
-            logger.debug("Graceful shutdown completed");
+        this.sessions.clear();
 
-            if (this.keepAliveScheduler != null) {
-                this.keepAliveScheduler.shutdown();
-            }
-        });
+        if (this.keepAliveScheduler != null) {
+            this.keepAliveScheduler.shutdown();
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenRun(() -> logger.debug("Graceful shutdown completed"));
     }
 
     protected void handle(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
@@ -576,36 +583,46 @@ public class McpStreamableHttpRequestHandler {
 
         @Override
         public CompletableFuture<Void> sendMessage(McpSchema.JSONRPCMessage message, String messageId) {
-            return CompletableFuture.runAsync(() -> {
+            // 在连接的 EventLoop 中序列化和写出，保证消息顺序，也不占用 ForkJoinPool.commonPool()
+            if (this.ctx.executor().inEventLoop()) {
+                doSendMessage(message, messageId);
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.runAsync(() -> doSendMessage(message, messageId), this.ctx.executor());
+        }
+
+        private void doSendMessage(McpSchema.JSONRPCMessage message, String messageId) {
+            if (this.closed.get()) {
+                logger.warn("Attempted to send message to closed session: {}", this.sessionId);
+                return;
+            }
+            
+            // Check if channel is still active
+            if (!this.ctx.channel().isActive()) {
+                logger.warn("Channel for session {} is not active, message will not be sent", this.sessionId);
+                return;
+            }
+            lock.lock();
+            try {
                 if (this.closed.get()) {
-                    logger.warn("Attempted to send message to closed session: {}", this.sessionId);
+                    logger.debug("Session {} was closed during message send attempt", this.sessionId);
                     return;
                 }
-                
-                // Check if channel is still active
-                if (!this.ctx.channel().isActive()) {
-                    logger.warn("Channel for session {} is not active, message will not be sent", this.sessionId);
-                    return;
-                }
-                lock.lock();
-                try {
-                    if (this.closed.get()) {
-                        logger.debug("Session {} was closed during message send attempt", this.sessionId);
-                        return;
-                    }
 
-                    String jsonText = objectMapper.writeValueAsString(message);
-                    logger.debug("Sending SSE message to session {}: {}", this.sessionId, 
+                ByteBuf json = toJson(message);
+                if (logger.isDebugEnabled()) {
+                    String jsonText = json.toString(CharsetUtil.UTF_8);
+                    logger.debug("Sending SSE message to session {}: {}", this.sessionId,
                         jsonText.length() > 200 ? jsonText.substring(0, 200) + "..." : jsonText);
-                    sendSseEvent(MESSAGE_EVENT_TYPE, jsonText, messageId != null ? messageId : this.sessionId);
-                    logger.debug("Message sent to session {} with ID {}", this.sessionId, messageId);
-                } catch (Exception e) {
-                    logger.error("Failed to send message to session {}: {}", this.sessionId, e.getMessage());
-                    this.ctx.close();
-                } finally {
-                    lock.unlock();
                 }
-            });
+                sendSseEvent(MESSAGE_EVENT_TYPE, json, messageId != null ? messageId : this.sessionId);
+                logger.debug("Message sent to session {} with ID {}", this.sessionId, messageId);
+            } catch (Exception e) {
+                logger.error("Failed to send message to session {}: {}", this.sessionId, e.getMessage());
+                this.ctx.close();
+            } finally {
+                lock.unlock();
+            }
         }
 
         @Override
@@ -615,7 +632,7 @@ public class McpStreamableHttpRequestHandler {
 
         @Override
         public CompletableFuture<Void> closeGracefully() {
-            return CompletableFuture.runAsync(this::close);
+            return CompletableFuture.runAsync(this::close, this.ctx.executor());
         }
 
         @Override
@@ -645,19 +662,37 @@ public class McpStreamableHttpRequestHandler {
             return ctx.channel();
         }
 
-        private void sendSseEvent(String eventType, String data, String id) {
-            StringBuilder sseData = new StringBuilder();
+        /**
+         * 缓存的结果（如 tools/list）直接引用缓存的字节，不再序列化
+         */
+        private ByteBuf toJson(McpSchema.JSONRPCMessage message) throws IOException {
+            if (message instanceof McpSchema.JSONRPCResponse) {
+                McpSchema.JSONRPCResponse response = (McpSchema.JSONRPCResponse) message;
+                if (response.getError() == null && response.getResult() instanceof SerializedResult) {
+                    String head = "{\"jsonrpc\":" + objectMapper.writeValueAsString(response.getJsonrpc())
+                            + ",\"id\":" + objectMapper.writeValueAsString(response.getId()) + ",\"result\":";
+                    return Unpooled.wrappedBuffer(Unpooled.copiedBuffer(head, CharsetUtil.UTF_8),
+                            Unpooled.wrappedBuffer(((SerializedResult) response.getResult()).getJson()),
+                            Unpooled.copiedBuffer("}", CharsetUtil.UTF_8));
+                }
+            }
+            return Unpooled.wrappedBuffer(objectMapper.writeValueAsBytes(message));
+        }
+
+        private void sendSseEvent(String eventType, ByteBuf data, String id) {
+            StringBuilder sseHead = new StringBuilder();
             if (id != null) {
-                sseData.append("id: ").append(id).append("\n");
+                sseHead.append("id: ").append(id).append("\n");
             }
-            sseData.append("event: ").append(eventType).append("\n");
-            sseData.append("data: ").append(data).append("\n\n");
+            sseHead.append("event: ").append(eventType).append("\n");
+            sseHead.append("data: ");
 
-            ByteBuf buffer = Unpooled.copiedBuffer(sseData.toString(), CharsetUtil.UTF_8);
+            int dataLength = data.readableBytes();
+            ByteBuf buffer = Unpooled.wrappedBuffer(Unpooled.copiedBuffer(sseHead, CharsetUtil.UTF_8), data,
+                    Unpooled.copiedBuffer("\n\n", CharsetUtil.UTF_8));
             this.ctx.writeAndFlush(new DefaultHttpContent(buffer));
             
-            logger.debug("SSE event sent - Type: {}, ID: {}, Data length: {}", 
-                eventType, id, data != null ? data.length() : 0);
+            logger.debug("SSE event sent - Type: {}, ID: {}, Data length: {}", eventType, id, dataLength);
         }
     }
 
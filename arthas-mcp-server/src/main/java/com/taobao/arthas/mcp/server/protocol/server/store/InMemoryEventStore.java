@@ -10,146 +10,305 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * In-memory implementation of EventStore.
+ * In-memory implementation of EventStore, shared by all sessions of a server.
+ *
+ * <p>
+ * Event ids are increasing numbers. Each session keeps its events in a ring buffer, so
+ * appending and evicting the oldest event are O(1), and replaying from a {@code Last-Event-ID}
+ * is a binary search. All events are also linked in store order, which bounds the total
+ * number of events: when the global cap is reached, the oldest event of any session is
+ * evicted. Expired events are evicted while storing, no cleanup thread is needed.
+ * </p>
  *
  * @author Yeaury
  */
 public class InMemoryEventStore implements EventStore {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(InMemoryEventStore.class);
-    
-    /** Global event ID counter */
-    private final AtomicLong globalEventIdCounter = new AtomicLong(0);
-    
-    /**
-     * Events storage: sessionId -> list of events
-     */
-    private final Map<String, List<StoredEvent>> sessionEvents = new ConcurrentHashMap<>();
-    
+
+    public static final int DEFAULT_MAX_EVENTS_PER_SESSION = 1000;
+
+    public static final int DEFAULT_MAX_TOTAL_EVENTS = 20000;
+
+    /** 10 minutes, events are only used to resume a broken stream */
+    public static final long DEFAULT_RETENTION_MS = 10 * 60 * 1000L;
+
+    private static final int INITIAL_SESSION_CAPACITY = 16;
+
     /**
-     * Event ID to session mapping for fast lookup
+     * Events storage: sessionId -> ring buffer of events, guarded by this
      */
-    private final Map<String, String> eventIdToSession = new ConcurrentHashMap<>();
-    
+    private final Map<String, SessionEvents> sessionEvents = new HashMap<>();
+
+    /** Oldest stored event of all sessions */
+    private EventNode head;
+
+    /** Newest stored event of all sessions */
+    private EventNode tail;
+
+    private int totalEvents;
+
+    private long lastEventId;
+
     /**
      * Maximum events to keep per session (prevent memory leaks)
      */
     private final int maxEventsPerSession;
-    
+
+    /**
+     * Maximum events to keep for all sessions
+     */
+    private final int maxTotalEvents;
+
     /**
-     * Default retention time in milliseconds (24 hours)
+     * Default retention time in milliseconds
      */
     private final long defaultRetentionMs;
-    
+
     public InMemoryEventStore() {
-        this(1000, 24 * 60 * 60 * 1000L); // 1000 events, 24 hours
+        this(DEFAULT_MAX_EVENTS_PER_SESSION, DEFAULT_MAX_TOTAL_EVENTS, DEFAULT_RETENTION_MS);
     }
-    
+
     public InMemoryEventStore(int maxEventsPerSession, long defaultRetentionMs) {
+        this(maxEventsPerSession, DEFAULT_MAX_TOTAL_EVENTS, defaultRetentionMs);
+    }
+
+    public InMemoryEventStore(int maxEventsPerSession, int maxTotalEvents, long defaultRetentionMs) {
+        if (maxEventsPerSession <= 0 || maxTotalEvents <= 0) {
+            throw new IllegalArgumentException("maxEventsPerSession and maxTotalEvents must be positive");
+        }
         this.maxEventsPerSession = maxEventsPerSession;
+        this.maxTotalEvents = maxTotalEvents;
         this.defaultRetentionMs = defaultRetentionMs;
     }
-    
+
     @Override
-    public String storeEvent(String sessionId, McpSchema.JSONRPCMessage message) {
-        String eventId = String.valueOf(globalEventIdCounter.incrementAndGet());
-        Instant timestamp = Instant.now();
-        
-        StoredEvent event = new StoredEvent(eventId, sessionId, message, timestamp);
-        
-        sessionEvents.computeIfAbsent(sessionId, k -> new ArrayList<>()).add(event);
-        eventIdToSession.put(eventId, sessionId);
-        
-        // Cleanup old events if needed
-        List<StoredEvent> events = sessionEvents.get(sessionId);
-        if (events.size() > maxEventsPerSession) {
-            // Remove oldest events
-            int toRemove = events.size() - maxEventsPerSession;
-            for (int i = 0; i < toRemove; i++) {
-                StoredEvent removedEvent = events.remove(0);
-                eventIdToSession.remove(removedEvent.getEventId());
-            }
-            logger.debug("Cleaned up {} old events for session {}", toRemove, sessionId);
+    public synchronized String storeEvent(String sessionId, McpSchema.JSONRPCMessage message) {
+        long now = System.currentTimeMillis();
+        long id = ++lastEventId;
+        String eventId = String.valueOf(id);
+
+        SessionEvents events = sessionEvents.get(sessionId);
+        if (events != null && events.size == maxEventsPerSession) {
+            evict(events.first());
+            // the session is dropped when its last event is evicted
+            events = sessionEvents.get(sessionId);
+        }
+        if (events == null) {
+            events = new SessionEvents(sessionId);
+            sessionEvents.put(sessionId, events);
         }
-        
+
+        EventNode node = new EventNode(id, now, events,
+                new StoredEvent(eventId, sessionId, message, Instant.ofEpochMilli(now)));
+        events.addLast(node);
+        linkLast(node);
+
+        evictExpired(now - defaultRetentionMs);
+        while (totalEvents > maxTotalEvents) {
+            evict(head);
+        }
+
         logger.trace("Stored event {} for session {}", eventId, sessionId);
         return eventId;
     }
-    
+
+    /**
+     * Returns the events stored after {@code fromEventId}. If some events after it were
+     * already evicted, the remaining ones are returned.
+     */
     @Override
     public Stream<StoredEvent> getEventsForSession(String sessionId, String fromEventId) {
-        List<StoredEvent> events = sessionEvents.get(sessionId);
-        if (events == null || events.isEmpty()) {
+        if (fromEventId == null) {
             return Stream.empty();
         }
-        
-        if (fromEventId == null) {
+        long fromId;
+        try {
+            fromId = Long.parseLong(fromEventId.trim());
+        } catch (NumberFormatException e) {
+            logger.debug("Invalid last event id {} for session {}", fromEventId, sessionId);
             return Stream.empty();
         }
-        
-        boolean foundStartEvent = false;
-        List<StoredEvent> result = new ArrayList<>();
-        
-        for (StoredEvent event : events) {
-            if (!foundStartEvent) {
-                if (event.getEventId().equals(fromEventId)) {
-                    foundStartEvent = true;
-                    result.add(event);
-                    // clear the replayed events
-                    events.remove(event);
-                    eventIdToSession.remove(event.getEventId());
-                }
-                continue;
+
+        List<StoredEvent> result;
+        synchronized (this) {
+            SessionEvents events = sessionEvents.get(sessionId);
+            if (events == null || events.size == 0) {
+                return Stream.empty();
+            }
+            int from = events.indexAfter(fromId);
+            result = new ArrayList<>(events.size - from);
+            for (int i = from; i < events.size; i++) {
+                result.add(events.get(i).event);
             }
-            result.add(event);
         }
-        
         return result.stream();
     }
 
     @Override
-    public void cleanupOldEvents(String sessionId, long maxAge) {
-        List<StoredEvent> events = sessionEvents.get(sessionId);
-        if (events == null || events.isEmpty()) {
+    public synchronized void cleanupOldEvents(String sessionId, long maxAge) {
+        SessionEvents events = sessionEvents.get(sessionId);
+        if (events == null) {
             return;
         }
-        
-        Instant cutoff = Instant.now().minusMillis(maxAge);
-        
-        List<StoredEvent> toRemove = events.stream()
-            .filter(event -> event.getTimestamp().isBefore(cutoff))
-            .collect(Collectors.toList());
-        
-        for (StoredEvent event : toRemove) {
-            events.remove(event);
-            eventIdToSession.remove(event.getEventId());
+
+        long cutoff = System.currentTimeMillis() - maxAge;
+        int removed = 0;
+        while (events.size > 0 && events.first().timestamp < cutoff) {
+            evict(events.first());
+            removed++;
         }
-        
-        if (!toRemove.isEmpty()) {
-            logger.debug("Cleaned up {} old events for session {}", toRemove.size(), sessionId);
+
+        if (removed > 0) {
+            logger.debug("Cleaned up {} old events for session {}", removed, sessionId);
         }
     }
-    
+
     @Override
-    public void removeSessionEvents(String sessionId) {
-        List<StoredEvent> events = sessionEvents.remove(sessionId);
+    public synchronized void removeSessionEvents(String sessionId) {
+        SessionEvents events = sessionEvents.remove(sessionId);
         if (events != null) {
-            for (StoredEvent event : events) {
-                eventIdToSession.remove(event.getEventId());
+            int count = events.size;
+            for (int i = 0; i < count; i++) {
+                unlink(events.get(i));
             }
-            logger.debug("Removed {} events for session {}", events.size(), sessionId);
+            logger.debug("Removed {} events for session {}", count, sessionId);
         }
     }
 
-    public void cleanupExpiredEvents() {
-        for (String sessionId : sessionEvents.keySet()) {
-            cleanupOldEvents(sessionId, defaultRetentionMs);
+    public synchronized void cleanupExpiredEvents() {
+        evictExpired(System.currentTimeMillis() - defaultRetentionMs);
+    }
+
+    public synchronized int getTotalEventCount() {
+        return totalEvents;
+    }
+
+    public synchronized int getSessionCount() {
+        return sessionEvents.size();
+    }
+
+    private void evictExpired(long cutoff) {
+        while (head != null && head.timestamp < cutoff) {
+            evict(head);
+        }
+    }
+
+    /**
+     * The node must be the oldest event of its session, which is always true for the
+     * global head because event ids are increasing.
+     */
+    private void evict(EventNode node) {
+        SessionEvents events = node.session;
+        events.removeFirst();
+        unlink(node);
+        if (events.size == 0 && sessionEvents.get(events.sessionId) == events) {
+            sessionEvents.remove(events.sessionId);
+        }
+    }
+
+    private void linkLast(EventNode node) {
+        node.prev = tail;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        totalEvents++;
+    }
+
+    private void unlink(EventNode node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        totalEvents--;
+    }
+
+    private static final class EventNode {
+        final long id;
+        final long timestamp;
+        final SessionEvents session;
+        final StoredEvent event;
+        EventNode prev;
+        EventNode next;
+
+        EventNode(long id, long timestamp, SessionEvents session, StoredEvent event) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.session = session;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Ring buffer of the events of one session, ordered by event id. It grows on demand up
+     * to maxEventsPerSession, so idle sessions stay small.
+     */
+    private final class SessionEvents {
+        final String sessionId;
+        EventNode[] ring = new EventNode[Math.min(INITIAL_SESSION_CAPACITY, maxEventsPerSession)];
+        int start;
+        int size;
+
+        SessionEvents(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        EventNode get(int index) {
+            return ring[(start + index) % ring.length];
+        }
+
+        EventNode first() {
+            return ring[start];
+        }
+
+        void addLast(EventNode node) {
+            if (size == ring.length) {
+                EventNode[] larger = new EventNode[Math.min(ring.length * 2, maxEventsPerSession)];
+                for (int i = 0; i < size; i++) {
+                    larger[i] = get(i);
+                }
+                ring = larger;
+                start = 0;
+            }
+            ring[(start + size) % ring.length] = node;
+            size++;
+        }
+
+        void removeFirst() {
+            ring[start] = null;
+            start = (start + 1) % ring.length;
+            size--;
+        }
+
+        /**
+         * Index of the first event whose id is greater than {@code id}
+         */
+        int indexAfter(long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (get(mid).id <= id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
         }
     }
 }
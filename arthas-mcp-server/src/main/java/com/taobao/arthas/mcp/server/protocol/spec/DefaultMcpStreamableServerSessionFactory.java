@@ -9,6 +9,7 @@ import com.taobao.arthas.mcp.server.protocol.server.McpInitRequestHandler;
 import com.taobao.arthas.mcp.server.protocol.server.McpNotificationHandler;
 import com.taobao.arthas.mcp.server.protocol.server.McpRequestHandler;
 import com.taobao.arthas.mcp.server.protocol.server.store.InMemoryEventStore;
+import com.taobao.arthas.mcp.server.util.McpRequestExecutor;
 
 import java.time.Duration;
 import java.util.Map;
@@ -27,17 +28,22 @@ public class DefaultMcpStreamableServerSessionFactory implements McpStreamableSe
     private final Map<String, McpRequestHandler<?>> requestHandlers;
     private final Map<String, McpNotificationHandler> notificationHandlers;
     private final CommandExecutor commandExecutor;
+    private final McpRequestExecutor requestExecutor;
+    /** Shared by all sessions, so the total number of stored events is bounded */
+    private final EventStore eventStore = new InMemoryEventStore();
 
     public DefaultMcpStreamableServerSessionFactory(Duration requestTimeout,
                                                     McpInitRequestHandler mcpInitRequestHandler,
                                                     Map<String, McpRequestHandler<?>> requestHandlers,
                                                     Map<String, McpNotificationHandler> notificationHandlers,
-                                                    CommandExecutor commandExecutor) {
+                                                    CommandExecutor commandExecutor,
+                                                    McpRequestExecutor requestExecutor) {
         this.requestTimeout = requestTimeout;
         this.mcpInitRequestHandler = mcpInitRequestHandler;
         this.requestHandlers = requestHandlers;
         this.notificationHandlers = notificationHandlers;
         this.commandExecutor = commandExecutor;
+        this.requestExecutor = requestExecutor;
     }
 
     @Override
@@ -53,7 +59,8 @@ public class DefaultMcpStreamableServerSessionFactory implements McpStreamableSe
                 requestHandlers,
                 notificationHandlers,
                 commandExecutor,
-                new InMemoryEventStore());
+                eventStore,
+                requestExecutor);
 
         // Handle the initialization request
         CompletableFuture<McpSchema.InitializeResult> initResult = 
@@ -14,6 +14,7 @@ import com.taobao.arthas.mcp.server.protocol.server.McpTransportContext;
 import com.taobao.arthas.mcp.server.session.ArthasCommandContext;
 import com.taobao.arthas.mcp.server.session.ArthasCommandSessionManager;
 import com.taobao.arthas.mcp.server.util.Assert;
+import com.taobao.arthas.mcp.server.util.McpRequestExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,6 +22,7 @@ import java.time.Duration;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -61,11 +63,14 @@ public class McpStreamableServerSession implements McpSession {
     
     private final EventStore eventStore;
 
+    private final McpRequestExecutor requestExecutor;
+
     public McpStreamableServerSession(String id, McpSchema.ClientCapabilities clientCapabilities,
                                       McpSchema.Implementation clientInfo, Duration requestTimeout,
                                       Map<String, McpRequestHandler<?>> requestHandlers,
                                       Map<String, McpNotificationHandler> notificationHandlers,
-                                      CommandExecutor commandExecutor, EventStore eventStore) {
+                                      CommandExecutor commandExecutor, EventStore eventStore,
+                                      McpRequestExecutor requestExecutor) {
         this.id = id;
         this.missingMcpTransportSession = new MissingMcpTransportSession(id);
         this.listeningStreamRef = new AtomicReference<>(this.missingMcpTransportSession);
@@ -77,6 +82,7 @@ public class McpStreamableServerSession implements McpSession {
         this.commandExecutor = commandExecutor;
         this.commandSessionManager = new ArthasCommandSessionManager(commandExecutor);
         this.eventStore = eventStore;
+        this.requestExecutor = requestExecutor;
     }
 
     /**
@@ -171,12 +177,21 @@ public class McpStreamableServerSession implements McpSession {
                     .thenCompose(v -> transport.closeGracefully());
         }
         ArthasCommandContext commandContext = createCommandContext(transportContext.get(MCP_AUTH_SUBJECT_KEY));
-        
-        return requestHandler
-                .handle(new McpNettyServerExchange(this.id, stream, clientCapabilities.get(), 
-                        clientInfo.get(), transportContext), commandContext, jsonrpcRequest.getParams())
-                .thenApply(result -> new McpSchema.JSONRPCResponse(McpSchema.JSONRPC_VERSION, 
-                        jsonrpcRequest.getId(), result, null))
+        McpNettyServerExchange exchange = new McpNettyServerExchange(this.id, stream, clientCapabilities.get(),
+                clientInfo.get(), transportContext);
+
+        // 在 MCP 专用线程池中执行，不占用 netty IO 线程，并受会话并发数限制
+        return requestExecutor
+                .submit(this.id, () -> requestHandler.handle(exchange, commandContext, jsonrpcRequest.getParams()))
+                .handle((result, ex) -> {
+                    if (ex != null) {
+                        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                        return new McpSchema.JSONRPCResponse(McpSchema.JSONRPC_VERSION, jsonrpcRequest.getId(), null,
+                                new McpSchema.JSONRPCResponse.JSONRPCError(McpSchema.ErrorCodes.INTERNAL_ERROR,
+                                        cause.getMessage(), null));
+                    }
+                    return new McpSchema.JSONRPCResponse(McpSchema.JSONRPC_VERSION, jsonrpcRequest.getId(), result, null);
+                })
                 .thenCompose(response -> transport.sendMessage(response, null))
                 .thenCompose(v -> transport.closeGracefully());
     }
@@ -256,6 +271,7 @@ public class McpStreamableServerSession implements McpSession {
         } catch (Exception e) {
             logger.warn("Failed to close command session during graceful shutdown: {}", e.getMessage());
         }
+        requestExecutor.removeSession(this.id);
         
         return listeningStream.closeGracefully();
         // TODO: Also close all the open streams
@@ -272,6 +288,7 @@ public class McpStreamableServerSession implements McpSession {
         } catch (Exception e) {
             logger.warn("Failed to close command session during close: {}", e.getMessage());
         }
+        requestExecutor.removeSession(this.id);
         
         if (listeningStream != null) {
             listeningStream.close();
@@ -0,0 +1,47 @@
+package com.taobao.arthas.mcp.server.protocol.spec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON-RPC result that is serialized once and sent many times, such as the tools/list result.
+ * Transports may write {@link #getJson()} directly, an {@link ObjectMapper} embeds it as raw JSON.
+ */
+public final class SerializedResult extends JsonSerializable.Base {
+
+	private final byte[] json;
+
+	private SerializedResult(byte[] json) {
+		this.json = json;
+	}
+
+	public static SerializedResult of(ObjectMapper objectMapper, Object result) throws JsonProcessingException {
+		return new SerializedResult(objectMapper.writeValueAsBytes(result));
+	}
+
+	/**
+	 * UTF-8 JSON of the result, shared by all responses, must not be modified.
+	 */
+	public byte[] getJson() {
+		return json;
+	}
+
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+		gen.writeRawValue(new String(json, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+			throws IOException {
+		serialize(gen, serializers);
+	}
+
+}
@@ -11,6 +11,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * Command execution context for MCP server.
@@ -142,6 +143,22 @@ public class ArthasCommandContext {
         return commandExecutor.pullResults(binding.getArthasSessionId(), binding.getConsumerId());
     }
 
+    /**
+     * Subscribe command execution results, the listener is called as results arrive
+     */
+    public Map<String, Object> subscribeResults(Consumer<Map<String, Object>> listener) {
+        requireSessionSupport();
+        return commandExecutor.subscribeResults(binding.getArthasSessionId(), binding.getConsumerId(), listener);
+    }
+
+    /**
+     * Cancel the subscription made by {@link #subscribeResults(Consumer)}
+     */
+    public void unsubscribeResults(Consumer<Map<String, Object>> listener) {
+        requireSessionSupport();
+        commandExecutor.unsubscribeResults(binding.getArthasSessionId(), binding.getConsumerId(), listener);
+    }
+
     /**
      * Interrupt the current job
      */
@@ -14,9 +14,12 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 import com.taobao.arthas.mcp.server.tool.annotation.ToolParam;
 
@@ -57,6 +60,22 @@ public class DefaultToolCallback implements ToolCallback {
 
     @Override
     public String call(String toolInput, ToolContext toolContext) {
+        try {
+            return callAsync(toolInput, toolContext).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Tool methods returning {@link CompletableFuture} are converted when the future completes,
+     * the caller thread is not blocked.
+     */
+    @Override
+    public CompletableFuture<String> callAsync(String toolInput, ToolContext toolContext) {
         Assert.hasText(toolInput, "toolInput cannot be null or empty");
 
         logger.debug("Starting execution of tool: {}", this.toolDefinition.getName());
@@ -71,11 +90,21 @@ public class DefaultToolCallback implements ToolCallback {
 
         Object result = callMethod(methodArguments);
 
-        logger.debug("Successful execution of tool: {}", this.toolDefinition.getName());
-
         Type returnType = this.toolMethod.getGenericReturnType();
 
-        return this.toolCallResultConverter.convert(result, returnType);
+        if (result instanceof CompletableFuture) {
+            Type resultType = returnType instanceof ParameterizedType
+                    ? ((ParameterizedType) returnType).getActualTypeArguments()[0]
+                    : Object.class;
+            return ((CompletableFuture<?>) result).thenApply(value -> {
+                logger.debug("Successful execution of tool: {}", this.toolDefinition.getName());
+                return this.toolCallResultConverter.convert(value, resultType);
+            });
+        }
+
+        logger.debug("Successful execution of tool: {}", this.toolDefinition.getName());
+
+        return CompletableFuture.completedFuture(this.toolCallResultConverter.convert(result, returnType));
     }
 
     private void validateToolContextSupport(ToolContext toolContext) {
@@ -2,6 +2,8 @@ package com.taobao.arthas.mcp.server.tool;
 
 import com.taobao.arthas.mcp.server.tool.definition.ToolDefinition;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Define the basic behavior of the tool
  */
@@ -12,4 +14,11 @@ public interface ToolCallback {
     String call(String toolInput);
 
     String call(String toolInput, ToolContext toolContext);
+
+    /**
+     * Call the tool without waiting for tools that complete asynchronously.
+     */
+    default CompletableFuture<String> callAsync(String toolInput, ToolContext toolContext) {
+        return CompletableFuture.completedFuture(call(toolInput, toolContext));
+    }
 }
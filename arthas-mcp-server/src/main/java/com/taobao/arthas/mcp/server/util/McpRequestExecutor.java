@@ -0,0 +1,261 @@
+package com.taobao.arthas.mcp.server.util;
+
+import com.taobao.arthas.mcp.server.protocol.spec.McpError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated executor for MCP request handling.
+ *
+ * <p>
+ * Tool calls may run Arthas commands for a long time (trace, profiler, ...), so they must
+ * not run on the netty IO threads, nor on {@code ForkJoinPool.commonPool()} which belongs
+ * to the target application. This executor uses a fixed number of named daemon threads
+ * and a bounded queue. When the queue is full, or a session already has
+ * {@code maxConcurrentRequestsPerSession} requests in flight, the request is rejected with
+ * an {@link McpError} instead of piling up.
+ * </p>
+ */
+public class McpRequestExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(McpRequestExecutor.class);
+
+    public static final int DEFAULT_WORKER_THREADS = 8;
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS_PER_SESSION = 4;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int maxConcurrentRequestsPerSession;
+
+    /** In-flight permits per session id */
+    private final ConcurrentHashMap<String, Semaphore> sessionPermits = new ConcurrentHashMap<>();
+
+    /** Requests rejected because the queue was full or the executor was shut down */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /** Requests rejected because the session reached its concurrency cap */
+    private final AtomicLong sessionRejectedCount = new AtomicLong();
+
+    private McpRequestExecutor(int workerThreads, int queueCapacity, int maxConcurrentRequestsPerSession) {
+        this.maxConcurrentRequestsPerSession = maxConcurrentRequestsPerSession;
+        this.executor = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new WorkerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        // idle workers exit, the pool stays empty while MCP is not used
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Runs the supplier on a worker thread.
+     * @return a future completed with the supplier result, or completed exceptionally with
+     * an {@link McpError} if the executor is saturated
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException e) {
+            return rejected(e);
+        }
+    }
+
+    public CompletableFuture<Void> runAsync(Runnable runnable) {
+        try {
+            return CompletableFuture.runAsync(runnable, executor);
+        } catch (RejectedExecutionException e) {
+            return rejected(e);
+        }
+    }
+
+    /**
+     * Runs the supplier on the calling thread. Used for cheap operations such as tool or
+     * resource registration, which must not fail just because the pool is busy.
+     * @return a future completed with the supplier result, or completed exceptionally with
+     * what the supplier threw
+     */
+    public static <T> CompletableFuture<T> supplyInline(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(supplier.get());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+    public static CompletableFuture<Void> runInline(Runnable runnable) {
+        return supplyInline(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Starts an asynchronous request handler on a worker thread, counting it against the
+     * concurrency cap of the session until the returned future completes.
+     * @param sessionId the session the request belongs to, {@code null} means no per-session cap
+     * @param handler starts the request and returns its result future
+     */
+    public <T> CompletableFuture<T> submit(String sessionId, Supplier<CompletableFuture<T>> handler) {
+        if (sessionId == null || maxConcurrentRequestsPerSession <= 0) {
+            return supplyAsync(handler).thenCompose(future -> future);
+        }
+
+        Semaphore permits = sessionPermits.computeIfAbsent(sessionId,
+                id -> new Semaphore(maxConcurrentRequestsPerSession));
+        if (!permits.tryAcquire()) {
+            sessionRejectedCount.incrementAndGet();
+            logger.warn("Reject MCP request, session {} already has {} requests in flight", sessionId,
+                    maxConcurrentRequestsPerSession);
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new McpError("Too many concurrent requests for session " + sessionId
+                    + ", the limit is " + maxConcurrentRequestsPerSession));
+            return future;
+        }
+
+        CompletableFuture<T> result = supplyAsync(handler).thenCompose(future -> future);
+        result.whenComplete((r, ex) -> permits.release());
+        return result;
+    }
+
+    /**
+     * Forgets the concurrency state of a closed session.
+     */
+    public void removeSession(String sessionId) {
+        if (sessionId != null) {
+            sessionPermits.remove(sessionId);
+        }
+    }
+
+    private <T> CompletableFuture<T> rejected(RejectedExecutionException e) {
+        long count = rejectedCount.incrementAndGet();
+        logger.warn("Reject MCP request, executor is busy or shut down. active: {}, queued: {}, rejected total: {}",
+                executor.getActiveCount(), executor.getQueue().size(), count);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new McpError("MCP server is busy, please retry later"));
+        return future;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getSessionRejectedCount() {
+        return sessionRejectedCount.get();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Snapshot of the executor metrics, for logging and diagnostics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("maxPoolSize", executor.getMaximumPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("rejected", rejectedCount.get());
+        stats.put("sessionRejected", sessionRejectedCount.get());
+        stats.put("sessions", sessionPermits.size());
+        return stats;
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public void shutdown() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        sessionPermits.clear();
+        logger.debug("MCP request executor shut down, stats: {}", stats());
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "arthas-mcp-worker-" + index.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    public static class Builder {
+
+        private int workerThreads = DEFAULT_WORKER_THREADS;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private int maxConcurrentRequestsPerSession = DEFAULT_MAX_CONCURRENT_REQUESTS_PER_SESSION;
+
+        Builder() {
+        }
+
+        public Builder workerThreads(int workerThreads) {
+            Assert.isTrue(workerThreads > 0, "Worker threads must be positive");
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        public Builder queueCapacity(int queueCapacity) {
+            Assert.isTrue(queueCapacity > 0, "Queue capacity must be positive");
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentRequestsPerSession 0 or negative means unlimited
+         */
+        public Builder maxConcurrentRequestsPerSession(int maxConcurrentRequestsPerSession) {
+            this.maxConcurrentRequestsPerSession = maxConcurrentRequestsPerSession;
+            return this;
+        }
+
+        public McpRequestExecutor build() {
+            return new McpRequestExecutor(workerThreads, queueCapacity, maxConcurrentRequestsPerSession);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.taobao.arthas.mcp.server.protocol.server;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.taobao.arthas.mcp.server.protocol.spec.McpSchema;
+import com.taobao.arthas.mcp.server.protocol.spec.McpStatelessServerTransport;
+import com.taobao.arthas.mcp.server.protocol.spec.SerializedResult;
+import com.taobao.arthas.mcp.server.util.McpRequestExecutor;
+
+/**
+ * tools/list 结果的缓存：缓存的字节和直接序列化的结果一致，addTool/removeTool 后失效
+ */
+public class ToolsListCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final McpRequestExecutor requestExecutor = McpRequestExecutor.builder().build();
+
+    @AfterEach
+    public void tearDown() {
+        requestExecutor.shutdown();
+    }
+
+    @Test
+    public void testCachedBytesEqualSerializedResult() throws Exception {
+        final List<McpSchema.Tool> tools = Arrays.asList(tool("a"), tool("b"));
+        ToolsListCache cache = new ToolsListCache(objectMapper, () -> tools);
+
+        SerializedResult result = cache.get();
+        Assertions.assertArrayEquals(objectMapper.writeValueAsBytes(new McpSchema.ListToolsResult(tools, null)),
+                result.getJson());
+        Assertions.assertSame(result, cache.get());
+
+        // 嵌入到响应里时原样输出
+        McpSchema.JSONRPCResponse response = new McpSchema.JSONRPCResponse(McpSchema.JSONRPC_VERSION, 1, result, null);
+        McpSchema.JSONRPCResponse expected = new McpSchema.JSONRPCResponse(McpSchema.JSONRPC_VERSION, 1,
+                new McpSchema.ListToolsResult(tools, null), null);
+        Assertions.assertEquals(objectMapper.writeValueAsString(expected), objectMapper.writeValueAsString(response));
+
+        cache.invalidate();
+        Assertions.assertNotSame(result, cache.get());
+    }
+
+    @Test
+    public void testAddAndRemoveToolInvalidateCache() throws Exception {
+        McpStatelessServerFeatures.ToolSpecification toolA = toolSpecification("a");
+        McpStatelessServerFeatures.McpServerConfig config = new McpStatelessServerFeatures.McpServerConfig(
+                new McpSchema.Implementation("test", "1.0"), null, new ArrayList<>(Collections.singletonList(toolA)),
+                Collections.emptyMap(), Collections.emptyList(), Collections.emptyMap(), null);
+        CapturingTransport transport = new CapturingTransport();
+        McpStatelessNettyServer server = new McpStatelessNettyServer(transport, objectMapper, Duration.ofSeconds(10),
+                config, null, requestExecutor);
+
+        SerializedResult first = listTools(transport);
+        Assertions.assertSame(first, listTools(transport));
+        assertTools(first, toolA.getTool());
+
+        McpStatelessServerFeatures.ToolSpecification toolB = toolSpecification("b");
+        server.addTool(toolB).get(5, TimeUnit.SECONDS);
+        SerializedResult added = listTools(transport);
+        Assertions.assertNotSame(first, added);
+        assertTools(added, toolA.getTool(), toolB.getTool());
+
+        server.removeTool("a").get(5, TimeUnit.SECONDS);
+        assertTools(listTools(transport), toolB.getTool());
+    }
+
+    private void assertTools(SerializedResult result, McpSchema.Tool... tools) throws Exception {
+        byte[] expected = objectMapper.writeValueAsBytes(new McpSchema.ListToolsResult(Arrays.asList(tools), null));
+        Assertions.assertEquals(new String(expected, StandardCharsets.UTF_8),
+                new String(result.getJson(), StandardCharsets.UTF_8));
+    }
+
+    private static SerializedResult listTools(CapturingTransport transport) throws Exception {
+        DefaultMcpStatelessServerHandler handler = (DefaultMcpStatelessServerHandler) transport.handler;
+        CompletableFuture<?> future = handler.requestHandlers.get(McpSchema.METHOD_TOOLS_LIST).handle(null, null,
+                null);
+        return (SerializedResult) future.get(5, TimeUnit.SECONDS);
+    }
+
+    private static McpSchema.Tool tool(String name) {
+        return new McpSchema.Tool(name, "tool " + name,
+                new McpSchema.JsonSchema("object", Collections.<String, Object>emptyMap(), null, null));
+    }
+
+    private static McpStatelessServerFeatures.ToolSpecification toolSpecification(String name) {
+        return new McpStatelessServerFeatures.ToolSpecification(tool(name),
+                (context, commandContext, arguments) -> CompletableFuture.completedFuture(null));
+    }
+
+    private static class CapturingTransport implements McpStatelessServerTransport {
+        McpStatelessServerHandler handler;
+
+        @Override
+        public void setMcpHandler(McpStatelessServerHandler mcpHandler) {
+            this.handler = mcpHandler;
+        }
+
+        @Override
+        public CompletableFuture<Void> closeGracefully() {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
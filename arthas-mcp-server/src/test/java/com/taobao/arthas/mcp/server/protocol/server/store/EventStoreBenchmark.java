@@ -0,0 +1,94 @@
+package com.taobao.arthas.mcp.server.protocol.server.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.taobao.arthas.mcp.server.protocol.spec.EventStore;
+import com.taobao.arthas.mcp.server.protocol.spec.McpSchema;
+
+/**
+ * Benchmark of the MCP event store with 1k ~ 10k streaming sessions, the store is full so
+ * every append also evicts.
+ * <p>
+ * Run with: java -cp arthas-mcp-server/target/test-classes:... com.taobao.arthas.mcp.server.protocol.server.store.EventStoreBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventStoreBenchmark {
+
+    @Param({ "1000", "3000", "10000" })
+    public int sessionCount;
+
+    private static final McpSchema.JSONRPCMessage MESSAGE = new McpSchema.JSONRPCNotification(
+            McpSchema.JSONRPC_VERSION, McpSchema.METHOD_NOTIFICATION_PROGRESS, null);
+
+    private InMemoryEventStore store;
+    private String[] sessionIds;
+    private String[] replayFrom;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        store = new InMemoryEventStore();
+        sessionIds = new String[sessionCount];
+        replayFrom = new String[sessionCount];
+        for (int i = 0; i < sessionCount; ++i) {
+            sessionIds[i] = "session-" + i;
+        }
+        // fill up to the global cap, and remember an event in the middle of each session
+        for (int round = 0; store.getTotalEventCount() < InMemoryEventStore.DEFAULT_MAX_TOTAL_EVENTS; ++round) {
+            for (int i = 0; i < sessionCount; ++i) {
+                String eventId = store.storeEvent(sessionIds[i], MESSAGE);
+                if (round % 2 == 0) {
+                    replayFrom[i] = eventId;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public String storeEvent() {
+        int i = next++ % sessionCount;
+        if (next < 0) {
+            next = 0;
+        }
+        return store.storeEvent(sessionIds[i], MESSAGE);
+    }
+
+    @Benchmark
+    public Object replay() {
+        int i = next++ % sessionCount;
+        if (next < 0) {
+            next = 0;
+        }
+        Stream<EventStore.StoredEvent> events = store.getEventsForSession(sessionIds[i], replayFrom[i]);
+        return events.collect(Collectors.toList());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(EventStoreBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,127 @@
+package com.taobao.arthas.mcp.server.protocol.server.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.taobao.arthas.mcp.server.protocol.spec.EventStore;
+import com.taobao.arthas.mcp.server.protocol.spec.McpSchema;
+
+/**
+ * InMemoryEventStore 的环形缓冲、淘汰、重放和过期
+ */
+public class InMemoryEventStoreTest {
+
+    private static final McpSchema.JSONRPCMessage MESSAGE = new McpSchema.JSONRPCNotification(
+            McpSchema.JSONRPC_VERSION, McpSchema.METHOD_NOTIFICATION_PROGRESS, null);
+
+    @Test
+    public void testRingWraparoundAndGrowth() throws InterruptedException {
+        InMemoryEventStore store = new InMemoryEventStore(100, 1000, 60000);
+        List<String> ids = store(store, "a", 5);
+        Thread.sleep(200);
+        ids.addAll(store(store, "a", 5));
+
+        // 淘汰前 5 个，环形缓冲的起点不再是 0
+        store.cleanupOldEvents("a", 100);
+        Assertions.assertEquals(ids.subList(5, 10), replay(store, "a", "0"));
+
+        // 写入时绕回数组开头，写满初始容量 16 后扩容
+        ids.addAll(store(store, "a", 30));
+        Assertions.assertEquals(35, store.getTotalEventCount());
+        Assertions.assertEquals(ids.subList(5, 40), replay(store, "a", "0"));
+        Assertions.assertEquals(ids.subList(21, 40), replay(store, "a", ids.get(20)));
+        Assertions.assertTrue(replay(store, "a", ids.get(39)).isEmpty());
+    }
+
+    @Test
+    public void testPerSessionEviction() {
+        InMemoryEventStore store = new InMemoryEventStore(3, 1000, 60000);
+        List<String> a = store(store, "a", 5);
+        List<String> b = store(store, "b", 2);
+
+        Assertions.assertEquals(a.subList(2, 5), replay(store, "a", "0"));
+        Assertions.assertEquals(b, replay(store, "b", "0"));
+        Assertions.assertEquals(5, store.getTotalEventCount());
+
+        // 环形缓冲满了之后一直淘汰最老的
+        a.addAll(store(store, "a", 10));
+        Assertions.assertEquals(a.subList(12, 15), replay(store, "a", "0"));
+        Assertions.assertEquals(5, store.getTotalEventCount());
+    }
+
+    @Test
+    public void testGlobalCapEvictsAcrossSessions() {
+        InMemoryEventStore store = new InMemoryEventStore(10, 5, 60000);
+        List<String> a = new ArrayList<String>();
+        List<String> b = new ArrayList<String>();
+        for (int i = 0; i < 4; i++) {
+            a.add(store.storeEvent("a", MESSAGE));
+            b.add(store.storeEvent("b", MESSAGE));
+        }
+        // 全局最多 5 个，淘汰的是所有会话里最老的
+        Assertions.assertEquals(5, store.getTotalEventCount());
+        Assertions.assertEquals(a.subList(2, 4), replay(store, "a", "0"));
+        Assertions.assertEquals(b.subList(1, 4), replay(store, "b", "0"));
+
+        // 会话的事件全部被淘汰后，会话也被删除
+        List<String> c = store(store, "c", 5);
+        Assertions.assertEquals(c, replay(store, "c", "0"));
+        Assertions.assertEquals(1, store.getSessionCount());
+        Assertions.assertTrue(replay(store, "a", "0").isEmpty());
+
+        store.removeSessionEvents("c");
+        Assertions.assertEquals(0, store.getTotalEventCount());
+        Assertions.assertEquals(0, store.getSessionCount());
+    }
+
+    @Test
+    public void testReplayAfterLastEventIdEvicted() {
+        InMemoryEventStore store = new InMemoryEventStore(3, 1000, 60000);
+        List<String> ids = store(store, "a", 5);
+
+        // Last-Event-ID 已经被淘汰，返回剩下的事件
+        Assertions.assertEquals(ids.subList(2, 5), replay(store, "a", ids.get(0)));
+        Assertions.assertEquals(ids.subList(4, 5), replay(store, "a", ids.get(3)));
+        Assertions.assertTrue(replay(store, "a", ids.get(4)).isEmpty());
+
+        Assertions.assertTrue(replay(store, "a", "not-a-number").isEmpty());
+        Assertions.assertEquals(0, store.getEventsForSession("a", null).count());
+        Assertions.assertTrue(replay(store, "unknown", "0").isEmpty());
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        InMemoryEventStore store = new InMemoryEventStore(10, 1000, 100);
+        store(store, "a", 3);
+        Thread.sleep(200);
+
+        // 写入时淘汰过期的事件
+        List<String> b = store(store, "b", 1);
+        Assertions.assertEquals(1, store.getTotalEventCount());
+        Assertions.assertEquals(1, store.getSessionCount());
+        Assertions.assertTrue(replay(store, "a", "0").isEmpty());
+        Assertions.assertEquals(b, replay(store, "b", "0"));
+
+        Thread.sleep(200);
+        store.cleanupExpiredEvents();
+        Assertions.assertEquals(0, store.getTotalEventCount());
+        Assertions.assertEquals(0, store.getSessionCount());
+    }
+
+    private static List<String> store(InMemoryEventStore store, String sessionId, int count) {
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            ids.add(store.storeEvent(sessionId, MESSAGE));
+        }
+        return ids;
+    }
+
+    private static List<String> replay(InMemoryEventStore store, String sessionId, String lastEventId) {
+        return store.getEventsForSession(sessionId, lastEventId).map(EventStore.StoredEvent::getEventId)
+                .collect(Collectors.toList());
+    }
+}
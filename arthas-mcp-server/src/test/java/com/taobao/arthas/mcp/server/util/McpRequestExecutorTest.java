@@ -0,0 +1,152 @@
+package com.taobao.arthas.mcp.server.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.taobao.arthas.mcp.server.protocol.spec.McpError;
+
+/**
+ * McpRequestExecutor 的队列、会话并发限制和计数
+ */
+public class McpRequestExecutorTest {
+
+    private final CountDownLatch blocker = new CountDownLatch(1);
+
+    private McpRequestExecutor executor;
+
+    @AfterEach
+    public void tearDown() {
+        blocker.countDown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws Exception {
+        executor = McpRequestExecutor.builder().workerThreads(1).queueCapacity(1)
+                .maxConcurrentRequestsPerSession(0).build();
+
+        CompletableFuture<Void> running = executor.runAsync(this::block);
+        CompletableFuture<String> queued = executor.supplyAsync(() -> "queued");
+        CompletableFuture<String> rejected = executor.supplyAsync(() -> "rejected");
+
+        assertMcpError(rejected, "busy");
+        Assertions.assertEquals(1, executor.getRejectedCount());
+        Assertions.assertEquals(0, executor.getSessionRejectedCount());
+        Assertions.assertEquals(1, executor.getQueueSize());
+
+        blocker.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1L, executor.stats().get("rejected"));
+    }
+
+    @Test
+    public void testSessionCap() throws Exception {
+        executor = McpRequestExecutor.builder().workerThreads(4).queueCapacity(10)
+                .maxConcurrentRequestsPerSession(2).build();
+
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        CompletableFuture<String> result1 = executor.submit("s1", () -> first);
+        CompletableFuture<String> result2 = executor.submit("s1", () -> second);
+
+        // s1 已经有 2 个请求没有结束
+        assertMcpError(executor.submit("s1", () -> CompletableFuture.completedFuture("third")), "s1");
+        Assertions.assertEquals(1, executor.getSessionRejectedCount());
+        Assertions.assertEquals(0, executor.getRejectedCount());
+
+        // 其它会话不受影响
+        Assertions.assertEquals("other",
+                executor.submit("s2", () -> CompletableFuture.completedFuture("other")).get(5, TimeUnit.SECONDS));
+
+        // 请求结束后释放许可
+        first.complete("first");
+        Assertions.assertEquals("first", result1.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("again",
+                executor.submit("s1", () -> CompletableFuture.completedFuture("again")).get(5, TimeUnit.SECONDS));
+
+        // 失败的请求也释放许可
+        second.completeExceptionally(new IllegalStateException("failed"));
+        try {
+            result2.get(5, TimeUnit.SECONDS);
+            Assertions.fail();
+        } catch (ExecutionException e) {
+            Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        CompletableFuture<String> a = new CompletableFuture<>();
+        CompletableFuture<String> b = new CompletableFuture<>();
+        executor.submit("s1", () -> a);
+        executor.submit("s1", () -> b);
+        assertMcpError(executor.submit("s1", () -> CompletableFuture.completedFuture("third")), "s1");
+        Assertions.assertEquals(2, executor.getSessionRejectedCount());
+        a.complete("a");
+        b.complete("b");
+    }
+
+    @Test
+    public void testPermitReleasedWhenQueueIsFull() throws Exception {
+        executor = McpRequestExecutor.builder().workerThreads(1).queueCapacity(1)
+                .maxConcurrentRequestsPerSession(1).build();
+
+        CompletableFuture<Void> running = executor.runAsync(this::block);
+        CompletableFuture<Void> queued = executor.runAsync(() -> {
+        });
+
+        assertMcpError(executor.submit("s1", () -> CompletableFuture.completedFuture("rejected")), "busy");
+        Assertions.assertEquals(1, executor.getRejectedCount());
+        Assertions.assertEquals(0, executor.getSessionRejectedCount());
+
+        blocker.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        // 被线程池拒绝的请求没有占用会话的许可
+        Assertions.assertEquals("accepted",
+                executor.submit("s1", () -> CompletableFuture.completedFuture("accepted")).get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, executor.getSessionRejectedCount());
+    }
+
+    @Test
+    public void testSupplyInlineIgnoresSaturation() throws Exception {
+        executor = McpRequestExecutor.builder().workerThreads(1).queueCapacity(1).build();
+        executor.runAsync(this::block);
+        executor.runAsync(() -> {
+        });
+
+        Thread caller = Thread.currentThread();
+        CompletableFuture<Thread> inline = McpRequestExecutor.supplyInline(Thread::currentThread);
+        Assertions.assertTrue(inline.isDone());
+        Assertions.assertSame(caller, inline.get());
+        Assertions.assertEquals(0, executor.getRejectedCount());
+
+        CompletableFuture<Void> failed = McpRequestExecutor.runInline(() -> {
+            throw new IllegalArgumentException("bad");
+        });
+        Assertions.assertTrue(failed.isCompletedExceptionally());
+    }
+
+    private void block() {
+        try {
+            blocker.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void assertMcpError(CompletableFuture<?> future, String message) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assertions.fail("expect McpError");
+        } catch (ExecutionException e) {
+            Assertions.assertTrue(e.getCause() instanceof McpError);
+            Assertions.assertTrue(e.getCause().getMessage().contains(message), e.getCause().getMessage());
+        }
+    }
+}
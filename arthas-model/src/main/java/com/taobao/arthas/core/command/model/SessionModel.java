@@ -15,6 +15,18 @@ public class SessionModel extends ResultModel {
     private String userId;
 
     private boolean tunnelConnected;
+    /**
+     * 正在转发的 web console 连接数
+     */
+    private int tunnelActiveForwards;
+    /**
+     * 正在代理的 http 请求数
+     */
+    private int tunnelActiveProxyRequests;
+    /**
+     * 代理 http 请求时到本地 http server 的连接数，包括空闲的连接
+     */
+    private int tunnelLocalConnections;
 
     @Override
     public String getType() {
@@ -69,6 +81,30 @@ public class SessionModel extends ResultModel {
         this.tunnelConnected = tunnelConnected;
     }
 
+    public int getTunnelActiveForwards() {
+        return tunnelActiveForwards;
+    }
+
+    public void setTunnelActiveForwards(int tunnelActiveForwards) {
+        this.tunnelActiveForwards = tunnelActiveForwards;
+    }
+
+    public int getTunnelActiveProxyRequests() {
+        return tunnelActiveProxyRequests;
+    }
+
+    public void setTunnelActiveProxyRequests(int tunnelActiveProxyRequests) {
+        this.tunnelActiveProxyRequests = tunnelActiveProxyRequests;
+    }
+
+    public int getTunnelLocalConnections() {
+        return tunnelLocalConnections;
+    }
+
+    public void setTunnelLocalConnections(int tunnelLocalConnections) {
+        this.tunnelLocalConnections = tunnelLocalConnections;
+    }
+
     public String getUserId() {
         return userId;
     }
@@ -0,0 +1,135 @@
+package arthas;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分页遍历某个class的存活实例。
+ * <p>
+ * 第一页之前通过 JVMTI IterateOverInstancesOfClass 遍历一次堆，按遍历顺序给实例打上本游标专用的 tag，
+ * 每 pageSize 个实例共用一个页号。之后按页号的 tag 取出实例并清除 tag，不再遍历堆。
+ * JVMTI GetObjectsWithTags 每次都要扫描整个 tag map，所以一次取出连续的多页（大约 {@link #BATCH_INSTANCES} 个实例），
+ * 扫描次数是 实例数量 / BATCH_INSTANCES，同一时刻最多引用 max(pageSize, BATCH_INSTANCES) 个实例，
+ * 不会因为实例数量巨大而创建一个巨大的数组。
+ * 返回的是第一次遍历时的实例快照，遍历期间被回收的实例不会返回，新创建的实例也不会返回。
+ * close 时清除还没有取出的实例的 tag。
+ * <p>
+ * getInstances、sumInstanceSize、countInstances 不会覆盖游标的 tag，可以在游标没有关闭时调用。
+ * <p>
+ * 如果 native 库是旧版本（例如 lib 目录下预编译的 dll、dylib），不支持分页，则退化为一次性获取所有实例再分页返回。
+ */
+public class InstanceCursor<T> implements Closeable {
+
+    /**
+     * 游标使用的 tag 的高 16 位，避免和 getInstances（从 1 递增）以及 heapAnalyze 使用的 tag 冲突
+     */
+    private static final long TAG_MAGIC = 0xC0A5L << 48;
+    private static final AtomicLong TAG_COUNTER = new AtomicLong();
+    /**
+     * 每次从 native 取出的实例数量
+     */
+    static final int BATCH_INSTANCES = 100000;
+
+    private final Class<T> klass;
+    private final int pageSize;
+    /**
+     * tag 的高 32 位，低 32 位是页号
+     */
+    private final long tagBase;
+
+    private boolean closed;
+    private long count;
+
+    /**
+     * 打上 tag 的页数，-1 表示还没有遍历
+     */
+    private long pages = -1;
+    private long pageIndex;
+
+    /**
+     * 已经从 native 取出还没有返回的实例，旧版本 native 库时是所有实例
+     */
+    private T[] buffer;
+    private int bufferOffset;
+
+    InstanceCursor(Class<T> klass, int pageSize) {
+        this.klass = klass;
+        this.pageSize = pageSize;
+        long id = TAG_COUNTER.incrementAndGet() & 0xFFFFL;
+        this.tagBase = TAG_MAGIC | (id << 32);
+    }
+
+    /**
+     * @return 下一页实例，没有更多实例时返回空数组
+     */
+    public T[] next() {
+        if (closed) {
+            throw new IllegalStateException("cursor is closed");
+        }
+        init();
+        while (bufferOffset >= buffer.length && pageIndex < pages) {
+            takeBatch();
+        }
+        int to = Math.min(buffer.length, bufferOffset + pageSize);
+        T[] page = Arrays.copyOfRange(buffer, bufferOffset, to);
+        bufferOffset = to;
+        count += page.length;
+        return page;
+    }
+
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        init();
+        return bufferOffset < buffer.length || pageIndex < pages;
+    }
+
+    /**
+     * @return 已经返回的实例数量
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer = null;
+        if (pageIndex < pages) {
+            // 还有没有取出的实例
+            VmTool.clearInstancesTag0(klass, tagBase);
+        }
+    }
+
+    private void init() {
+        if (buffer != null) {
+            return;
+        }
+        if (VmTool.getInstance().nativeVersion() >= 2) {
+            pages = Math.max(0, (VmTool.tagInstances0(klass, tagBase, pageSize) + pageSize - 1) / pageSize);
+            buffer = newArray(0);
+        } else {
+            pages = 0;
+            buffer = VmTool.getInstance().getInstances(klass);
+        }
+    }
+
+    private void takeBatch() {
+        int pageCount = (int) Math.min(pages - pageIndex, Math.max(1, BATCH_INSTANCES / pageSize));
+        T[] batch = VmTool.takeInstances0(klass, tagBase, pageIndex, pageCount);
+        pageIndex += pageCount;
+        // 整批实例都被回收时 buffer 为空，继续取下一批
+        buffer = batch == null ? newArray(0) : batch;
+        bufferOffset = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T[] newArray(int length) {
+        return (T[]) java.lang.reflect.Array.newInstance(klass, length);
+    }
+}
@@ -14,8 +14,17 @@ public class VmTool implements VmToolMXBean {
      */
     public final static String JNI_LIBRARY_NAME = "ArthasJniLibrary";
 
+    /**
+     * native 库的版本，新增或改变 native 方法时递增。
+     * 1: 增加 tagInstances0、takeInstances0、clearInstancesTag0、retainedAnalyze0，heapAnalyze0 的类排序不再是 O(n^2)
+     * 2: takeInstances0 一次取出多页，getInstances0、sumInstanceSize0、countInstances0 不再覆盖 InstanceCursor 的 tag
+     */
+    public final static int NATIVE_VERSION = 2;
+
     private static VmTool instance;
 
+    private static volatile int nativeVersion = -1;
+
     private VmTool() {
     }
 
@@ -38,6 +47,11 @@ public class VmTool implements VmToolMXBean {
         return instance;
     }
 
+    /**
+     * 旧版本的 native 库没有这个方法
+     */
+    private static native int nativeVersion0();
+
     private static synchronized native void forceGc0();
 
     /**
@@ -45,6 +59,23 @@ public class VmTool implements VmToolMXBean {
      */
     private static synchronized native <T> T[] getInstances0(Class<T> klass, int limit);
 
+    /**
+     * 遍历一次某个class的存活实例，第 i 个实例打上 tag：tagBase | (i / pageSize)
+     *
+     * @return 打上 tag 的实例数量，失败时返回 -1
+     */
+    static synchronized native long tagInstances0(Class<?> klass, long tagBase, int pageSize);
+
+    /**
+     * 取出 tag 为 tagBase | fromPage 到 tagBase | (fromPage + pageCount - 1) 的实例，并清除它们的 tag
+     */
+    static synchronized native <T> T[] takeInstances0(Class<T> klass, long tagBase, long fromPage, int pageCount);
+
+    /**
+     * 清除某个class的实例上高 32 位为 tagBase 的标记
+     */
+    static synchronized native void clearInstancesTag0(Class<?> klass, long tagBase);
+
     /**
      * 统计某个class在jvm中当前所有存活实例的总占用内存，单位：Byte
      */
@@ -77,6 +108,28 @@ public class VmTool implements VmToolMXBean {
      */
     private static synchronized native String referenceAnalyze0(Class<?> klass, int objectNum, int backtraceNum);
 
+    /**
+     * 在引用图上计算支配树，分析 retained size 最大的对象与类。
+     */
+    private static synchronized native String retainedAnalyze0(int classNum, int objectNum, int timeoutMillis,
+            int memoryLimitMb);
+
+    /**
+     * @return 已加载的 native 库的版本，没有版本号的旧版本 native 库返回 0
+     */
+    public int nativeVersion() {
+        int version = nativeVersion;
+        if (version < 0) {
+            try {
+                version = nativeVersion0();
+            } catch (UnsatisfiedLinkError e) {
+                version = 0;
+            }
+            nativeVersion = version;
+        }
+        return version;
+    }
+
     @Override
     public void forceGc() {
         forceGc0();
@@ -106,6 +159,14 @@ public class VmTool implements VmToolMXBean {
         return getInstances0(klass, limit);
     }
 
+    @Override
+    public <T> InstanceCursor<T> getInstancesCursor(Class<T> klass, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be greater than 0");
+        }
+        return new InstanceCursor<T>(klass, pageSize);
+    }
+
     @Override
     public long sumInstanceSize(Class<?> klass) {
         return sumInstanceSize0(klass);
@@ -148,4 +209,9 @@ public class VmTool implements VmToolMXBean {
     public String referenceAnalyze(Class<?> klass, int objectNum, int backtraceNum) {
         return referenceAnalyze0(klass, objectNum, backtraceNum);
     }
+
+    @Override
+    public String retainedAnalyze(int classNum, int objectNum, int timeoutMillis, int memoryLimitMb) {
+        return retainedAnalyze0(classNum, objectNum, timeoutMillis, memoryLimitMb);
+    }
 }
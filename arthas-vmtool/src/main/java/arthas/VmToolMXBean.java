@@ -38,6 +38,14 @@ public interface VmToolMXBean {
      */
     public <T> T[] getInstances(Class<T> klass, int limit);
 
+    /**
+     * 分页遍历某个class在jvm中当前所有存活实例，每次只持有一页实例，用完需要 close
+     * @param klass
+     * @param pageSize 每页的实例数量，必须大于 0
+     * @return
+     */
+    public <T> InstanceCursor<T> getInstancesCursor(Class<T> klass, int pageSize);
+
     /**
      * 统计某个class在jvm中当前所有存活实例的总占用内存，单位：Byte
      */
@@ -86,4 +94,16 @@ public interface VmToolMXBean {
      * @return 分析结果文本
      */
     public String referenceAnalyze(Class<?> klass, int objectNum, int backtraceNum);
+
+    /**
+     * 估算 retained size：遍历时记录引用边，在引用图上计算支配树，输出 retained size 最大的若干对象和类。
+     * 类的 retained size 只累加没有被同类对象支配的实例，避免重复计算。
+     *
+     * @param classNum      需要展示的类数量
+     * @param objectNum     需要展示的对象数量
+     * @param timeoutMillis 遍历和计算的时间预算，超过后在已遍历的部分引用图上近似计算，小于等于 0 表示不限制
+     * @param memoryLimitMb 对象表和引用边占用的 native 内存上限，超过后停止遍历，小于等于 0 表示不限制
+     * @return 分析结果文本
+     */
+    public String retainedAnalyze(int classNum, int objectNum, int timeoutMillis, int memoryLimitMb);
 }
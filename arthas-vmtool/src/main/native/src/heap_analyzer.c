@@ -6,6 +6,12 @@
 #include <stdlib.h>
 #include <string.h>
 
+#ifdef _WIN32
+#include <windows.h>
+#else
+#include <time.h>
+#endif
+
 /**
  * 设计说明（纯 C 实现）：
  *
@@ -83,6 +89,7 @@ typedef struct {
   jint *class_object_class_id;
   unsigned char *class_object_has_root_method;
   jmethodID *class_object_root_method;
+  jlong *class_object_size;
 
   object_entry_t *objects;
   jint object_capacity;
@@ -94,6 +101,19 @@ typedef struct {
   jint top_object_count;
 
   int callback_error;
+
+  // retainedAnalyze：记录引用边（referrer 节点 -> 对象节点），节点编号见 edge_node_of_tag
+  int record_edges;
+  jint *edge_from;
+  jint *edge_to;
+  jlong edge_count;
+  jlong edge_capacity;
+  // 对象表 + 引用边占用的内存上限，超过后停止遍历
+  jlong memory_limit;
+  jlong deadline_millis;
+  jlong callback_count;
+  // 由于时间或内存预算提前停止了遍历
+  int truncated;
 } heap_ctx_t;
 
 static void sb_init(sb_t *sb) {
@@ -191,6 +211,16 @@ static int sb_printf(sb_t *sb, const char *fmt, ...) {
   return ok;
 }
 
+static jlong now_millis(void) {
+#ifdef _WIN32
+  return (jlong)GetTickCount64();
+#else
+  struct timespec ts;
+  clock_gettime(CLOCK_MONOTONIC, &ts);
+  return (jlong)ts.tv_sec * 1000 + (jlong)(ts.tv_nsec / 1000000);
+#endif
+}
+
 static jlong make_tag(heap_ctx_t *ctx, jint type, jint id) {
   return ctx->tag_magic_bits | ctx->tag_run_bits |
          (((jlong)type) << HEAP_TAG_TYPE_SHIFT) | ((jlong)id & HEAP_TAG_ID_MASK);
@@ -240,6 +270,16 @@ static void top_objects_swap(top_object_t *a, top_object_t *b) {
   *b = t;
 }
 
+static int compare_top_object_size(const void *a, const void *b) {
+  const top_object_t *x = (const top_object_t *)a;
+  const top_object_t *y = (const top_object_t *)b;
+  if (x->size != y->size) {
+    return x->size < y->size ? -1 : 1;
+  }
+  // size 相同时按 class_id 倒序，使输出时 class_id 小的在前，与原先的插入顺序保持一致
+  return x->class_id > y->class_id ? -1 : (x->class_id < y->class_id ? 1 : 0);
+}
+
 // top_objects 数组按 size 升序存放（arr[0] 最小）
 static void top_objects_add(heap_ctx_t *ctx, jlong size, jlong tag,
                             jint class_id) {
@@ -401,6 +441,65 @@ static char *class_name_from_signature(const char *sig) {
   return name;
 }
 
+/**
+ * retainedAnalyze 的节点编号：0 为虚拟的 GC Root，对象为 object id，Class 对象为负的 class id（分析时再映射到对象之后）。
+ * 还没有打上本次 tag 的对象，就是本次回调马上要分配的 object id。
+ */
+static jint edge_node_of_tag(heap_ctx_t *ctx, jlong tag, int is_referee) {
+  if (!is_our_tag(ctx, tag)) {
+    return is_referee ? ctx->object_tag_count + 1 : 0;
+  }
+  if (tag_type(tag) == HEAP_TAG_TYPE_CLASS) {
+    return -tag_id(tag);
+  }
+  return tag_id(tag);
+}
+
+static int record_edge(heap_ctx_t *ctx, jvmtiHeapReferenceKind reference_kind,
+                       jlong ref_tag, jlong obj_tag) {
+  jlong used;
+
+  // 每个对象都引用自己的类，这些边不影响支配关系的估算，省掉一半的边
+  if (reference_kind == JVMTI_HEAP_REFERENCE_CLASS) {
+    return 1;
+  }
+
+  ctx->callback_count++;
+  if ((ctx->callback_count & 0xFFF) == 0 && ctx->deadline_millis > 0 &&
+      now_millis() > ctx->deadline_millis) {
+    ctx->truncated = 1;
+    return 0;
+  }
+  used = (jlong)ctx->object_capacity * (jlong)sizeof(object_entry_t) +
+         ctx->edge_capacity * (jlong)(2 * sizeof(jint));
+  if (ctx->memory_limit > 0 && used > ctx->memory_limit) {
+    ctx->truncated = 1;
+    return 0;
+  }
+
+  if (ctx->edge_count == ctx->edge_capacity) {
+    jlong new_cap = ctx->edge_capacity ? ctx->edge_capacity * 2 : 65536;
+    jint *new_from = (jint *)realloc(ctx->edge_from, (size_t)new_cap * sizeof(jint));
+    jint *new_to;
+    if (!new_from) {
+      ctx->callback_error = 1;
+      return 0;
+    }
+    ctx->edge_from = new_from;
+    new_to = (jint *)realloc(ctx->edge_to, (size_t)new_cap * sizeof(jint));
+    if (!new_to) {
+      ctx->callback_error = 1;
+      return 0;
+    }
+    ctx->edge_to = new_to;
+    ctx->edge_capacity = new_cap;
+  }
+  ctx->edge_from[ctx->edge_count] = edge_node_of_tag(ctx, ref_tag, 0);
+  ctx->edge_to[ctx->edge_count] = edge_node_of_tag(ctx, obj_tag, 1);
+  ctx->edge_count++;
+  return 1;
+}
+
 static jint JNICALL heap_reference_callback(
     jvmtiHeapReferenceKind reference_kind,
     const jvmtiHeapReferenceInfo *reference_info, jlong class_tag,
@@ -432,6 +531,12 @@ static jint JNICALL heap_reference_callback(
     }
   }
 
+  if (ctx->record_edges) {
+    if (!record_edge(ctx, reference_kind, ref_tag, obj_tag)) {
+      return JVMTI_VISIT_ABORT;
+    }
+  }
+
   // Class 对象：tag 为 class tag，不允许覆盖（否则 class_tag 映射会失效）
   if (is_our_tag(ctx, obj_tag) && tag_type(obj_tag) == HEAP_TAG_TYPE_CLASS) {
     jint represented_class_id = tag_id(obj_tag);
@@ -439,6 +544,7 @@ static jint JNICALL heap_reference_callback(
       if (!ctx->class_object_seen[represented_class_id]) {
         ctx->class_object_seen[represented_class_id] = 1;
         ctx->class_object_class_id[represented_class_id] = obj_class_id;
+        ctx->class_object_size[represented_class_id] = size;
         record_object(ctx, obj_class_id, size, obj_tag);
       }
 
@@ -596,6 +702,10 @@ static void free_ctx(heap_ctx_t *ctx) {
     free(ctx->class_object_root_method);
     ctx->class_object_root_method = NULL;
   }
+  if (ctx->class_object_size) {
+    free(ctx->class_object_size);
+    ctx->class_object_size = NULL;
+  }
 
   if (ctx->objects) {
     free(ctx->objects);
@@ -606,6 +716,15 @@ static void free_ctx(heap_ctx_t *ctx) {
     free(ctx->top_objects);
     ctx->top_objects = NULL;
   }
+
+  if (ctx->edge_from) {
+    free(ctx->edge_from);
+    ctx->edge_from = NULL;
+  }
+  if (ctx->edge_to) {
+    free(ctx->edge_to);
+    ctx->edge_to = NULL;
+  }
 }
 
 static int prepare_classes(heap_ctx_t *ctx) {
@@ -640,11 +759,13 @@ static int prepare_classes(heap_ctx_t *ctx) {
       (unsigned char *)calloc((size_t)(count + 1), sizeof(unsigned char));
   ctx->class_object_root_method =
       (jmethodID *)calloc((size_t)(count + 1), sizeof(jmethodID));
+  ctx->class_object_size = (jlong *)calloc((size_t)(count + 1), sizeof(jlong));
 
   if (!ctx->class_info || !ctx->class_original_tags || !ctx->class_object_seen ||
       !ctx->class_object_traversed || !ctx->class_object_referrer_set ||
       !ctx->class_object_referrer_tag || !ctx->class_object_class_id ||
-      !ctx->class_object_has_root_method || !ctx->class_object_root_method) {
+      !ctx->class_object_has_root_method || !ctx->class_object_root_method ||
+      !ctx->class_object_size) {
     JVMTI_CALL(ctx->jvmti, Deallocate, (unsigned char *)classes);
     return 0;
   }
@@ -724,46 +845,31 @@ static char *build_heap_analyze_output(heap_ctx_t *ctx, jint class_num,
   }
   sb_printf(&sb, "\n");
 
-  // 选出占用最大的 class_num 个类
+  // 选出占用最大的 class_num 个类：全部排序 O(n log n)，
+  // 避免 class_num 接近类总数时（例如 heap snapshot 需要所有类）插入排序退化为 O(n^2)
   if (class_num > 0) {
     top_object_t *top_classes;
-    jint top_count = 0;
+    jint top_count = ctx->class_count;
     jint max = class_num;
     if (max > ctx->class_count) {
       max = ctx->class_count;
     }
-    top_classes =
-        (top_object_t *)calloc((size_t)max, sizeof(top_object_t)); // 复用字段
+    top_classes = (top_object_t *)calloc((size_t)(top_count > 0 ? top_count : 1),
+                                         sizeof(top_object_t)); // 复用字段
     if (top_classes) {
       jint cid;
       for (cid = 1; cid <= ctx->class_count; cid++) {
-        jlong total = ctx->class_info[cid].total_size;
-        // top_classes 按 total_size 升序存放
-        if (top_count < max) {
-          top_classes[top_count].size = total;
-          top_classes[top_count].class_id = cid;
-          top_count++;
-          i = top_count - 1;
-          while (i > 0 && top_classes[i].size < top_classes[i - 1].size) {
-            top_objects_swap(&top_classes[i], &top_classes[i - 1]);
-            i--;
-          }
-        } else if (total > top_classes[0].size) {
-          top_classes[0].size = total;
-          top_classes[0].class_id = cid;
-          i = 0;
-          while (i + 1 < top_count &&
-                 top_classes[i].size > top_classes[i + 1].size) {
-            top_objects_swap(&top_classes[i], &top_classes[i + 1]);
-            i++;
-          }
-        }
+        top_classes[cid - 1].size = ctx->class_info[cid].total_size;
+        top_classes[cid - 1].class_id = cid;
       }
+      // top_classes 按 total_size 升序存放，输出时从末尾取 max 个
+      qsort(top_classes, (size_t)top_count, sizeof(top_object_t),
+            compare_top_object_size);
 
       sb_printf(&sb, "\n%-4s\t%-12s\t%-15s\t%s\n", "id", "#instances", "#bytes",
                 "class_name");
       sb_printf(&sb, "----------------------------------------------------\n");
-      for (i = 0; i < top_count; i++) {
+      for (i = 0; i < max; i++) {
         jint idx = top_count - 1 - i;
         jint cid = top_classes[idx].class_id;
         sb_printf(&sb, "%-4d\t%-12lld\t%-15lld\t%s\n", (int)(i + 1),
@@ -1115,3 +1221,537 @@ char *arthas_vmtool_reference_analyze(jvmtiEnv *jvmti, jclass klass,
   free_ctx(&ctx);
   return result;
 }
+
+/**
+ * retainedAnalyze 的引用图，节点：0 为虚拟 GC Root，1..object_count 为对象，之后为 Class 对象。
+ * 邻接表使用 CSR（offset + 目标数组）的紧凑 jint 数组存放。
+ */
+typedef struct {
+  jint node_count;
+  jint object_count;
+  jint *succ_offset;
+  jint *succ;
+  jint *pred_offset;
+  jint *pred;
+} ref_graph_t;
+
+static void free_ref_graph(ref_graph_t *g) {
+  free(g->succ_offset);
+  free(g->succ);
+  free(g->pred_offset);
+  free(g->pred);
+  memset(g, 0, sizeof(*g));
+}
+
+static jint edge_node_index(heap_ctx_t *ctx, jint node) {
+  return node < 0 ? ctx->object_tag_count + (-node) : node;
+}
+
+static int node_is_reached(heap_ctx_t *ctx, jint node) {
+  if (node <= ctx->object_tag_count) {
+    return 1;
+  }
+  return ctx->class_object_seen[node - ctx->object_tag_count];
+}
+
+static jlong node_shallow_size(heap_ctx_t *ctx, jint node) {
+  if (node == 0) {
+    return 0;
+  }
+  if (node <= ctx->object_tag_count) {
+    return ctx->objects[node].size;
+  }
+  return ctx->class_object_size[node - ctx->object_tag_count];
+}
+
+// 节点对象所属的类，Class 对象属于 java.lang.Class
+static jint node_class_id(heap_ctx_t *ctx, jint node) {
+  if (node == 0) {
+    return 0;
+  }
+  if (node <= ctx->object_tag_count) {
+    return ctx->objects[node].class_id;
+  }
+  return ctx->class_object_class_id[node - ctx->object_tag_count];
+}
+
+/**
+ * 把遍历时记录的引用边转换为正向和反向的 CSR。
+ * 没有记录到入边的节点（例如只通过 JVMTI_HEAP_REFERENCE_CLASS 到达的 Class 对象）挂到 GC Root 上。
+ */
+static int build_ref_graph(heap_ctx_t *ctx, ref_graph_t *g) {
+  jint n = ctx->object_tag_count + ctx->class_count + 1;
+  jint *indegree;
+  jint *fill;
+  jlong i;
+  jint v;
+  jlong edge_total = ctx->edge_count;
+
+  memset(g, 0, sizeof(*g));
+  g->node_count = n;
+  g->object_count = ctx->object_tag_count;
+
+  indegree = (jint *)calloc((size_t)n, sizeof(jint));
+  if (!indegree) {
+    return 0;
+  }
+  for (i = 0; i < ctx->edge_count; i++) {
+    jint to = edge_node_index(ctx, ctx->edge_to[i]);
+    if (to > 0 && to < n) {
+      indegree[to]++;
+    }
+  }
+  for (v = 1; v < n; v++) {
+    if (indegree[v] == 0 && node_is_reached(ctx, v)) {
+      edge_total++;
+    }
+  }
+
+  g->succ_offset = (jint *)calloc((size_t)n + 1, sizeof(jint));
+  g->pred_offset = (jint *)calloc((size_t)n + 1, sizeof(jint));
+  g->succ = (jint *)malloc((size_t)(edge_total > 0 ? edge_total : 1) * sizeof(jint));
+  g->pred = (jint *)malloc((size_t)(edge_total > 0 ? edge_total : 1) * sizeof(jint));
+  fill = (jint *)calloc((size_t)n, sizeof(jint));
+  if (!g->succ_offset || !g->pred_offset || !g->succ || !g->pred || !fill) {
+    free(indegree);
+    free(fill);
+    free_ref_graph(g);
+    return 0;
+  }
+
+  // 统计出度/入度
+  for (i = 0; i < ctx->edge_count; i++) {
+    jint from = edge_node_index(ctx, ctx->edge_from[i]);
+    jint to = edge_node_index(ctx, ctx->edge_to[i]);
+    if (from < 0 || from >= n || to <= 0 || to >= n) {
+      continue;
+    }
+    g->succ_offset[from + 1]++;
+    g->pred_offset[to + 1]++;
+  }
+  for (v = 1; v < n; v++) {
+    if (indegree[v] == 0 && node_is_reached(ctx, v)) {
+      g->succ_offset[1]++;
+      g->pred_offset[v + 1]++;
+    }
+  }
+  for (v = 0; v < n; v++) {
+    g->succ_offset[v + 1] += g->succ_offset[v];
+    g->pred_offset[v + 1] += g->pred_offset[v];
+  }
+
+  for (i = 0; i < ctx->edge_count; i++) {
+    jint from = edge_node_index(ctx, ctx->edge_from[i]);
+    jint to = edge_node_index(ctx, ctx->edge_to[i]);
+    if (from < 0 || from >= n || to <= 0 || to >= n) {
+      continue;
+    }
+    g->succ[g->succ_offset[from] + fill[from]++] = to;
+  }
+  for (v = 1; v < n; v++) {
+    if (indegree[v] == 0 && node_is_reached(ctx, v)) {
+      g->succ[g->succ_offset[0] + fill[0]++] = v;
+    }
+  }
+
+  memset(fill, 0, (size_t)n * sizeof(jint));
+  for (v = 0; v < n; v++) {
+    jint k;
+    for (k = g->succ_offset[v]; k < g->succ_offset[v + 1]; k++) {
+      jint to = g->succ[k];
+      g->pred[g->pred_offset[to] + fill[to]++] = v;
+    }
+  }
+
+  // 引用边已经转换为 CSR，尽早释放
+  free(ctx->edge_from);
+  ctx->edge_from = NULL;
+  free(ctx->edge_to);
+  ctx->edge_to = NULL;
+
+  free(indegree);
+  free(fill);
+  return 1;
+}
+
+/**
+ * 从 GC Root 深度优先遍历，得到后序编号 postorder[node]（不可达为 -1）以及按后序排列的节点 order。
+ */
+static jint dfs_postorder(ref_graph_t *g, jint *postorder, jint *order) {
+  jint n = g->node_count;
+  jint *stack;
+  jint *next_edge;
+  jint top = 0;
+  jint count = 0;
+  jint v;
+
+  stack = (jint *)malloc((size_t)n * sizeof(jint));
+  next_edge = (jint *)malloc((size_t)n * sizeof(jint));
+  if (!stack || !next_edge) {
+    free(stack);
+    free(next_edge);
+    return -1;
+  }
+  for (v = 0; v < n; v++) {
+    postorder[v] = -1;
+    next_edge[v] = g->succ_offset[v];
+  }
+
+  // postorder 在出栈前为 -2 表示已入栈
+  postorder[0] = -2;
+  stack[top++] = 0;
+  while (top > 0) {
+    jint node = stack[top - 1];
+    if (next_edge[node] < g->succ_offset[node + 1]) {
+      jint child = g->succ[next_edge[node]++];
+      if (postorder[child] == -1) {
+        postorder[child] = -2;
+        stack[top++] = child;
+      }
+    } else {
+      top--;
+      postorder[node] = count;
+      order[count++] = node;
+    }
+  }
+
+  free(stack);
+  free(next_edge);
+  return count;
+}
+
+static jint dominator_intersect(const jint *idom, const jint *postorder, jint b1,
+                                jint b2) {
+  while (b1 != b2) {
+    while (postorder[b1] < postorder[b2]) {
+      b1 = idom[b1];
+    }
+    while (postorder[b2] < postorder[b1]) {
+      b2 = idom[b2];
+    }
+  }
+  return b1;
+}
+
+/**
+ * Cooper-Harvey-Kennedy 迭代算法计算直接支配节点 idom。
+ * 超过 deadline 时停止迭代：第一轮之后的 idom 已经构成一棵合法的树，只是支配节点可能偏向 root，retained size 偏小。
+ *
+ * @return 是否收敛
+ */
+static int compute_idom(heap_ctx_t *ctx, ref_graph_t *g, const jint *postorder,
+                        const jint *order, jint reached, jint *idom) {
+  jint v;
+  int changed = 1;
+  int rounds = 0;
+
+  for (v = 0; v < g->node_count; v++) {
+    idom[v] = -1;
+  }
+  idom[0] = 0;
+
+  while (changed) {
+    jint i;
+    changed = 0;
+    if (rounds > 0 && ctx->deadline_millis > 0 &&
+        now_millis() > ctx->deadline_millis) {
+      return 0;
+    }
+    rounds++;
+    // 逆后序，root 的后序编号最大，跳过
+    for (i = reached - 2; i >= 0; i--) {
+      jint node = order[i];
+      jint new_idom = -1;
+      jint k;
+      for (k = g->pred_offset[node]; k < g->pred_offset[node + 1]; k++) {
+        jint p = g->pred[k];
+        if (idom[p] == -1) {
+          continue;
+        }
+        new_idom = new_idom == -1 ? p
+                                  : dominator_intersect(idom, postorder, p, new_idom);
+      }
+      if (new_idom != -1 && idom[node] != new_idom) {
+        idom[node] = new_idom;
+        changed = 1;
+      }
+    }
+  }
+  return 1;
+}
+
+/**
+ * 按类汇总 retained size：在支配树上深度优先遍历，只累加没有同类祖先的对象，避免同一个类的对象被重复计算
+ * （例如链表节点的 retained size 已经包含了后续节点）。
+ */
+static int sum_class_retained(heap_ctx_t *ctx, ref_graph_t *g, const jint *idom,
+                              const jint *order, jint reached,
+                              const jlong *retained, jlong *class_retained) {
+  jint n = g->node_count;
+  jint *child_offset;
+  jint *children;
+  jint *fill;
+  jint *active;
+  jint *stack;
+  jint top = 0;
+  jint i;
+  jint v;
+  int ok = 0;
+
+  child_offset = (jint *)calloc((size_t)n + 1, sizeof(jint));
+  children = (jint *)malloc((size_t)(reached > 0 ? reached : 1) * sizeof(jint));
+  fill = (jint *)calloc((size_t)n, sizeof(jint));
+  active = (jint *)calloc((size_t)ctx->class_count + 1, sizeof(jint));
+  // 每个节点入栈两次：进入和离开（取反）
+  stack = (jint *)malloc((size_t)(2 * reached + 1) * sizeof(jint));
+  if (!child_offset || !children || !fill || !active || !stack) {
+    goto out;
+  }
+
+  for (i = 0; i < reached; i++) {
+    v = order[i];
+    if (v != 0) {
+      child_offset[idom[v] + 1]++;
+    }
+  }
+  for (v = 0; v < n; v++) {
+    child_offset[v + 1] += child_offset[v];
+  }
+  for (i = 0; i < reached; i++) {
+    v = order[i];
+    if (v != 0) {
+      children[child_offset[idom[v]] + fill[idom[v]]++] = v;
+    }
+  }
+
+  stack[top++] = 0;
+  while (top > 0) {
+    jint item = stack[--top];
+    jint cid;
+    jint k;
+    if (item < 0) {
+      cid = node_class_id(ctx, ~item);
+      active[cid]--;
+      continue;
+    }
+    cid = node_class_id(ctx, item);
+    if (item != 0) {
+      if (active[cid] == 0) {
+        class_retained[cid] += retained[item];
+      }
+      active[cid]++;
+      stack[top++] = ~item;
+    }
+    for (k = child_offset[item]; k < child_offset[item + 1]; k++) {
+      stack[top++] = children[k];
+    }
+  }
+  ok = 1;
+
+out:
+  free(child_offset);
+  free(children);
+  free(fill);
+  free(active);
+  free(stack);
+  return ok;
+}
+
+static void append_node_name(heap_ctx_t *ctx, sb_t *sb, jint node) {
+  if (node <= ctx->object_tag_count) {
+    sb_printf(sb, "%s\n", class_name_by_id(ctx, ctx->objects[node].class_id));
+  } else {
+    sb_printf(sb, "class %s\n",
+              class_name_by_id(ctx, node - ctx->object_tag_count));
+  }
+}
+
+static char *build_retained_analyze_output(heap_ctx_t *ctx, jint class_num,
+                                           jint object_num, jlong walk_millis,
+                                           jlong start_millis) {
+  ref_graph_t g;
+  sb_t sb;
+  jint *postorder = NULL;
+  jint *order = NULL;
+  jint *idom = NULL;
+  jlong *retained = NULL;
+  jlong *class_retained = NULL;
+  top_object_t *top_classes = NULL;
+  jint reached;
+  jint i;
+  int converged;
+  char *result = NULL;
+
+  if (!build_ref_graph(ctx, &g)) {
+    return NULL;
+  }
+  sb_init(&sb);
+
+  postorder = (jint *)malloc((size_t)g.node_count * sizeof(jint));
+  order = (jint *)malloc((size_t)g.node_count * sizeof(jint));
+  idom = (jint *)malloc((size_t)g.node_count * sizeof(jint));
+  retained = (jlong *)calloc((size_t)g.node_count, sizeof(jlong));
+  class_retained = (jlong *)calloc((size_t)ctx->class_count + 1, sizeof(jlong));
+  if (!postorder || !order || !idom || !retained || !class_retained) {
+    goto out;
+  }
+
+  reached = dfs_postorder(&g, postorder, order);
+  if (reached < 0) {
+    goto out;
+  }
+  converged = compute_idom(ctx, &g, postorder, order, reached, idom);
+
+  // 后序：支配节点总在被支配节点之后
+  for (i = 0; i < reached; i++) {
+    jint v = order[i];
+    retained[v] += node_shallow_size(ctx, v);
+    if (v != 0) {
+      retained[idom[v]] += retained[v];
+    }
+  }
+  if (!sum_class_retained(ctx, &g, idom, order, reached, retained,
+                          class_retained)) {
+    goto out;
+  }
+
+  if (object_num > 0) {
+    ctx->top_object_max = object_num;
+    ctx->top_object_count = 0;
+    ctx->top_objects =
+        (top_object_t *)calloc((size_t)object_num, sizeof(top_object_t));
+    if (!ctx->top_objects) {
+      goto out;
+    }
+    for (i = 0; i < reached; i++) {
+      jint v = order[i];
+      if (v != 0) {
+        // tag 字段复用为节点编号
+        top_objects_add(ctx, retained[v], v, node_class_id(ctx, v));
+      }
+    }
+  }
+
+  sb_printf(&sb, "object_number: %lld\n", (long long)(reached - 1));
+  sb_printf(&sb, "edge_number: %lld\n", (long long)ctx->edge_count);
+  sb_printf(&sb, "truncated: %s\n",
+            ctx->truncated ? "true" : (converged ? "false" : "true (dominators not converged)"));
+  sb_printf(&sb, "cost: %lldms (walk %lldms)\n",
+            (long long)(now_millis() - start_millis), (long long)walk_millis);
+
+  sb_printf(&sb, "\n%-4s\t%-12s\t%-10s\t%s\n", "id", "#retained", "#bytes",
+            "class_name");
+  sb_printf(&sb, "----------------------------------------------------\n");
+  for (i = 0; i < ctx->top_object_count; i++) {
+    top_object_t *o = &ctx->top_objects[ctx->top_object_count - 1 - i];
+    jint v = (jint)o->tag;
+    sb_printf(&sb, "%-4d\t%-12lld\t%-10lld\t", (int)(i + 1), (long long)o->size,
+              (long long)node_shallow_size(ctx, v));
+    append_node_name(ctx, &sb, v);
+  }
+  sb_printf(&sb, "\n");
+
+  if (class_num > 0) {
+    jint max = class_num < ctx->class_count ? class_num : ctx->class_count;
+    top_classes = (top_object_t *)calloc(
+        (size_t)(ctx->class_count > 0 ? ctx->class_count : 1), sizeof(top_object_t));
+    if (!top_classes) {
+      goto out;
+    }
+    for (i = 1; i <= ctx->class_count; i++) {
+      top_classes[i - 1].size = class_retained[i];
+      top_classes[i - 1].class_id = i;
+    }
+    qsort(top_classes, (size_t)ctx->class_count, sizeof(top_object_t),
+          compare_top_object_size);
+
+    sb_printf(&sb, "\n%-4s\t%-12s\t%-15s\t%s\n", "id", "#instances", "#retained",
+              "class_name");
+    sb_printf(&sb, "----------------------------------------------------\n");
+    for (i = 0; i < max; i++) {
+      jint cid = top_classes[ctx->class_count - 1 - i].class_id;
+      if (class_retained[cid] == 0) {
+        break;
+      }
+      sb_printf(&sb, "%-4d\t%-12lld\t%-15lld\t%s\n", (int)(i + 1),
+                (long long)ctx->class_info[cid].instance_count,
+                (long long)class_retained[cid], class_name_by_id(ctx, cid));
+    }
+    sb_printf(&sb, "\n");
+  }
+
+  if (!sb.oom) {
+    result = sb.buf;
+    sb.buf = NULL;
+  }
+
+out:
+  sb_free(&sb);
+  free(postorder);
+  free(order);
+  free(idom);
+  free(retained);
+  free(class_retained);
+  free(top_classes);
+  free_ref_graph(&g);
+  return result;
+}
+
+char *arthas_vmtool_retained_analyze(jvmtiEnv *jvmti, jint class_num,
+                                     jint object_num, jint timeout_millis,
+                                     jint memory_limit_mb) {
+  heap_ctx_t ctx;
+  jvmtiHeapCallbacks callbacks;
+  jvmtiError err;
+  jlong run_id;
+  jlong start_millis;
+  jlong walk_millis;
+  char *result = NULL;
+
+  memset(&ctx, 0, sizeof(ctx));
+  ctx.jvmti = jvmti;
+
+  run_id = (++g_heap_analyzer_run_counter) & 0xFFFF;
+  if (run_id == 0) {
+    run_id = 1;
+  }
+  ctx.tag_magic_bits = ((jlong)HEAP_TAG_MAGIC) << HEAP_TAG_MAGIC_SHIFT;
+  ctx.tag_run_bits = ((jlong)run_id) << HEAP_TAG_RUN_SHIFT;
+
+  start_millis = now_millis();
+  ctx.record_edges = 1;
+  if (timeout_millis > 0) {
+    ctx.deadline_millis = start_millis + timeout_millis;
+  }
+  if (memory_limit_mb > 0) {
+    ctx.memory_limit = (jlong)memory_limit_mb * 1024 * 1024;
+  }
+
+  if (!prepare_classes(&ctx)) {
+    free_ctx(&ctx);
+    return NULL;
+  }
+
+  memset(&callbacks, 0, sizeof(callbacks));
+  callbacks.heap_reference_callback = heap_reference_callback;
+  err = JVMTI_CALL(jvmti, FollowReferences, 0, NULL, NULL, &callbacks,
+                   (void *)&ctx);
+  (void)err;
+  walk_millis = now_millis() - start_millis;
+
+  // 遍历结束后先恢复 tag，支配树计算不需要再访问堆
+  restore_tags(&ctx);
+
+  if (ctx.callback_error) {
+    sb_t sb;
+    sb_init(&sb);
+    sb_append_cstr(&sb, "ERROR: retainedAnalyze aborted (native OOM)\n");
+    result = sb.buf;
+  } else {
+    result = build_retained_analyze_output(&ctx, class_num, object_num,
+                                           walk_millis, start_millis);
+  }
+
+  free_ctx(&ctx);
+  return result;
+}
@@ -24,6 +24,16 @@ char *arthas_vmtool_heap_analyze(jvmtiEnv *jvmti, jint class_num,
 char *arthas_vmtool_reference_analyze(jvmtiEnv *jvmti, jclass klass,
                                       jint object_num, jint backtrace_num);
 
+/**
+ * 遍历时记录对象间的引用边，在这张引用图上计算支配树，输出 retained size 最大的对象/类。
+ * 超过 timeout_millis 或对象表 + 引用边超过 memory_limit_mb 时停止遍历，在已遍历的部分图上近似计算；小于等于 0 表示不限制。
+ *
+ * 返回值为 malloc 分配的 C 字符串，调用方负责 free。
+ */
+char *arthas_vmtool_retained_analyze(jvmtiEnv *jvmti, jint class_num,
+                                     jint object_num, jint timeout_millis,
+                                     jint memory_limit_mb);
+
 #ifdef __cplusplus
 }
 #endif
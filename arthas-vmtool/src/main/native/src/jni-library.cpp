@@ -85,11 +85,53 @@ jlong getTag() {
     return ++tagCounter;
 }
 
+// InstanceCursor 的 tag 高 16 位，见 InstanceCursor.TAG_MAGIC
+#define INSTANCES_TAG_MAGIC ((jlong) (0xC0A5ULL << 48))
+#define INSTANCES_TAG_MAGIC_MASK ((jlong) (0xFFFFULL << 48))
+
+// getInstances 不覆盖游标已经打上的 tag，而是记录下这些 tag，之后和自己的 tag 一起取出
+struct InstancesTags {
+    jlong tag;
+    jlong *cursorTags;
+    jint cursorTagCount;
+    jint cursorTagCapacity;
+};
+
+static bool addCursorTag(InstancesTags *tags, jlong tag) {
+    // 游标按遍历顺序打 tag，连续的实例通常是同一个 tag
+    if (tags->cursorTagCount > 0 && tags->cursorTags[tags->cursorTagCount - 1] == tag) {
+        return true;
+    }
+    if (tags->cursorTagCount == tags->cursorTagCapacity) {
+        jint capacity = tags->cursorTagCapacity == 0 ? 16 : tags->cursorTagCapacity * 2;
+        jlong *cursorTags = static_cast<jlong *>(realloc(tags->cursorTags, sizeof(jlong) * capacity));
+        if (cursorTags == NULL) {
+            return false;
+        }
+        tags->cursorTags = cursorTags;
+        tags->cursorTagCapacity = capacity;
+    }
+    tags->cursorTags[tags->cursorTagCount++] = tag;
+    return true;
+}
+
+static int compareTag(const void *a, const void *b) {
+    jlong x = *static_cast<const jlong *>(a);
+    jlong y = *static_cast<const jlong *>(b);
+    return x < y ? -1 : (x > y ? 1 : 0);
+}
+
 extern "C"
 jvmtiIterationControl JNICALL
 HeapObjectCallback(jlong class_tag, jlong size, jlong *tag_ptr, void *user_data) {
-    jlong *data = static_cast<jlong *>(user_data);
-    *tag_ptr = *data;
+    InstancesTags *tags = static_cast<InstancesTags *>(user_data);
+    if ((*tag_ptr & INSTANCES_TAG_MAGIC_MASK) == INSTANCES_TAG_MAGIC) {
+        if (!addCursorTag(tags, *tag_ptr)) {
+            return JVMTI_ITERATION_ABORT;
+        }
+    } else {
+        *tag_ptr = tags->tag;
+    }
 
     limitCounter.countDown();
     if (limitCounter.allow()) {
@@ -102,60 +144,176 @@ HeapObjectCallback(jlong class_tag, jlong size, jlong *tag_ptr, void *user_data)
 extern "C"
 JNIEXPORT jobjectArray JNICALL
 Java_arthas_VmTool_getInstances0(JNIEnv *env, jclass thisClass, jclass klass, jint limit) {
-    jlong tag = getTag();
+    InstancesTags tags = {getTag(), NULL, 0, 0};
+    // 第一个位置留给自己的 tag
+    addCursorTag(&tags, tags.tag);
     limitCounter.init(limit);
     jvmtiError error = jvmti->IterateOverInstancesOfClass(klass, JVMTI_HEAP_OBJECT_EITHER,
-                                               HeapObjectCallback, &tag);
-    if (error) {
+                                               HeapObjectCallback, &tags);
+    if (error || tags.cursorTags == NULL) {
         printf("ERROR: JVMTI IterateOverInstancesOfClass failed!%u\n", error);
+        free(tags.cursorTags);
         return NULL;
     }
 
+    // 游标的 tag 去重
+    jint tagCount = 1;
+    if (tags.cursorTagCount > 1) {
+        qsort(tags.cursorTags + 1, tags.cursorTagCount - 1, sizeof(jlong), compareTag);
+        for (int i = 1; i < tags.cursorTagCount; i++) {
+            if (tagCount == 1 || tags.cursorTags[i] != tags.cursorTags[tagCount - 1]) {
+                tags.cursorTags[tagCount++] = tags.cursorTags[i];
+            }
+        }
+    }
+
     jint count = 0;
     jobject *instances;
-    error = jvmti->GetObjectsWithTags(1, &tag, &count, &instances, NULL);
+    jlong *instanceTags = NULL;
+    error = jvmti->GetObjectsWithTags(tagCount, tags.cursorTags, &count, &instances,
+                                      tagCount > 1 ? &instanceTags : NULL);
+    free(tags.cursorTags);
     if (error) {
         printf("ERROR: JVMTI GetObjectsWithTags failed!%u\n", error);
         return NULL;
     }
 
-    jobjectArray array = env->NewObjectArray(count, klass, NULL);
-    //添加元素到数组
+    // 游标的一页里可能有其它 class 的实例，也可能多于 limit
+    jint kept = 0;
     for (int i = 0; i < count; i++) {
+        if (limit >= 0 && kept >= limit) {
+            break;
+        }
+        if (instanceTags == NULL || instanceTags[i] == tags.tag || env->IsInstanceOf(instances[i], klass)) {
+            instances[kept++] = instances[i];
+        }
+    }
+
+    jobjectArray array = env->NewObjectArray(kept, klass, NULL);
+    //添加元素到数组
+    for (int i = 0; i < kept; i++) {
         env->SetObjectArrayElement(array, i, instances[i]);
     }
     jvmti->Deallocate(reinterpret_cast<unsigned char *>(instances));
+    if (instanceTags != NULL) {
+        jvmti->Deallocate(reinterpret_cast<unsigned char *>(instanceTags));
+    }
     return array;
 }
 
+// sumInstanceSize / countInstances 不需要取出实例，遍历时直接累加，不修改实例的 tag
+struct InstancesSummary {
+    jlong count;
+    jlong size;
+};
+
+extern "C"
+jvmtiIterationControl JNICALL
+SumInstancesCallback(jlong class_tag, jlong size, jlong *tag_ptr, void *user_data) {
+    InstancesSummary *summary = static_cast<InstancesSummary *>(user_data);
+    summary->count++;
+    summary->size += size;
+    return JVMTI_ITERATION_CONTINUE;
+}
+
+// 分页获取实例：只遍历一次堆，第 i 个实例打上 tagBase + i / pageSize，之后按页的 tag 取出
+struct InstancesPaging {
+    jlong tagBase;
+    jint pageSize;
+    jlong count;
+};
+
+// 游标的 tag 高 32 位是 tagBase，低 32 位是页号
+#define INSTANCES_PAGE_MASK 0xFFFFFFFFLL
+
+extern "C"
+jvmtiIterationControl JNICALL
+TagInstancesCallback(jlong class_tag, jlong size, jlong *tag_ptr, void *user_data) {
+    InstancesPaging *paging = static_cast<InstancesPaging *>(user_data);
+    jlong page = paging->count / paging->pageSize;
+    if (page > INSTANCES_PAGE_MASK) {
+        return JVMTI_ITERATION_ABORT;
+    }
+    *tag_ptr = paging->tagBase | page;
+    paging->count++;
+    return JVMTI_ITERATION_CONTINUE;
+}
+
+extern "C"
+jvmtiIterationControl JNICALL
+ClearTagCallback(jlong class_tag, jlong size, jlong *tag_ptr, void *user_data) {
+    jlong *tagBase = static_cast<jlong *>(user_data);
+    if ((*tag_ptr & ~INSTANCES_PAGE_MASK) == *tagBase) {
+        *tag_ptr = 0;
+    }
+    return JVMTI_ITERATION_CONTINUE;
+}
+
 extern "C"
 JNIEXPORT jlong JNICALL
-Java_arthas_VmTool_sumInstanceSize0(JNIEnv *env, jclass thisClass, jclass klass) {
-    jlong tag = getTag();
-    limitCounter.init(-1);
+Java_arthas_VmTool_tagInstances0(JNIEnv *env, jclass thisClass, jclass klass, jlong tagBase, jint pageSize) {
+    InstancesPaging paging = {tagBase, pageSize, 0};
     jvmtiError error = jvmti->IterateOverInstancesOfClass(klass, JVMTI_HEAP_OBJECT_EITHER,
-                                               HeapObjectCallback, &tag);
+                                               TagInstancesCallback, &paging);
     if (error) {
         printf("ERROR: JVMTI IterateOverInstancesOfClass failed!%u\n", error);
         return -1;
     }
+    return paging.count;
+}
 
+// 每次 GetObjectsWithTags 都要扫描整个 tag map，所以一次取出连续的多页
+extern "C"
+JNIEXPORT jobjectArray JNICALL
+Java_arthas_VmTool_takeInstances0(JNIEnv *env, jclass thisClass, jclass klass, jlong tagBase, jlong fromPage,
+                                  jint pageCount) {
+    jlong *pageTags = static_cast<jlong *>(malloc(sizeof(jlong) * pageCount));
+    if (pageTags == NULL) {
+        return NULL;
+    }
+    for (int i = 0; i < pageCount; i++) {
+        pageTags[i] = tagBase | (fromPage + i);
+    }
     jint count = 0;
     jobject *instances;
-    error = jvmti->GetObjectsWithTags(1, &tag, &count, &instances, NULL);
+    jvmtiError error = jvmti->GetObjectsWithTags(pageCount, pageTags, &count, &instances, NULL);
+    free(pageTags);
     if (error) {
         printf("ERROR: JVMTI GetObjectsWithTags failed!%u\n", error);
-        return -1;
+        return NULL;
     }
 
-    jlong sum = 0;
+    jobjectArray array = env->NewObjectArray(count, klass, NULL);
     for (int i = 0; i < count; i++) {
-        jlong size = 0;
-        jvmti->GetObjectSize(instances[i], &size);
-        sum = sum + size;
+        // 取出后清除 tag，tag map 随着翻页变小
+        jvmti->SetTag(instances[i], 0);
+        env->SetObjectArrayElement(array, i, instances[i]);
     }
     jvmti->Deallocate(reinterpret_cast<unsigned char *>(instances));
-    return sum;
+    return array;
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_arthas_VmTool_clearInstancesTag0(JNIEnv *env, jclass thisClass, jclass klass, jlong tagBase) {
+    jvmtiError error = jvmti->IterateOverInstancesOfClass(klass, JVMTI_HEAP_OBJECT_EITHER,
+                                               ClearTagCallback, &tagBase);
+    if (error) {
+        printf("ERROR: JVMTI IterateOverInstancesOfClass failed!%u\n", error);
+    }
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_arthas_VmTool_sumInstanceSize0(JNIEnv *env, jclass thisClass, jclass klass) {
+    InstancesSummary summary = {0, 0};
+    jvmtiError error = jvmti->IterateOverInstancesOfClass(klass, JVMTI_HEAP_OBJECT_EITHER,
+                                               SumInstancesCallback, &summary);
+    if (error) {
+        printf("ERROR: JVMTI IterateOverInstancesOfClass failed!%u\n", error);
+        return -1;
+    }
+    return summary.size;
 }
 
 extern "C"
@@ -172,22 +330,14 @@ JNIEXPORT jlong JNICALL Java_arthas_VmTool_getInstanceSize0
 extern "C"
 JNIEXPORT jlong JNICALL
 Java_arthas_VmTool_countInstances0(JNIEnv *env, jclass thisClass, jclass klass) {
-    jlong tag = getTag();
-    limitCounter.init(-1);
+    InstancesSummary summary = {0, 0};
     jvmtiError error = jvmti->IterateOverInstancesOfClass(klass, JVMTI_HEAP_OBJECT_EITHER,
-                                               HeapObjectCallback, &tag);
+                                               SumInstancesCallback, &summary);
     if (error) {
         printf("ERROR: JVMTI IterateOverInstancesOfClass failed!%u\n", error);
         return -1;
     }
-
-    jint count = 0;
-    error = jvmti->GetObjectsWithTags(1, &tag, &count, NULL, NULL);
-    if (error) {
-        printf("ERROR: JVMTI GetObjectsWithTags failed!%u\n", error);
-        return -1;
-    }
-    return count;
+    return summary.count;
 }
 
 extern "C"
@@ -231,6 +381,17 @@ JNIEXPORT jboolean JNICALL Java_arthas_VmTool_mallocStats0
 #endif
 }
 
+// 与 VmTool.NATIVE_VERSION 保持一致，新增或改变 native 方法时递增
+#define ARTHAS_VMTOOL_NATIVE_VERSION 2
+
+extern "C"
+JNIEXPORT jint JNICALL Java_arthas_VmTool_nativeVersion0
+        (JNIEnv *env, jclass thisClass) {
+    (void)env;
+    (void)thisClass;
+    return ARTHAS_VMTOOL_NATIVE_VERSION;
+}
+
 extern "C"
 JNIEXPORT jstring JNICALL Java_arthas_VmTool_heapAnalyze0
         (JNIEnv *env, jclass thisClass, jint classNum, jint objectNum) {
@@ -256,3 +417,16 @@ JNIEXPORT jstring JNICALL Java_arthas_VmTool_referenceAnalyze0
     free(result);
     return s;
 }
+
+extern "C"
+JNIEXPORT jstring JNICALL Java_arthas_VmTool_retainedAnalyze0
+        (JNIEnv *env, jclass thisClass, jint classNum, jint objectNum, jint timeoutMillis, jint memoryLimitMb) {
+    (void)thisClass;
+    char *result = arthas_vmtool_retained_analyze(jvmti, classNum, objectNum, timeoutMillis, memoryLimitMb);
+    if (!result) {
+        return env->NewStringUTF("ERROR: retainedAnalyze failed (native OOM or JVMTI error)\n");
+    }
+    jstring s = env->NewStringUTF(result);
+    free(result);
+    return s;
+}
@@ -3,6 +3,9 @@ package arthas;
 import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -166,6 +169,91 @@ public class VmToolTest {
         Assertions.assertThat(instances3).hasSize(1);
     }
 
+    class CursorTest {
+    }
+
+    @Test
+    public void test_getInstancesCursor() {
+        VmTool vmtool = initVmTool();
+
+        ArrayList<CursorTest> list = new ArrayList<CursorTest>();
+        for (int i = 0; i < 10; ++i) {
+            list.add(new CursorTest());
+        }
+        InstanceCursor<CursorTest> cursor = vmtool.getInstancesCursor(CursorTest.class, 4);
+        Set<CursorTest> seen = new HashSet<CursorTest>();
+        try {
+            while (cursor.hasNext()) {
+                CursorTest[] page = cursor.next();
+                Assertions.assertThat(page.length).isLessThanOrEqualTo(4);
+                seen.addAll(Arrays.asList(page));
+            }
+        } finally {
+            cursor.close();
+        }
+        Assertions.assertThat(seen).hasSize(10);
+        Assertions.assertThat(cursor.getCount()).isEqualTo(10);
+
+        // the tags are cleared, a new cursor sees all instances again
+        InstanceCursor<CursorTest> cursor2 = vmtool.getInstancesCursor(CursorTest.class, 100);
+        Assertions.assertThat(cursor2.next()).hasSize(10);
+        Assertions.assertThat(cursor2.hasNext()).isFalse();
+        cursor2.close();
+
+        // close before all pages are taken
+        InstanceCursor<CursorTest> cursor3 = vmtool.getInstancesCursor(CursorTest.class, 3);
+        Assertions.assertThat(cursor3.next()).hasSize(3);
+        cursor3.close();
+        Assertions.assertThat(cursor3.hasNext()).isFalse();
+        InstanceCursor<CursorTest> cursor4 = vmtool.getInstancesCursor(CursorTest.class, 100);
+        Assertions.assertThat(cursor4.next()).hasSize(10);
+        cursor4.close();
+    }
+
+    class InterleaveTest {
+    }
+
+    class InterleaveSubTest extends InterleaveTest {
+    }
+
+    @Test
+    public void test_getInstancesCursor_interleaved() {
+        VmTool vmtool = initVmTool();
+        Assertions.assertThat(vmtool.nativeVersion()).isEqualTo(VmTool.NATIVE_VERSION);
+
+        // more than one batch, so some instances still carry the cursor's tags after the first page
+        int total = InstanceCursor.BATCH_INSTANCES * 2 + 1000;
+        ArrayList<InterleaveTest> list = new ArrayList<InterleaveTest>();
+        for (int i = 0; i < total; ++i) {
+            list.add(i % 4 == 0 ? new InterleaveSubTest() : new InterleaveTest());
+        }
+        int subCount = (total + 3) / 4;
+
+        InstanceCursor<InterleaveTest> cursor = vmtool.getInstancesCursor(InterleaveTest.class,
+                InstanceCursor.BATCH_INSTANCES / 2);
+        Set<InterleaveTest> seen = new HashSet<InterleaveTest>();
+        try {
+            seen.addAll(Arrays.asList(cursor.next()));
+            Assertions.assertThat(seen).hasSize(InstanceCursor.BATCH_INSTANCES / 2);
+
+            // these must not take over the tags of the pages not taken yet
+            Assertions.assertThat(vmtool.getInstances(InterleaveTest.class)).hasSize(total);
+            Assertions.assertThat(vmtool.getInstances(InterleaveTest.class, 10)).hasSize(10);
+            Assertions.assertThat(vmtool.getInstances(InterleaveSubTest.class)).hasSize(subCount);
+            Assertions.assertThat(vmtool.countInstances(InterleaveTest.class)).isEqualTo(total);
+            Assertions.assertThat(vmtool.sumInstanceSize(InterleaveTest.class)).isGreaterThan(0);
+
+            while (cursor.hasNext()) {
+                seen.addAll(Arrays.asList(cursor.next()));
+            }
+        } finally {
+            cursor.close();
+        }
+        Assertions.assertThat(seen).hasSize(total);
+        Assertions.assertThat(cursor.getCount()).isEqualTo(total);
+        Assertions.assertThat(list).hasSize(total);
+    }
+
     interface III {
     }
 
@@ -250,4 +338,28 @@ public class VmToolTest {
         String result = vmtool.referenceAnalyze(ByteHolder.class, 2, -1);
         Assertions.assertThat(result).contains("ByteHolder").contains("root");
     }
+
+    static class RetainedHolder {
+        byte[][] chunks = new byte[][] { new byte[1024 * 1024], new byte[1024 * 1024], new byte[1024 * 1024] };
+    }
+
+    @Test
+    public void testRetainedAnalyze() {
+        RetainedHolder holder = new RetainedHolder();
+        Assertions.assertThat(holder).isNotNull();
+
+        VmTool vmtool = initVmTool();
+        String result = vmtool.retainedAnalyze(Integer.MAX_VALUE, 5, 0, 0);
+        Assertions.assertThat(result).contains("object_number:").contains("truncated: false");
+
+        // holder 独占的 3 个 byte[] 都计入它的 retained size
+        long retained = -1;
+        for (String line : result.split("\n")) {
+            String[] parts = line.split("\t");
+            if (parts.length == 4 && parts[3].trim().equals(RetainedHolder.class.getName())) {
+                retained = Long.parseLong(parts[2].trim());
+            }
+        }
+        Assertions.assertThat(retained).isGreaterThanOrEqualTo(3 * 1024 * 1024);
+    }
 }
@@ -4,6 +4,7 @@ import com.taobao.arthas.common.PidUtils;
 import com.taobao.arthas.core.command.model.*;
 import com.taobao.arthas.core.distribution.ResultConsumer;
 import com.taobao.arthas.core.distribution.ResultDistributor;
+import com.taobao.arthas.core.distribution.ResultListener;
 import com.taobao.arthas.core.distribution.SharingResultDistributor;
 import com.taobao.arthas.core.distribution.impl.PackingResultDistributorImpl;
 import com.taobao.arthas.core.distribution.impl.ResultConsumerImpl;
@@ -28,9 +29,11 @@ import io.termd.core.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 
 import static com.taobao.arthas.common.ArthasConstants.SUBJECT_KEY;
 
@@ -256,6 +259,48 @@ public class CommandExecutorImpl implements CommandExecutor {
         }
     }
 
+    @Override
+    public Map<String, Object> subscribeResults(String sessionId, String consumerId,
+            Consumer<Map<String, Object>> listener) {
+        if (StringUtils.isBlank(consumerId)) {
+            return createErrorResult(null, "Consumer ID is null or empty");
+        }
+
+        try {
+            Session session = getCurrentSession(sessionId, false);
+            ResultConsumer consumer = getConsumer(session, consumerId);
+            if (consumer == null) {
+                return createErrorResult(null, "Consumer not found: " + consumerId);
+            }
+            consumer.setResultListener(new ConsumerResultListener(session, consumerId, listener));
+
+            Map<String, Object> result = new TreeMap<>();
+            result.put("success", true);
+            result.put("sessionId", sessionId);
+            result.put("consumerId", consumerId);
+            return result;
+        } catch (SessionNotFoundException e) {
+            return createErrorResult(null, e.getMessage());
+        }
+    }
+
+    @Override
+    public void unsubscribeResults(String sessionId, String consumerId, Consumer<Map<String, Object>> listener) {
+        Session session = sessionManager.getSession(sessionId);
+        if (session == null) {
+            return;
+        }
+        ResultConsumer consumer = getConsumer(session, consumerId);
+        if (consumer != null) {
+            consumer.removeResultListener(new ConsumerResultListener(session, consumerId, listener));
+        }
+    }
+
+    private static ResultConsumer getConsumer(Session session, String consumerId) {
+        SharingResultDistributor resultDistributor = session.getResultDistributor();
+        return resultDistributor != null ? resultDistributor.getConsumer(consumerId) : null;
+    }
+
     @Override
     public Map<String, Object> interruptJob(String sessionId) {
         try {
@@ -410,6 +455,47 @@ public class CommandExecutorImpl implements CommandExecutor {
         return job;
     }
 
+    /**
+     * 把 ResultModel 转换成 pullResults 格式的结果，equals 按 listener 比较，用于取消订阅
+     */
+    private static class ConsumerResultListener implements ResultListener {
+        private final Session session;
+        private final String consumerId;
+        private final Consumer<Map<String, Object>> listener;
+
+        ConsumerResultListener(Session session, String consumerId, Consumer<Map<String, Object>> listener) {
+            this.session = session;
+            this.consumerId = consumerId;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onResult(ResultModel resultModel) {
+            Map<String, Object> result = new TreeMap<>();
+            result.put("success", true);
+            result.put("sessionId", session.getSessionId());
+            result.put("consumerId", consumerId);
+            result.put("results", Collections.singletonList(resultModel));
+
+            Job foregroundJob = session.getForegroundJob();
+            if (foregroundJob != null) {
+                result.put("jobId", foregroundJob.id());
+                result.put("jobStatus", foregroundJob.status().toString());
+            }
+            listener.accept(result);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ConsumerResultListener && ((ConsumerResultListener) o).listener == listener;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(listener);
+        }
+    }
+
     public static class SessionNotFoundException extends RuntimeException {
         public SessionNotFoundException(String message) {
             super(message);
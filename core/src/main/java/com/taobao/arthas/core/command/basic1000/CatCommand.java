@@ -4,15 +4,22 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import com.taobao.arthas.core.command.Constants;
 import com.taobao.arthas.core.command.model.CatModel;
 import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.core.server.ArthasBootstrap;
 import com.taobao.arthas.core.shell.cli.Completion;
 import com.taobao.arthas.core.shell.cli.CompletionUtils;
 import com.taobao.arthas.core.shell.command.AnnotatedCommand;
 import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.arthas.core.shell.handlers.Handler;
+import com.taobao.arthas.core.shell.handlers.command.CommandInterruptHandler;
 import com.taobao.arthas.core.util.FileUtils;
+import com.taobao.arthas.core.util.LineIndexedFile;
 import com.taobao.middleware.cli.annotations.Argument;
 import com.taobao.middleware.cli.annotations.Description;
 import com.taobao.middleware.cli.annotations.Name;
@@ -21,12 +28,23 @@ import com.taobao.middleware.cli.annotations.Summary;
 
 @Name("cat")
 @Summary("Concatenate and print files")
+@Description(Constants.EXAMPLE +
+        "  cat /tmp/a.txt\n" +
+        "  cat --start 100 -n 20 /tmp/a.log\n" +
+        "  cat --tail -n 50 /tmp/a.log\n" +
+        "  cat -f /tmp/a.log\n")
 public class CatCommand extends AnnotatedCommand {
     private static final Logger logger = LoggerFactory.getLogger(CatCommand.class);
+    private static final int DEFAULT_TAIL_LINES = 10;
+    private static final long FOLLOW_INTERVAL_MS = 1000;
     private List<String> files;
     private String encoding;
     private Integer sizeLimit = 128 * 1024;
     private int maxSizeLimit = 8 * 1024 * 1024;
+    private Long startLine;
+    private Integer lines;
+    private boolean tail;
+    private boolean follow;
 
     @Argument(argName = "files", index = 0)
     @Description("files")
@@ -46,6 +64,30 @@ public class CatCommand extends AnnotatedCommand {
         this.sizeLimit = sizeLimit;
     }
 
+    @Option(longName = "start")
+    @Description("The first line to print, starts from 1")
+    public void setStartLine(Long startLine) {
+        this.startLine = startLine;
+    }
+
+    @Option(shortName = "n", longName = "lines")
+    @Description("The number of lines to print")
+    public void setLines(Integer lines) {
+        this.lines = lines;
+    }
+
+    @Option(longName = "tail", flag = true)
+    @Description("Print the last lines of the file, 10 lines by default")
+    public void setTail(boolean tail) {
+        this.tail = tail;
+    }
+
+    @Option(shortName = "f", longName = "follow", flag = true)
+    @Description("Print the last lines of the file, then keep printing the lines appended, press Q or Ctrl+C to abort")
+    public void setFollow(boolean follow) {
+        this.follow = follow;
+    }
+
     @Override
     public void process(CommandProcess process) {
         if (!verifyOptions(process)) {
@@ -64,6 +106,11 @@ public class CatCommand extends AnnotatedCommand {
             }
         }
 
+        if (startLine != null || lines != null || tail || follow) {
+            processLines(process);
+            return;
+        }
+
         for (String file : files) {
             File f = new File(file);
             if (f.length() > sizeLimit) {
@@ -84,7 +131,114 @@ public class CatCommand extends AnnotatedCommand {
         process.end();
     }
 
+    /**
+     * 按行读取，只读取需要的行，sizeLimit 限制的是输出的大小而不是文件大小
+     */
+    private void processLines(CommandProcess process) {
+        Charset charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+        int lineCount = lines != null ? lines : (tail || follow ? DEFAULT_TAIL_LINES : Integer.MAX_VALUE);
+        long nextLine = 1;
+        for (int i = 0; i < files.size(); ++i) {
+            String file = files.get(i);
+            try {
+                LineIndexedFile indexedFile = LineIndexedFile.of(new File(file));
+                List<LineIndexedFile.Line> result;
+                if (tail || follow) {
+                    result = indexedFile.tail(lineCount, sizeLimit, charset);
+                } else {
+                    result = indexedFile.readLines(startLine != null ? startLine : 1, lineCount, sizeLimit, charset);
+                }
+                nextLine = result.isEmpty() ? indexedFile.getLineCount() + 1
+                        : result.get(result.size() - 1).getNumber() + 1;
+                if (follow && i == files.size() - 1 && !result.isEmpty()
+                        && !result.get(result.size() - 1).isComplete()) {
+                    // 最后一行还没有写完，等写完之后再由 follow 输出
+                    nextLine = result.get(result.size() - 1).getNumber();
+                    result = result.subList(0, result.size() - 1);
+                }
+                if (!result.isEmpty()) {
+                    process.appendResult(new CatModel(file, join(result)));
+                }
+            } catch (IOException e) {
+                logger.error("cat read file error. name: " + file, e);
+                process.end(1, "cat read file error: " + e.getMessage());
+                return;
+            }
+        }
+
+        if (follow) {
+            follow(process, files.get(files.size() - 1), charset, nextLine);
+        } else {
+            process.end();
+        }
+    }
+
+    private void follow(final CommandProcess process, final String file, final Charset charset, final long fromLine) {
+        final Runnable task = new Runnable() {
+            private long nextLine = fromLine;
+
+            @Override
+            public void run() {
+                try {
+                    LineIndexedFile indexedFile = LineIndexedFile.of(new File(file));
+                    long lineCount = indexedFile.getLineCount();
+                    if (lineCount < nextLine - 1) {
+                        // 文件被截断或者滚动，从头开始
+                        nextLine = 1;
+                    }
+                    // 只读取完整的行，没有写完的最后一行下次再读
+                    List<LineIndexedFile.Line> result = indexedFile.readCompleteLines(nextLine, Integer.MAX_VALUE,
+                            sizeLimit, charset);
+                    if (!result.isEmpty()) {
+                        process.appendResult(new CatModel(file, join(result)));
+                        nextLine = result.get(result.size() - 1).getNumber() + 1;
+                    }
+                } catch (Throwable e) {
+                    logger.error("cat follow file error. name: " + file, e);
+                    // endHandler 会取消定时任务
+                    process.end(1, "cat follow file error: " + e.getMessage());
+                }
+            }
+        };
+        final ScheduledFuture<?> future = ArthasBootstrap.getInstance().getScheduledExecutorService()
+                .scheduleWithFixedDelay(task, FOLLOW_INTERVAL_MS, FOLLOW_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        process.interruptHandler(new CommandInterruptHandler(process));
+        process.endHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                future.cancel(false);
+            }
+        });
+    }
+
+    private static String join(List<LineIndexedFile.Line> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (LineIndexedFile.Line line : lines) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(line.getText());
+        }
+        return sb.toString();
+    }
+
     private boolean verifyOptions(CommandProcess process) {
+        if (startLine != null && startLine < 1) {
+            process.end(-1, "start line must be positive: " + startLine);
+            return false;
+        }
+        if (lines != null && lines < 1) {
+            process.end(-1, "lines must be positive: " + lines);
+            return false;
+        }
+        if (follow && files.size() > 1) {
+            process.end(-1, "Follow mode only supports one file");
+            return false;
+        }
+        if (follow && !process.session().isTty()) {
+            process.end(-1, "Follow mode is only supported in tty session");
+            return false;
+        }
         if (sizeLimit > maxSizeLimit) {
             process.end(-1, "sizeLimit cannot be large than: " + maxSizeLimit);
             return false;
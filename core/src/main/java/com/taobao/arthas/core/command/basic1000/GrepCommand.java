@@ -1,8 +1,21 @@
 package com.taobao.arthas.core.command.basic1000;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
 import com.taobao.arthas.core.command.Constants;
+import com.taobao.arthas.core.command.model.GrepModel;
+import com.taobao.arthas.core.shell.cli.Completion;
+import com.taobao.arthas.core.shell.cli.CompletionUtils;
 import com.taobao.arthas.core.shell.command.AnnotatedCommand;
 import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.arthas.core.util.LineIndexedFile;
+import com.taobao.arthas.core.util.StringUtils;
 import com.taobao.middleware.cli.annotations.Argument;
 import com.taobao.middleware.cli.annotations.DefaultValue;
 import com.taobao.middleware.cli.annotations.Description;
@@ -14,17 +27,29 @@ import com.taobao.middleware.cli.annotations.Summary;
  * @see com.taobao.arthas.core.shell.command.internal.GrepHandler
  */
 @Name("grep")
-@Summary("grep command for pipes." )
+@Summary("grep command for pipes and files." )
 @Description(Constants.EXAMPLE +
         " sysprop | grep java \n" +
         " sysprop | grep java -n\n" +
         " sysenv | grep -v JAVA\n" +
         " sysenv | grep -e \"(?i)(JAVA|sun)\" -m 3  -C 2\n" +
         " sysenv | grep JAVA -A2 -B3\n" +
-        " thread | grep -m 10 -e  \"TIMED_WAITING|WAITING\"\n"
+        " thread | grep -m 10 -e  \"TIMED_WAITING|WAITING\"\n" +
+        " grep -n -e \"ERROR|WARN\" /tmp/a.log /tmp/b.log\n"
         + Constants.WIKI + Constants.WIKI_HOME + "grep")
 public class GrepCommand extends AnnotatedCommand {
+    private static final Logger logger = LoggerFactory.getLogger(GrepCommand.class);
+
+    /**
+     * 搜索文件时默认最多输出的匹配行数
+     */
+    private static final int DEFAULT_FILE_MAX_COUNT = 1000;
+
+    private static final long MAX_LINE_BYTES = 64 * 1024;
+
     private String pattern;
+
+    private List<String> files;
     private boolean ignoreCase;
 
     /**
@@ -67,6 +92,12 @@ public class GrepCommand extends AnnotatedCommand {
         this.pattern = pattern;
     }
 
+    @Argument(index = 1, argName = "files", required = false)
+    @Description("Files to search, only for non-pipe usage")
+    public void setFiles(List<String> files) {
+        this.files = files;
+    }
+
     @Option(shortName = "e", longName = "regex", flag = true)
     @Description("Enable regular expression to match")
     public void setRegEx(boolean regEx) {
@@ -166,8 +197,108 @@ public class GrepCommand extends AnnotatedCommand {
         return maxCount;
     }
 
+    public List<String> getFiles() {
+        return files;
+    }
+
     @Override
     public void process(CommandProcess process) {
-        process.end(-1, "The grep command only for pipes. See 'grep --help'\n");
+        if (files == null || files.isEmpty()) {
+            process.end(-1, "The grep command only for pipes or files. See 'grep --help'\n");
+            return;
+        }
+        for (String file : files) {
+            File f = new File(file);
+            if (!f.exists()) {
+                process.end(-1, "grep " + file + ": No such file or directory");
+                return;
+            }
+            if (f.isDirectory()) {
+                process.end(-1, "grep " + file + ": Is a directory");
+                return;
+            }
+        }
+
+        int flags = ignoreCase ? Pattern.CASE_INSENSITIVE : 0;
+        Pattern compiled = Pattern.compile(isRegEx ? pattern : Pattern.quote(pattern), flags);
+        int limit = maxCount > 0 ? maxCount : DEFAULT_FILE_MAX_COUNT;
+        int before = beforeLines > 0 ? beforeLines : (context > 0 ? context : 0);
+        int after = afterLines > 0 ? afterLines : (context > 0 ? context : 0);
+
+        for (String file : files) {
+            try {
+                LineIndexedFile indexedFile = LineIndexedFile.of(new File(file));
+                List<LineIndexedFile.Line> matches = indexedFile.search(compiled, invertMatch, limit,
+                        Charset.defaultCharset());
+                if (matches.isEmpty()) {
+                    continue;
+                }
+                String prefix = files.size() > 1 ? file + ":" : "";
+                StringBuilder output = new StringBuilder();
+                if (before == 0 && after == 0) {
+                    for (LineIndexedFile.Line line : matches) {
+                        appendLine(output, prefix, line);
+                    }
+                } else {
+                    appendWithContext(output, prefix, indexedFile, matches, before, after);
+                }
+                if (maxCount <= 0 && matches.size() >= limit) {
+                    output.append(prefix).append("... stopped after ").append(limit)
+                            .append(" matches, use -m to change the limit\n");
+                }
+                process.appendResult(new GrepModel(file, output.toString(), matches.size()));
+            } catch (IOException e) {
+                logger.error("grep read file error. name: " + file, e);
+                process.end(1, "grep read file error: " + e.getMessage());
+                return;
+            }
+        }
+        process.end();
+    }
+
+    /**
+     * 匹配行前后的上下文通过行索引按需读取，相邻的区间合并输出
+     */
+    private void appendWithContext(StringBuilder output, String prefix, LineIndexedFile indexedFile,
+            List<LineIndexedFile.Line> matches, int before, int after) throws IOException {
+        long rangeStart = -1;
+        long rangeEnd = -1;
+        for (LineIndexedFile.Line match : matches) {
+            long start = Math.max(1, match.getNumber() - before);
+            long end = match.getNumber() + after;
+            if (rangeStart != -1 && start > rangeEnd + 1) {
+                appendRange(output, prefix, indexedFile, rangeStart, rangeEnd);
+                rangeStart = -1;
+            }
+            if (rangeStart == -1) {
+                rangeStart = start;
+            }
+            rangeEnd = Math.max(rangeEnd, end);
+        }
+        appendRange(output, prefix, indexedFile, rangeStart, rangeEnd);
+    }
+
+    private void appendRange(StringBuilder output, String prefix, LineIndexedFile indexedFile, long start, long end)
+            throws IOException {
+        int count = (int) (end - start + 1);
+        for (LineIndexedFile.Line line : indexedFile.readLines(start, count, count * MAX_LINE_BYTES,
+                Charset.defaultCharset())) {
+            appendLine(output, prefix, line);
+        }
+    }
+
+    private void appendLine(StringBuilder output, String prefix, LineIndexedFile.Line line) {
+        output.append(prefix);
+        if (showLineNumber) {
+            output.append(line.getNumber()).append(':');
+        }
+        output.append(trimEnd ? StringUtils.stripEnd(line.getText(), null) : line.getText()).append('\n');
+    }
+
+    @Override
+    public void complete(Completion completion) {
+        if (!CompletionUtils.completeFilePath(completion)) {
+            super.complete(completion);
+        }
     }
 }
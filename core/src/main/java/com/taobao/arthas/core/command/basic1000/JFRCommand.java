@@ -1,20 +1,29 @@
 package com.taobao.arthas.core.command.basic1000;
 
 import com.taobao.arthas.core.command.Constants;
+import com.taobao.arthas.core.command.model.JFRLiveModel;
 import com.taobao.arthas.core.command.model.JFRModel;
+import com.taobao.arthas.core.jfr.JfrLiveAnalyzer;
+import com.taobao.arthas.core.jfr.JfrRollingWindow;
 import com.taobao.arthas.core.server.ArthasBootstrap;
 import com.taobao.arthas.core.shell.cli.CliToken;
 import com.taobao.arthas.core.shell.cli.Completion;
 import com.taobao.arthas.core.shell.cli.CompletionUtils;
 import com.taobao.arthas.core.shell.command.AnnotatedCommand;
 import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.arthas.core.shell.handlers.Handler;
+import com.taobao.arthas.core.shell.handlers.command.CommandInterruptHandler;
+import com.taobao.arthas.core.shell.handlers.shell.QExitHandler;
 import com.taobao.middleware.cli.annotations.Argument;
 import com.taobao.middleware.cli.annotations.Description;
 import com.taobao.middleware.cli.annotations.Name;
 import com.taobao.middleware.cli.annotations.Option;
 import com.taobao.middleware.cli.annotations.Summary;
 import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
 import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
 
 import java.io.File;
 import java.io.IOException;
@@ -27,6 +36,8 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -42,6 +53,8 @@ import java.util.concurrent.TimeUnit;
         "  jfr stop -r 1 -f /tmp/myRecording.jfr\n" +
         "  jfr dump -r 1               # copy contents of a JFR recording to default file\n" +
         "  jfr dump -r 1 -f /tmp/myRecording.jfr\n" +
+        "  jfr live -r 1               # live top methods, allocations and locks of a running recording\n" +
+        "  jfr live -r 1 --window 5m -i 10000 --top 20\n" +
         Constants.WIKI + Constants.WIKI_HOME + "jfr")
 public class JFRCommand extends AnnotatedCommand {
 
@@ -56,11 +69,23 @@ public class JFRCommand extends AnnotatedCommand {
     private String maxSize;
     private Long recording;
     private String state;
+    private String window;
+    private long interval = 5000;
+    private int numOfExecutions = Integer.MAX_VALUE;
+    private int top = 10;
     private JFRModel result = new JFRModel();
     private static Map<Long, Recording> recordings = new ConcurrentHashMap<Long, Recording>();
+    private static Map<Long, JfrLiveAnalyzer> liveAnalyzers = new ConcurrentHashMap<Long, JfrLiveAnalyzer>();
+    /**
+     * stops the live analyzer of a recording which stops or closes on its own, e.g. after its duration
+     */
+    private static FlightRecorderListener recordingStateListener;
+
+    private volatile Timer timer;
+    private JfrLiveAnalyzer readingAnalyzer;
 
     @Argument(index = 0, argName = "cmd", required = true)
-    @Description("command name (start status stop dump)")
+    @Description("command name (start status stop dump live)")
     public void setCmd(String cmd) {
         this.cmd = cmd;
     }
@@ -125,6 +150,31 @@ public class JFRCommand extends AnnotatedCommand {
         this.state = state;
     }
 
+    @Option(longName = "window")
+    @Description("Live analysis window in (s)econds, (m)inutes or (h)ours, e.g. 5m. (NANOTIME, 60s). "
+            + "A recording being printed by another session keeps its window, a longer window is limited to it.")
+    public void setWindow(String window) {
+        this.window = window;
+    }
+
+    @Option(shortName = "i", longName = "interval")
+    @Description("The interval (in ms) between two live results, default is 5000 ms.")
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    @Option(longName = "number-of-execution")
+    @Description("The number of live results to print.")
+    public void setNumOfExecutions(int numOfExecutions) {
+        this.numOfExecutions = numOfExecutions;
+    }
+
+    @Option(longName = "top")
+    @Description("The number of rows of each live table, default is 10.")
+    public void setTop(int top) {
+        this.top = top;
+    }
+
     public String getCmd() {
         return cmd;
     }
@@ -169,9 +219,18 @@ public class JFRCommand extends AnnotatedCommand {
         return state;
     }
 
+    public String getWindow() {
+        return window;
+    }
+
     @Override
     public void process(CommandProcess process) {
 
+        if ("live".equals(cmd)) {
+            processLive(process);
+            return;
+        }
+
         if ("start".equals(cmd)) {
             Configuration c = null;
             try {
@@ -325,6 +384,7 @@ public class JFRCommand extends AnnotatedCommand {
                     process.end(-1, "Failed to stop " + r.getName() + ". Could not set destination for " + filename + "to file" + e.getMessage());
                 }
 
+                stopLiveAnalyzer(r.getId());
                 r.stop();
                 result.setJfrOutput("Stop recording " + r.getId() + ", The result will be written to:\n" + getFilename());
                 r.close();
@@ -332,13 +392,173 @@ public class JFRCommand extends AnnotatedCommand {
                 process.end(-1, "Failed to stop. please input recording id");
             }
         } else {
-            process.end(-1, "Please input correct jfr command (start status stop dump)");
+            process.end(-1, "Please input correct jfr command (start status stop dump live)");
         }
 
         process.appendResult(result);
         process.end();
     }
 
+    /**
+     * Print the top methods, allocations and locks of a running recording periodically. The analyzer of a recording
+     * keeps collecting in the background until the recording is stopped, so the next 'jfr live' or a http api
+     * request sees the whole window at once.
+     */
+    private void processLive(final CommandProcess process) {
+        if (getRecording() == null) {
+            process.end(-1, "Failed to analyze. Please input recording id");
+            return;
+        }
+        final Recording r = recordings.get(getRecording());
+        if (r == null) {
+            process.end(-1, "recording not exit");
+            return;
+        }
+        if (r.getState() != RecordingState.RUNNING) {
+            process.end(-1, "Failed to analyze recording " + r.getId() + ", state is not running");
+            return;
+        }
+        long windowMillis = 60 * 1000;
+        if (getWindow() != null) {
+            try {
+                windowMillis = TimeUnit.NANOSECONDS.toMillis(parseTimespan(getWindow()));
+            } catch (Exception e) {
+                process.end(-1, e.getMessage());
+                return;
+            }
+        }
+
+        final JfrLiveAnalyzer analyzer = liveAnalyzer(r, windowMillis);
+        final long requestedWindowMillis = windowMillis;
+        synchronized (this) {
+            readingAnalyzer = analyzer;
+        }
+
+        timer = new Timer("Timer-for-arthas-jfr-live-" + process.session().getSessionId(), true);
+        process.interruptHandler(new CommandInterruptHandler(process) {
+            @Override
+            public void handle(Void event) {
+                stopTimer();
+                super.handle(event);
+            }
+        });
+        Handler<Void> stopHandler = new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                stopTimer();
+            }
+        };
+        process.suspendHandler(stopHandler);
+        process.endHandler(stopHandler);
+        process.stdinHandler(new QExitHandler(process));
+
+        timer.scheduleAtFixedRate(new TimerTask() {
+            private int count;
+
+            @Override
+            public void run() {
+                if (count >= numOfExecutions) {
+                    stopTimer();
+                    process.end(0, "Process ends after " + numOfExecutions + " time(s).");
+                    return;
+                }
+                if (!analyzer.isRunning()) {
+                    stopTimer();
+                    process.end(0, "Recording " + analyzer.getRecordingId() + " is not running.");
+                    return;
+                }
+                process.appendResult(liveModel(analyzer, requestedWindowMillis));
+                count++;
+                process.times().incrementAndGet();
+            }
+        }, 0, Math.max(1, interval));
+    }
+
+    /**
+     * An analyzer keeping a window at least as long as the requested one is shared, and so is one which another
+     * session is printing, only an analyzer nobody reads is replaced to get a longer window.
+     */
+    private static synchronized JfrLiveAnalyzer liveAnalyzer(Recording r, long windowMillis) {
+        listenRecordingState();
+        JfrLiveAnalyzer analyzer = liveAnalyzers.get(r.getId());
+        if (analyzer != null && analyzer.isRunning()
+                && (analyzer.getWindow().getWindowMillis() >= windowMillis || analyzer.hasReaders())) {
+            analyzer.retain();
+            return analyzer;
+        }
+        if (analyzer != null) {
+            analyzer.stop();
+        }
+        analyzer = new JfrLiveAnalyzer(r, windowMillis, JfrLiveAnalyzer.DEFAULT_POLL_MILLIS);
+        analyzer.start();
+        analyzer.retain();
+        liveAnalyzers.put(r.getId(), analyzer);
+        return analyzer;
+    }
+
+    private static void stopLiveAnalyzer(long recordingId) {
+        JfrLiveAnalyzer analyzer = liveAnalyzers.remove(recordingId);
+        if (analyzer != null) {
+            analyzer.stop();
+        }
+    }
+
+    private static void listenRecordingState() {
+        if (recordingStateListener != null) {
+            return;
+        }
+        recordingStateListener = new FlightRecorderListener() {
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                RecordingState state = recording.getState();
+                if (state == RecordingState.STOPPED || state == RecordingState.CLOSED) {
+                    stopLiveAnalyzer(recording.getId());
+                }
+            }
+        };
+        FlightRecorder.addListener(recordingStateListener);
+    }
+
+    /**
+     * stop all live analyzers when arthas is destroyed
+     */
+    public static synchronized void destroy() {
+        if (recordingStateListener != null) {
+            FlightRecorder.removeListener(recordingStateListener);
+            recordingStateListener = null;
+        }
+        for (Long recordingId : new ArrayList<Long>(liveAnalyzers.keySet())) {
+            stopLiveAnalyzer(recordingId);
+        }
+    }
+
+    private JFRLiveModel liveModel(JfrLiveAnalyzer analyzer, long windowMillis) {
+        long now = System.currentTimeMillis();
+        JfrRollingWindow rollingWindow = analyzer.getWindow();
+        long length = Math.min(windowMillis, rollingWindow.getWindowMillis());
+        JFRLiveModel model = new JFRLiveModel();
+        model.setRecordingId(analyzer.getRecordingId());
+        model.setMode(analyzer.getMode());
+        model.setWindowMillis(length);
+        model.setEvents(rollingWindow.events(now, length));
+        model.setTopMethods(rollingWindow.top(JfrRollingWindow.METHODS, top, now, length));
+        model.setTopAllocations(rollingWindow.top(JfrRollingWindow.ALLOCATIONS, top, now, length));
+        model.setTopLocks(rollingWindow.top(JfrRollingWindow.LOCKS, top, now, length));
+        return model;
+    }
+
+    private synchronized void stopTimer() {
+        if (timer != null) {
+            timer.cancel();
+            timer.purge();
+            timer = null;
+        }
+        if (readingAnalyzer != null) {
+            readingAnalyzer.release();
+            readingAnalyzer = null;
+        }
+    }
+
     public long parseSize(String s) throws Exception {
         s = s.toLowerCase();
         if (s.endsWith("b")) {
@@ -421,7 +641,7 @@ public class JFRCommand extends AnnotatedCommand {
             super.complete(completion);
             return;
         }
-        List<String> cmd = Arrays.asList("start", "status", "dump", "stop");
+        List<String> cmd = Arrays.asList("start", "status", "dump", "stop", "live");
         CompletionUtils.complete(completion, cmd);
     }
 }
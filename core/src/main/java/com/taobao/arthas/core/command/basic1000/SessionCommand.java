@@ -36,6 +36,9 @@ public class SessionCommand extends AnnotatedCommand {
             }
             result.setTunnelServer(tunnelClient.getTunnelServerUrl());
             result.setTunnelConnected(tunnelClient.isConnected());
+            result.setTunnelActiveForwards(tunnelClient.getForwards().size());
+            result.setTunnelActiveProxyRequests(tunnelClient.getProxyClient().getActiveRequests());
+            result.setTunnelLocalConnections(tunnelClient.getProxyClient().getConnections());
         }
 
         //statUrl
@@ -1,5 +1,8 @@
 package com.taobao.arthas.core.command.express;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
 
@@ -17,10 +20,17 @@ public class OgnlExpress implements Express {
     private static final MemberAccess MEMBER_ACCESS = new DefaultMemberAccess(true);
     private static final Logger logger = LoggerFactory.getLogger(OgnlExpress.class);
     private static final ArthasObjectPropertyAccessor OBJECT_PROPERTY_ACCESSOR = new ArthasObjectPropertyAccessor();
+    private static final int MAX_PARSED_EXPRESSIONS = 32;
 
     private Object bindObject;
     private final OgnlContext context;
 
+    /**
+     * the same expressions are evaluated again and again, for example for every instance or every invocation,
+     * so the parsed trees are reused
+     */
+    private final Map<String, Object> parsedExpressions = new HashMap<String, Object>();
+
     public OgnlExpress() {
         this(CustomClassResolver.customClassResolver);
     }
@@ -33,7 +43,15 @@ public class OgnlExpress implements Express {
     @Override
     public Object get(String express) throws ExpressException {
         try {
-            return Ognl.getValue(express, context, bindObject);
+            Object tree = parsedExpressions.get(express);
+            if (tree == null) {
+                if (parsedExpressions.size() >= MAX_PARSED_EXPRESSIONS) {
+                    parsedExpressions.clear();
+                }
+                tree = Ognl.parseExpression(express);
+                parsedExpressions.put(express, tree);
+            }
+            return Ognl.getValue(tree, context, bindObject);
         } catch (Exception e) {
             logger.error("Error during evaluating the expression:", e);
             throw new ExpressException(express, e);
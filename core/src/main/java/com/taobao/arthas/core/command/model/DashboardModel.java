@@ -14,6 +14,14 @@ public class DashboardModel extends ResultModel {
     private RuntimeInfoVO runtimeInfo;
     private TomcatInfoVO tomcatInfo;
 
+    /**
+     * delta mode only, null in full snapshot mode
+     */
+    private Boolean delta;
+    private Boolean keyframe;
+    private Long sequence;
+    private List<ThreadVO> removedThreads;
+
     @Override
     public String getType() {
         return "dashboard";
@@ -58,4 +66,36 @@ public class DashboardModel extends ResultModel {
     public void setTomcatInfo(TomcatInfoVO tomcatInfo) {
         this.tomcatInfo = tomcatInfo;
     }
+
+    public Boolean getDelta() {
+        return delta;
+    }
+
+    public void setDelta(Boolean delta) {
+        this.delta = delta;
+    }
+
+    public Boolean getKeyframe() {
+        return keyframe;
+    }
+
+    public void setKeyframe(Boolean keyframe) {
+        this.keyframe = keyframe;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public List<ThreadVO> getRemovedThreads() {
+        return removedThreads;
+    }
+
+    public void setRemovedThreads(List<ThreadVO> removedThreads) {
+        this.removedThreads = removedThreads;
+    }
 }
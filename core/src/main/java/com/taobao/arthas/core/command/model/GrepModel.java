@@ -0,0 +1,58 @@
+package com.taobao.arthas.core.command.model;
+
+/**
+ * Result model for GrepCommand when searching files
+ */
+public class GrepModel extends ResultModel implements Countable {
+
+    private String file;
+    private String content;
+    private int matchCount;
+
+    public GrepModel() {
+    }
+
+    public GrepModel(String file, String content, int matchCount) {
+        this.file = file;
+        this.content = content;
+        this.matchCount = matchCount;
+    }
+
+    @Override
+    public String getType() {
+        return "grep";
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    public void setMatchCount(int matchCount) {
+        this.matchCount = matchCount;
+    }
+
+    @Override
+    public int size() {
+        if (content != null) {
+            //粗略计算行数作为item size
+            return content.length()/100 + 1;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,52 @@
+package com.taobao.arthas.core.command.model;
+
+/**
+ * One row of the live jfr view: a method, an allocated class or a monitor class.
+ */
+public class JFRLiveEntryVO {
+
+    private String name;
+
+    /**
+     * number of events
+     */
+    private long count;
+
+    /**
+     * sampled bytes for allocations, blocked nanos for locks, 0 for methods
+     */
+    private long value;
+
+    public JFRLiveEntryVO() {
+    }
+
+    public JFRLiveEntryVO(String name, long count, long value) {
+        this.name = name;
+        this.count = count;
+        this.value = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public void setValue(long value) {
+        this.value = value;
+    }
+}
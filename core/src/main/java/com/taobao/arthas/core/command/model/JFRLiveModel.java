@@ -0,0 +1,87 @@
+package com.taobao.arthas.core.command.model;
+
+import java.util.List;
+
+/**
+ * Model of 'jfr live'
+ */
+public class JFRLiveModel extends ResultModel {
+
+    private long recordingId;
+
+    /**
+     * stream or dump
+     */
+    private String mode;
+
+    private long windowMillis;
+
+    private long events;
+
+    private List<JFRLiveEntryVO> topMethods;
+
+    private List<JFRLiveEntryVO> topAllocations;
+
+    private List<JFRLiveEntryVO> topLocks;
+
+    @Override
+    public String getType() {
+        return "jfrlive";
+    }
+
+    public long getRecordingId() {
+        return recordingId;
+    }
+
+    public void setRecordingId(long recordingId) {
+        this.recordingId = recordingId;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public void setEvents(long events) {
+        this.events = events;
+    }
+
+    public List<JFRLiveEntryVO> getTopMethods() {
+        return topMethods;
+    }
+
+    public void setTopMethods(List<JFRLiveEntryVO> topMethods) {
+        this.topMethods = topMethods;
+    }
+
+    public List<JFRLiveEntryVO> getTopAllocations() {
+        return topAllocations;
+    }
+
+    public void setTopAllocations(List<JFRLiveEntryVO> topAllocations) {
+        this.topAllocations = topAllocations;
+    }
+
+    public List<JFRLiveEntryVO> getTopLocks() {
+        return topLocks;
+    }
+
+    public void setTopLocks(List<JFRLiveEntryVO> topLocks) {
+        this.topLocks = topLocks;
+    }
+}
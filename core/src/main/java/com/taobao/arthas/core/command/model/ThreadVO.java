@@ -16,6 +16,10 @@ public class ThreadVO {
     private double cpu;
     private long deltaTime;
     private long time;
+    /**
+     * allocated bytes per second during the sample interval, -1 if not supported
+     */
+    private long allocRate;
     private boolean interrupted;
     private boolean daemon;
 
@@ -86,6 +90,14 @@ public class ThreadVO {
         this.time = time;
     }
 
+    public long getAllocRate() {
+        return allocRate;
+    }
+
+    public void setAllocRate(long allocRate) {
+        this.allocRate = allocRate;
+    }
+
     public boolean isInterrupted() {
         return interrupted;
     }
@@ -42,6 +42,7 @@ import com.taobao.middleware.cli.annotations.Summary;
         "  dashboard\n" +
         "  dashboard -n 10\n" +
         "  dashboard -i 2000\n" +
+        "  dashboard --delta --keyframe-interval 20 -i 1000\n" +
         Constants.WIKI + Constants.WIKI_HOME + "dashboard")
 public class DashboardCommand extends AnnotatedCommand {
 
@@ -56,6 +57,10 @@ public class DashboardCommand extends AnnotatedCommand {
 
     private long interval = 5000;
 
+    private boolean delta = false;
+
+    private int keyframeInterval = 10;
+
     private final AtomicLong count = new AtomicLong(0);
     private volatile Timer timer;
 
@@ -71,11 +76,30 @@ public class DashboardCommand extends AnnotatedCommand {
         this.interval = interval;
     }
 
+    @Option(longName = "delta", flag = true)
+    @Description("Only emit the changed threads and metrics since the previous result, with periodic full keyframes. Only for non-tty sessions, such as the http api.")
+    public void setDelta(boolean delta) {
+        this.delta = delta;
+    }
+
+    @Option(longName = "keyframe-interval")
+    @Description("Emit a full snapshot every N results in delta mode, default is 10.")
+    public void setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
 
     @Override
     public void process(final CommandProcess process) {
 
         Session session = process.session();
+        if (delta && session.isTty()) {
+            process.end(-1, "Option --delta is only supported in non-tty sessions, such as the http api.");
+            return;
+        }
+        if (keyframeInterval <= 0) {
+            process.end(-1, "keyframe-interval should be greater than 0.");
+            return;
+        }
         timer = new Timer("Timer-for-arthas-dashboard-" + session.getSessionId(), true);
 
         // ctrl-C support
@@ -132,6 +156,14 @@ public class DashboardCommand extends AnnotatedCommand {
         return interval;
     }
 
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
     private static void addRuntimeInfo(DashboardModel dashboardModel) {
         RuntimeInfoVO runtimeInfo = new RuntimeInfoVO();
         runtimeInfo.setOsName(System.getProperty("os.name"));
@@ -218,10 +250,14 @@ public class DashboardCommand extends AnnotatedCommand {
     private class DashboardTimerTask extends TimerTask {
         private CommandProcess process;
         private ThreadSampler threadSampler;
+        private DashboardDeltaTracker deltaTracker;
 
         public DashboardTimerTask(CommandProcess process) {
             this.process = process;
             this.threadSampler = new ThreadSampler();
+            if (isDelta()) {
+                this.deltaTracker = new DashboardDeltaTracker(getKeyframeInterval());
+            }
         }
 
         @Override
@@ -257,6 +293,9 @@ public class DashboardCommand extends AnnotatedCommand {
                     logger.error("try to read tomcat info error", e);
                 }
 
+                if (deltaTracker != null) {
+                    deltaTracker.diff(dashboardModel);
+                }
                 process.appendResult(dashboardModel);
 
                 count.getAndIncrement();
@@ -0,0 +1,156 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.taobao.arthas.core.command.model.DashboardModel;
+import com.taobao.arthas.core.command.model.GcInfoVO;
+import com.taobao.arthas.core.command.model.MemoryEntryVO;
+import com.taobao.arthas.core.command.model.ThreadVO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turn full dashboard snapshots into deltas against the previous snapshot of the same consumer.
+ * <p>
+ * Every {@code keyframeInterval} results a full snapshot (keyframe) is emitted, so that a client which
+ * missed some deltas can resynchronize. Between keyframes only changed thread rows, removed thread ids
+ * and changed memory/gc sections are emitted; unchanged sections are left null and are omitted by the
+ * json serializer.
+ * <p>
+ * Not thread safe, one instance per dashboard process.
+ */
+public class DashboardDeltaTracker {
+
+    private final int keyframeInterval;
+
+    private long sequence = 0;
+    private Map<ThreadVO, ThreadVO> lastThreads;
+    private Map<String, List<MemoryEntryVO>> lastMemoryInfo;
+    private List<GcInfoVO> lastGcInfos;
+
+    public DashboardDeltaTracker(int keyframeInterval) {
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+    }
+
+    /**
+     * Convert the full snapshot to a delta in place and remember it as the new baseline.
+     */
+    public DashboardModel diff(DashboardModel snapshot) {
+        List<ThreadVO> threads = snapshot.getThreads();
+        Map<String, List<MemoryEntryVO>> memoryInfo = snapshot.getMemoryInfo();
+        List<GcInfoVO> gcInfos = snapshot.getGcInfos();
+
+        boolean keyframe = lastThreads == null || sequence % keyframeInterval == 0;
+        snapshot.setSequence(sequence++);
+        snapshot.setDelta(true);
+        snapshot.setKeyframe(keyframe);
+
+        Map<ThreadVO, ThreadVO> currentThreads = new HashMap<ThreadVO, ThreadVO>(threads == null ? 16 : threads.size() * 2);
+        if (threads != null) {
+            for (ThreadVO thread : threads) {
+                currentThreads.put(thread, thread);
+            }
+        }
+
+        if (!keyframe) {
+            List<ThreadVO> changedThreads = new ArrayList<ThreadVO>();
+            if (threads != null) {
+                for (ThreadVO thread : threads) {
+                    if (!sameThreadRow(lastThreads.get(thread), thread)) {
+                        changedThreads.add(thread);
+                    }
+                }
+            }
+            List<ThreadVO> removedThreads = new ArrayList<ThreadVO>();
+            for (ThreadVO last : lastThreads.keySet()) {
+                if (!currentThreads.containsKey(last)) {
+                    removedThreads.add(createThreadKey(last));
+                }
+            }
+            snapshot.setThreads(changedThreads);
+            snapshot.setRemovedThreads(removedThreads.isEmpty() ? null : removedThreads);
+
+            if (sameMemoryInfo(lastMemoryInfo, memoryInfo)) {
+                snapshot.setMemoryInfo(null);
+            }
+            if (sameGcInfos(lastGcInfos, gcInfos)) {
+                snapshot.setGcInfos(null);
+            }
+        }
+
+        lastThreads = currentThreads;
+        lastMemoryInfo = memoryInfo;
+        lastGcInfos = gcInfos;
+        return snapshot;
+    }
+
+    private static ThreadVO createThreadKey(ThreadVO thread) {
+        ThreadVO key = new ThreadVO();
+        key.setId(thread.getId());
+        key.setName(thread.getName());
+        return key;
+    }
+
+    static boolean sameThreadRow(ThreadVO last, ThreadVO current) {
+        if (last == null) {
+            return false;
+        }
+        return last.getState() == current.getState()
+                && last.getCpu() == current.getCpu()
+                && last.getDeltaTime() == current.getDeltaTime()
+                && last.getTime() == current.getTime()
+                && last.getAllocRate() == current.getAllocRate()
+                && last.getPriority() == current.getPriority()
+                && last.isInterrupted() == current.isInterrupted()
+                && last.isDaemon() == current.isDaemon()
+                && equals(last.getGroup(), current.getGroup());
+    }
+
+    static boolean sameMemoryInfo(Map<String, List<MemoryEntryVO>> last, Map<String, List<MemoryEntryVO>> current) {
+        if (last == null || current == null) {
+            return last == current;
+        }
+        if (last.size() != current.size()) {
+            return false;
+        }
+        for (Map.Entry<String, List<MemoryEntryVO>> entry : current.entrySet()) {
+            List<MemoryEntryVO> lastEntries = last.get(entry.getKey());
+            List<MemoryEntryVO> entries = entry.getValue();
+            if (lastEntries == null || entries == null || lastEntries.size() != entries.size()) {
+                return false;
+            }
+            for (int i = 0; i < entries.size(); i++) {
+                MemoryEntryVO a = lastEntries.get(i);
+                MemoryEntryVO b = entries.get(i);
+                if (a.getUsed() != b.getUsed() || a.getTotal() != b.getTotal() || a.getMax() != b.getMax()
+                        || !equals(a.getName(), b.getName())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    static boolean sameGcInfos(List<GcInfoVO> last, List<GcInfoVO> current) {
+        if (last == null || current == null) {
+            return last == current;
+        }
+        if (last.size() != current.size()) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            GcInfoVO a = last.get(i);
+            GcInfoVO b = current.get(i);
+            if (a.getCollectionCount() != b.getCollectionCount() || a.getCollectionTime() != b.getCollectionTime()
+                    || !equals(a.getName(), b.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
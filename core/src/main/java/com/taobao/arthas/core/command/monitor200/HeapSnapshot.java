@@ -0,0 +1,234 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次 heapAnalyze 全堆遍历的结果：所有类的实例数、占用，以及占用最大的若干对象。
+ * <p>
+ * 后续不同 classNum/objectNum 的查询，以及两个快照之间的类直方图对比，都直接使用内存中的结果，不再遍历堆。
+ */
+public class HeapSnapshot {
+
+    private final int id;
+    private final long timestamp;
+    private final int classNumber;
+    private final long objectNumber;
+    /**
+     * 占用最大的对象，按占用降序
+     */
+    private final List<ObjectEntry> topObjects;
+    /**
+     * 所有有实例的类，按占用降序
+     */
+    private final List<ClassEntry> classes;
+
+    /**
+     * 过期时间，由拍摄快照的命令的 --snapshotTtl 决定
+     */
+    private long expireTime = Long.MAX_VALUE;
+
+    public static class ClassEntry {
+        private final String name;
+        private final long instances;
+        private final long bytes;
+
+        public ClassEntry(String name, long instances, long bytes) {
+            this.name = name;
+            this.instances = instances;
+            this.bytes = bytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getInstances() {
+            return instances;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    public static class ObjectEntry {
+        private final String className;
+        private final long bytes;
+
+        public ObjectEntry(String className, long bytes) {
+            this.className = className;
+            this.bytes = bytes;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    public HeapSnapshot(int id, long timestamp, int classNumber, long objectNumber, List<ObjectEntry> topObjects,
+            List<ClassEntry> classes) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.classNumber = classNumber;
+        this.objectNumber = objectNumber;
+        this.topObjects = topObjects;
+        this.classes = classes;
+    }
+
+    /**
+     * 解析 native heapAnalyze 的输出，classNum 需要覆盖所有类
+     */
+    public static HeapSnapshot parse(int id, long timestamp, String result) {
+        int classNumber = 0;
+        long objectNumber = 0;
+        List<ObjectEntry> topObjects = new ArrayList<ObjectEntry>();
+        List<ClassEntry> classes = new ArrayList<ClassEntry>();
+
+        // 0: 头部, 1: 对象表, 2: 类表
+        int section = 0;
+        for (String line : result.split("\n")) {
+            if (line.startsWith("class_number:")) {
+                classNumber = Integer.parseInt(line.substring("class_number:".length()).trim());
+            } else if (line.startsWith("object_number:")) {
+                objectNumber = Long.parseLong(line.substring("object_number:".length()).trim());
+            } else if (line.startsWith("id") && line.endsWith("class_name")) {
+                section = line.contains("#instances") ? 2 : 1;
+            } else if (section != 0 && !line.isEmpty() && !line.startsWith("-")) {
+                String[] parts = line.split("\t");
+                if (section == 1 && parts.length >= 3) {
+                    topObjects.add(new ObjectEntry(parts[2].trim(), Long.parseLong(parts[1].trim())));
+                } else if (section == 2 && parts.length >= 4) {
+                    long instances = Long.parseLong(parts[1].trim());
+                    if (instances > 0) {
+                        classes.add(new ClassEntry(parts[3].trim(), instances, Long.parseLong(parts[2].trim())));
+                    }
+                }
+            }
+        }
+        return new HeapSnapshot(id, timestamp, classNumber, objectNumber, topObjects, classes);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getExpireTime() {
+        return expireTime;
+    }
+
+    public void setExpireTime(long expireTime) {
+        this.expireTime = expireTime;
+    }
+
+    public long getObjectNumber() {
+        return objectNumber;
+    }
+
+    public List<ObjectEntry> getTopObjects() {
+        return topObjects;
+    }
+
+    public List<ClassEntry> getClasses() {
+        return classes;
+    }
+
+    /**
+     * 与 native heapAnalyze 相同格式的输出
+     */
+    public String render(int classNum, int objectNum) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class_number: ").append(classNumber).append('\n');
+        sb.append("object_number: ").append(objectNumber).append('\n');
+
+        sb.append(String.format("\n%-4s\t%-10s\t%s\n", "id", "#bytes", "class_name"));
+        sb.append("----------------------------------------------------\n");
+        for (int i = 0; i < Math.min(objectNum, topObjects.size()); i++) {
+            ObjectEntry o = topObjects.get(i);
+            sb.append(String.format("%-4d\t%-10d\t%s\n", i + 1, o.getBytes(), o.getClassName()));
+        }
+        sb.append('\n');
+
+        if (classNum > 0) {
+            sb.append(String.format("\n%-4s\t%-12s\t%-15s\t%s\n", "id", "#instances", "#bytes", "class_name"));
+            sb.append("----------------------------------------------------\n");
+            for (int i = 0; i < Math.min(classNum, classes.size()); i++) {
+                ClassEntry c = classes.get(i);
+                sb.append(String.format("%-4d\t%-12d\t%-15d\t%s\n", i + 1, c.getInstances(), c.getBytes(),
+                        c.getName()));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 对比两个快照的类直方图，按占用增长降序输出增长最多的类
+     *
+     * @param classNum 输出的类数量
+     */
+    public static String diff(HeapSnapshot base, HeapSnapshot target, int classNum) {
+        Map<String, ClassEntry> baseClasses = new HashMap<String, ClassEntry>(base.classes.size() * 2);
+        for (ClassEntry c : base.classes) {
+            // 不同 classloader 加载的同名类合并统计
+            ClassEntry exist = baseClasses.get(c.getName());
+            baseClasses.put(c.getName(), exist == null ? c
+                    : new ClassEntry(c.getName(), exist.getInstances() + c.getInstances(),
+                            exist.getBytes() + c.getBytes()));
+        }
+        Map<String, long[]> deltas = new HashMap<String, long[]>(target.classes.size() * 2);
+        for (ClassEntry c : target.classes) {
+            long[] delta = deltas.get(c.getName());
+            if (delta == null) {
+                ClassEntry b = baseClasses.get(c.getName());
+                delta = b == null ? new long[3] : new long[] { -b.getInstances(), -b.getBytes(), 0 };
+                deltas.put(c.getName(), delta);
+            }
+            delta[0] += c.getInstances();
+            delta[1] += c.getBytes();
+            delta[2] += c.getBytes();
+        }
+
+        final List<Map.Entry<String, long[]>> grown = new ArrayList<Map.Entry<String, long[]>>();
+        for (Map.Entry<String, long[]> entry : deltas.entrySet()) {
+            if (entry.getValue()[1] > 0) {
+                grown.add(entry);
+            }
+        }
+        Collections.sort(grown, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2) {
+                return Long.compare(o2.getValue()[1], o1.getValue()[1]);
+            }
+        });
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("snapshot: #").append(base.id).append(" -> #").append(target.id).append(", ")
+                .append((target.timestamp - base.timestamp) / 1000).append("s\n");
+        sb.append("object_number: ").append(base.objectNumber).append(" -> ").append(target.objectNumber)
+                .append('\n');
+        sb.append(String.format("\n%-4s\t%-12s\t%-15s\t%-15s\t%s\n", "id", "+#instances", "+#bytes", "#bytes",
+                "class_name"));
+        sb.append("----------------------------------------------------\n");
+        for (int i = 0; i < Math.min(classNum, grown.size()); i++) {
+            Map.Entry<String, long[]> entry = grown.get(i);
+            long[] delta = entry.getValue();
+            sb.append(String.format("%-4d\t%-12d\t%-15d\t%-15d\t%s\n", i + 1, delta[0], delta[1], delta[2],
+                    entry.getKey()));
+        }
+        sb.append('\n');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.taobao.arthas.core.command.express.Express;
+import com.taobao.arthas.core.command.express.ExpressException;
+
+/**
+ * vmtool getInstances 的流式查询：按页处理实例，对每个实例执行过滤、投影和聚合，只保留结果，不保留所有实例。
+ * <p>
+ * 表达式以实例本身为 root，例如 {@code --where 'size() > 100' --groupBy 'getClass().getName()'}。
+ */
+public class InstancesQuery {
+
+    private final Express express;
+    private final String where;
+    private final String select;
+    private final String groupBy;
+    private final String sum;
+    private final boolean count;
+    /**
+     * 最多返回的实例或分组数量，小于 0 不限制
+     */
+    private final int limit;
+
+    private long scanned;
+    private long matched;
+    private final List<Object> values = new ArrayList<Object>();
+    private final Map<Object, Sum> groups = new HashMap<Object, Sum>();
+    private final Sum total = new Sum();
+
+    /**
+     * 实例数或者数值之和，全部为整数时保持 long 精度
+     */
+    static class Sum {
+        long count;
+        long longSum;
+        double doubleSum;
+        boolean floating;
+
+        void add(Object value) {
+            count++;
+            if (value == null) {
+                return;
+            }
+            if (!(value instanceof Number)) {
+                throw new IllegalArgumentException("the value of --sum is not a number: " + value);
+            }
+            Number number = (Number) value;
+            if (!floating && (number instanceof Long || number instanceof Integer || number instanceof Short
+                    || number instanceof Byte)) {
+                longSum += number.longValue();
+            } else {
+                if (!floating) {
+                    floating = true;
+                    doubleSum = longSum;
+                }
+                doubleSum += number.doubleValue();
+            }
+        }
+
+        Number value() {
+            if (floating) {
+                return doubleSum;
+            }
+            return longSum;
+        }
+    }
+
+    public InstancesQuery(Express express, String where, String select, String groupBy, String sum, boolean count,
+            int limit) {
+        this.express = express;
+        this.where = where;
+        this.select = select;
+        this.groupBy = groupBy;
+        this.sum = sum;
+        this.count = count;
+        this.limit = limit;
+    }
+
+    /**
+     * @return false 表示已经得到足够的结果，不需要继续遍历
+     */
+    public boolean accept(Object[] page) throws ExpressException {
+        for (Object instance : page) {
+            scanned++;
+            express.bind(instance);
+            if (where != null && !express.is(where)) {
+                continue;
+            }
+            matched++;
+            if (groupBy != null) {
+                Object key = express.get(groupBy);
+                Sum group = groups.get(key);
+                if (group == null) {
+                    group = new Sum();
+                    groups.put(key, group);
+                }
+                group.add(sum == null ? null : express.get(sum));
+            } else if (sum != null) {
+                total.add(express.get(sum));
+            } else if (!count) {
+                values.add(select == null ? instance : express.get(select));
+                if (limit >= 0 && values.size() >= limit) {
+                    express.bind(null);
+                    return false;
+                }
+            }
+        }
+        // 释放最后一个实例的引用
+        express.bind(null);
+        return true;
+    }
+
+    public Object result() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("scanned", scanned);
+        result.put("matched", matched);
+        if (groupBy != null) {
+            List<Map.Entry<Object, Sum>> entries = new ArrayList<Map.Entry<Object, Sum>>(groups.entrySet());
+            final boolean bySum = sum != null;
+            Collections.sort(entries, new Comparator<Map.Entry<Object, Sum>>() {
+                @Override
+                public int compare(Map.Entry<Object, Sum> o1, Map.Entry<Object, Sum> o2) {
+                    if (bySum) {
+                        return Double.compare(o2.getValue().value().doubleValue(),
+                                o1.getValue().value().doubleValue());
+                    }
+                    return Long.compare(o2.getValue().count, o1.getValue().count);
+                }
+            });
+            if (limit >= 0 && entries.size() > limit) {
+                entries = entries.subList(0, limit);
+            }
+            Map<Object, Object> grouped = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<Object, Sum> entry : entries) {
+                grouped.put(entry.getKey(), bySum ? entry.getValue().value() : entry.getValue().count);
+            }
+            result.put("groups", grouped);
+        } else if (sum != null) {
+            result.put("sum", total.value());
+        } else if (!count) {
+            return values;
+        }
+        return result;
+    }
+}
@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.CodeSource;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -20,12 +21,19 @@ import com.taobao.arthas.common.IOUtils;
 import com.taobao.arthas.common.OSUtils;
 import com.taobao.arthas.core.command.Constants;
 import com.taobao.arthas.core.command.model.ProfilerModel;
+import com.taobao.arthas.core.profiler.ContinuousProfiler;
+import com.taobao.arthas.core.profiler.JavaStackSampler;
+import com.taobao.arthas.core.profiler.ProfileReader;
+import com.taobao.arthas.core.profiler.ProfileSegmentStore;
+import com.taobao.arthas.core.profiler.StackDiff;
+import com.taobao.arthas.core.profiler.StackTrie;
 import com.taobao.arthas.core.server.ArthasBootstrap;
 import com.taobao.arthas.core.shell.cli.CliToken;
 import com.taobao.arthas.core.shell.cli.Completion;
 import com.taobao.arthas.core.shell.cli.CompletionUtils;
 import com.taobao.arthas.core.shell.command.AnnotatedCommand;
 import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.arthas.core.util.FileUtils;
 import com.taobao.middleware.cli.annotations.Argument;
 import com.taobao.middleware.cli.annotations.DefaultValue;
 import com.taobao.middleware.cli.annotations.Description;
@@ -65,6 +73,10 @@ import one.profiler.Counter;
         + "  profiler dumpCollapsed       # Dump profile in 'collapsed stacktraces' format\n"
         + "  profiler dumpTraces          # Dump collected stack traces\n"
         + "  profiler execute 'stop,file=/tmp/result.html'   # Execute an agent-compatible profiling command\n"
+        + "  profiler start --java -i 20000000   # Pure java stack sampler, used automatically when async-profiler is unavailable\n"
+        + "  profiler start --continuous 60s --retain 60 --retain-size 100m   # Rotate the samples into segments every 60s\n"
+        + "  profiler query --from -30m --to -10m -f /tmp/result.html      # Merge the segments in the range into one flame graph\n"
+        + "  profiler diff /tmp/after.collapsed --base /tmp/before.collapsed -f /tmp/diff.html   # Differential flame graph\n"
         + Constants.WIKI + Constants.WIKI_HOME + "profiler")
 //@formatter:on
 public class ProfilerCommand extends AnnotatedCommand {
@@ -260,9 +272,76 @@ public class ProfilerCommand extends AnnotatedCommand {
      */
     private boolean norm;
 
+    /**
+     * use the pure java stack sampler instead of async-profiler
+     */
+    private boolean java;
+
+    /**
+     * rotate the samples into a segment every interval, see {@link ContinuousProfiler}
+     */
+    private String continuous;
+
+    /**
+     * max number of segments kept by continuous profiling
+     */
+    private int retain = DEFAULT_RETAIN;
+
+    /**
+     * max total size of the segments kept by continuous profiling
+     */
+    private String retainSize;
+
+    /**
+     * time range of the query action
+     */
+    private String from;
+    private String to;
+
+    /**
+     * base profile of the diff action
+     */
+    private String base;
+
+    private static final int DEFAULT_RETAIN = 60;
+    private static final long DEFAULT_RETAIN_BYTES = 100 * 1024 * 1024L;
+    private static final String SEGMENT_DIR = "profiler-segments";
+
+    private static volatile ContinuousProfiler continuousProfiler;
+
     private static String libPath;
     private static AsyncProfiler profiler = null;
 
+    /**
+     * pure java fallback sampler, see {@link JavaStackSampler}
+     */
+    private static final JavaStackSampler javaSampler = new JavaStackSampler();
+    /**
+     * whether the java sampler holds the current profiling session
+     */
+    private static volatile boolean javaSamplerActive = false;
+
+    /**
+     * Stops continuous profiling and the pure java sampler, called when arthas stops. The rotations of continuous
+     * profiling run on the arthas scheduler which is shut down, and the sampler thread keeps sampling all threads
+     * and holds the arthas classloader.
+     */
+    public static void destroy() {
+        ContinuousProfiler profiler = continuousProfiler;
+        continuousProfiler = null;
+        if (profiler != null) {
+            try {
+                profiler.stop();
+            } catch (Throwable e) {
+                logger.error("stop continuous profiling error", e);
+            }
+        }
+        if (javaSampler.isRunning()) {
+            javaSampler.stop();
+        }
+        javaSamplerActive = false;
+    }
+
     static {
         String profilerSoPath = null;
         if (OSUtils.isMac()) {
@@ -403,6 +482,12 @@ public class ProfilerCommand extends AnnotatedCommand {
         this.norm = norm;
     }
 
+    @Option(longName = "java", flag = true)
+    @Description("use the pure java stack sampler instead of async-profiler, only support cpu/wall event and flat/collapsed/flamegraph format")
+    public void setJava(boolean java) {
+        this.java = java;
+    }
+
     @Option(longName = "sched", flag = true)
     @Description("group threads by scheduling policy")
     public void setSched(boolean sched) {
@@ -539,6 +624,42 @@ public class ProfilerCommand extends AnnotatedCommand {
     }
 
 
+    @Option(longName = "continuous")
+    @Description("continuous profiling, rotate the samples into a segment every TIME, e.g. 60s, 5m. Query the segments with the query action")
+    public void setContinuous(String continuous) {
+        this.continuous = continuous;
+    }
+
+    @Option(longName = "retain")
+    @Description("max number of segments kept by continuous profiling (default: 60)")
+    public void setRetain(int retain) {
+        this.retain = retain;
+    }
+
+    @Option(longName = "retain-size")
+    @Description("max total size of the segments kept by continuous profiling, e.g. 500m, 1g (default: 100m)")
+    public void setRetainSize(String retainSize) {
+        this.retainSize = retainSize;
+    }
+
+    @Option(longName = "from")
+    @Description("start of the query range: epoch ms, 'yyyy-MM-dd HH:mm:ss' or relative to now, e.g. -30m")
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    @Option(longName = "to")
+    @Description("end of the query range, same format as --from (default: now)")
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    @Option(longName = "base")
+    @Description("base profile of the diff action: collapsed stacks (.gz) or jfr file")
+    public void setBase(String base) {
+        this.base = base;
+    }
+
     private AsyncProfiler profilerInstance() {
         if (profiler != null) {
             return profiler;
@@ -591,6 +712,7 @@ public class ProfilerCommand extends AnnotatedCommand {
         load,
         execute,
         dumpCollapsed, dumpFlat, dumpTraces, getSamples,
+        query, diff,
         actions
     }
 
@@ -739,6 +861,40 @@ public class ProfilerCommand extends AnnotatedCommand {
                 return;
             }
 
+            if (this.format != null) {
+                try {
+                    flatMethods(this.format, 0);
+                } catch (IllegalArgumentException e) {
+                    process.end(1, e.getMessage());
+                    return;
+                }
+            }
+
+            if (ProfilerAction.query.equals(profilerAction)) {
+                processQuery(process);
+                return;
+            }
+
+            if (ProfilerAction.diff.equals(profilerAction)) {
+                processDiff(process);
+                return;
+            }
+
+            if (continuousProfiler != null) {
+                if (ProfilerAction.stop.equals(profilerAction)) {
+                    processContinuousStop(process);
+                    return;
+                }
+                if (ProfilerAction.status.equals(profilerAction)) {
+                    appendExecuteResult(process, continuousProfiler.status());
+                }
+            }
+
+            if (useJavaSampler(profilerAction)) {
+                processJavaSampler(process, profilerAction);
+                return;
+            }
+
             final AsyncProfiler asyncProfiler = this.profilerInstance();
 
             if (ProfilerAction.execute.equals(profilerAction)) {
@@ -748,6 +904,25 @@ public class ProfilerCommand extends AnnotatedCommand {
                 }
                 String result = execute(asyncProfiler, this.actionArg);
                 appendExecuteResult(process, result);
+            } else if (ProfilerAction.start.equals(profilerAction) && this.continuous != null) {
+                if (!checkContinuousOptions(process)) {
+                    return;
+                }
+                final String startArgs = executeArgs(ProfilerAction.start);
+                String result = execute(asyncProfiler, startArgs);
+                startContinuous(new ContinuousProfiler.SampleSource() {
+                    @Override
+                    public String rotate(boolean last) throws Exception {
+                        String collapsed = asyncProfiler.dumpCollapsed(Counter.SAMPLES);
+                        asyncProfiler.stop();
+                        if (!last) {
+                            // start resets the collected samples
+                            execute(asyncProfiler, startArgs);
+                        }
+                        return collapsed;
+                    }
+                });
+                process.appendResult(createProfilerModel(result + continuousProfiler.status()));
             } else if (ProfilerAction.start.equals(profilerAction)) {
                 // Track if file parameter was specified during start
                 boolean autoGeneratedFile = false;
@@ -864,6 +1039,401 @@ public class ProfilerCommand extends AnnotatedCommand {
         }
     }
 
+    /**
+     * Use the java sampler when it is required explicitly, when it holds the current session,
+     * or when async-profiler can not be loaded on this host.
+     */
+    private boolean useJavaSampler(ProfilerAction profilerAction) {
+        if (this.java) {
+            return true;
+        }
+        if (profilerAction == ProfilerAction.start) {
+            try {
+                this.profilerInstance();
+                return false;
+            } catch (Throwable e) {
+                logger.warn("async-profiler is not available, fallback to java sampler", e);
+                return true;
+            }
+        }
+        return javaSamplerActive;
+    }
+
+    private void processJavaSampler(final CommandProcess process, ProfilerAction profilerAction) throws IOException {
+        switch (profilerAction) {
+        case start:
+        case resume:
+            if (this.event != null && !"cpu".equals(this.event) && !"wall".equals(this.event)) {
+                process.end(1, "Java sampler only supports cpu and wall event.");
+                return;
+            }
+            if (this.loop != null || this.timeout != null || this.jfrsync != null) {
+                process.end(1, "Java sampler does not support --loop, --timeout and --jfrsync.");
+                return;
+            }
+            if (this.continuous != null && (profilerAction != ProfilerAction.start || !checkContinuousOptions(process))) {
+                if (profilerAction != ProfilerAction.start) {
+                    process.end(1, "--continuous can only be used with the start action.");
+                }
+                return;
+            }
+            if (profilerAction == ProfilerAction.start && this.file != null) {
+                fileSpecifiedAtStart = this.file;
+            }
+            long intervalMillis = this.wall != null ? this.wall : (this.interval == null ? 10 : this.interval / 1000000);
+            javaSampler.start(intervalMillis, this.jstackdepth == null ? 0 : this.jstackdepth,
+                    "wall".equals(this.event) || this.wall != null, this.threads, profilerAction == ProfilerAction.start);
+            javaSamplerActive = true;
+
+            String result = "Profiling started with java sampler\n";
+            if (!this.java) {
+                result = "async-profiler is not available, " + result;
+            }
+            if (this.continuous != null) {
+                startContinuous(new ContinuousProfiler.SampleSource() {
+                    @Override
+                    public String rotate(boolean last) {
+                        String collapsed = javaSampler.drainCollapsed();
+                        if (last) {
+                            javaSampler.stop();
+                            javaSamplerActive = false;
+                        }
+                        return collapsed;
+                    }
+                });
+                result += continuousProfiler.status();
+            }
+            ProfilerModel profilerModel = createProfilerModel(result);
+            if (this.duration != null) {
+                final String outputFile = outputFile();
+                profilerModel.setOutputFile(outputFile);
+                profilerModel.setDuration(duration);
+                ArthasBootstrap.getInstance().getScheduledExecutorService().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            logger.info("stopping java sampler ...");
+                            ProfilerModel model = processJavaSamplerStop(ProfilerAction.stop);
+                            logger.info("java sampler output file: " + model.getOutputFile());
+                        } catch (Throwable e) {
+                            logger.error("stop java sampler failure", e);
+                        }
+                    }
+                }, this.duration, TimeUnit.SECONDS);
+            }
+            process.appendResult(profilerModel);
+            break;
+        case stop:
+        case dump:
+            process.appendResult(processJavaSamplerStop(profilerAction));
+            break;
+        case status:
+            appendExecuteResult(process, javaSampler.status());
+            break;
+        case getSamples:
+            appendExecuteResult(process, javaSampler.getSamples() + "\n");
+            break;
+        case dumpCollapsed:
+            appendExecuteResult(process, javaSampler.dumpCollapsed());
+            break;
+        case dumpFlat:
+            int maxMethods = 0;
+            if (actionArg != null) {
+                try {
+                    maxMethods = Integer.parseInt(actionArg.trim());
+                } catch (NumberFormatException e) {
+                    process.end(1, "Illegal number of methods: " + actionArg + ", usage: profiler dumpFlat [N]");
+                    return;
+                }
+            }
+            appendExecuteResult(process, javaSampler.dumpFlat(maxMethods));
+            break;
+        case list:
+            appendExecuteResult(process, "Basic events:\n  cpu\n  wall\n");
+            break;
+        default:
+            process.end(1, "Java sampler does not support action: " + profilerAction);
+            return;
+        }
+        process.end();
+    }
+
+    private ProfilerModel processJavaSamplerStop(ProfilerAction profilerAction) throws IOException {
+        String outputFile;
+        if (profilerAction == ProfilerAction.stop && fileSpecifiedAtStart != null) {
+            outputFile = fileSpecifiedAtStart;
+            fileSpecifiedAtStart = null;
+        } else {
+            outputFile = outputFile();
+        }
+
+        String content = render(javaSampler.snapshot(), outputFile);
+
+        String result;
+        if (profilerAction == ProfilerAction.stop) {
+            javaSampler.stop();
+            javaSamplerActive = false;
+            result = "OK\n";
+        } else {
+            result = "Dumped " + javaSampler.getSamples() + " samples\n";
+        }
+        FileUtils.writeByteArrayToFile(new File(outputFile), content.getBytes("UTF-8"));
+
+        ProfilerModel profilerModel = createProfilerModel(result);
+        profilerModel.setOutputFile(outputFile);
+        return profilerModel;
+    }
+
+    /**
+     * Render the samples in the format of the -o option, or by the extension of the output file.
+     */
+    private String render(StackTrie trie, String outputFile) throws IOException {
+        String format = this.format;
+        if (format == null) {
+            format = outputFile.endsWith(".html") ? "flamegraph" : "collapsed";
+        }
+        if (format.startsWith("flat")) {
+            return trie.toFlat(flatMethods(format, 0));
+        } else if ("collapsed".equals(format)) {
+            return trie.toCollapsed();
+        } else if ("flamegraph".equals(format)) {
+            return trie.toFlameGraphHtml(this.title);
+        }
+        throw new IllegalArgumentException("Only flat, collapsed and flamegraph format are supported.");
+    }
+
+    private boolean checkContinuousOptions(CommandProcess process) {
+        if (continuousProfiler != null) {
+            process.end(1, "Continuous profiling is already running, stop it first.");
+            return false;
+        }
+        if (this.loop != null || this.timeout != null || this.duration != null || this.file != null
+                || this.jfrsync != null) {
+            process.end(1, "--continuous can not be used with --loop, --timeout, --duration, --file and --jfrsync.");
+            return false;
+        }
+        try {
+            if (parseMillis(this.continuous) < 1000) {
+                process.end(1, "--continuous should be at least 1s.");
+                return false;
+            }
+            if (this.retainSize != null) {
+                parseBytes(this.retainSize);
+            }
+        } catch (NumberFormatException e) {
+            process.end(1, e.getMessage());
+            return false;
+        }
+        if (this.retain <= 0) {
+            process.end(1, "--retain should be greater than 0.");
+            return false;
+        }
+        return true;
+    }
+
+    private void startContinuous(ContinuousProfiler.SampleSource source) {
+        long retainBytes = this.retainSize == null ? DEFAULT_RETAIN_BYTES : parseBytes(this.retainSize);
+        ProfileSegmentStore store = new ProfileSegmentStore(segmentDir(), this.retain, retainBytes);
+        ContinuousProfiler profiler = new ContinuousProfiler(store, source, parseMillis(this.continuous));
+        profiler.start(ArthasBootstrap.getInstance().getScheduledExecutorService());
+        continuousProfiler = profiler;
+    }
+
+    private void processContinuousStop(CommandProcess process) throws Exception {
+        ContinuousProfiler profiler = continuousProfiler;
+        continuousProfiler = null;
+        profiler.stop();
+        ProfilerModel profilerModel = createProfilerModel(
+                "Continuous profiling stopped, query the segments with: profiler query --from <time> --to <time>\n"
+                        + profiler.status());
+        profilerModel.setOutputFile(profiler.getStore().getDir().getAbsolutePath());
+        process.appendResult(profilerModel);
+        process.end();
+    }
+
+    /**
+     * Merge the segments of continuous profiling in [--from, --to] into one result.
+     */
+    private void processQuery(CommandProcess process) throws IOException {
+        ContinuousProfiler profiler = continuousProfiler;
+        ProfileSegmentStore store = profiler != null ? profiler.getStore()
+                : new ProfileSegmentStore(segmentDir(), DEFAULT_RETAIN, DEFAULT_RETAIN_BYTES);
+        long now = System.currentTimeMillis();
+        long fromMillis;
+        long toMillis;
+        try {
+            fromMillis = this.from == null ? 0 : parseTime(this.from, now);
+            toMillis = this.to == null ? now : parseTime(this.to, now);
+        } catch (IllegalArgumentException e) {
+            process.end(1, e.getMessage());
+            return;
+        }
+
+        List<ProfileSegmentStore.Segment> segments = store.query(fromMillis, toMillis);
+        if (segments.isEmpty()) {
+            process.end(1, "No profiling segments in the range, directory: " + store.getDir());
+            return;
+        }
+        StackTrie trie = store.merge(segments);
+        String outputFile = outputFile();
+        FileUtils.writeByteArrayToFile(new File(outputFile), render(trie, outputFile).getBytes("UTF-8"));
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        ProfilerModel profilerModel = createProfilerModel("Merged " + segments.size() + " segments, "
+                + trie.getTotal() + " samples, from "
+                + dateFormat.format(new Date(segments.get(0).getStart())) + " to "
+                + dateFormat.format(new Date(segments.get(segments.size() - 1).getEnd())) + "\n");
+        profilerModel.setOutputFile(outputFile);
+        process.appendResult(profilerModel);
+        process.end();
+    }
+
+    /**
+     * Compare the profile of actionArg with the profile of --base.
+     */
+    private void processDiff(CommandProcess process) throws IOException {
+        if (this.actionArg == null || this.base == null) {
+            process.end(1, "Usage: profiler diff <target file> --base <base file>");
+            return;
+        }
+        StackTrie baseTrie = ProfileReader.read(new File(this.base), this.event);
+        StackTrie targetTrie = ProfileReader.read(new File(this.actionArg), this.event);
+        StackDiff diff = new StackDiff(baseTrie, targetTrie);
+
+        String format = this.format;
+        int maxMethods = 20;
+        if (format != null && format.startsWith("flat")) {
+            maxMethods = flatMethods(format, maxMethods);
+            format = null;
+        }
+        String outputFile = outputFile();
+        if (format == null) {
+            format = outputFile.endsWith(".html") ? "flamegraph" : "collapsed";
+        }
+        String content;
+        if ("collapsed".equals(format)) {
+            content = diff.toCollapsed();
+        } else if ("flamegraph".equals(format)) {
+            content = diff.toFlameGraphHtml(this.title);
+        } else {
+            process.end(1, "The diff action only supports flat, collapsed and flamegraph format.");
+            return;
+        }
+        FileUtils.writeByteArrayToFile(new File(outputFile), content.getBytes("UTF-8"));
+
+        ProfilerModel profilerModel = createProfilerModel(diff.toTable(maxMethods));
+        profilerModel.setOutputFile(outputFile);
+        process.appendResult(profilerModel);
+        process.end();
+    }
+
+    private static File segmentDir() {
+        File outputPath = ArthasBootstrap.getInstance().getOutputPath();
+        if (outputPath != null) {
+            return new File(outputPath, SEGMENT_DIR);
+        }
+        return new File(System.getProperty("java.io.tmpdir"), "arthas-" + SEGMENT_DIR);
+    }
+
+    /**
+     * @return N of the format flat=N, or the default value for the other formats
+     */
+    static int flatMethods(String format, int defaultValue) {
+        if (!format.startsWith("flat=")) {
+            return defaultValue;
+        }
+        String value = format.substring("flat=".length()).trim();
+        try {
+            int maxMethods = Integer.parseInt(value);
+            if (maxMethods >= 0) {
+                return maxMethods;
+            }
+        } catch (NumberFormatException e) {
+            // report below
+        }
+        throw new IllegalArgumentException("Illegal number of methods: " + value + ", usage: -o flat[=N]");
+    }
+
+    /**
+     * @param value number with an optional unit: s, m, h, d, seconds by default
+     */
+    static long parseMillis(String value) {
+        String s = value.trim().toLowerCase();
+        long unit = 1000;
+        if (s.endsWith("ms")) {
+            unit = 1;
+            s = s.substring(0, s.length() - 2);
+        } else if (s.endsWith("s")) {
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("m")) {
+            unit = 60 * 1000L;
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("h")) {
+            unit = 60 * 60 * 1000L;
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("d")) {
+            unit = 24 * 60 * 60 * 1000L;
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return Long.parseLong(s.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("'" + value + "' is not a valid time, e.g. 30s, 5m, 1h.");
+        }
+    }
+
+    /**
+     * @param value number with an optional unit: k, m, g, bytes by default
+     */
+    static long parseBytes(String value) {
+        String s = value.trim().toLowerCase();
+        if (s.endsWith("b")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        long unit = 1;
+        if (s.endsWith("k")) {
+            unit = 1024;
+        } else if (s.endsWith("m")) {
+            unit = 1024 * 1024;
+        } else if (s.endsWith("g")) {
+            unit = 1024 * 1024 * 1024L;
+        }
+        if (unit != 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return Long.parseLong(s.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("'" + value + "' is not a valid size, e.g. 500m, 1g.");
+        }
+    }
+
+    /**
+     * @param value epoch ms, 'yyyy-MM-dd HH:mm:ss', or a time relative to now, e.g. -30m
+     */
+    static long parseTime(String value, long now) {
+        String s = value.trim();
+        if (s.startsWith("-")) {
+            return now - parseMillis(s.substring(1));
+        }
+        boolean digits = !s.isEmpty();
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                digits = false;
+                break;
+            }
+        }
+        if (digits) {
+            return Long.parseLong(s);
+        }
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(s).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(
+                    "'" + value + "' is not a valid time, use epoch ms, 'yyyy-MM-dd HH:mm:ss' or -30m.");
+        }
+    }
+
     private ProfilerModel processStop(AsyncProfiler asyncProfiler, ProfilerAction profilerAction) throws IOException {
         String outputFile = null;
 
@@ -40,6 +40,7 @@ import java.util.Set;
         "  thread 51\n" +
         "  thread -n -1\n" +
         "  thread -n 5\n" +
+        "  thread -n 5 --alloc\n" +
         "  thread -b\n" +
         "  thread -i 2000\n" +
         "  thread --state BLOCKED\n" +
@@ -57,6 +58,7 @@ public class ThreadCommand extends AnnotatedCommand {
     private boolean lockedMonitors = false;
     private boolean lockedSynchronizers = false;
     private boolean all = false;
+    private boolean alloc = false;
 
     static {
         states = new HashSet<String>(State.values().length);
@@ -83,6 +85,12 @@ public class ThreadCommand extends AnnotatedCommand {
         this.topNBusy = topNBusy;
     }
 
+    @Option(longName = "alloc", flag = true)
+    @Description("Order threads by allocated bytes per second during the sample interval instead of cpu usage.")
+    public void setAlloc(boolean alloc) {
+        this.alloc = alloc;
+    }
+
     @Option(shortName = "b", longName = "include-blocking-thread", flag = true)
     @Description("Find the thread who is holding a lock that blocks the most number of threads.")
     public void setFindMostBlockingThread(boolean findMostBlockingThread) {
@@ -164,9 +172,8 @@ public class ThreadCommand extends AnnotatedCommand {
         //thread stats
         ThreadSampler threadSampler = new ThreadSampler();
         threadSampler.setIncludeInternalThreads(includeInternalThreads);
-        threadSampler.sample(resultThreads);
-        threadSampler.pause(sampleInterval);
-        List<ThreadVO> threadStats = threadSampler.sample(resultThreads);
+        threadSampler.setSortByAlloc(alloc);
+        List<ThreadVO> threadStats = threadSampler.sample(resultThreads, sampleInterval);
 
         process.appendResult(new ThreadModel(threadStats, stateCountMap, all));
         return ExitStatus.success();
@@ -183,18 +190,8 @@ public class ThreadCommand extends AnnotatedCommand {
 
     private ExitStatus processTopBusyThreads(CommandProcess process) {
         ThreadSampler threadSampler = new ThreadSampler();
-        threadSampler.sample(ThreadUtil.getThreads());
-        threadSampler.pause(sampleInterval);
-        List<ThreadVO> threadStats = threadSampler.sample(ThreadUtil.getThreads());
-
-        int limit = Math.min(threadStats.size(), topNBusy);
-
-        List<ThreadVO> topNThreads = null;
-        if (limit > 0) {
-            topNThreads = threadStats.subList(0, limit);
-        } else { // -1 for all threads
-            topNThreads = threadStats;
-        }
+        threadSampler.setSortByAlloc(alloc);
+        List<ThreadVO> topNThreads = threadSampler.sampleTop(topNBusy > 0 ? topNBusy : -1, sampleInterval);
 
         List<Long> tids = new ArrayList<Long>(topNThreads.size());
         for (ThreadVO thread : topNThreads) {
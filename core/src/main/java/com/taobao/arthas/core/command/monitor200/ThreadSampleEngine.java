@@ -0,0 +1,576 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.core.command.model.ThreadVO;
+import com.taobao.arthas.core.util.ThreadUtil;
+import sun.management.HotspotThreadMBean;
+import sun.management.ManagementFactoryHelper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM wide background thread cpu sampler, shared by 'thread', 'dashboard' and the mcp tools.
+ * <p>
+ * A single daemon thread samples the cpu time and allocated bytes of all threads every {@link #SAMPLE_PERIOD_MILLIS} ms
+ * into a ring buffer of immutable {@link Round}s, which only hold primitive arrays keyed by thread id.
+ * Viewers compute cpu usage by diffing two rounds, so concurrent viewers cost nothing extra and a query
+ * whose interval is already covered by the history is answered without waiting.
+ * <p>
+ * The sampler thread is started on demand and stops itself after {@link #IDLE_TIMEOUT_MILLIS} ms without queries.
+ */
+public class ThreadSampleEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadSampleEngine.class);
+
+    public static final long SAMPLE_PERIOD_MILLIS = 200;
+    public static final int HISTORY_CAPACITY = 64;
+    public static final long IDLE_TIMEOUT_MILLIS = 60 * 1000;
+
+    /**
+     * the thread is not present in the round
+     */
+    static final long MISSING = Long.MIN_VALUE;
+
+    private static final ThreadSampleEngine INSTANCE = new ThreadSampleEngine();
+
+    private static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    /**
+     * com.sun.management.ThreadMXBean supports bulk cpu time / allocated bytes queries, null if not available
+     */
+    private static com.sun.management.ThreadMXBean bulkThreadMXBean;
+    private static HotspotThreadMBean hotspotThreadMBean;
+    private static volatile boolean hotspotThreadMBeanEnable = true;
+
+    static {
+        try {
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                bulkThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            }
+        } catch (Throwable e) {
+            // com.sun.management is not available
+        }
+    }
+
+    private final Round[] history = new Round[HISTORY_CAPACITY];
+    /**
+     * total number of rounds stored, the latest round is at (count - 1) % capacity
+     */
+    private long count = 0;
+
+    private Thread samplerThread;
+    private volatile long lastAccessMillis;
+
+    public static ThreadSampleEngine getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Stop the sampler thread, called when arthas server is destroyed.
+     */
+    public static void destroy() {
+        INSTANCE.stop();
+    }
+
+    /**
+     * Return the latest round, sample one synchronously if there is no history yet.
+     */
+    public Round latestRound() {
+        ensureRunning();
+        synchronized (this) {
+            if (count > 0) {
+                return history[(int) ((count - 1) % HISTORY_CAPACITY)];
+            }
+        }
+        return sampleNow();
+    }
+
+    /**
+     * Return two rounds which are at least intervalMillis apart, the newer one being the latest round.
+     * If the history is not long enough yet, wait for the rest of the interval.
+     *
+     * @return [older, newer]
+     */
+    public Round[] window(long intervalMillis) {
+        Round newer = latestRound();
+        long intervalNanos = intervalMillis * 1000000;
+        Round oldest;
+        synchronized (this) {
+            long first = Math.max(0, count - HISTORY_CAPACITY);
+            oldest = history[(int) (first % HISTORY_CAPACITY)];
+            for (long i = count - 1; i >= first; --i) {
+                Round round = history[(int) (i % HISTORY_CAPACITY)];
+                if (newer.timeNanos - round.timeNanos >= intervalNanos) {
+                    return new Round[] { round, newer };
+                }
+            }
+        }
+        if (oldest == null) {
+            oldest = newer;
+        }
+
+        long waitNanos = intervalNanos - (System.nanoTime() - oldest.timeNanos);
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new Round[] { oldest, sampleNow() };
+    }
+
+    /**
+     * Sample all threads synchronously and append the round to the history.
+     */
+    public Round sampleNow() {
+        Round round = collect();
+        synchronized (this) {
+            history[(int) (count % HISTORY_CAPACITY)] = round;
+            count++;
+        }
+        return round;
+    }
+
+    /**
+     * Compute cpu usage of the threads between two rounds, sorted by delta cpu time desc.
+     * If older is null, only the total cpu time is filled, sorted by total cpu time desc.
+     */
+    public List<ThreadVO> cpuUsage(Round older, Round newer, Collection<ThreadVO> originThreads,
+            boolean includeInternalThreads) {
+        return cpuUsage(older, newer, originThreads, includeInternalThreads, false);
+    }
+
+    /**
+     * Compute cpu usage and allocation rate of the threads between two rounds.
+     *
+     * @param sortByAlloc sort by allocation rate instead of delta cpu time
+     */
+    public List<ThreadVO> cpuUsage(Round older, Round newer, Collection<ThreadVO> originThreads,
+            boolean includeInternalThreads, boolean sortByAlloc) {
+        List<ThreadVO> threads = new ArrayList<ThreadVO>(originThreads);
+        if (includeInternalThreads) {
+            for (String name : newer.internalNames) {
+                threads.add(createThreadVO(name));
+            }
+        }
+
+        int size = threads.size();
+        long[] deltas = new long[size];
+        long[] times = new long[size];
+        long[] allocDeltas = new long[size];
+        for (int i = 0; i < size; ++i) {
+            ThreadVO thread = threads.get(i);
+            long time1;
+            long time2;
+            if (thread.getId() > 0) {
+                time2 = newer.cpuTime(thread.getId());
+                if (time2 == MISSING) {
+                    // started after the newer round
+                    time2 = threadMXBean.getThreadCpuTime(thread.getId());
+                }
+                time1 = older == null ? MISSING : older.cpuTime(thread.getId());
+                allocDeltas[i] = older == null ? -1
+                        : allocDelta(older.allocatedBytes(thread.getId()), newer.allocatedBytes(thread.getId()));
+            } else {
+                time2 = newer.internalCpuTime(thread.getName());
+                time1 = older == null ? MISSING : older.internalCpuTime(thread.getName());
+                allocDeltas[i] = -1;
+            }
+            times[i] = time2;
+            deltas[i] = older == null ? time2 : delta(time1, time2);
+        }
+
+        long sampleIntervalNanos = older == null ? 0 : newer.timeNanos - older.timeNanos;
+        // Sort by CPU time : should be a rendering hint...
+        int[] order = topIndexes(sortByAlloc ? allocDeltas : deltas, size);
+        List<ThreadVO> result = new ArrayList<ThreadVO>(size);
+        for (int index : order) {
+            ThreadVO thread = threads.get(index);
+            fill(thread, times[index], older == null ? -1 : deltas[index], allocDeltas[index], sampleIntervalNanos);
+            result.add(thread);
+        }
+        return result;
+    }
+
+    /**
+     * Find the top n busy threads between two rounds without creating objects for the other threads.
+     * Internal jvm threads are not included.
+     *
+     * @param n the number of threads, -1 for all threads
+     * @param sortByAlloc order by allocation rate instead of delta cpu time
+     */
+    public List<ThreadVO> topThreads(Round older, Round newer, int n, boolean sortByAlloc) {
+        int size = newer.ids.length;
+        long[] deltas = new long[size];
+        long[] allocDeltas = new long[size];
+        for (int i = 0; i < size; ++i) {
+            long id = newer.ids[i];
+            deltas[i] = delta(older.cpuTime(id), newer.cpuTimes[i]);
+            allocDeltas[i] = allocDelta(older.allocatedBytes(id),
+                    newer.allocatedBytes == null ? -1 : newer.allocatedBytes[i]);
+        }
+        long[] keys = sortByAlloc ? allocDeltas : deltas;
+        int limit = n < 0 ? size : Math.min(n, size);
+        long sampleIntervalNanos = newer.timeNanos - older.timeNanos;
+        List<ThreadVO> result = new ArrayList<ThreadVO>(limit);
+        // threads terminated since the round are found only after the partial sort, refill from the
+        // remaining threads, which all sort after the ones already selected
+        boolean[] taken = new boolean[size];
+        int remaining = size;
+        while (result.size() < limit && remaining > 0) {
+            int[] order = topIndexes(keys, limit - result.size(), taken);
+            long[] topIds = new long[order.length];
+            for (int i = 0; i < order.length; ++i) {
+                topIds[i] = newer.ids[order[i]];
+            }
+            Map<Long, ThreadVO> threads = ThreadUtil.getThreads(topIds);
+
+            for (int index : order) {
+                taken[index] = true;
+                remaining--;
+                ThreadVO thread = threads.get(newer.ids[index]);
+                if (thread == null) {
+                    // terminated
+                    continue;
+                }
+                fill(thread, newer.cpuTimes[index], deltas[index], allocDeltas[index], sampleIntervalNanos);
+                result.add(thread);
+            }
+        }
+        return result;
+    }
+
+    private static long delta(long time1, long time2) {
+        if (time1 == MISSING) {
+            time1 = 0;
+        }
+        if (time1 == -1) {
+            time1 = time2;
+        } else if (time2 == -1) {
+            time2 = time1;
+        }
+        return time2 - time1;
+    }
+
+    /**
+     * @return allocated bytes between two rounds, -1 if not supported
+     */
+    private static long allocDelta(long bytes1, long bytes2) {
+        if (bytes2 < 0) {
+            return -1;
+        }
+        if (bytes1 == MISSING) {
+            // started between two rounds
+            bytes1 = 0;
+        }
+        return bytes1 < 0 ? -1 : Math.max(0, bytes2 - bytes1);
+    }
+
+    /**
+     * @param delta -1 if only the total time is known
+     * @param allocDelta -1 if allocated bytes is not supported
+     */
+    private static void fill(ThreadVO thread, long time, long delta, long allocDelta, long sampleIntervalNanos) {
+        //nanos to mills
+        thread.setTime(time / 1000000);
+        if (delta >= 0) {
+            double cpu = sampleIntervalNanos == 0 ? 0 : (Math.rint(delta * 10000.0 / sampleIntervalNanos) / 100.0);
+            thread.setCpu(cpu);
+            thread.setDeltaTime(delta / 1000000);
+        }
+        if (allocDelta < 0) {
+            thread.setAllocRate(-1);
+        } else {
+            // bytes per second
+            thread.setAllocRate(sampleIntervalNanos == 0 ? 0 : (long) (allocDelta * 1000000000.0 / sampleIntervalNanos));
+        }
+    }
+
+    /**
+     * Partial sort: return the indexes of the n largest keys, ordered by key desc.
+     * Uses a bounded min-heap of indexes, O(size * log(n)) without boxing.
+     */
+    static int[] topIndexes(long[] keys, int n) {
+        return topIndexes(keys, n, null);
+    }
+
+    /**
+     * @param skip indexes marked true are not selected, may be null
+     */
+    static int[] topIndexes(long[] keys, int n, boolean[] skip) {
+        int size = keys.length;
+        if (skip != null) {
+            int candidates = 0;
+            for (boolean skipped : skip) {
+                if (!skipped) {
+                    candidates++;
+                }
+            }
+            n = Math.min(n, candidates);
+        }
+        if (n > size) {
+            n = size;
+        }
+        if (n <= 0) {
+            return new int[0];
+        }
+        int[] heap = new int[n];
+        int heapSize = 0;
+        for (int i = 0; i < size; ++i) {
+            if (skip != null && skip[i]) {
+                continue;
+            }
+            if (heapSize < n) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize, keys);
+                heapSize++;
+            } else if (keys[i] > keys[heap[0]]) {
+                heap[0] = i;
+                siftDown(heap, 0, heapSize, keys);
+            }
+        }
+        // pop the min repeatedly, fill the result from the tail
+        int[] result = new int[n];
+        while (heapSize > 0) {
+            result[heapSize - 1] = heap[0];
+            heapSize--;
+            heap[0] = heap[heapSize];
+            siftDown(heap, 0, heapSize, keys);
+        }
+        return result;
+    }
+
+    /**
+     * heap order: smaller key first, for equal keys the larger index first, so that ties keep the input order
+     */
+    private static boolean less(long[] keys, int a, int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && a > b);
+    }
+
+    private static void siftUp(int[] heap, int pos, long[] keys) {
+        int index = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!less(keys, index, heap[parent])) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = index;
+    }
+
+    private static void siftDown(int[] heap, int pos, int heapSize, long[] keys) {
+        if (heapSize == 0) {
+            return;
+        }
+        int index = heap[pos];
+        int half = heapSize >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < heapSize && less(keys, heap[right], heap[child])) {
+                child = right;
+            }
+            if (!less(keys, heap[child], index)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = index;
+    }
+
+    private synchronized void ensureRunning() {
+        lastAccessMillis = System.currentTimeMillis();
+        if (samplerThread != null) {
+            return;
+        }
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "arthas-thread-sampler");
+        thread.setDaemon(true);
+        samplerThread = thread;
+        thread.start();
+    }
+
+    private void loop() {
+        while (true) {
+            synchronized (this) {
+                if (samplerThread != Thread.currentThread()) {
+                    return;
+                }
+                if (System.currentTimeMillis() - lastAccessMillis > IDLE_TIMEOUT_MILLIS) {
+                    // nobody is watching, drop the history so that the next viewer starts fresh
+                    samplerThread = null;
+                    clearHistory();
+                    return;
+                }
+            }
+            try {
+                sampleNow();
+            } catch (Throwable e) {
+                logger.error("sample thread cpu time error", e);
+            }
+            try {
+                Thread.sleep(SAMPLE_PERIOD_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void stop() {
+        Thread thread = samplerThread;
+        samplerThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        clearHistory();
+    }
+
+    private void clearHistory() {
+        Arrays.fill(history, null);
+        count = 0;
+    }
+
+    private static Round collect() {
+        return collect(bulkThreadMXBean != null);
+    }
+
+    static Round collect(boolean bulk) {
+        long[] ids = threadMXBean.getAllThreadIds();
+        Arrays.sort(ids);
+        long[] cpuTimes = null;
+        if (bulk) {
+            try {
+                // one call for all threads instead of one call per thread
+                cpuTimes = bulkThreadMXBean.getThreadCpuTime(ids);
+            } catch (Throwable e) {
+                logger.info("bulk getThreadCpuTime is not supported, fallback to per thread query", e);
+                bulkThreadMXBean = null;
+            }
+        }
+        if (cpuTimes == null) {
+            cpuTimes = new long[ids.length];
+            for (int i = 0; i < ids.length; ++i) {
+                cpuTimes[i] = threadMXBean.getThreadCpuTime(ids[i]);
+            }
+        }
+
+        long[] allocatedBytes = null;
+        if (bulkThreadMXBean != null) {
+            try {
+                if (bulkThreadMXBean.isThreadAllocatedMemorySupported()
+                        && bulkThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                    allocatedBytes = bulkThreadMXBean.getThreadAllocatedBytes(ids);
+                }
+            } catch (Throwable e) {
+                // ignore, allocated bytes is optional
+            }
+        }
+
+        String[] internalNames = new String[0];
+        long[] internalCpuTimes = new long[0];
+        Map<String, Long> internalThreadCpuTimes = getInternalThreadCpuTimes();
+        if (internalThreadCpuTimes != null) {
+            internalNames = new String[internalThreadCpuTimes.size()];
+            internalCpuTimes = new long[internalThreadCpuTimes.size()];
+            int i = 0;
+            for (Map.Entry<String, Long> entry : internalThreadCpuTimes.entrySet()) {
+                internalNames[i] = entry.getKey();
+                internalCpuTimes[i] = entry.getValue();
+                i++;
+            }
+        }
+        return new Round(System.nanoTime(), ids, cpuTimes, allocatedBytes, internalNames, internalCpuTimes);
+    }
+
+    private static Map<String, Long> getInternalThreadCpuTimes() {
+        if (hotspotThreadMBeanEnable) {
+            try {
+                if (hotspotThreadMBean == null) {
+                    hotspotThreadMBean = ManagementFactoryHelper.getHotspotThreadMBean();
+                }
+                return hotspotThreadMBean.getInternalThreadCpuTimes();
+            } catch (Throwable e) {
+                //ignore ex
+                hotspotThreadMBeanEnable = false;
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    static ThreadVO createThreadVO(String name) {
+        ThreadVO threadVO = new ThreadVO();
+        threadVO.setId(-1);
+        threadVO.setName(name);
+        threadVO.setPriority(-1);
+        threadVO.setDaemon(true);
+        threadVO.setInterrupted(false);
+        return threadVO;
+    }
+
+    /**
+     * One immutable sampling round. Cpu times are in nanos, -1 if not supported for the thread.
+     * Allocated bytes is null if not supported by the jvm.
+     */
+    public static final class Round {
+        final long timeNanos;
+        /**
+         * sorted asc
+         */
+        final long[] ids;
+        final long[] cpuTimes;
+        final long[] allocatedBytes;
+        final String[] internalNames;
+        final long[] internalCpuTimes;
+
+        Round(long timeNanos, long[] ids, long[] cpuTimes, long[] allocatedBytes, String[] internalNames,
+                long[] internalCpuTimes) {
+            this.timeNanos = timeNanos;
+            this.ids = ids;
+            this.cpuTimes = cpuTimes;
+            this.allocatedBytes = allocatedBytes;
+            this.internalNames = internalNames;
+            this.internalCpuTimes = internalCpuTimes;
+        }
+
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        long cpuTime(long id) {
+            int index = Arrays.binarySearch(ids, id);
+            return index < 0 ? MISSING : cpuTimes[index];
+        }
+
+        long allocatedBytes(long id) {
+            if (allocatedBytes == null) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(ids, id);
+            return index < 0 ? MISSING : allocatedBytes[index];
+        }
+
+        long internalCpuTime(String name) {
+            for (int i = 0; i < internalNames.length; ++i) {
+                if (internalNames[i].equals(name)) {
+                    return internalCpuTimes[i];
+                }
+            }
+            return MISSING;
+        }
+    }
+}
@@ -8,6 +8,8 @@ import java.security.CodeSource;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
@@ -36,6 +38,7 @@ import com.taobao.middleware.cli.annotations.Name;
 import com.taobao.middleware.cli.annotations.Option;
 import com.taobao.middleware.cli.annotations.Summary;
 
+import arthas.InstanceCursor;
 import arthas.VmTool;
 
 /**
@@ -53,10 +56,16 @@ import arthas.VmTool;
         + "  vmtool --action getInstances --className demo.MathGame --express 'instances[0]'\n"
         + "  vmtool --action getInstances --className demo.MathGame -x 2\n"
         + "  vmtool --action getInstances --className java.lang.String --limit 10\n"
+        + "  vmtool --action getInstances --className java.lang.String --where 'length() > 1000' --select 'substring(0, 20)'\n"
+        + "  vmtool --action getInstances --className java.util.HashMap --groupBy 'size()' --limit 20\n"
+        + "  vmtool --action getInstances --className java.util.ArrayList --sum 'size()' --pageSize 5000\n"
         + "  vmtool --action getInstances --classLoaderClass org.springframework.boot.loader.LaunchedURLClassLoader --className org.springframework.context.ApplicationContext\n"
         + "  vmtool --action forceGc\n"
         + "  vmtool --action heapAnalyze --classNum 20 --objectNum 20\n"
+        + "  vmtool --action heapAnalyze --snapshot 1 --classNum 50\n"
+        + "  vmtool --action heapDiff --snapshot 1,2 --classNum 20\n"
         + "  vmtool --action referenceAnalyze --className java.lang.String --objectNum 20 --backtraceNum 2\n"
+        + "  vmtool --action retainedAnalyze --classNum 20 --objectNum 20 --timeout 30 --memoryLimit 256\n"
         + "  vmtool --action interruptThread -t 1\n"
         + "  vmtool --action mallocTrim\n"
         + "  vmtool --action mallocStats\n"
@@ -96,10 +105,43 @@ public class VmToolCommand extends AnnotatedCommand {
      */
     private int backtraceNum = 2;
 
+    /**
+     * getInstances 的流式查询，见 {@link InstancesQuery}
+     */
+    private String where;
+    private String select;
+    private String groupBy;
+    private String sum;
+    private boolean count;
+    private int pageSize = 1000;
+
+    /**
+     * heap snapshot 的 id，heapDiff 时可以用逗号分隔两个 id
+     */
+    private String snapshot;
+
+    /**
+     * retainedAnalyze 的时间预算（秒）和引用图的 native 内存预算（MB），超过后在已遍历的部分引用图上近似计算
+     */
+    private int timeout = 60;
+    private int memoryLimit = 512;
+
     private String libPath;
     private static String defaultLibPath;
     private static VmTool vmTool = null;
 
+    /**
+     * 本次 heapAnalyze 拍摄的快照在内存中保留的秒数
+     */
+    private long snapshotTtl = 600;
+
+    /**
+     * heapAnalyze 每次全堆遍历的结果，按时间升序，最多保留 MAX_HEAP_SNAPSHOTS 个，每个快照超过拍摄时的 snapshotTtl 后丢弃
+     */
+    private static final LinkedList<HeapSnapshot> heapSnapshots = new LinkedList<HeapSnapshot>();
+    private static final int MAX_HEAP_SNAPSHOTS = 10;
+    private static int heapSnapshotCounter = 0;
+
     static {
         String libName = VmToolUtils.detectLibName();
         if (libName != null) {
@@ -175,6 +217,67 @@ public class VmToolCommand extends AnnotatedCommand {
         this.backtraceNum = backtraceNum;
     }
 
+    @Option(longName = "where", required = false)
+    @Description("The ognl filter evaluated on every instance, e.g. 'size() > 100'. The instances are iterated in pages.")
+    public void setWhere(String where) {
+        this.where = where;
+    }
+
+    @Option(longName = "select", required = false)
+    @Description("The ognl expression evaluated on every matched instance, the results are returned instead of the instances.")
+    public void setSelect(String select) {
+        this.select = select;
+    }
+
+    @Option(longName = "groupBy", required = false)
+    @Description("Count the matched instances by the value of the ognl expression, or sum --sum by it.")
+    public void setGroupBy(String groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    @Option(longName = "sum", required = false)
+    @Description("Sum the numeric value of the ognl expression of the matched instances.")
+    public void setSum(String sum) {
+        this.sum = sum;
+    }
+
+    @Option(longName = "count", flag = true)
+    @Description("Count the matched instances.")
+    public void setCount(boolean count) {
+        this.count = count;
+    }
+
+    @Option(longName = "pageSize", required = false)
+    @Description("The number of instances held at a time when iterating in pages, default value is 1000. "
+            + "Older native libraries (e.g. the prebuilt windows/mac ones) do not support paging and load all instances at once.")
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    @Option(longName = "snapshot", required = false)
+    @Description("The id of the heap snapshot to be analyzed, heapDiff accepts two ids separated by comma.")
+    public void setSnapshot(String snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Option(longName = "snapshotTtl", required = false)
+    @Description("The seconds that the heap snapshot taken by heapAnalyze is kept in memory, default value is 600.")
+    public void setSnapshotTtl(long snapshotTtl) {
+        this.snapshotTtl = snapshotTtl;
+    }
+
+    @Option(longName = "timeout", required = false)
+    @Description("The seconds that retainedAnalyze can spend, the result is approximated on the walked part of the heap after that, default value is 60.")
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    @Option(longName = "memoryLimit", required = false)
+    @Description("The MB of native memory that retainedAnalyze can use for the reference graph, default value is 512.")
+    public void setMemoryLimit(int memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
     @Option(longName = "libPath")
     @Description("The specify lib path.")
     public void setLibPath(String path) {
@@ -194,7 +297,7 @@ public class VmToolCommand extends AnnotatedCommand {
     }
 
     public enum VmToolAction {
-        getInstances, forceGc, heapAnalyze, referenceAnalyze, interruptThread, mallocTrim, mallocStats
+        getInstances, forceGc, heapAnalyze, heapDiff, referenceAnalyze, retainedAnalyze, interruptThread, mallocTrim, mallocStats
     }
 
     @Override
@@ -248,7 +351,15 @@ public class VmToolCommand extends AnnotatedCommand {
                     process.end(-1, "Found more than one class: " + matchedClasses + ", please specify classloader with '-c <classloader hash>'");
                     return;
                 } else {
-                    if (VmToolAction.getInstances.equals(action)) {
+                    if (VmToolAction.getInstances.equals(action) && isInstancesQuery()) {
+                        if (express != null) {
+                            process.end(-1, "The express option can not be used with --where, --select, --groupBy, --sum and --count.");
+                            return;
+                        }
+                        Object result = queryInstances(matchedClasses.get(0), classLoader);
+                        process.appendResult(new VmToolModel().setValue(new ObjectVO(result, expand)));
+                        process.end();
+                    } else if (VmToolAction.getInstances.equals(action)) {
                         Object[] instances = vmToolInstance().getInstances(matchedClasses.get(0), limit);
                         Object value = instances;
                         if (express != null) {
@@ -277,12 +388,87 @@ public class VmToolCommand extends AnnotatedCommand {
                 process.end();
                 return;
             } else if (VmToolAction.heapAnalyze.equals(action)) {
-                String result = vmToolInstance().heapAnalyze(classNum, objectNum);
+                String result;
+                if (snapshot != null) {
+                    Integer id = parseSnapshotId(snapshot);
+                    if (id == null) {
+                        process.end(-1, "Illegal snapshot id: " + snapshot + ", usage: --snapshot <id>");
+                        return;
+                    }
+                    HeapSnapshot heapSnapshot = findHeapSnapshot(id);
+                    if (heapSnapshot == null) {
+                        process.end(-1, "Can not find heap snapshot: " + snapshot + ", " + heapSnapshotIds());
+                        return;
+                    }
+                    result = "snapshot: #" + heapSnapshot.getId() + "\n" + heapSnapshot.render(classNum, objectNum);
+                } else {
+                    // 统计所有类，保存为快照，后续查询和 heapDiff 不需要再次遍历堆。
+                    // 旧版本 native 库对类排序是 O(n^2) 的，只统计 classNum 个类，快照也只包含这些类
+                    boolean allClasses = vmToolInstance().nativeVersion() >= 1;
+                    result = vmToolInstance().heapAnalyze(allClasses ? Integer.MAX_VALUE : classNum, objectNum);
+                    if (!result.startsWith("ERROR")) {
+                        HeapSnapshot heapSnapshot = saveHeapSnapshot(result, snapshotTtl);
+                        result = "snapshot: #" + heapSnapshot.getId()
+                                + (allClasses ? "" : " (top " + classNum
+                                        + " classes only, the vmtool native library is outdated)")
+                                + "\n" + heapSnapshot.render(classNum, objectNum);
+                    }
+                }
                 // 同时使用 write 和 appendResult，以便 TTY 和 MCP 都能获取结果
                 process.write(result);
                 process.appendResult(new VmToolModel().setHeapAnalyzeResult(result));
                 process.end();
                 return;
+            } else if (VmToolAction.heapDiff.equals(action)) {
+                HeapSnapshot base;
+                HeapSnapshot target;
+                String[] ids = snapshot == null ? new String[0] : snapshot.split(",");
+                Integer[] snapshotIds = new Integer[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    snapshotIds[i] = parseSnapshotId(ids[i]);
+                    if (snapshotIds[i] == null) {
+                        process.end(-1, "Illegal snapshot id: " + ids[i]
+                                + ", usage: --snapshot <base id>[,<target id>]");
+                        return;
+                    }
+                }
+                synchronized (heapSnapshots) {
+                    expireHeapSnapshots();
+                    if (ids.length >= 2) {
+                        base = findHeapSnapshot(snapshotIds[0]);
+                        target = findHeapSnapshot(snapshotIds[1]);
+                    } else if (ids.length == 1) {
+                        base = findHeapSnapshot(snapshotIds[0]);
+                        target = heapSnapshots.isEmpty() ? null : heapSnapshots.getLast();
+                    } else {
+                        int size = heapSnapshots.size();
+                        base = size < 2 ? null : heapSnapshots.get(size - 2);
+                        target = size < 1 ? null : heapSnapshots.get(size - 1);
+                    }
+                }
+                if (base == null || target == null || base == target) {
+                    process.end(-1, "heapDiff needs two heap snapshots, run 'vmtool --action heapAnalyze' to take one, "
+                            + heapSnapshotIds());
+                    return;
+                }
+                String result = HeapSnapshot.diff(base, target, classNum);
+                process.write(result);
+                process.appendResult(new VmToolModel().setHeapAnalyzeResult(result));
+                process.end();
+                return;
+            } else if (VmToolAction.retainedAnalyze.equals(action)) {
+                String result;
+                try {
+                    result = vmToolInstance().retainedAnalyze(classNum, objectNum,
+                            timeout > 0 ? (int) Math.min(Integer.MAX_VALUE, timeout * 1000L) : 0, memoryLimit);
+                } catch (UnsatisfiedLinkError e) {
+                    process.end(-1, "retainedAnalyze is not supported by the vmtool native library: " + e.getMessage());
+                    return;
+                }
+                process.write(result);
+                process.appendResult(new VmToolModel().setHeapAnalyzeResult(result));
+                process.end();
+                return;
             } else if (VmToolAction.interruptThread.equals(action)) {
                 vmToolInstance().interruptSpecialThread(threadId);
                 process.write("\n");
@@ -357,6 +543,83 @@ public class VmToolCommand extends AnnotatedCommand {
         return vmTool;
     }
 
+    private boolean isInstancesQuery() {
+        return where != null || select != null || groupBy != null || sum != null || count;
+    }
+
+    /**
+     * 按页遍历实例并流式执行查询，同一时刻只引用一页实例
+     */
+    private Object queryInstances(Class<?> klass, ClassLoader classLoader) throws ExpressException {
+        Express unpooledExpress = ExpressFactory.unpooledExpress(classLoader);
+        InstancesQuery query = new InstancesQuery(unpooledExpress, where, select, groupBy, sum, count, limit);
+        InstanceCursor<?> cursor = vmToolInstance().getInstancesCursor(klass, pageSize > 0 ? pageSize : 1000);
+        try {
+            while (cursor.hasNext()) {
+                if (!query.accept(cursor.next())) {
+                    break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return query.result();
+    }
+
+    private static Integer parseSnapshotId(String id) {
+        try {
+            return Integer.parseInt(id.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static HeapSnapshot saveHeapSnapshot(String result, long ttlSeconds) {
+        synchronized (heapSnapshots) {
+            long now = System.currentTimeMillis();
+            HeapSnapshot heapSnapshot = HeapSnapshot.parse(++heapSnapshotCounter, now, result);
+            heapSnapshot.setExpireTime(now + ttlSeconds * 1000);
+            heapSnapshots.add(heapSnapshot);
+            while (heapSnapshots.size() > MAX_HEAP_SNAPSHOTS) {
+                heapSnapshots.removeFirst();
+            }
+            return heapSnapshot;
+        }
+    }
+
+    private static HeapSnapshot findHeapSnapshot(int id) {
+        synchronized (heapSnapshots) {
+            expireHeapSnapshots();
+            for (HeapSnapshot heapSnapshot : heapSnapshots) {
+                if (heapSnapshot.getId() == id) {
+                    return heapSnapshot;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static void expireHeapSnapshots() {
+        long now = System.currentTimeMillis();
+        Iterator<HeapSnapshot> iterator = heapSnapshots.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getExpireTime() < now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String heapSnapshotIds() {
+        synchronized (heapSnapshots) {
+            expireHeapSnapshots();
+            List<Integer> ids = new ArrayList<Integer>();
+            for (HeapSnapshot heapSnapshot : heapSnapshots) {
+                ids.add(heapSnapshot.getId());
+            }
+            return "available snapshots: " + ids;
+        }
+    }
+
     private Set<String> actions() {
         Set<String> values = new HashSet<String>();
         for (VmToolAction action : VmToolAction.values()) {
@@ -0,0 +1,16 @@
+package com.taobao.arthas.core.command.view;
+
+import com.taobao.arthas.core.command.model.GrepModel;
+import com.taobao.arthas.core.shell.command.CommandProcess;
+
+/**
+ * Result view for GrepCommand
+ */
+public class GrepView extends ResultView<GrepModel> {
+
+    @Override
+    public void draw(CommandProcess process, GrepModel result) {
+        process.write(result.getContent());
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.taobao.arthas.core.command.view;
+
+import java.util.List;
+
+import com.taobao.arthas.core.command.model.JFRLiveEntryVO;
+import com.taobao.arthas.core.command.model.JFRLiveModel;
+import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.arthas.core.util.StringUtils;
+import com.taobao.text.Color;
+import com.taobao.text.Decoration;
+import com.taobao.text.ui.RowElement;
+import com.taobao.text.ui.TableElement;
+import com.taobao.text.util.RenderUtil;
+
+/**
+ * View of 'jfr live'
+ */
+public class JFRLiveView extends ResultView<JFRLiveModel> {
+
+    @Override
+    public void draw(CommandProcess process, JFRLiveModel result) {
+        writeln(process, "Recording " + result.getRecordingId() + ", mode: " + result.getMode() + ", window: "
+                + result.getWindowMillis() / 1000 + "s, events: " + result.getEvents());
+
+        TableElement methods = new TableElement(1, 6).rightCellPadding(1);
+        methods.add(new RowElement().style(Decoration.bold.fg(Color.black).bg(Color.white)).add("SAMPLES", "TOP METHOD"));
+        if (result.getTopMethods() != null) {
+            for (JFRLiveEntryVO entry : result.getTopMethods()) {
+                methods.row(String.valueOf(entry.getCount()), entry.getName());
+            }
+        }
+        process.write(RenderUtil.render(methods, process.width())).write("\n");
+
+        TableElement allocations = new TableElement(1, 1, 6).rightCellPadding(1);
+        allocations.add(new RowElement().style(Decoration.bold.fg(Color.black).bg(Color.white))
+                .add("SAMPLES", "BYTES", "ALLOCATED CLASS"));
+        addValueRows(allocations, result.getTopAllocations(), true);
+        process.write(RenderUtil.render(allocations, process.width())).write("\n");
+
+        TableElement locks = new TableElement(1, 1, 6).rightCellPadding(1);
+        locks.add(new RowElement().style(Decoration.bold.fg(Color.black).bg(Color.white))
+                .add("EVENTS", "BLOCKED(ms)", "MONITOR CLASS"));
+        addValueRows(locks, result.getTopLocks(), false);
+        process.write(RenderUtil.render(locks, process.width())).write("\n");
+    }
+
+    /**
+     * @param bytes the value is in bytes, otherwise in nanos
+     */
+    private static void addValueRows(TableElement table, List<JFRLiveEntryVO> entries, boolean bytes) {
+        if (entries == null) {
+            return;
+        }
+        for (JFRLiveEntryVO entry : entries) {
+            String value = bytes ? StringUtils.humanReadableByteCount(entry.getValue())
+                    : String.valueOf(entry.getValue() / 1000000);
+            table.row(String.valueOf(entry.getCount()), value, entry.getName());
+        }
+    }
+}
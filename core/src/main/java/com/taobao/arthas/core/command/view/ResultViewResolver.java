@@ -39,6 +39,7 @@ public class ResultViewResolver {
             //registerView(HistoryView.class);
             registerView(EchoView.class);
             registerView(CatView.class);
+            registerView(GrepView.class);
             registerView(Base64View.class);
             registerView(OptionsView.class);
             registerView(SystemPropertyView.class);
@@ -80,6 +81,7 @@ public class ResultViewResolver {
             registerView(WatchView.class);
             registerView(VmToolView.class);
             registerView(JFRView.class);
+            registerView(JFRLiveView.class);
 
         } catch (Throwable e) {
             logger.error("register result view failed", e);
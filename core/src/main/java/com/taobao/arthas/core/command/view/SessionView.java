@@ -27,6 +27,9 @@ public class SessionView extends ResultView<SessionModel> {
         if (result.getTunnelServer() != null) {
             table.row("TUNNEL_SERVER", "" + result.getTunnelServer());
             table.row("TUNNEL_CONNECTED", "" + result.isTunnelConnected());
+            table.row("TUNNEL_FORWARDS", "" + result.getTunnelActiveForwards());
+            table.row("TUNNEL_HTTP_PROXY", result.getTunnelActiveProxyRequests() + " active, "
+                    + result.getTunnelLocalConnections() + " local connections");
         }
         if (result.getStatUrl() != null) {
             table.row("STAT_URL", result.getStatUrl());
@@ -107,7 +107,7 @@ public class ViewRenderUtil {
     }
 
     public static String drawThreadInfo(List<ThreadVO> threads, int width, int height) {
-        TableElement table = new TableElement(1, 6, 3, 2, 2, 2, 2, 2, 2, 2).overflow(Overflow.HIDDEN).rightCellPadding(1);
+        TableElement table = new TableElement(1, 6, 3, 2, 2, 2, 2, 2, 2, 2, 2).overflow(Overflow.HIDDEN).rightCellPadding(1);
 
         // Header
         table.add(
@@ -120,6 +120,7 @@ public class ViewRenderUtil {
                         "%CPU",
                         "DELTA_TIME",
                         "TIME",
+                        "ALLOC/s",
                         "INTERRUPTED",
                         "DAEMON"
                 )
@@ -131,6 +132,7 @@ public class ViewRenderUtil {
             String time = formatTimeMills(thread.getTime());
             String deltaTime = formatTimeMillsToSeconds(thread.getDeltaTime());
             double cpu = thread.getCpu();
+            String allocRate = thread.getAllocRate() >= 0 ? StringUtils.humanReadableByteCount(thread.getAllocRate()) : "-";
 
             LabelElement daemonLabel = new LabelElement(thread.isDaemon());
             if (!thread.isDaemon()) {
@@ -151,6 +153,7 @@ public class ViewRenderUtil {
                     new LabelElement(cpu),
                     new LabelElement(deltaTime),
                     new LabelElement(time),
+                    new LabelElement(allocRate),
                     new LabelElement(thread.isInterrupted()),
                     daemonLabel
             );
@@ -40,4 +40,18 @@ public interface ResultConsumer {
      * @return
      */
     boolean isHealthy();
+
+    /**
+     * Push results to the listener instead of queueing them for {@link #pollResults()}.
+     * Results already in the queue are passed to the listener first.
+     * @param listener the listener, replaces the previous one
+     */
+    void setResultListener(ResultListener listener);
+
+    /**
+     * Remove the listener if it is the current one, later results are queued again
+     * @param listener the listener to remove
+     * @return true if the listener was removed
+     */
+    boolean removeResultListener(ResultListener listener);
 }
@@ -0,0 +1,16 @@
+package com.taobao.arthas.core.distribution;
+
+import com.taobao.arthas.core.command.model.ResultModel;
+
+/**
+ * Receives the results of a {@link ResultConsumer} as soon as they are distributed,
+ * instead of polling them with {@link ResultConsumer#pollResults()}.
+ * It is called in the result distributor thread, so it must not block.
+ */
+public interface ResultListener {
+
+    /**
+     * @param result a phased result of the command
+     */
+    void onResult(ResultModel result);
+}
@@ -7,6 +7,7 @@ import com.taobao.arthas.core.command.model.ResultModel;
 import com.taobao.arthas.core.distribution.DistributorOptions;
 import com.taobao.arthas.core.distribution.ResultConsumer;
 import com.taobao.arthas.core.distribution.ResultConsumerHelper;
+import com.taobao.arthas.core.distribution.ResultListener;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -31,6 +32,8 @@ public class ResultConsumerImpl implements ResultConsumer {
     private String consumerId;
     private boolean closed;
     private long sendingItemCount;
+    private volatile ResultListener resultListener;
+    private final Object listenerLock = new Object();
 
     public ResultConsumerImpl() {
         lastAccessTime = System.currentTimeMillis();
@@ -39,13 +42,55 @@ public class ResultConsumerImpl implements ResultConsumer {
 
     @Override
     public boolean appendResult(ResultModel result) {
-        //可能某些Consumer已经断开，不会再读取，这里不能堵塞！
-        boolean discard = false;
-        while (!resultQueue.offer(result)) {
-            ResultModel discardResult = resultQueue.poll();
-            discard = true;
+        // 和 setResultListener 互斥，保证切换 listener 时结果不会乱序或者留在队列里
+        synchronized (listenerLock) {
+            ResultListener listener = resultListener;
+            if (listener != null) {
+                lastAccessTime = System.currentTimeMillis();
+                notifyListener(listener, result);
+                return true;
+            }
+            //可能某些Consumer已经断开，不会再读取，这里不能堵塞！
+            boolean discard = false;
+            while (!resultQueue.offer(result)) {
+                ResultModel discardResult = resultQueue.poll();
+                discard = true;
+            }
+            return !discard;
+        }
+    }
+
+    @Override
+    public void setResultListener(ResultListener listener) {
+        synchronized (listenerLock) {
+            this.resultListener = listener;
+            if (listener != null) {
+                lastAccessTime = System.currentTimeMillis();
+                ResultModel result;
+                while ((result = resultQueue.poll()) != null) {
+                    notifyListener(listener, result);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean removeResultListener(ResultListener listener) {
+        synchronized (listenerLock) {
+            if (listener != null && listener.equals(resultListener)) {
+                resultListener = null;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private void notifyListener(ResultListener listener, ResultModel result) {
+        try {
+            listener.onResult(result);
+        } catch (Throwable e) {
+            logger.warn("result listener error: " + e.getMessage(), e);
         }
-        return !discard;
     }
 
     @Override
@@ -121,7 +166,8 @@ public class ResultConsumerImpl implements ResultConsumer {
     @Override
     public boolean isHealthy() {
 
-        return isPolling()
+        return resultListener != null
+                || isPolling()
                 || resultQueue.size() < resultQueueSize
                 || System.currentTimeMillis() - lastAccessTime < 1000;
     }
@@ -7,6 +7,7 @@ import com.taobao.arthas.core.command.model.MessageModel;
 import com.taobao.arthas.core.command.model.ResultModel;
 import com.taobao.arthas.core.distribution.DistributorOptions;
 import com.taobao.arthas.core.distribution.ResultConsumer;
+import com.taobao.arthas.core.distribution.ResultListener;
 import com.taobao.arthas.core.distribution.SharingResultDistributor;
 import com.taobao.arthas.core.shell.session.Session;
 import com.taobao.arthas.core.shell.system.Job;
@@ -261,5 +262,14 @@ public class SharingResultDistributorImpl implements SharingResultDistributor {
         public boolean isHealthy() {
             return true;
         }
+
+        @Override
+        public void setResultListener(ResultListener listener) {
+        }
+
+        @Override
+        public boolean removeResultListener(ResultListener listener) {
+            return false;
+        }
     }
 }
@@ -0,0 +1,369 @@
+package com.taobao.arthas.core.jfr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Analyze an active jfr recording while it is running.
+ * <p>
+ * On jdk 14+ the events are read with the event streaming api from the in-process repository as soon as they are
+ * flushed. On older jdks a stopped copy of the recording is taken every {@code pollMillis} and only the chunks
+ * ending after the previous read are read from it. The events are aggregated into a {@link JfrRollingWindow}, so
+ * the memory does not grow with the length of the recording.
+ * <p>
+ * The repository and the chunks are shared by all recordings of the jvm, so the events are filtered by the settings
+ * of the analyzed recording: the event must be enabled in it, end after its start and last longer than its
+ * threshold. Periodic events such as jdk.ExecutionSample are still sampled at the shortest period of all running
+ * recordings.
+ */
+public class JfrLiveAnalyzer {
+    private static final Logger logger = LoggerFactory.getLogger(JfrLiveAnalyzer.class);
+
+    public static final String MODE_STREAM = "stream";
+    public static final String MODE_DUMP = "dump";
+
+    public static final long DEFAULT_POLL_MILLIS = 5000;
+
+    private static final String ENABLED = "#enabled";
+    private static final String THRESHOLD = "#threshold";
+
+    private static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+    private static final String ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+    private static final String ALLOCATION_IN_NEW_TLAB = "jdk.ObjectAllocationInNewTLAB";
+    private static final String ALLOCATION_OUTSIDE_TLAB = "jdk.ObjectAllocationOutsideTLAB";
+    private static final String MONITOR_ENTER = "jdk.JavaMonitorEnter";
+    private static final String THREAD_PARK = "jdk.ThreadPark";
+
+    private final Recording recording;
+    private final JfrRollingWindow window;
+    private final long pollMillis;
+
+    private final Set<String> enabledEvents = new HashSet<String>();
+    private final Map<String, Long> thresholdNanos = new HashMap<String, Long>();
+
+    /**
+     * sessions printing the window, the analyzer is not replaced while it is read
+     */
+    private final AtomicInteger readers = new AtomicInteger();
+
+    private volatile String mode;
+    private volatile AutoCloseable stream;
+    private volatile Thread dumpThread;
+
+    /**
+     * only the events after this time are read from the next copy
+     */
+    private Instant watermark = Instant.MIN;
+
+    /**
+     * the tlab events are ignored once jdk.ObjectAllocationSample is seen, otherwise allocations are counted twice
+     */
+    private volatile boolean allocationSampleSeen;
+
+    public JfrLiveAnalyzer(Recording recording, long windowMillis, long pollMillis) {
+        this.recording = recording;
+        this.window = new JfrRollingWindow(windowMillis);
+        this.pollMillis = pollMillis > 0 ? pollMillis : DEFAULT_POLL_MILLIS;
+        for (Map.Entry<String, String> setting : recording.getSettings().entrySet()) {
+            String key = setting.getKey();
+            if (key.endsWith(ENABLED) && "true".equals(setting.getValue())) {
+                enabledEvents.add(key.substring(0, key.length() - ENABLED.length()));
+            } else if (key.endsWith(THRESHOLD)) {
+                long nanos = parseNanos(setting.getValue());
+                if (nanos > 0) {
+                    thresholdNanos.put(key.substring(0, key.length() - THRESHOLD.length()), nanos);
+                }
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (isRunning()) {
+            return;
+        }
+        if (startStream()) {
+            mode = MODE_STREAM;
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pollDumps();
+            }
+        }, "arthas-jfr-live-" + recording.getId());
+        thread.setDaemon(true);
+        dumpThread = thread;
+        mode = MODE_DUMP;
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        AutoCloseable s = stream;
+        stream = null;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (Exception e) {
+                logger.error("close jfr event stream error", e);
+            }
+        }
+        Thread thread = dumpThread;
+        dumpThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return stream != null || dumpThread != null;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public long getRecordingId() {
+        return recording.getId();
+    }
+
+    public void retain() {
+        readers.incrementAndGet();
+    }
+
+    public void release() {
+        readers.decrementAndGet();
+    }
+
+    public boolean hasReaders() {
+        return readers.get() > 0;
+    }
+
+    public JfrRollingWindow getWindow() {
+        return window;
+    }
+
+    /**
+     * jdk.jfr.consumer.EventStream is only available since jdk 14, so it is called by reflection
+     */
+    private boolean startStream() {
+        try {
+            Class<?> eventStreamClass = Class.forName("jdk.jfr.consumer.EventStream");
+            Method openRepository = eventStreamClass.getMethod("openRepository");
+            Method onEvent = eventStreamClass.getMethod("onEvent", Consumer.class);
+            Method startAsync = eventStreamClass.getMethod("startAsync");
+
+            Object eventStream = openRepository.invoke(null);
+            onEvent.invoke(eventStream, new Consumer<RecordedEvent>() {
+                @Override
+                public void accept(RecordedEvent event) {
+                    if (accepts(event)) {
+                        onEvent(event);
+                    }
+                }
+            });
+            startAsync.invoke(eventStream);
+            stream = (AutoCloseable) eventStream;
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (Throwable e) {
+            logger.warn("can not stream jfr events, fall back to incremental dumps", e);
+            return false;
+        }
+    }
+
+    private void pollDumps() {
+        Thread self = Thread.currentThread();
+        while (dumpThread == self) {
+            try {
+                if (recording.getState() == RecordingState.RUNNING) {
+                    readNewEvents();
+                } else if (recording.getState() == RecordingState.STOPPED
+                        || recording.getState() == RecordingState.CLOSED) {
+                    dumpThread = null;
+                    return;
+                }
+            } catch (Throwable e) {
+                logger.error("read jfr recording error", e);
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A stopped copy shares the chunks of the recording and finishes the current one, only the chunks ending after
+     * the watermark are copied out of it, instead of dumping the whole recording every time.
+     */
+    private void readNewEvents() throws IOException {
+        Recording copy = recording.copy(true);
+        Path tmp = null;
+        try {
+            InputStream in = copy.getStream(watermark == Instant.MIN ? null : watermark, null);
+            if (in == null) {
+                return;
+            }
+            try {
+                tmp = Files.createTempFile("arthas-jfr-live-", ".jfr");
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                in.close();
+            }
+            Instant last = watermark;
+            RecordingFile file = new RecordingFile(tmp);
+            try {
+                while (file.hasMoreEvents()) {
+                    RecordedEvent event = file.readEvent();
+                    Instant end = event.getEndTime();
+                    if (!end.isAfter(watermark)) {
+                        continue;
+                    }
+                    if (end.isAfter(last)) {
+                        last = end;
+                    }
+                    if (accepts(event)) {
+                        onEvent(event);
+                    }
+                }
+            } finally {
+                file.close();
+            }
+            watermark = last;
+        } finally {
+            copy.close();
+            if (tmp != null) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * whether the event belongs to the analyzed recording, see the class comment
+     */
+    boolean accepts(RecordedEvent event) {
+        String name = event.getEventType().getName();
+        if (!enabledEvents.contains(name)) {
+            return false;
+        }
+        Instant start = recording.getStartTime();
+        if (start != null && event.getEndTime().isBefore(start)) {
+            return false;
+        }
+        Long threshold = thresholdNanos.get(name);
+        return threshold == null || event.getDuration().toNanos() >= threshold;
+    }
+
+    /**
+     * parse a jfr timespan setting such as "20 ms", 0 if it is not a timespan
+     */
+    static long parseNanos(String value) {
+        if (value == null) {
+            return 0;
+        }
+        String[] parts = value.trim().split("\\s+");
+        if (parts.length != 2) {
+            return 0;
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(parts[0]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        String unit = parts[1];
+        if ("ns".equals(unit)) {
+            return amount;
+        } else if ("us".equals(unit)) {
+            return TimeUnit.MICROSECONDS.toNanos(amount);
+        } else if ("ms".equals(unit)) {
+            return TimeUnit.MILLISECONDS.toNanos(amount);
+        } else if ("s".equals(unit)) {
+            return TimeUnit.SECONDS.toNanos(amount);
+        } else if ("m".equals(unit) || "min".equals(unit)) {
+            return TimeUnit.MINUTES.toNanos(amount);
+        } else if ("h".equals(unit)) {
+            return TimeUnit.HOURS.toNanos(amount);
+        } else if ("d".equals(unit)) {
+            return TimeUnit.DAYS.toNanos(amount);
+        }
+        return 0;
+    }
+
+    void onEvent(RecordedEvent event) {
+        String name = event.getEventType().getName();
+        long time = event.getStartTime().toEpochMilli();
+        if (EXECUTION_SAMPLE.equals(name)) {
+            String method = topMethod(event.getStackTrace());
+            if (method != null) {
+                window.add(JfrRollingWindow.METHODS, method, 0, time);
+            }
+        } else if (ALLOCATION_SAMPLE.equals(name)) {
+            allocationSampleSeen = true;
+            window.add(JfrRollingWindow.ALLOCATIONS, className(event, "objectClass"), event.getLong("weight"), time);
+        } else if (ALLOCATION_IN_NEW_TLAB.equals(name)) {
+            if (!allocationSampleSeen) {
+                window.add(JfrRollingWindow.ALLOCATIONS, className(event, "objectClass"), event.getLong("tlabSize"),
+                        time);
+            }
+        } else if (ALLOCATION_OUTSIDE_TLAB.equals(name)) {
+            if (!allocationSampleSeen) {
+                window.add(JfrRollingWindow.ALLOCATIONS, className(event, "objectClass"),
+                        event.getLong("allocationSize"), time);
+            }
+        } else if (MONITOR_ENTER.equals(name)) {
+            window.add(JfrRollingWindow.LOCKS, className(event, "monitorClass"), event.getDuration().toNanos(), time);
+        } else if (THREAD_PARK.equals(name)) {
+            window.add(JfrRollingWindow.LOCKS, className(event, "parkedClass"), event.getDuration().toNanos(), time);
+        }
+    }
+
+    private static String topMethod(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return null;
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (RecordedFrame frame : frames) {
+            if (frame.isJavaFrame()) {
+                RecordedMethod method = frame.getMethod();
+                return method.getType().getName() + "." + method.getName();
+            }
+        }
+        return null;
+    }
+
+    private static String className(RecordedEvent event, String field) {
+        if (!event.hasField(field)) {
+            return "[unknown]";
+        }
+        RecordedClass clazz = event.getClass(field);
+        return clazz == null ? "[unknown]" : clazz.getName();
+    }
+}
@@ -0,0 +1,187 @@
+package com.taobao.arthas.core.jfr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.taobao.arthas.core.command.model.JFRLiveEntryVO;
+
+/**
+ * Aggregate live jfr events over the last {@code windowMillis}.
+ * <p>
+ * The window is split into fixed time slots in a ring, an event is added to the slot of its timestamp and a slot is
+ * reused once it falls out of the window, so the memory is bounded by the number of slots times
+ * {@link #MAX_KEYS_PER_SLOT}, no matter how long the recording runs.
+ */
+public class JfrRollingWindow {
+
+    public static final int METHODS = 0;
+    public static final int ALLOCATIONS = 1;
+    public static final int LOCKS = 2;
+
+    private static final int KINDS = 3;
+
+    /**
+     * keys beyond the limit of one slot are counted as {@link #OTHER}
+     */
+    public static final int MAX_KEYS_PER_SLOT = 4096;
+    public static final String OTHER = "[other]";
+
+    private static final int SLOTS = 60;
+
+    private final long windowMillis;
+    private final long slotMillis;
+    private final Slot[] slots;
+
+    private static class Slot {
+        long start = -1;
+        @SuppressWarnings("unchecked")
+        Map<String, long[]>[] tables = new Map[KINDS];
+        long events;
+
+        Slot() {
+            for (int i = 0; i < KINDS; i++) {
+                tables[i] = new HashMap<String, long[]>();
+            }
+        }
+
+        void reset(long start) {
+            this.start = start;
+            this.events = 0;
+            for (Map<String, long[]> table : tables) {
+                table.clear();
+            }
+        }
+    }
+
+    public JfrRollingWindow(long windowMillis) {
+        this.windowMillis = Math.max(1000, windowMillis);
+        this.slotMillis = Math.max(100, (this.windowMillis + SLOTS - 1) / SLOTS);
+        int count = (int) ((this.windowMillis + slotMillis - 1) / slotMillis) + 1;
+        this.slots = new Slot[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @param kind {@link #METHODS}, {@link #ALLOCATIONS} or {@link #LOCKS}
+     * @param key method, class or monitor name
+     * @param value sampled bytes or blocked nanos, 0 for the kinds which are only counted
+     * @param timeMillis the time of the event
+     */
+    public synchronized void add(int kind, String key, long value, long timeMillis) {
+        long start = timeMillis - timeMillis % slotMillis;
+        Slot slot = slots[(int) ((start / slotMillis) % slots.length)];
+        if (slot.start != start) {
+            if (slot.start > start) {
+                // an event older than the window
+                return;
+            }
+            slot.reset(start);
+        }
+        slot.events++;
+
+        Map<String, long[]> table = slot.tables[kind];
+        long[] counter = table.get(key);
+        if (counter == null) {
+            if (table.size() >= MAX_KEYS_PER_SLOT) {
+                key = OTHER;
+                counter = table.get(key);
+            }
+            if (counter == null) {
+                counter = new long[2];
+                table.put(key, counter);
+            }
+        }
+        counter[0]++;
+        counter[1] += value;
+    }
+
+    /**
+     * number of events in the window ending at {@code nowMillis}
+     */
+    public long events(long nowMillis) {
+        return events(nowMillis, windowMillis);
+    }
+
+    /**
+     * number of events in the last {@code lastMillis} ending at {@code nowMillis}, at most the whole window
+     */
+    public synchronized long events(long nowMillis, long lastMillis) {
+        long events = 0;
+        for (Slot slot : slots) {
+            if (inWindow(slot, nowMillis, lastMillis)) {
+                events += slot.events;
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return the entries of the window ending at {@code nowMillis}, ordered by value then count
+     */
+    public List<JFRLiveEntryVO> top(int kind, int limit, long nowMillis) {
+        return top(kind, limit, nowMillis, windowMillis);
+    }
+
+    /**
+     * @return the entries of the last {@code lastMillis} ending at {@code nowMillis}, at most the whole window
+     */
+    public synchronized List<JFRLiveEntryVO> top(int kind, int limit, long nowMillis, long lastMillis) {
+        Map<String, long[]> merged = new HashMap<String, long[]>();
+        for (Slot slot : slots) {
+            if (!inWindow(slot, nowMillis, lastMillis)) {
+                continue;
+            }
+            for (Entry<String, long[]> entry : slot.tables[kind].entrySet()) {
+                long[] counter = merged.get(entry.getKey());
+                if (counter == null) {
+                    counter = new long[2];
+                    merged.put(entry.getKey(), counter);
+                }
+                counter[0] += entry.getValue()[0];
+                counter[1] += entry.getValue()[1];
+            }
+        }
+
+        List<JFRLiveEntryVO> entries = new ArrayList<JFRLiveEntryVO>(merged.size());
+        for (Entry<String, long[]> entry : merged.entrySet()) {
+            entries.add(new JFRLiveEntryVO(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        Collections.sort(entries, new Comparator<JFRLiveEntryVO>() {
+            @Override
+            public int compare(JFRLiveEntryVO o1, JFRLiveEntryVO o2) {
+                int result = compareLong(o2.getValue(), o1.getValue());
+                return result != 0 ? result : compareLong(o2.getCount(), o1.getCount());
+            }
+        });
+        if (limit > 0 && entries.size() > limit) {
+            return new ArrayList<JFRLiveEntryVO>(entries.subList(0, limit));
+        }
+        return entries;
+    }
+
+    public synchronized void clear() {
+        for (Slot slot : slots) {
+            slot.reset(-1);
+        }
+    }
+
+    private boolean inWindow(Slot slot, long nowMillis, long lastMillis) {
+        long length = Math.min(lastMillis, windowMillis);
+        return slot.start >= 0 && slot.start + slotMillis > nowMillis - length && slot.start <= nowMillis;
+    }
+
+    private static int compareLong(long x, long y) {
+        return x < y ? -1 : (x == y ? 0 : 1);
+    }
+}
@@ -175,6 +175,7 @@ public class ArthasMcpServer {
                     .instructions(properties.getInstructions())
                     .requestTimeout(properties.getRequestTimeout())
                     .commandExecutor(commandExecutor)
+                    .requestExecutor(properties.createRequestExecutor())
                     .objectMapper(properties.getObjectMapper() != null ? properties.getObjectMapper() : JsonParser.getObjectMapper());
 
             streamableServerNettySpecification.tools(
@@ -192,6 +193,7 @@ public class ArthasMcpServer {
                     .instructions(properties.getInstructions())
                     .requestTimeout(properties.getRequestTimeout())
                     .commandExecutor(commandExecutor)
+                    .requestExecutor(properties.createRequestExecutor())
                     .objectMapper(properties.getObjectMapper() != null ? properties.getObjectMapper() : JsonParser.getObjectMapper());
 
             statelessServerNettySpecification.tools(
@@ -204,6 +206,9 @@ public class ArthasMcpServer {
         logger.info("- MCP Endpoint: {}", properties.getMcpEndpoint());
         logger.info("- Transport mode: {}", properties.getProtocol());
         logger.info("- Available tools: {}", providerToolCallbacks.size());
+        logger.info("- Worker threads: {}, queue capacity: {}, max concurrent requests per session: {}",
+                properties.getWorkerThreads(), properties.getWorkerQueueCapacity(),
+                properties.getMaxConcurrentRequestsPerSession());
         logger.info("- Server ready to accept connections");
     }
     
@@ -10,6 +10,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.taobao.arthas.core.mcp.tool.util.McpToolUtils.*;
 import static com.taobao.arthas.core.mcp.tool.function.StreamableToolUtils.*;
@@ -111,13 +114,16 @@ public abstract class AbstractArthasTool {
         }
     }
 
-    protected String executeStreamable(ToolContext toolContext, String commandStr, 
-                                     Integer expectedResultCount, Integer pollIntervalMs, 
-                                     Integer timeoutMs,
+    /**
+     * 异步执行命令并收集结果，等待结果期间不占用线程，结束后释放前台任务
+     */
+    protected CompletableFuture<String> executeStreamable(ToolContext toolContext, String commandStr,
+                                     Integer expectedResultCount, Integer timeoutMs,
                                      String successMessage) {
         ToolExecutionContext execContext = null;
         try {
             execContext = new ToolExecutionContext(toolContext, true);
+            final ToolExecutionContext context = execContext;
             
             logger.info("Starting streamable execution: {}", commandStr);
 
@@ -126,49 +132,58 @@ public abstract class AbstractArthasTool {
                 execContext.getCommandContext().setSessionUserId(execContext.getUserId());
             }
 
-            Map<String, Object> asyncResult = executeAsyncWithRetry(execContext, commandStr, timeoutMs);
-            if (!isAsyncExecutionStarted(asyncResult)) {
-                String errorMessage = asyncResult != null ? String.valueOf(asyncResult.get("error")) : "unknown error";
-                return JsonParser.toJson(createErrorResponse("Failed to start command: " + errorMessage));
-            }
-            logger.debug("Async execution started: {}", asyncResult);
+            return executeAsyncWithRetry(execContext, commandStr, timeoutMs)
+                    .thenCompose(asyncResult -> {
+                        if (!isAsyncExecutionStarted(asyncResult)) {
+                            String errorMessage = asyncResult != null ? String.valueOf(asyncResult.get("error")) : "unknown error";
+                            return CompletableFuture.completedFuture(
+                                    JsonParser.toJson(createErrorResponse("Failed to start command: " + errorMessage)));
+                        }
+                        logger.debug("Async execution started: {}", asyncResult);
 
-            Map<String, Object> results = executeAndCollectResults(
-                execContext.getExchange(), 
-                execContext.getCommandContext(), 
-                expectedResultCount, 
-                pollIntervalMs, 
-                timeoutMs,
-                execContext.getProgressToken()
-            );
-            
-            if (results != null) {
-                String message = successMessage != null ? successMessage : "Command execution completed successfully";
+                        return executeAndCollectResults(
+                                context.getExchange(),
+                                context.getCommandContext(),
+                                expectedResultCount,
+                                timeoutMs,
+                                context.getProgressToken()
+                        ).thenApply(results -> toStreamableResponse(results, successMessage));
+                    })
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        logger.error("Error executing streamable command: {}", commandStr, cause);
+                        return JsonParser.toJson(createErrorResponse("Error executing command: " + cause.getMessage()));
+                    })
+                    // 确保前台任务被及时释放，避免占用 session 影响后续 streamable 工具执行
+                    .whenComplete((result, e) -> interruptJobQuietly(context));
+        } catch (Exception e) {
+            logger.error("Error executing streamable command: {}", commandStr, e);
+            interruptJobQuietly(execContext);
+            return CompletableFuture.completedFuture(
+                    JsonParser.toJson(createErrorResponse("Error executing command: " + e.getMessage())));
+        }
+    }
+
+    private static String toStreamableResponse(Map<String, Object> results, String successMessage) {
+        String message = successMessage != null ? successMessage : "Command execution completed successfully";
 
-                if (Boolean.TRUE.equals(results.get("timedOut"))) {
-                    Integer count = (Integer) results.get("resultCount");
-                    if (count != null && count > 0) {
-                        message = "Command execution ended (Timed out). Captured " + count + " results.";
-                    } else {
-                        message = "Command execution ended (Timed out). No results captured within the time limit.";
-                    }
-                }
-                
-                return JsonParser.toJson(createCompletedResponse(message, results));
+        if (Boolean.TRUE.equals(results.get("timedOut"))) {
+            Integer count = (Integer) results.get("resultCount");
+            if (count != null && count > 0) {
+                message = "Command execution ended (Timed out). Captured " + count + " results.";
             } else {
-                return JsonParser.toJson(createErrorResponse("Command execution failed due to timeout or error limits exceeded"));
+                message = "Command execution ended (Timed out). No results captured within the time limit.";
             }
-            
-        } catch (Exception e) {
-            logger.error("Error executing streamable command: {}", commandStr, e);
-            return JsonParser.toJson(createErrorResponse("Error executing command: " + e.getMessage()));
-        } finally {
-            if (execContext != null) {
-                try {
-                    // 确保前台任务被及时释放，避免占用 session 影响后续 streamable 工具执行
-                    execContext.getCommandContext().interruptJob();
-                } catch (Exception ignored) {
-                }
+        }
+
+        return JsonParser.toJson(createCompletedResponse(message, results));
+    }
+
+    private static void interruptJobQuietly(ToolExecutionContext execContext) {
+        if (execContext != null) {
+            try {
+                execContext.getCommandContext().interruptJob();
+            } catch (Exception ignored) {
             }
         }
     }
@@ -197,39 +212,35 @@ public abstract class AbstractArthasTool {
         return message.contains("Another job is running") || message.contains("Another command is executing");
     }
 
-    private static Map<String, Object> executeAsyncWithRetry(ToolExecutionContext execContext, String commandStr, Integer timeoutMs) {
+    private static CompletableFuture<Map<String, Object>> executeAsyncWithRetry(ToolExecutionContext execContext, String commandStr, Integer timeoutMs) {
         long maxWaitMs = DEFAULT_ASYNC_START_MAX_WAIT_MS;
         if (timeoutMs != null && timeoutMs > 0) {
             maxWaitMs = Math.min(maxWaitMs, timeoutMs);
         }
 
-        long deadline = System.currentTimeMillis() + maxWaitMs;
-        Map<String, Object> asyncResult = null;
-
-        while (System.currentTimeMillis() < deadline) {
-            asyncResult = execContext.getCommandContext().executeAsync(commandStr);
-            if (isAsyncExecutionStarted(asyncResult)) {
-                return asyncResult;
-            }
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        startAsync(execContext, commandStr, System.currentTimeMillis() + maxWaitMs, future);
+        return future;
+    }
 
-            if (isRetryableAsyncStartError(asyncResult)) {
-                try {
-                    execContext.getCommandContext().interruptJob();
-                } catch (Exception ignored) {
-                }
-                try {
-                    Thread.sleep(DEFAULT_ASYNC_START_RETRY_INTERVAL_MS);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return asyncResult;
-                }
-                continue;
+    /**
+     * 上一个任务还没有结束时，中断它并在调度线程上稍后重试，不 sleep 等待
+     */
+    private static void startAsync(ToolExecutionContext execContext, String commandStr, long deadline,
+                                   CompletableFuture<Map<String, Object>> future) {
+        try {
+            Map<String, Object> asyncResult = execContext.getCommandContext().executeAsync(commandStr);
+            if (isRetryableAsyncStartError(asyncResult)
+                    && System.currentTimeMillis() + DEFAULT_ASYNC_START_RETRY_INTERVAL_MS < deadline) {
+                interruptJobQuietly(execContext);
+                scheduler().schedule(() -> startAsync(execContext, commandStr, deadline, future),
+                        DEFAULT_ASYNC_START_RETRY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                return;
             }
-
-            return asyncResult;
+            future.complete(asyncResult);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
         }
-
-        return asyncResult;
     }
 
     protected StringBuilder buildCommand(String baseCommand) {
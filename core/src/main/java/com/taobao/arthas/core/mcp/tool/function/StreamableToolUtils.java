@@ -1,6 +1,7 @@
 package com.taobao.arthas.core.mcp.tool.function;
 
 import com.taobao.arthas.core.command.model.*;
+import com.taobao.arthas.core.server.ArthasBootstrap;
 import com.taobao.arthas.mcp.server.session.ArthasCommandContext;
 import com.taobao.arthas.mcp.server.protocol.server.McpNettyServerExchange;
 import com.taobao.arthas.mcp.server.protocol.spec.McpSchema;
@@ -11,11 +12,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
- * 同步工具的工具类
- * 提供同步执行命令并收集所有结果的功能
+ * 流式工具的工具类
+ * 提供异步执行命令并收集所有结果的功能
  * 
  * @author Yeaury
  */
@@ -23,13 +30,9 @@ public final class StreamableToolUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(StreamableToolUtils.class);
 
-    private static final int DEFAULT_POLL_INTERVAL_MS = 100;    // 默认轮询间隔100ms
-
-    private static final int ERROR_RETRY_INTERVAL_MS = 500;     // 错误重试间隔500ms
-
     public static final long DEFAULT_TIMEOUT_MS = 30000L;      // 默认超时时间30秒
 
-    private static final int MAX_ERROR_RETRIES = 10;            // 最大错误重试次数
+    private static final int MAX_RESULT_ERRORS = 10;            // 处理结果时最多允许出错的次数
 
     public static final int MIN_ALLOW_INPUT_COUNT_TO_COMPLETE = 2;
 
@@ -37,118 +40,202 @@ public final class StreamableToolUtils {
     }
 
     /**
-     * 同步执行命令并收集所有结果，支持进度通知
+     * 执行超时、重试等延时任务的调度线程
+     */
+    static ScheduledExecutorService scheduler() {
+        return ArthasBootstrap.getInstance().getScheduledExecutorService();
+    }
+
+    /**
+     * 订阅命令结果并收集，支持进度通知
+     * 结果由 session 的结果分发线程推送过来，等待期间不占用任何线程
      * 
      * @param exchange MCP交换器，用于发送进度通知
      * @param commandContext 命令上下文
      * @param expectedResultCount 预期结果数量
-     * @param intervalMs 轮询间隔
      * @param timeoutMs 超时时间(毫秒)
      * @param progressToken 进度令牌
-     * @return 包含所有结果的Map，如果执行失败返回null
+     * @return 收集完成后返回包含所有结果的Map
      */
-    public static Map<String, Object> executeAndCollectResults(McpNettyServerExchange exchange, 
+    public static CompletableFuture<Map<String, Object>> executeAndCollectResults(McpNettyServerExchange exchange,
                                                              ArthasCommandContext commandContext, 
-                                                             Integer expectedResultCount, Integer intervalMs, 
+                                                             Integer expectedResultCount,
                                                              Integer timeoutMs,
                                                              String progressToken) {
-        List<Object> allResults = new ArrayList<>();
-        int errorRetries = 0;
-        int allowInputCount = 0;
-        int totalResultCount = 0;
-        
-        // 轮询间隔使用命令执行间隙的 1/10,事件驱动则在命令中自定义默认轮询间隔
-        // 工具中默认轮询间隔为200ms
-        int pullIntervalMs = (intervalMs != null && intervalMs > 0) ? intervalMs : DEFAULT_POLL_INTERVAL_MS;
-        
-        // 计算截止时间
         // 如果没有指定超时时间，则使用默认超时时间
         long executionTimeoutMs = (timeoutMs != null && timeoutMs > 0) ? timeoutMs : DEFAULT_TIMEOUT_MS;
-        long deadline = System.currentTimeMillis() + executionTimeoutMs;
-        boolean timedOut = false;
 
-        try {
-            while (System.currentTimeMillis() < deadline) {
-                try {
-                    Map<String, Object> results = commandContext.pullResults();
-                    if (results == null) {
-                        Thread.sleep(pullIntervalMs);
-                        continue;
-                    }
-                    errorRetries = 0;
+        ResultCollector collector = new ResultCollector(exchange, commandContext, expectedResultCount,
+                executionTimeoutMs, progressToken, scheduler());
+        collector.start();
+        return collector.future;
+    }
 
-                    // 检查是否有错误消息
-                    String errorMessage = checkForErrorMessages(results);
-                    if (errorMessage != null) {
-                        logger.warn("Command execution failed with error: {}", errorMessage);
-                        return createErrorResponseWithResults(errorMessage, allResults, totalResultCount);
-                    }
+    /**
+     * 收集推送过来的命令结果，满足结束条件或者超时后完成 future
+     */
+    private static final class ResultCollector implements Consumer<Map<String, Object>> {
+        private final McpNettyServerExchange exchange;
+        private final ArthasCommandContext commandContext;
+        private final Integer expectedResultCount;
+        private final long timeoutMs;
+        private final String progressToken;
+        private final ScheduledExecutorService scheduler;
 
-                    Map<String, Object> filteredResults = filterCommandSpecificResults(results);
-                    List<Object> currentBatchResults = getCommandSpecificResults(filteredResults);
-                    
-                    if (currentBatchResults != null && !currentBatchResults.isEmpty()) {
-                        allResults.addAll(currentBatchResults);
-                        totalResultCount += currentBatchResults.size();
-                        logger.debug("Collected {} results, total: {}", currentBatchResults.size(), totalResultCount);
-
-                        if (exchange != null) {
-                            sendProgressNotification(exchange, totalResultCount, 
-                                                    expectedResultCount != null ? expectedResultCount : totalResultCount, 
-                                                    progressToken);
-                        }
-                    }
+        final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
 
-                    boolean commandCompleted = checkCommandCompletion(results, allowInputCount);
-                    if (commandCompleted) {
-                        allowInputCount++;
-                    }
+        private final List<Object> allResults = new ArrayList<>();
+        private int totalResultCount = 0;
+        private int allowInputCount = 0;
+        private int errorCount = 0;
+        private boolean done = false;
+        private volatile ScheduledFuture<?> timeoutFuture;
 
-                    String jobStatus = (String) results.get("jobStatus");
-                    
-                    // 判断是否应该结束
-                    // 如果是TERMINATED状态，或者命令已完成且允许输入次数大于等于2，或者实际结果数量达到预期结果数量
-                    boolean hasExpectedResultCount = (expectedResultCount != null);
-                    boolean reachedExpectedResultCount = hasExpectedResultCount && totalResultCount >= expectedResultCount;
-                    boolean allowInputCompletion = !hasExpectedResultCount
-                            && commandCompleted
-                            && allowInputCount >= MIN_ALLOW_INPUT_COUNT_TO_COMPLETE;
-
-                    if ("TERMINATED".equals(jobStatus) || allowInputCompletion || reachedExpectedResultCount) {
-                        logger.info("Command completed. Total results collected: {}, Expected: {}", totalResultCount, expectedResultCount);
-                        break;
-                    }
+        ResultCollector(McpNettyServerExchange exchange, ArthasCommandContext commandContext,
+                        Integer expectedResultCount, long timeoutMs, String progressToken,
+                        ScheduledExecutorService scheduler) {
+            this.exchange = exchange;
+            this.commandContext = commandContext;
+            this.expectedResultCount = expectedResultCount;
+            this.timeoutMs = timeoutMs;
+            this.progressToken = progressToken;
+            this.scheduler = scheduler;
+        }
 
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    logger.warn("Command execution interrupted");
-                    return null;
+        void start() {
+            try {
+                timeoutFuture = scheduler.schedule(this::onTimeout, timeoutMs, TimeUnit.MILLISECONDS);
+                // 订阅时已经在队列里的结果会立即推送过来
+                Map<String, Object> subscribeResult = commandContext.subscribeResults(this);
+                if (subscribeResult == null || !Boolean.TRUE.equals(subscribeResult.get("success"))) {
+                    Object error = subscribeResult != null ? subscribeResult.get("error") : null;
+                    fail("Failed to subscribe command results: " + error);
+                }
+            } catch (Exception e) {
+                logger.error("Error subscribing command results", e);
+                fail("Failed to subscribe command results: " + e.getMessage());
+            }
+        }
+
+        /**
+         * 在结果分发线程中调用，不能阻塞
+         */
+        @Override
+        public void accept(Map<String, Object> results) {
+            Map<String, Object> finalResult;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                try {
+                    finalResult = collect(results);
                 } catch (Exception e) {
-                    if (++errorRetries >= MAX_ERROR_RETRIES) {
-                        logger.error("Maximum error retries exceeded", e);
-                        return null;
-                    }
-                    
-                    try {
-                        Thread.sleep(ERROR_RETRY_INTERVAL_MS);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        return null;
+                    if (++errorCount < MAX_RESULT_ERRORS) {
+                        logger.warn("Error processing command result", e);
+                        return;
                     }
+                    logger.error("Maximum result errors exceeded", e);
+                    finalResult = createErrorResponseWithResults("Error processing command results: " + e.getMessage(),
+                            allResults, totalResultCount);
+                }
+                if (finalResult == null) {
+                    return;
                 }
+                done = true;
             }
-            
-            // 检查是否超时
-            if (System.currentTimeMillis() >= deadline) {
-                timedOut = true;
+            complete(finalResult);
+        }
+
+        /**
+         * 处理一次推送的结果，满足结束条件时返回最终结果，否则返回 null
+         */
+        private Map<String, Object> collect(Map<String, Object> results) {
+            // 检查是否有错误消息
+            String errorMessage = checkForErrorMessages(results);
+            if (errorMessage != null) {
+                logger.warn("Command execution failed with error: {}", errorMessage);
+                return createErrorResponseWithResults(errorMessage, allResults, totalResultCount);
             }
 
-            return createFinalResult(allResults, totalResultCount, timedOut, executionTimeoutMs);
-            
-        } catch (Exception e) {
-            logger.error("Error in command execution", e);
+            Map<String, Object> filteredResults = filterCommandSpecificResults(results);
+            List<Object> currentBatchResults = getCommandSpecificResults(filteredResults);
+
+            if (currentBatchResults != null && !currentBatchResults.isEmpty()) {
+                allResults.addAll(currentBatchResults);
+                totalResultCount += currentBatchResults.size();
+                logger.debug("Collected {} results, total: {}", currentBatchResults.size(), totalResultCount);
+
+                if (exchange != null) {
+                    sendProgressNotification(exchange, totalResultCount,
+                                            expectedResultCount != null ? expectedResultCount : totalResultCount,
+                                            progressToken);
+                }
+            }
+
+            boolean commandCompleted = checkCommandCompletion(results, allowInputCount);
+            if (commandCompleted) {
+                allowInputCount++;
+            }
+
+            String jobStatus = (String) results.get("jobStatus");
+
+            // 判断是否应该结束
+            // 如果是TERMINATED状态，或者命令已完成且允许输入次数大于等于2，或者实际结果数量达到预期结果数量
+            boolean hasExpectedResultCount = (expectedResultCount != null);
+            boolean reachedExpectedResultCount = hasExpectedResultCount && totalResultCount >= expectedResultCount;
+            boolean allowInputCompletion = !hasExpectedResultCount
+                    && commandCompleted
+                    && allowInputCount >= MIN_ALLOW_INPUT_COUNT_TO_COMPLETE;
+
+            if ("TERMINATED".equals(jobStatus) || allowInputCompletion || reachedExpectedResultCount) {
+                logger.info("Command completed. Total results collected: {}, Expected: {}", totalResultCount, expectedResultCount);
+                return createFinalResult(allResults, totalResultCount, false, timeoutMs);
+            }
             return null;
         }
+
+        private void onTimeout() {
+            Map<String, Object> finalResult;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                finalResult = createFinalResult(allResults, totalResultCount, true, timeoutMs);
+            }
+            complete(finalResult);
+        }
+
+        private void fail(String message) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            complete(createErrorResponseWithResults(message, allResults, totalResultCount));
+        }
+
+        /**
+         * 不能持有 collector 的锁调用，取消订阅时需要获取 consumer 的锁
+         */
+        private void complete(Map<String, Object> finalResult) {
+            ScheduledFuture<?> timeout = timeoutFuture;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            try {
+                commandContext.unsubscribeResults(this);
+            } catch (Exception e) {
+                logger.debug("Error unsubscribing command results", e);
+            }
+            // 结果转换和响应发送不在结果分发线程里执行
+            try {
+                scheduler.execute(() -> future.complete(finalResult));
+            } catch (RejectedExecutionException e) {
+                future.complete(finalResult);
+            }
+        }
     }
 
     private static boolean checkCommandCompletion(Map<String, Object> results, int currentAllowInputCount) {
@@ -280,7 +367,10 @@ public final class StreamableToolUtils {
                         progressToken,
                         currentResultCount,
                         (double) totalExpected
-                )).join();
+                )).exceptionally(e -> {
+                    logger.error("Error sending progress notification", e);
+                    return null;
+                });
             }
             
         } catch (Exception e) {
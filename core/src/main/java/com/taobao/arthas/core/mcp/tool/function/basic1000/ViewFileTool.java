@@ -2,6 +2,7 @@ package com.taobao.arthas.core.mcp.tool.function.basic1000;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.taobao.arthas.core.mcp.tool.function.AbstractArthasTool;
+import com.taobao.arthas.core.util.LineIndexedFile;
 import com.taobao.arthas.mcp.server.tool.ToolContext;
 import com.taobao.arthas.mcp.server.tool.annotation.Tool;
 import com.taobao.arthas.mcp.server.tool.annotation.ToolParam;
@@ -13,6 +14,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.regex.Pattern;
 
 import static com.taobao.arthas.core.mcp.tool.function.StreamableToolUtils.createCompletedResponse;
 import static com.taobao.arthas.core.mcp.tool.function.StreamableToolUtils.createErrorResponse;
@@ -27,6 +29,12 @@ public class ViewFileTool extends AbstractArthasTool {
     static final int DEFAULT_MAX_BYTES = 8192;
     static final int MAX_MAX_BYTES = 65536;
 
+    static final int DEFAULT_MAX_LINES = 200;
+    static final int MAX_MAX_LINES = 5000;
+
+    static final int DEFAULT_MAX_MATCHES = 100;
+    static final int MAX_MAX_MATCHES = 1000;
+
     @Tool(
             name = "viewfile",
             description = "查看文件内容（仅允许在配置的目录白名单内查看），并支持 cursor/offset 分段读取，避免一次性返回大量内容。\n" +
@@ -35,6 +43,9 @@ public class ViewFileTool extends AbstractArthasTool {
                     "- 环境变量: " + ALLOWED_DIRS_ENV + "=/path/a,/path/b\n" +
                     "使用方式：\n" +
                     "- 首次读取：传 path（可传 offset/maxBytes）\n" +
+                    "- 按行读取：传 path 和 startLine（可传 maxLines）\n" +
+                    "- 查看末尾：传 path 和 tailLines，之后用返回的 cursor 继续调用即可持续获取新追加的行（tail -f）\n" +
+                    "- 搜索：传 path 和 pattern（正则表达式），只返回匹配的行及行号\n" +
                     "- 继续读取：传 cursor（由上一次返回结果提供）"
     )
     public String viewFile(
@@ -50,6 +61,21 @@ public class ViewFileTool extends AbstractArthasTool {
             @ToolParam(description = "本次最多读取字节数（默认 8192，最大 65536）。", required = false)
             Integer maxBytes,
 
+            @ToolParam(description = "按行读取的起始行号（从 1 开始）。提供后按行返回，nextCursor 也按行继续。", required = false)
+            Long startLine,
+
+            @ToolParam(description = "按行读取时最多返回的行数（默认 200，最大 5000），同时受 maxBytes 限制。", required = false)
+            Integer maxLines,
+
+            @ToolParam(description = "返回文件最后 N 行，之后使用 nextCursor 可以持续读取新追加的行。", required = false)
+            Integer tailLines,
+
+            @ToolParam(description = "在文件中搜索的正则表达式，只返回匹配的行。", required = false)
+            String pattern,
+
+            @ToolParam(description = "搜索时最多返回的匹配行数（默认 100，最大 1000）。", required = false)
+            Integer maxMatches,
+
             ToolContext toolContext
     ) {
         try {
@@ -59,10 +85,19 @@ public class ViewFileTool extends AbstractArthasTool {
                         "请通过环境变量 " + ALLOWED_DIRS_ENV + "=/path/a,/path/b 进行配置。"));
             }
 
-            CursorRequest cursorRequest = parseCursorOrArgs(path, cursor, offset);
+            CursorRequest cursorRequest = parseCursorOrArgs(path, cursor, offset, startLine);
             Path targetFile = resolveAllowedFile(cursorRequest.path, allowedRoots);
 
             int readMaxBytes = clampMaxBytes(maxBytes);
+            if (pattern != null && !pattern.isEmpty()) {
+                return JsonParser.toJson(createCompletedResponse("ok",
+                        search(targetFile, pattern, maxMatches, readMaxBytes)));
+            }
+            if (cursorRequest.line > 0 || (!cursorRequest.cursorUsed && tailLines != null)) {
+                return JsonParser.toJson(createCompletedResponse("ok",
+                        readLines(targetFile, cursorRequest, tailLines, maxLines, readMaxBytes)));
+            }
+
             long fileSize = Files.size(targetFile);
 
             long requestedOffset = cursorRequest.offset;
@@ -99,22 +134,122 @@ public class ViewFileTool extends AbstractArthasTool {
         }
     }
 
+    /**
+     * 按行读取（startLine / tailLines / 行游标），通过 LineIndexedFile 的行索引定位，不需要从头读文件
+     */
+    private Map<String, Object> readLines(Path targetFile, CursorRequest cursorRequest, Integer tailLines,
+                                          Integer maxLines, int readMaxBytes) throws Exception {
+        LineIndexedFile indexedFile = LineIndexedFile.of(targetFile.toFile());
+        long totalLines = indexedFile.getLineCount();
+        int readMaxLines = clamp(maxLines, DEFAULT_MAX_LINES, MAX_MAX_LINES);
+
+        List<LineIndexedFile.Line> lines;
+        long firstLine;
+        boolean cursorReset = false;
+        if (cursorRequest.line > 0) {
+            firstLine = cursorRequest.line;
+            if (firstLine > totalLines + 1) {
+                // 文件被截断或滚动，游标从头开始
+                cursorReset = cursorRequest.cursorUsed;
+                firstLine = cursorReset ? 1 : totalLines + 1;
+            }
+            lines = indexedFile.readLines(firstLine, readMaxLines, readMaxBytes, StandardCharsets.UTF_8);
+        } else {
+            int tail = clamp(tailLines, DEFAULT_MAX_LINES, MAX_MAX_LINES);
+            lines = indexedFile.tail(tail, readMaxBytes, StandardCharsets.UTF_8);
+            firstLine = lines.isEmpty() ? totalLines + 1 : lines.get(0).getNumber();
+        }
+
+        long nextLine = firstLine;
+        boolean eof = firstLine > totalLines;
+        if (!lines.isEmpty()) {
+            LineIndexedFile.Line last = lines.get(lines.size() - 1);
+            // 最后一行还没有写完时，游标停在这一行，下次读取完整的内容
+            nextLine = last.isComplete() ? last.getNumber() + 1 : last.getNumber();
+            eof = last.getNumber() >= totalLines;
+        }
+        StringBuilder content = new StringBuilder();
+        for (LineIndexedFile.Line line : lines) {
+            if (content.length() > 0) {
+                content.append('\n');
+            }
+            content.append(line.getText());
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("path", targetFile.toString());
+        result.put("totalLines", totalLines);
+        result.put("startLine", firstLine);
+        result.put("readLines", lines.size());
+        result.put("nextLine", nextLine);
+        result.put("eof", eof);
+        result.put("nextCursor", encodeLineCursor(targetFile.toString(), nextLine));
+        result.put("content", content.toString());
+        if (cursorReset) {
+            result.put("cursorReset", true);
+            result.put("cursorResetReason", "lineGreaterThanLineCount");
+        }
+        return result;
+    }
+
+    /**
+     * 并行扫描文件，只返回匹配的行，总大小受 maxBytes 限制
+     */
+    private Map<String, Object> search(Path targetFile, String pattern, Integer maxMatches, int readMaxBytes)
+            throws Exception {
+        int limit = clamp(maxMatches, DEFAULT_MAX_MATCHES, MAX_MAX_MATCHES);
+        LineIndexedFile indexedFile = LineIndexedFile.of(targetFile.toFile());
+        List<LineIndexedFile.Line> found = indexedFile.search(Pattern.compile(pattern), false, limit + 1,
+                StandardCharsets.UTF_8);
+
+        List<Map<String, Object>> matches = new ArrayList<>();
+        boolean truncated = found.size() > limit;
+        long bytes = 0;
+        for (LineIndexedFile.Line line : found) {
+            if (matches.size() >= limit || (bytes > 0 && bytes + line.getText().length() > readMaxBytes)) {
+                truncated = true;
+                break;
+            }
+            String text = line.getText();
+            if (text.length() > readMaxBytes) {
+                text = text.substring(0, readMaxBytes);
+            }
+            bytes += text.length();
+            Map<String, Object> match = new LinkedHashMap<>();
+            match.put("line", line.getNumber());
+            match.put("text", text);
+            matches.add(match);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("path", targetFile.toString());
+        result.put("fileSize", Files.size(targetFile));
+        result.put("pattern", pattern);
+        result.put("matchCount", matches.size());
+        result.put("truncated", truncated);
+        result.put("matches", matches);
+        return result;
+    }
+
     private static final class CursorRequest {
         private final String path;
         private final long offset;
+        /** 行游标，大于 0 时按行读取 */
+        private final long line;
         private final boolean cursorUsed;
 
-        private CursorRequest(String path, long offset, boolean cursorUsed) {
+        private CursorRequest(String path, long offset, long line, boolean cursorUsed) {
             this.path = path;
             this.offset = offset;
+            this.line = line;
             this.cursorUsed = cursorUsed;
         }
     }
 
-    private CursorRequest parseCursorOrArgs(String path, String cursor, Long offset) {
+    private CursorRequest parseCursorOrArgs(String path, String cursor, Long offset, Long startLine) {
         if (cursor != null && !cursor.trim().isEmpty()) {
             CursorValue decoded = decodeCursor(cursor.trim());
-            return new CursorRequest(decoded.path, decoded.offset, true);
+            return new CursorRequest(decoded.path, decoded.offset, decoded.line, true);
         }
         if (path == null || path.trim().isEmpty()) {
             throw new IllegalArgumentException("必须提供 path 或 cursor");
@@ -122,17 +257,23 @@ public class ViewFileTool extends AbstractArthasTool {
         if (offset != null && offset < 0) {
             throw new IllegalArgumentException("offset 不允许为负数");
         }
+        if (startLine != null && startLine < 1) {
+            throw new IllegalArgumentException("startLine 必须从 1 开始");
+        }
         long resolvedOffset = (offset != null) ? offset : 0L;
-        return new CursorRequest(path.trim(), resolvedOffset, false);
+        long resolvedLine = (startLine != null) ? startLine : 0L;
+        return new CursorRequest(path.trim(), resolvedOffset, resolvedLine, false);
     }
 
     private static final class CursorValue {
         private final String path;
         private final long offset;
+        private final long line;
 
-        private CursorValue(String path, long offset) {
+        private CursorValue(String path, long offset, long line) {
             this.path = path;
             this.offset = offset;
+            this.line = line;
         }
     }
 
@@ -144,9 +285,17 @@ public class ViewFileTool extends AbstractArthasTool {
             Map<String, Object> map = JsonParser.fromJson(json, new TypeReference<Map<String, Object>>() {});
             Object pathObj = map.get("path");
             Object offsetObj = map.get("offset");
+            Object lineObj = map.get("line");
             if (!(pathObj instanceof String) || ((String) pathObj).trim().isEmpty()) {
                 throw new IllegalArgumentException("cursor 缺少 path");
             }
+            if (lineObj instanceof Number) {
+                long line = ((Number) lineObj).longValue();
+                if (line < 1) {
+                    throw new IllegalArgumentException("cursor line 必须从 1 开始");
+                }
+                return new CursorValue(((String) pathObj).trim(), 0L, line);
+            }
             if (!(offsetObj instanceof Number)) {
                 throw new IllegalArgumentException("cursor 缺少 offset");
             }
@@ -154,7 +303,7 @@ public class ViewFileTool extends AbstractArthasTool {
             if (offset < 0) {
                 throw new IllegalArgumentException("cursor offset 不允许为负数");
             }
-            return new CursorValue(((String) pathObj).trim(), offset);
+            return new CursorValue(((String) pathObj).trim(), offset, 0L);
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("cursor 解析失败: " + e.getMessage(), e);
         }
@@ -169,6 +318,15 @@ public class ViewFileTool extends AbstractArthasTool {
         return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
     }
 
+    private String encodeLineCursor(String path, long line) {
+        Map<String, Object> cursor = new LinkedHashMap<>();
+        cursor.put("v", 2);
+        cursor.put("path", path);
+        cursor.put("line", line);
+        String json = JsonParser.toJson(cursor);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
     private List<Path> loadAllowedRoots() {
         String config = System.getenv(ALLOWED_DIRS_ENV);
 
@@ -273,6 +431,11 @@ public class ViewFileTool extends AbstractArthasTool {
         return Math.min(value, MAX_MAX_BYTES);
     }
 
+    private static int clamp(Integer value, int defaultValue, int maxValue) {
+        int v = (value != null && value > 0) ? value : defaultValue;
+        return Math.min(v, maxValue);
+    }
+
     private static long adjustOffset(boolean cursorUsed, long requestedOffset, long fileSize) {
         if (requestedOffset < 0) {
             throw new IllegalArgumentException("offset 不允许为负数");
@@ -5,6 +5,8 @@ import com.taobao.arthas.mcp.server.tool.ToolContext;
 import com.taobao.arthas.mcp.server.tool.annotation.Tool;
 import com.taobao.arthas.mcp.server.tool.annotation.ToolParam;
 
+import java.util.concurrent.CompletableFuture;
+
 public class DashboardTool extends AbstractArthasTool {
 
     public static final int DEFAULT_NUMBER_OF_EXECUTIONS = 3;
@@ -21,7 +23,7 @@ public class DashboardTool extends AbstractArthasTool {
             description = "Dashboard 诊断工具: 实时展示 JVM/应用面板，可利用参数控制诊断次数与间隔。对应 Arthas 的 dashboard 命令。",
             streamable = true
     )
-    public String dashboard(
+    public CompletableFuture<String> dashboard(
             @ToolParam(description = "刷新间隔，单位为毫秒，默认 3000ms。用于控制输出频率", required = false)
             Integer intervalMs,
 
@@ -41,7 +43,7 @@ public class DashboardTool extends AbstractArthasTool {
         // and the timeout is based on (number * interval) + buffer time
         int calculatedTimeoutMs = execCount * interval + 5000;
 
-        return executeStreamable(toolContext, cmd.toString(), execCount, interval / 10, calculatedTimeoutMs,
+        return executeStreamable(toolContext, cmd.toString(), execCount, calculatedTimeoutMs,
                 "Dashboard execution completed successfully");
     }
 }
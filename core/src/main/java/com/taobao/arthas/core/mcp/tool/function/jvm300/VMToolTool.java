@@ -5,6 +5,8 @@ import com.taobao.arthas.mcp.server.tool.ToolContext;
 import com.taobao.arthas.mcp.server.tool.annotation.Tool;
 import com.taobao.arthas.mcp.server.tool.annotation.ToolParam;
 
+import java.util.concurrent.CompletableFuture;
+
 public class VMToolTool extends AbstractArthasTool {
 
     public static final String ACTION_GET_INSTANCES = "getInstances";
@@ -12,7 +14,6 @@ public class VMToolTool extends AbstractArthasTool {
     public static final String ACTION_HEAP_ANALYZE = "heapAnalyze";
     
     // heapAnalyze 默认参数
-    private static final int DEFAULT_HEAP_ANALYZE_POLL_INTERVAL_MS = 200;
     private static final int DEFAULT_HEAP_ANALYZE_TIMEOUT_SECONDS = 60;
 
     @Tool(
@@ -20,7 +21,7 @@ public class VMToolTool extends AbstractArthasTool {
             description = "虚拟机工具诊断工具: 查询实例、强制 GC、线程中断、堆内存分析等，对应 Arthas 的 vmtool 命令。",
             streamable = true
     )
-    public String vmtool(
+    public CompletableFuture<String> vmtool(
             @ToolParam(description = "操作类型: getInstances/forceGc/interruptThread/heapAnalyze 等", required = true)
             String action,
 
@@ -100,13 +101,12 @@ public class VMToolTool extends AbstractArthasTool {
             // heapAnalyze 需要等待结果，使用 executeStreamable
             return executeStreamable(toolContext, cmd.toString(), 
                     1, // 期望 1 个结果
-                    DEFAULT_HEAP_ANALYZE_POLL_INTERVAL_MS,
                     DEFAULT_HEAP_ANALYZE_TIMEOUT_SECONDS * 1000,
                     "Heap analysis completed successfully");
         }
 
         // 其他 action（getInstances, forceGc, interruptThread 等）使用同步执行
-        return executeSync(toolContext, cmd.toString());
+        return CompletableFuture.completedFuture(executeSync(toolContext, cmd.toString()));
     }
 
 
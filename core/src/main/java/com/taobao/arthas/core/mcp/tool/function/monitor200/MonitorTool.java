@@ -5,6 +5,8 @@ import com.taobao.arthas.mcp.server.tool.ToolContext;
 import com.taobao.arthas.mcp.server.tool.annotation.Tool;
 import com.taobao.arthas.mcp.server.tool.annotation.ToolParam;
 
+import java.util.concurrent.CompletableFuture;
+
 public class MonitorTool extends AbstractArthasTool {
 
     public static final int DEFAULT_NUMBER_OF_EXECUTIONS = 1;
@@ -29,7 +31,7 @@ public class MonitorTool extends AbstractArthasTool {
         description = "Monitor 方法调用监控工具: 实时监控指定类的指定方法的调用情况，包括调用次数、成功次数、失败次数、平均RT、失败率等统计信息。对应 Arthas 的 monitor 命令。",
         streamable = true
     )
-    public String monitor(
+    public CompletableFuture<String> monitor(
             @ToolParam(description = "类名表达式匹配，支持通配符，如demo.MathGame")
             String classPattern,
 
@@ -77,7 +79,7 @@ public class MonitorTool extends AbstractArthasTool {
         
         addQuotedParameter(cmd, condition);
 
-        return executeStreamable(toolContext, cmd.toString(), execCount, interval / 10, timeoutSeconds * 1000,
+        return executeStreamable(toolContext, cmd.toString(), execCount, timeoutSeconds * 1000,
                                 "Monitor execution completed successfully");
     }
 }
@@ -5,10 +5,11 @@ import com.taobao.arthas.mcp.server.tool.ToolContext;
 import com.taobao.arthas.mcp.server.tool.annotation.Tool;
 import com.taobao.arthas.mcp.server.tool.annotation.ToolParam;
 
+import java.util.concurrent.CompletableFuture;
+
 public class StackTool extends AbstractArthasTool {
 
     public static final int DEFAULT_NUMBER_OF_EXECUTIONS = 1;
-    public static final int DEFAULT_POLL_INTERVAL_MS = 50;
 
     /**
      * stack 调用堆栈跟踪工具
@@ -26,7 +27,7 @@ public class StackTool extends AbstractArthasTool {
         description = "Stack 调用堆栈跟踪工具: 输出当前方法被调用的调用路径，帮助分析方法的调用链路。对应 Arthas 的 stack 命令。",
         streamable = true
     )
-    public String stack(
+    public CompletableFuture<String> stack(
             @ToolParam(description = "类名表达式匹配，支持通配符，如demo.MathGame")
             String classPattern,
 
@@ -63,7 +64,7 @@ public class StackTool extends AbstractArthasTool {
         
         addQuotedParameter(cmd, condition);
 
-        return executeStreamable(toolContext, cmd.toString(), execCount, DEFAULT_POLL_INTERVAL_MS, timeoutSeconds * 1000,
+        return executeStreamable(toolContext, cmd.toString(), execCount, timeoutSeconds * 1000,
                                 "Stack execution completed successfully");
     }
 }
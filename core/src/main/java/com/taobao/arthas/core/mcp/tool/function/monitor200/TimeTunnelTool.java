@@ -5,10 +5,11 @@ import com.taobao.arthas.mcp.server.tool.ToolContext;
 import com.taobao.arthas.mcp.server.tool.annotation.Tool;
 import com.taobao.arthas.mcp.server.tool.annotation.ToolParam;
 
+import java.util.concurrent.CompletableFuture;
+
 public class TimeTunnelTool extends AbstractArthasTool {
 
     public static final int DEFAULT_NUMBER_OF_EXECUTIONS = 1;
-    public static final int DEFAULT_POLL_INTERVAL_MS = 100;
     public static final int DEFAULT_MAX_MATCH_COUNT = 50;
 
     /**
@@ -20,7 +21,7 @@ public class TimeTunnelTool extends AbstractArthasTool {
             description = "TimeTunnel 时空隧道工具: 方法执行数据的时空隧道，记录下指定方法每次调用的入参和返回信息，对应 Arthas 的 tt 命令。支持记录、列表、搜索、查看详情、重放、删除等操作。",
             streamable = true
     )
-    public String timeTunnel(
+    public CompletableFuture<String> timeTunnel(
             @ToolParam(description = "操作类型: record/t(记录), list/l(列表), search/s(搜索), info/i(查看详情), replay/p(重放), delete/d(删除), deleteAll/da(删除所有)，默认record")
             String action,
 
@@ -89,7 +90,7 @@ public class TimeTunnelTool extends AbstractArthasTool {
                         ". Supported actions: record(t), list(l), info(i), search(s), replay(p), delete(d), deleteAll(da)");
         }
 
-        return executeStreamable(toolContext, cmd.toString(), execCount, DEFAULT_POLL_INTERVAL_MS, timeoutSeconds * 1000,
+        return executeStreamable(toolContext, cmd.toString(), execCount, timeoutSeconds * 1000,
                 "TimeTunnel recording completed successfully");
     }
 
@@ -5,10 +5,11 @@ import com.taobao.arthas.mcp.server.tool.ToolContext;
 import com.taobao.arthas.mcp.server.tool.annotation.Tool;
 import com.taobao.arthas.mcp.server.tool.annotation.ToolParam;
 
+import java.util.concurrent.CompletableFuture;
+
 public class TraceTool extends AbstractArthasTool {
 
     public static final int DEFAULT_NUMBER_OF_EXECUTIONS = 1;
-    public static final int DEFAULT_POLL_INTERVAL_MS = 100;
     public static final int DEFAULT_MAX_MATCH_COUNT = 50;
 
     /**
@@ -20,7 +21,7 @@ public class TraceTool extends AbstractArthasTool {
         description = "Trace 方法内部调用路径跟踪工具: 追踪方法内部调用路径，输出每个节点的耗时信息，对应 Arthas 的 trace 命令。",
         streamable = true
     )
-    public String trace(
+    public CompletableFuture<String> trace(
             @ToolParam(description = "类名表达式匹配，支持通配符，如demo.MathGame")
             String classPattern,
 
@@ -64,7 +65,7 @@ public class TraceTool extends AbstractArthasTool {
 
         addQuotedParameter(cmd, condition);
 
-        return executeStreamable(toolContext, cmd.toString(), execCount, DEFAULT_POLL_INTERVAL_MS, timeoutSeconds * 1000,
+        return executeStreamable(toolContext, cmd.toString(), execCount, timeoutSeconds * 1000,
                                 "Trace execution completed successfully");
     }
 }
@@ -5,10 +5,11 @@ import com.taobao.arthas.mcp.server.tool.ToolContext;
 import com.taobao.arthas.mcp.server.tool.annotation.Tool;
 import com.taobao.arthas.mcp.server.tool.annotation.ToolParam;
 
+import java.util.concurrent.CompletableFuture;
+
 public class WatchTool extends AbstractArthasTool {
 
     public static final int DEFAULT_NUMBER_OF_EXECUTIONS = 1;
-    public static final int DEFAULT_POLL_INTERVAL_MS = 50;
     public static final int DEFAULT_MAX_MATCH_COUNT = 50;
     public static final int DEFAULT_EXPAND_LEVEL = 1;
     public static final String DEFAULT_EXPRESS = "{params, target, returnObj}";
@@ -23,7 +24,7 @@ public class WatchTool extends AbstractArthasTool {
         description = "Watch 方法执行观察工具: 观察指定方法的调用情况，包括入参、返回值和抛出异常等信息，支持实时流式输出。对应 Arthas 的 watch 命令。",
         streamable = true
     )
-    public String watch(
+    public CompletableFuture<String> watch(
             @ToolParam(description = "类名表达式匹配，支持通配符，如demo.MathGame")
             String classPattern,
 
@@ -97,7 +98,7 @@ public class WatchTool extends AbstractArthasTool {
 
         addQuotedParameter(cmd, condition);
 
-        return executeStreamable(toolContext, cmd.toString(), execCount, DEFAULT_POLL_INTERVAL_MS, timeoutSeconds * 1000,
+        return executeStreamable(toolContext, cmd.toString(), execCount, timeoutSeconds * 1000,
                                 "Watch execution completed successfully");
     }
 }
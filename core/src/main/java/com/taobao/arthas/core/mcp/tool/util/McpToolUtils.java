@@ -10,6 +10,7 @@ import com.taobao.arthas.mcp.server.tool.ToolContext;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 public final class McpToolUtils {
@@ -67,8 +68,9 @@ public final class McpToolUtils {
 
 				String requestJson = convertParametersToString(request.getArguments());
 
-				String callResult = toolCallback.call(requestJson, toolContext);
-				return CompletableFuture.completedFuture(createSuccessResult(callResult));
+				return toolCallback.callAsync(requestJson, toolContext).handle((callResult, ex) -> ex == null
+						? createSuccessResult(callResult)
+						: createErrorResult(unwrap(ex).getMessage()));
 			} catch (Exception e) {
 				return CompletableFuture.completedFuture(createErrorResult(e.getMessage()));
 			}
@@ -111,8 +113,9 @@ public final class McpToolUtils {
 				ToolContext toolContext = new ToolContext(contextMap);
 
 				String argumentsJson = convertParametersToString(arguments);
-				String callResult = toolCallback.call(argumentsJson, toolContext);
-				return CompletableFuture.completedFuture(createSuccessResult(callResult));
+				return toolCallback.callAsync(argumentsJson, toolContext).handle((callResult, ex) -> ex == null
+						? createSuccessResult(callResult)
+						: createErrorResult("Error executing tool: " + unwrap(ex).getMessage()));
 			} catch (Exception e) {
 				return CompletableFuture.completedFuture(createErrorResult("Error executing tool: " + e.getMessage()));
 			}
@@ -121,6 +124,10 @@ public final class McpToolUtils {
 		return new McpStatelessServerFeatures.ToolSpecification(tool, callFunction);
 	}
 
+	private static Throwable unwrap(Throwable ex) {
+		return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+	}
+
 	private static String convertParametersToString(Map<String, Object> parameters) {
 		if (parameters == null || parameters.isEmpty()) {
 			return "{}";
@@ -0,0 +1,91 @@
+package com.taobao.arthas.core.profiler;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+
+/**
+ * Rotate the samples of a running profiler into a {@link ProfileSegmentStore} at a fixed interval.
+ */
+public class ContinuousProfiler {
+    private static final Logger logger = LoggerFactory.getLogger(ContinuousProfiler.class);
+
+    /**
+     * The profiler which provides the samples of one segment.
+     */
+    public interface SampleSource {
+        /**
+         * @param last whether this is the last segment, the profiler is stopped afterwards
+         * @return the samples collected since the previous call in the collapsed stacks format, unless it is the
+         *         last segment the profiler keeps running and starts collecting the next segment
+         */
+        String rotate(boolean last) throws Exception;
+    }
+
+    private final ProfileSegmentStore store;
+    private final SampleSource source;
+    private final long intervalMillis;
+
+    private ScheduledFuture<?> future;
+    private long segmentStart;
+    private long segments;
+    private long samples;
+
+    public ContinuousProfiler(ProfileSegmentStore store, SampleSource source, long intervalMillis) {
+        this.store = store;
+        this.source = source;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public synchronized void start(ScheduledExecutorService executor) {
+        segmentStart = System.currentTimeMillis();
+        future = executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rotate(false);
+                } catch (Throwable e) {
+                    logger.error("rotate profiling segment error", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop rotating and store the last segment. The profiler itself is stopped by the caller.
+     */
+    public synchronized void stop() throws Exception {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+        rotate(true);
+    }
+
+    public synchronized boolean isRunning() {
+        return future != null;
+    }
+
+    public ProfileSegmentStore getStore() {
+        return store;
+    }
+
+    public synchronized String status() {
+        return "Continuous profiling every " + intervalMillis / 1000 + " seconds into " + store.getDir()
+                + ", segments: " + segments + ", samples: " + samples + "\n";
+    }
+
+    synchronized void rotate(boolean last) throws Exception {
+        long end = System.currentTimeMillis();
+        String collapsed = source.rotate(last);
+        if (collapsed != null && !collapsed.isEmpty()) {
+            ProfileSegmentStore.Segment segment = store.add(segmentStart, end, collapsed);
+            segments++;
+            samples += segment.getSamples();
+        }
+        segmentStart = end;
+    }
+}
@@ -0,0 +1,216 @@
+package com.taobao.arthas.core.profiler;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+
+/**
+ * Pure java stack sampler, the fallback of async-profiler when the native library can not be used,
+ * for example musl libc, restricted perf_events or containers without ptrace.
+ * <p>
+ * A background thread periodically calls {@link ThreadMXBean#getThreadInfo(long[], int)} with a bounded
+ * depth and aggregates the stacks into a {@link StackTrie}. Samples are only taken at safepoints, so the
+ * result is biased compared to async-profiler, but it needs nothing but the jdk.
+ * <p>
+ * The sampler stretches the sampling interval so that it never uses more than {@link #MAX_OVERHEAD} of one cpu.
+ */
+public class JavaStackSampler {
+    private static final Logger logger = LoggerFactory.getLogger(JavaStackSampler.class);
+
+    public static final double MAX_OVERHEAD = 0.05;
+    public static final int DEFAULT_MAX_DEPTH = 128;
+
+    /**
+     * avoid building frame strings for the stack trace elements which have been seen
+     */
+    private static final int MAX_ELEMENT_CACHE_SIZE = 100000;
+
+    private static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final StackTrie trie = new StackTrie();
+    private final Map<StackTraceElement, Integer> elementIds = new HashMap<StackTraceElement, Integer>();
+
+    private volatile Thread samplerThread;
+
+    private long intervalMillis;
+    private int maxDepth;
+    private boolean wall;
+    private boolean threads;
+
+    private long samples;
+    private long rounds;
+    private long sampleCostNanos;
+    private long startTimeMillis;
+
+    /**
+     * @param intervalMillis sampling interval in ms
+     * @param maxDepth max java stack depth
+     * @param wall sample threads in all states, otherwise only RUNNABLE threads
+     * @param threads profile different threads separately
+     * @param reset drop the samples collected before
+     */
+    public synchronized void start(long intervalMillis, int maxDepth, boolean wall, boolean threads, boolean reset) {
+        if (samplerThread != null) {
+            throw new IllegalStateException("Java sampler is already running.");
+        }
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.maxDepth = maxDepth > 0 ? maxDepth : DEFAULT_MAX_DEPTH;
+        this.wall = wall;
+        this.threads = threads;
+        if (reset) {
+            reset();
+        }
+        startTimeMillis = System.currentTimeMillis();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "arthas-java-sampler");
+        thread.setDaemon(true);
+        samplerThread = thread;
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        Thread thread = samplerThread;
+        if (thread == null) {
+            throw new IllegalStateException("Java sampler is not active.");
+        }
+        samplerThread = null;
+        thread.interrupt();
+    }
+
+    public boolean isRunning() {
+        return samplerThread != null;
+    }
+
+    public synchronized void reset() {
+        trie.clear();
+        elementIds.clear();
+        samples = 0;
+        rounds = 0;
+        sampleCostNanos = 0;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    public synchronized String status() {
+        if (samplerThread == null) {
+            return "Java sampler is not active\n";
+        }
+        long avgCostMicros = rounds == 0 ? 0 : sampleCostNanos / rounds / 1000;
+        return "Java sampler is running for " + (System.currentTimeMillis() - startTimeMillis) / 1000 + " seconds"
+                + ", mode: " + (wall ? "wall" : "cpu") + ", interval: " + intervalMillis + "ms"
+                + ", samples: " + samples + ", rounds: " + rounds + ", avg round cost: " + avgCostMicros + "us\n";
+    }
+
+    public synchronized String dumpCollapsed() {
+        return trie.toCollapsed();
+    }
+
+    public synchronized String dumpFlat(int maxMethods) {
+        return trie.toFlat(maxMethods);
+    }
+
+    public synchronized String dumpFlameGraph(String title) throws IOException {
+        return trie.toFlameGraphHtml(title);
+    }
+
+    /**
+     * The samples collected since the previous drain in the collapsed stacks format, the collected samples are
+     * cleared but the sampler keeps running.
+     */
+    public synchronized String drainCollapsed() {
+        String collapsed = trie.toCollapsed();
+        trie.clear();
+        elementIds.clear();
+        return collapsed;
+    }
+
+    /**
+     * A copy of the collected samples.
+     */
+    public synchronized StackTrie snapshot() {
+        StackTrie copy = new StackTrie();
+        copy.merge(trie);
+        return copy;
+    }
+
+    private void loop() {
+        Thread self = Thread.currentThread();
+        while (samplerThread == self) {
+            long begin = System.nanoTime();
+            try {
+                sampleOnce(self.getId());
+            } catch (Throwable e) {
+                logger.error("java sampler error", e);
+            }
+            long cost = System.nanoTime() - begin;
+
+            // cap the overhead: sleep at least cost * (1 - MAX_OVERHEAD) / MAX_OVERHEAD
+            long sleepMillis = Math.max(intervalMillis, (long) (cost * (1 - MAX_OVERHEAD) / MAX_OVERHEAD / 1000000));
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void sampleOnce(long selfId) {
+        long begin = System.nanoTime();
+        long[] ids = threadMXBean.getAllThreadIds();
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(ids, maxDepth);
+
+        synchronized (this) {
+            int[] path = new int[maxDepth + 1];
+            for (ThreadInfo info : infos) {
+                if (info == null || info.getThreadId() == selfId) {
+                    continue;
+                }
+                if (!wall && info.getThreadState() != Thread.State.RUNNABLE) {
+                    continue;
+                }
+                StackTraceElement[] stackTrace = info.getStackTrace();
+                if (stackTrace.length == 0) {
+                    continue;
+                }
+                int length = 0;
+                if (threads) {
+                    path[length++] = trie.internFrame("[" + info.getThreadName() + " tid=" + info.getThreadId() + "]");
+                }
+                for (int i = stackTrace.length - 1; i >= 0; --i) {
+                    path[length++] = frameId(stackTrace[i]);
+                }
+                trie.addStack(path, length, 1);
+                samples++;
+            }
+            rounds++;
+            sampleCostNanos += System.nanoTime() - begin;
+        }
+    }
+
+    private int frameId(StackTraceElement element) {
+        Integer id = elementIds.get(element);
+        if (id != null) {
+            return id;
+        }
+        // same format as async-profiler: java/lang/Thread.run
+        int frameId = trie.internFrame(element.getClassName().replace('.', '/') + "." + element.getMethodName());
+        if (elementIds.size() >= MAX_ELEMENT_CACHE_SIZE) {
+            elementIds.clear();
+        }
+        elementIds.put(element, frameId);
+        return frameId;
+    }
+}
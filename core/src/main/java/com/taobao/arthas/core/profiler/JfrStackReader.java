@@ -0,0 +1,87 @@
+package com.taobao.arthas.core.profiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Read the stack traces of the sample events in a jfr recording, one sample per event.
+ * Kept apart from {@link ProfileReader}, so jdk.jfr is only loaded for jfr files.
+ */
+class JfrStackReader {
+    private static final int MAX_CACHED_METHODS = 1 << 20;
+
+    private JfrStackReader() {
+    }
+
+    static StackTrie read(File file, String event) throws IOException {
+        Set<String> eventNames = eventNames(event);
+        StackTrie trie = new StackTrie();
+        // the parser shares the method instances of a chunk, so the frame ids are cached by identity
+        Map<RecordedMethod, Integer> frameIds = new IdentityHashMap<RecordedMethod, Integer>();
+        int[] stack = new int[64];
+
+        RecordingFile recording = new RecordingFile(file.toPath());
+        try {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent recordedEvent = recording.readEvent();
+                if (!eventNames.contains(recordedEvent.getEventType().getName())) {
+                    continue;
+                }
+                RecordedStackTrace stackTrace = recordedEvent.getStackTrace();
+                if (stackTrace == null) {
+                    continue;
+                }
+                List<RecordedFrame> frames = stackTrace.getFrames();
+                int depth = frames.size();
+                if (stack.length < depth) {
+                    stack = new int[depth * 2];
+                }
+                // jfr frames are top first, the trie wants root first
+                for (int i = 0; i < depth; ++i) {
+                    RecordedMethod method = frames.get(i).getMethod();
+                    Integer frameId = frameIds.get(method);
+                    if (frameId == null) {
+                        frameId = trie.internFrame(method.getType().getName().replace('.', '/') + "." + method.getName());
+                        if (frameIds.size() >= MAX_CACHED_METHODS) {
+                            frameIds.clear();
+                        }
+                        frameIds.put(method, frameId);
+                    }
+                    stack[depth - 1 - i] = frameId;
+                }
+                trie.addStack(stack, depth, 1);
+            }
+        } finally {
+            recording.close();
+        }
+        return trie;
+    }
+
+    private static Set<String> eventNames(String event) {
+        if (event == null || "cpu".equals(event) || "itimer".equals(event) || "ctimer".equals(event)) {
+            return new HashSet<String>(Arrays.asList("jdk.ExecutionSample"));
+        } else if ("wall".equals(event)) {
+            return new HashSet<String>(
+                    Arrays.asList("jdk.ExecutionSample", "jdk.NativeMethodSample", "profiler.WallClockSample"));
+        } else if ("alloc".equals(event)) {
+            return new HashSet<String>(Arrays.asList("jdk.ObjectAllocationSample", "jdk.ObjectAllocationInNewTLAB",
+                    "jdk.ObjectAllocationOutsideTLAB"));
+        } else if ("lock".equals(event)) {
+            return new HashSet<String>(Arrays.asList("jdk.JavaMonitorEnter", "jdk.ThreadPark"));
+        }
+        // a jfr event name, for example jdk.ExecutionSample
+        return new HashSet<String>(Arrays.asList(event));
+    }
+}
@@ -0,0 +1,49 @@
+package com.taobao.arthas.core.profiler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+import com.taobao.arthas.common.IOUtils;
+
+/**
+ * Read a saved profile into a {@link StackTrie}: collapsed stacks, gzipped collapsed stacks or a jfr recording.
+ */
+public class ProfileReader {
+
+    private ProfileReader() {
+    }
+
+    /**
+     * @param event only for jfr recordings: cpu, wall, alloc or lock, cpu by default
+     */
+    public static StackTrie read(File file, String event) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("file not found: " + file);
+        }
+        String name = file.getName();
+        if (name.endsWith(".jfr")) {
+            try {
+                return JfrStackReader.read(file, event);
+            } catch (NoClassDefFoundError e) {
+                throw new IOException("reading jfr recordings requires jdk.jfr, which is not available in this jvm");
+            }
+        }
+
+        StackTrie trie = new StackTrie();
+        InputStream in = new FileInputStream(file);
+        try {
+            if (name.endsWith(".gz")) {
+                in = new GZIPInputStream(in);
+            }
+            trie.addCollapsed(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+        } finally {
+            IOUtils.close(in);
+        }
+        return trie;
+    }
+}
@@ -0,0 +1,225 @@
+package com.taobao.arthas.core.profiler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.common.FileUtils;
+import com.taobao.arthas.common.IOUtils;
+
+/**
+ * A size bounded directory of rotated profiling segments.
+ * <p>
+ * Every segment holds the collapsed stacks of one interval and is stored gzipped as
+ * {@code <start>-<end>.collapsed.gz}. The {@link #INDEX_FILE} lists one segment per line:
+ * {@code start end samples bytes file}, times in ms. The oldest segments are deleted once there are more than
+ * {@code maxSegments} segments or they take more than {@code maxBytes} bytes.
+ */
+public class ProfileSegmentStore {
+    private static final Logger logger = LoggerFactory.getLogger(ProfileSegmentStore.class);
+
+    public static final String INDEX_FILE = "index";
+    public static final String SEGMENT_SUFFIX = ".collapsed.gz";
+
+    private final File dir;
+    private final int maxSegments;
+    private final long maxBytes;
+
+    public static class Segment {
+        private final long start;
+        private final long end;
+        private final long samples;
+        private final long bytes;
+        private final String file;
+
+        public Segment(long start, long end, long samples, long bytes, String file) {
+            this.start = start;
+            this.end = end;
+            this.samples = samples;
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public String getFile() {
+            return file;
+        }
+    }
+
+    public ProfileSegmentStore(File dir, int maxSegments, long maxBytes) {
+        this.dir = dir;
+        this.maxSegments = maxSegments;
+        this.maxBytes = maxBytes;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Store the collapsed stacks of [start, end] and apply the retention policy.
+     */
+    public synchronized Segment add(long start, long end, String collapsed) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create directory " + dir);
+        }
+        String name = start + "-" + end + SEGMENT_SUFFIX;
+        File file = new File(dir, name);
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            out.write(collapsed.getBytes("UTF-8"));
+        } finally {
+            IOUtils.close(out);
+        }
+
+        Segment segment = new Segment(start, end, countSamples(collapsed), file.length(), name);
+        List<Segment> segments = segments();
+        segments.add(segment);
+
+        long totalBytes = 0;
+        for (Segment s : segments) {
+            totalBytes += s.getBytes();
+        }
+        // always keep the newest segment
+        while (segments.size() > 1
+                && (segments.size() > maxSegments || (maxBytes > 0 && totalBytes > maxBytes))) {
+            Segment oldest = segments.remove(0);
+            totalBytes -= oldest.getBytes();
+            if (!new File(dir, oldest.getFile()).delete()) {
+                logger.warn("can not delete profiling segment {}", oldest.getFile());
+            }
+        }
+        writeIndex(segments);
+        return segment;
+    }
+
+    /**
+     * @return all segments, oldest first
+     */
+    public synchronized List<Segment> segments() throws IOException {
+        List<Segment> segments = new ArrayList<Segment>();
+        File index = new File(dir, INDEX_FILE);
+        if (!index.isFile()) {
+            return segments;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(index), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split(" ");
+                if (parts.length != 5) {
+                    continue;
+                }
+                try {
+                    segments.add(new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                            Long.parseLong(parts[2]), Long.parseLong(parts[3]), parts[4]));
+                } catch (NumberFormatException e) {
+                    // skip the broken line
+                }
+            }
+        } finally {
+            IOUtils.close(reader);
+        }
+        return segments;
+    }
+
+    /**
+     * @return the segments overlapping [from, to], oldest first
+     */
+    public synchronized List<Segment> query(long from, long to) throws IOException {
+        List<Segment> result = new ArrayList<Segment>();
+        for (Segment segment : segments()) {
+            if (segment.getEnd() >= from && segment.getStart() <= to) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merge the samples of the segments into one trie.
+     */
+    public StackTrie merge(List<Segment> segments) throws IOException {
+        StackTrie trie = new StackTrie();
+        for (Segment segment : segments) {
+            File file = new File(dir, segment.getFile());
+            if (!file.isFile()) {
+                // removed by the retention policy in the meantime
+                continue;
+            }
+            Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), "UTF-8");
+            try {
+                trie.addCollapsed(new BufferedReader(reader));
+            } finally {
+                IOUtils.close(reader);
+            }
+        }
+        return trie;
+    }
+
+    private void writeIndex(List<Segment> segments) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Segment s : segments) {
+            sb.append(s.getStart()).append(' ').append(s.getEnd()).append(' ').append(s.getSamples()).append(' ')
+                    .append(s.getBytes()).append(' ').append(s.getFile()).append('\n');
+        }
+        File tmp = new File(dir, INDEX_FILE + ".tmp");
+        FileUtils.writeByteArrayToFile(tmp, sb.toString().getBytes("UTF-8"));
+        File index = new File(dir, INDEX_FILE);
+        if (!tmp.renameTo(index)) {
+            // renameTo does not replace an existing file on some platforms
+            index.delete();
+            if (!tmp.renameTo(index)) {
+                throw new IOException("can not write " + index);
+            }
+        }
+    }
+
+    static long countSamples(String collapsed) {
+        long samples = 0;
+        int lineStart = 0;
+        int length = collapsed.length();
+        while (lineStart < length) {
+            int lineEnd = collapsed.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            int space = collapsed.lastIndexOf(' ', lineEnd - 1);
+            if (space >= lineStart) {
+                try {
+                    samples += Long.parseLong(collapsed.substring(space + 1, lineEnd).trim());
+                } catch (NumberFormatException e) {
+                    // not a sample line
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,218 @@
+package com.taobao.arthas.core.profiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.taobao.arthas.core.util.StringUtils;
+
+/**
+ * Difference between a base and a target {@link StackTrie}, for example the profiles before and after a regression.
+ * <p>
+ * The two tries are merged in one pass over their nodes: nodes are created after their parents, so the base node
+ * matching a target node is found from the base node matching its parent, without building a third trie. The base
+ * counts are multiplied by {@code target total / base total}, so profiles of different lengths can be compared.
+ */
+public class StackDiff {
+
+    private final StackTrie base;
+    private final StackTrie target;
+    private final double baseScale;
+
+    /**
+     * the base node matching every target node, -1 if the stack is not in the base
+     */
+    private final int[] baseNodes;
+
+    /**
+     * whether a base node matches a target node
+     */
+    private final boolean[] baseMatched;
+
+    /**
+     * frames of both tries: the target frames first, then the frames only seen in the base
+     */
+    private final List<String> frames = new ArrayList<String>();
+    private final int[] baseFrames;
+
+    public StackDiff(StackTrie base, StackTrie target) {
+        this.base = base;
+        this.target = target;
+        this.baseScale = base.getTotal() == 0 ? 1 : (double) target.getTotal() / base.getTotal();
+
+        int targetFrameCount = target.getFrameCount();
+        int[] targetToBase = new int[targetFrameCount];
+        for (int i = 0; i < targetFrameCount; ++i) {
+            frames.add(target.frame(i));
+            targetToBase[i] = base.frameId(target.frame(i));
+        }
+        baseFrames = new int[base.getFrameCount()];
+        for (int i = 0; i < baseFrames.length; ++i) {
+            int frame = target.frameId(base.frame(i));
+            if (frame < 0) {
+                frame = frames.size();
+                frames.add(base.frame(i));
+            }
+            baseFrames[i] = frame;
+        }
+
+        baseNodes = new int[target.getNodeCount()];
+        baseMatched = new boolean[base.getNodeCount()];
+        baseMatched[0] = true;
+        for (int node = 1; node < baseNodes.length; ++node) {
+            int parent = baseNodes[target.parentOf(node)];
+            int frame = targetToBase[target.frameOf(node)];
+            int baseNode = parent < 0 || frame < 0 ? -1 : base.findChild(parent, frame);
+            baseNodes[node] = baseNode;
+            if (baseNode >= 0) {
+                baseMatched[baseNode] = true;
+            }
+        }
+    }
+
+    public double getBaseScale() {
+        return baseScale;
+    }
+
+    /**
+     * One line per distinct stack: {@code frame1;frame2;frame3 base target}, the counts are not scaled.
+     * This is the input format of the differential flame graph of FlameGraph's difffolded.pl.
+     */
+    public void writeCollapsed(StringBuilder out) {
+        int[] path = new int[64];
+        for (int node = 1; node < baseNodes.length; ++node) {
+            long self = target.selfOf(node);
+            long baseSelf = baseNodes[node] < 0 ? 0 : base.selfOf(baseNodes[node]);
+            if (self != 0 || baseSelf != 0) {
+                path = writeStack(out, target, node, null, path);
+                out.append(' ').append(baseSelf).append(' ').append(self).append('\n');
+            }
+        }
+        for (int node = 1; node < baseMatched.length; ++node) {
+            long baseSelf = base.selfOf(node);
+            if (!baseMatched[node] && baseSelf != 0) {
+                path = writeStack(out, base, node, baseFrames, path);
+                out.append(' ').append(baseSelf).append(' ').append(0).append('\n');
+            }
+        }
+    }
+
+    public String toCollapsed() {
+        StringBuilder sb = new StringBuilder();
+        writeCollapsed(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Differential flame graph: the width of a frame is its target samples, red frames grew and blue frames shrank.
+     *
+     * @param title html escaped title
+     */
+    public String toFlameGraphHtml(String title) throws IOException {
+        // the stacks only in the base have no width, but still count into the base samples of their parents
+        return StackTrie.flameGraphHtml(title == null ? "Differential Flame Graph" : title,
+                StringUtils.toLines(toCollapsed()), true, baseScale);
+    }
+
+    /**
+     * The frames with the largest changes of self and total samples, the base samples are scaled.
+     *
+     * @param max max number of frames in each table, 0 or negative for all
+     */
+    public String toTable(int max) {
+        int frameCount = frames.size();
+        long[] targetSelf = new long[frameCount];
+        long[] targetTotal = new long[frameCount];
+        long[] baseSelf = new long[frameCount];
+        long[] baseTotal = new long[frameCount];
+        sum(target, null, targetSelf, targetTotal);
+        sum(base, baseFrames, baseSelf, baseTotal);
+
+        double[] selfDelta = new double[frameCount];
+        double[] totalDelta = new double[frameCount];
+        for (int i = 0; i < frameCount; ++i) {
+            selfDelta[i] = targetSelf[i] - baseSelf[i] * baseScale;
+            totalDelta[i] = targetTotal[i] - baseTotal[i] * baseScale;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("base: ").append(base.getTotal()).append(" samples, target: ").append(target.getTotal())
+                .append(" samples, base scaled by ").append(String.format("%.4f", baseScale)).append('\n');
+        sb.append("\nlargest self deltas:\n");
+        appendTable(sb, selfDelta, baseSelf, targetSelf, max);
+        sb.append("\nlargest total deltas:\n");
+        appendTable(sb, totalDelta, baseTotal, targetTotal, max);
+        return sb.toString();
+    }
+
+    private void appendTable(StringBuilder sb, final double[] delta, long[] baseCounts, long[] targetCounts,
+            int max) {
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < delta.length; ++i) {
+            if (Math.round(delta[i]) != 0) {
+                order.add(i);
+            }
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(Math.abs(delta[o2]), Math.abs(delta[o1]));
+            }
+        });
+        if (max > 0 && order.size() > max) {
+            order = order.subList(0, max);
+        }
+
+        long total = target.getTotal();
+        sb.append(String.format("%12s  %8s  %12s  %12s  %s%n", "delta", "percent", "base", "target", "method"));
+        for (Integer frame : order) {
+            double percent = total == 0 ? 0 : delta[frame] * 100.0 / total;
+            sb.append(String.format("%+12d  %+7.2f%%  %12d  %12d  %s%n", Math.round(delta[frame]), percent,
+                    Math.round(baseCounts[frame] * baseScale), targetCounts[frame], frames.get(frame)));
+        }
+    }
+
+    /**
+     * Self and total samples per frame, the total of a recursive frame is only counted at its outermost node.
+     */
+    private static void sum(StackTrie trie, int[] frameMapping, long[] self, long[] total) {
+        for (int node = 1; node < trie.getNodeCount(); ++node) {
+            int frame = trie.frameOf(node);
+            int mapped = frameMapping == null ? frame : frameMapping[frame];
+            self[mapped] += trie.selfOf(node);
+
+            boolean recursive = false;
+            for (int n = trie.parentOf(node); n != 0; n = trie.parentOf(n)) {
+                if (trie.frameOf(n) == frame) {
+                    recursive = true;
+                    break;
+                }
+            }
+            if (!recursive) {
+                total[mapped] += trie.totalOf(node);
+            }
+        }
+    }
+
+    private int[] writeStack(StringBuilder out, StackTrie trie, int node, int[] frameMapping, int[] path) {
+        int depth = trie.depth(node);
+        if (path.length < depth) {
+            path = new int[depth * 2];
+        }
+        int n = node;
+        for (int i = depth - 1; i >= 0; --i) {
+            int frame = trie.frameOf(n);
+            path[i] = frameMapping == null ? frame : frameMapping[frame];
+            n = trie.parentOf(n);
+        }
+        for (int i = 0; i < depth; ++i) {
+            if (i > 0) {
+                out.append(';');
+            }
+            out.append(frames.get(path[i]));
+        }
+        return path;
+    }
+}
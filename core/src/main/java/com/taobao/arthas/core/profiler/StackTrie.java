@@ -0,0 +1,400 @@
+package com.taobao.arthas.core.profiler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.taobao.arthas.common.IOUtils;
+import com.taobao.arthas.core.util.StringUtils;
+
+/**
+ * Compact prefix trie of stack traces with interned frames.
+ * <p>
+ * Each distinct frame string is stored once and referenced by an int id. Trie nodes live in parallel
+ * primitive arrays, children are found through an open addressing (parent, frame) -&gt; node table,
+ * so adding a sample does not allocate once the stack has been seen before.
+ * <p>
+ * Stacks are added root first, for example {@code [Thread.run, Foo.bar, Foo.baz]}.
+ * Not thread safe.
+ */
+public class StackTrie {
+
+    private static final int ROOT = 0;
+
+    private final Map<String, Integer> frameIds = new HashMap<String, Integer>();
+    private String[] frames = new String[256];
+    private int frameCount = 0;
+
+    private int[] nodeParent = new int[1024];
+    private int[] nodeFrame = new int[1024];
+    private long[] nodeTotal = new long[1024];
+    private long[] nodeSelf = new long[1024];
+    private int nodeCount = 1;
+
+    /**
+     * open addressing table: key = parent << 32 | frame, value = node + 1 (0 means empty)
+     */
+    private long[] childKeys = new long[2048];
+    private int[] childValues = new int[2048];
+
+    public StackTrie() {
+        nodeParent[ROOT] = -1;
+        nodeFrame[ROOT] = -1;
+    }
+
+    public int internFrame(String frame) {
+        Integer id = frameIds.get(frame);
+        if (id != null) {
+            return id;
+        }
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        frames[frameCount] = frame;
+        frameIds.put(frame, frameCount);
+        return frameCount++;
+    }
+
+    public String frame(int frameId) {
+        return frames[frameId];
+    }
+
+    /**
+     * @param stack interned frame ids, root first
+     */
+    public void addStack(int[] stack, int length, long count) {
+        int node = ROOT;
+        nodeTotal[ROOT] += count;
+        for (int i = 0; i < length; ++i) {
+            node = child(node, stack[i]);
+            nodeTotal[node] += count;
+        }
+        nodeSelf[node] += count;
+    }
+
+    /**
+     * @param stack frames, root first
+     */
+    public void addStack(String[] stack, long count) {
+        int[] ids = new int[stack.length];
+        for (int i = 0; i < stack.length; ++i) {
+            ids[i] = internFrame(stack[i]);
+        }
+        addStack(ids, ids.length, count);
+    }
+
+    /**
+     * Add the samples of the collapsed stacks format: {@code frame1;frame2;frame3 count}, malformed lines are skipped.
+     */
+    public void addCollapsed(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int space = line.lastIndexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            long count;
+            try {
+                count = Long.parseLong(line.substring(space + 1).trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            addStack(line.substring(0, space).split(";"), count);
+        }
+    }
+
+    /**
+     * Add all samples of another trie into this one.
+     */
+    public void merge(StackTrie other) {
+        int[] mapping = new int[other.frameCount];
+        for (int i = 0; i < other.frameCount; ++i) {
+            mapping[i] = internFrame(other.frames[i]);
+        }
+        int[] path = new int[64];
+        for (int node = 1; node < other.nodeCount; ++node) {
+            long self = other.nodeSelf[node];
+            if (self == 0) {
+                continue;
+            }
+            int depth = other.depth(node);
+            if (path.length < depth) {
+                path = new int[depth * 2];
+            }
+            int n = node;
+            for (int i = depth - 1; i >= 0; --i) {
+                path[i] = mapping[other.nodeFrame[n]];
+                n = other.nodeParent[n];
+            }
+            addStack(path, depth, self);
+        }
+    }
+
+    public long getTotal() {
+        return nodeTotal[ROOT];
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public void clear() {
+        frameIds.clear();
+        Arrays.fill(frames, 0, frameCount, null);
+        frameCount = 0;
+        nodeCount = 1;
+        nodeTotal[ROOT] = 0;
+        nodeSelf[ROOT] = 0;
+        Arrays.fill(childKeys, 0L);
+        Arrays.fill(childValues, 0);
+    }
+
+    /**
+     * Output in the collapsed stacks format, one line per distinct stack: {@code frame1;frame2;frame3 count}
+     */
+    public void writeCollapsed(StringBuilder out) {
+        int[] path = new int[64];
+        for (int node = 1; node < nodeCount; ++node) {
+            long self = nodeSelf[node];
+            if (self == 0) {
+                continue;
+            }
+            int depth = depth(node);
+            if (path.length < depth) {
+                path = new int[depth * 2];
+            }
+            int n = node;
+            for (int i = depth - 1; i >= 0; --i) {
+                path[i] = nodeFrame[n];
+                n = nodeParent[n];
+            }
+            for (int i = 0; i < depth; ++i) {
+                if (i > 0) {
+                    out.append(';');
+                }
+                out.append(frames[path[i]]);
+            }
+            out.append(' ').append(self).append('\n');
+        }
+    }
+
+    public String toCollapsed() {
+        StringBuilder sb = new StringBuilder();
+        writeCollapsed(sb);
+        return sb.toString();
+    }
+
+    /**
+     * The histogram of the hottest methods by self samples.
+     *
+     * @param max max number of methods, 0 or negative for all
+     */
+    public String toFlat(int max) {
+        long[] selfByFrame = new long[frameCount];
+        for (int node = 1; node < nodeCount; ++node) {
+            selfByFrame[nodeFrame[node]] += nodeSelf[node];
+        }
+        List<Integer> order = new ArrayList<Integer>(frameCount);
+        for (int i = 0; i < frameCount; ++i) {
+            if (selfByFrame[i] > 0) {
+                order.add(i);
+            }
+        }
+        final long[] keys = selfByFrame;
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(keys[o2], keys[o1]);
+            }
+        });
+        if (max > 0 && order.size() > max) {
+            order = order.subList(0, max);
+        }
+
+        long total = getTotal();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%12s  %7s  %s%n", "samples", "percent", "method"));
+        for (Integer frame : order) {
+            double percent = total == 0 ? 0 : selfByFrame[frame] * 100.0 / total;
+            sb.append(String.format("%12d  %6.2f%%  %s%n", selfByFrame[frame], percent, frames[frame]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Self contained flame graph html page.
+     *
+     * @param title html escaped title
+     */
+    public String toFlameGraphHtml(String title) throws IOException {
+        return flameGraphHtml(title, StringUtils.toLines(toCollapsed()), false, 1);
+    }
+
+    /**
+     * @param lines     collapsed stacks, or {@code stack base target} lines of a differential flame graph
+     * @param baseScale the base counts of a differential flame graph are multiplied by it
+     */
+    static String flameGraphHtml(String title, List<String> lines, boolean diff, double baseScale)
+            throws IOException {
+        InputStream in = StackTrie.class.getResourceAsStream("flamegraph.html");
+        if (in == null) {
+            throw new IOException("can not find flamegraph.html template");
+        }
+        String template;
+        try {
+            template = IOUtils.toString(in);
+        } finally {
+            IOUtils.close(in);
+        }
+        StringBuilder data = new StringBuilder();
+        for (String line : lines) {
+            if (data.length() > 0) {
+                data.append(",\n");
+            }
+            data.append('\'').append(escapeJs(line)).append('\'');
+        }
+        return template.replace("/*title*/", title == null ? "Flame Graph" : title)
+                .replace("/*diff*/false", String.valueOf(diff))
+                .replace("/*baseScale*/1", String.valueOf(baseScale))
+                .replace("/*collapsed*/", data.toString());
+    }
+
+    private static String escapeJs(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == '\\' || c == '\'') {
+                sb.append('\\').append(c);
+            } else if (c == '<') {
+                sb.append("\\x3c");
+            } else if (c < 0x20) {
+                sb.append(' ');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    int parentOf(int node) {
+        return nodeParent[node];
+    }
+
+    int frameOf(int node) {
+        return nodeFrame[node];
+    }
+
+    long totalOf(int node) {
+        return nodeTotal[node];
+    }
+
+    long selfOf(int node) {
+        return nodeSelf[node];
+    }
+
+    /**
+     * @return the interned id of the frame, or -1 if it is never seen
+     */
+    int frameId(String frame) {
+        Integer id = frameIds.get(frame);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Same as {@link #child(int, int)}, but does not create the node.
+     *
+     * @return the child node, or -1 if it does not exist
+     */
+    int findChild(int parent, int frame) {
+        long key = ((long) parent << 32) | (frame & 0xFFFFFFFFL);
+        int mask = childKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (childValues[slot] != 0) {
+            if (childKeys[slot] == key) {
+                return childValues[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    int depth(int node) {
+        int depth = 0;
+        while (node != ROOT) {
+            depth++;
+            node = nodeParent[node];
+        }
+        return depth;
+    }
+
+    private int child(int parent, int frame) {
+        long key = ((long) parent << 32) | (frame & 0xFFFFFFFFL);
+        int mask = childKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (childValues[slot] != 0) {
+            if (childKeys[slot] == key) {
+                return childValues[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int node = newNode(parent, frame);
+        childKeys[slot] = key;
+        childValues[slot] = node + 1;
+        // keep load factor under 0.5
+        if (nodeCount * 2 > childKeys.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    private int newNode(int parent, int frame) {
+        if (nodeCount == nodeParent.length) {
+            int size = nodeCount * 2;
+            nodeParent = Arrays.copyOf(nodeParent, size);
+            nodeFrame = Arrays.copyOf(nodeFrame, size);
+            nodeTotal = Arrays.copyOf(nodeTotal, size);
+            nodeSelf = Arrays.copyOf(nodeSelf, size);
+        }
+        int node = nodeCount++;
+        nodeParent[node] = parent;
+        nodeFrame[node] = frame;
+        nodeTotal[node] = 0;
+        nodeSelf[node] = 0;
+        return node;
+    }
+
+    private void rehash() {
+        long[] oldKeys = childKeys;
+        int[] oldValues = childValues;
+        childKeys = new long[oldKeys.length * 2];
+        childValues = new int[oldValues.length * 2];
+        int mask = childKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (childValues[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                childKeys[slot] = oldKeys[i];
+                childValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
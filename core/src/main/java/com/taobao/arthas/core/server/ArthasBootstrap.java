@@ -44,6 +44,9 @@ import com.taobao.arthas.core.advisor.Enhancer;
 import com.taobao.arthas.core.advisor.TransformerManager;
 import com.taobao.arthas.core.command.BuiltinCommandPack;
 import com.taobao.arthas.core.command.CommandExecutorImpl;
+import com.taobao.arthas.core.command.basic1000.JFRCommand;
+import com.taobao.arthas.core.command.monitor200.ProfilerCommand;
+import com.taobao.arthas.core.command.monitor200.ThreadSampleEngine;
 import com.taobao.arthas.core.command.view.ResultViewResolver;
 import com.taobao.arthas.core.config.BinderUtils;
 import com.taobao.arthas.core.config.Configure;
@@ -572,6 +575,12 @@ public class ArthasBootstrap {
         cleanUpSpyReference();
         shutdownWorkGroup();
         UserStatUtil.destroy();
+        ThreadSampleEngine.destroy();
+        ProfilerCommand.destroy();
+        // jfr command is only registered when the jdk supports jfr
+        if (ClassLoader.getSystemClassLoader().getResource("jdk/jfr/Recording.class") != null) {
+            JFRCommand.destroy();
+        }
         if (shutdown != null) {
             try {
                 Runtime.getRuntime().removeShutdownHook(shutdown);
@@ -10,6 +10,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.local.LocalChannel;
 import io.netty.handler.codec.http.*;
 import io.termd.core.http.HttpTtyConnection;
 import io.termd.core.util.Logging;
@@ -116,18 +117,31 @@ public class HttpRequestHandler extends SimpleChannelInboundHandler<FullHttpRequ
                     response = createResponse(request, HttpResponseStatus.INTERNAL_SERVER_ERROR, "Server error");
                 }
                 if (!isFileResponseFinished && !isMcpHandled) {
-                    ChannelFuture future = writeResponse(ctx, response);
-                    future.addListener(ChannelFutureListener.CLOSE);
+                    boolean keepAlive = isLocalKeepAlive(ctx, request, response);
+                    ChannelFuture future = writeResponse(ctx, response, keepAlive);
+                    if (!keepAlive) {
+                        future.addListener(ChannelFutureListener.CLOSE);
+                    }
                 }
             }
         }
     }
 
-    private ChannelFuture writeResponse(ChannelHandlerContext ctx, HttpResponse response) {
+    /**
+     * tunnel client 通过 LocalChannel 代理 http 请求时使用连接池，完整的响应可以保持连接
+     */
+    private static boolean isLocalKeepAlive(ChannelHandlerContext ctx, FullHttpRequest request,
+            HttpResponse response) {
+        return ctx.channel() instanceof LocalChannel && HttpUtil.isKeepAlive(request)
+                && !HttpUtil.isTransferEncodingChunked(response) && response instanceof DefaultFullHttpResponse;
+    }
+
+    private ChannelFuture writeResponse(ChannelHandlerContext ctx, HttpResponse response, boolean keepAlive) {
         // try to add content-length header for DefaultFullHttpResponse
         if (!HttpUtil.isTransferEncodingChunked(response)
                 && response instanceof DefaultFullHttpResponse) {
-            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+            response.headers().set(HttpHeaderNames.CONNECTION,
+                    keepAlive ? HttpHeaderValues.KEEP_ALIVE : HttpHeaderValues.CLOSE);
             response.headers().set(HttpHeaderNames.CONTENT_LENGTH,
                     ((DefaultFullHttpResponse) response).content().readableBytes());
             return ctx.writeAndFlush(response);
@@ -0,0 +1,636 @@
+package com.taobao.arthas.core.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Line oriented access to (possibly large and growing) text files, shared by {@code cat},
+ * {@code grep} and the MCP viewFile tool.
+ * <p>
+ * A sparse line index keeps the byte offset of every {@link #INDEX_INTERVAL}th line. It is
+ * built by scanning memory mapped chunks of the file, cached per file, and extended from the
+ * last indexed position when the file grows, so reading a line range or the tail of a big log
+ * never reads the file from the beginning again. The index is rebuilt when the file shrinks
+ * or is replaced (log rotation).
+ * <p>
+ * Lines are split on {@code '\n'} (a trailing {@code '\r'} is dropped), so the charset must be
+ * ASCII compatible, such as UTF-8, GBK or ISO-8859-1. Line numbers are 1-based. The last line
+ * may still be being written, it is returned with {@link Line#isComplete()} false; readers
+ * following the file use {@link #readCompleteLines(long, int, long, Charset)} so they do not
+ * lose the rest of that line.
+ */
+public class LineIndexedFile {
+
+    /** the offset of every INDEX_INTERVAL lines is kept */
+    static final int INDEX_INTERVAL = 1024;
+
+    private static final int MAX_CACHED_FILES = 32;
+
+    private static final int MAX_SEARCH_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final int MIN_SEARCH_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /** search matches at most this many bytes of a line, the rest of a longer line is skipped */
+    private static final int MAX_SEARCH_LINE_BYTES = 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Indexing and search read the file into heap buffers of this size rather than mapping it,
+     * mappings are only released by gc and keep the file open, on windows the log could not be
+     * rotated or deleted.
+     */
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+    private static final Map<String, LineIndexedFile> cache = new LinkedHashMap<String, LineIndexedFile>(16, 0.75f,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LineIndexedFile> eldest) {
+            return size() > MAX_CACHED_FILES;
+        }
+    };
+
+    private static volatile ThreadPoolExecutor searchExecutor;
+
+    private final File file;
+
+    /** checkpoints[i] is the offset of line i * INDEX_INTERVAL + 1 */
+    private long[] checkpoints = new long[16];
+    private int checkpointCount;
+
+    /** number of '\n' in the indexed part of the file */
+    private long completeLines;
+
+    /** offset after the last '\n', the start of the unfinished last line */
+    private long lastLineStart;
+
+    private long indexedLength;
+
+    private Object fileKey;
+
+    private LineIndexedFile(File file) {
+        this.file = file;
+        reset();
+    }
+
+    /**
+     * Returns the cached index of the file, the file is not read until it is used.
+     */
+    public static LineIndexedFile of(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        synchronized (cache) {
+            LineIndexedFile indexed = cache.get(key);
+            if (indexed == null) {
+                indexed = new LineIndexedFile(new File(key));
+                cache.put(key, indexed);
+            }
+            return indexed;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Indexes the bytes appended since the last call.
+     *
+     * @return the number of lines, an unfinished last line is counted
+     */
+    public synchronized long refresh() throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return refresh(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    public synchronized long getLineCount() throws IOException {
+        return refresh();
+    }
+
+    /**
+     * Reads at most {@code maxLines} lines from {@code startLine}. Reading stops after the line
+     * which reaches {@code maxBytes}, a single line longer than {@code maxBytes} is truncated.
+     *
+     * @return the lines read, empty if {@code startLine} is after the last line
+     */
+    public List<Line> readLines(long startLine, int maxLines, long maxBytes, Charset charset) throws IOException {
+        return readLines(startLine, maxLines, maxBytes, charset, false);
+    }
+
+    /**
+     * Same as {@link #readLines(long, int, long, Charset)} but stops before an unfinished last
+     * line, so following the file from the line after the last one returned reads every line
+     * once and completely.
+     */
+    public List<Line> readCompleteLines(long startLine, int maxLines, long maxBytes, Charset charset)
+            throws IOException {
+        return readLines(startLine, maxLines, maxBytes, charset, true);
+    }
+
+    private List<Line> readLines(long startLine, int maxLines, long maxBytes, Charset charset, boolean completeOnly)
+            throws IOException {
+        if (startLine < 1) {
+            throw new IllegalArgumentException("startLine must be positive: " + startLine);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long offset;
+            long end;
+            synchronized (this) {
+                long lineCount = refresh(channel);
+                if (completeOnly) {
+                    lineCount = completeLines;
+                }
+                if (startLine > lineCount || maxLines <= 0) {
+                    return Collections.emptyList();
+                }
+                offset = offsetOf(channel, startLine);
+                end = completeOnly ? lastLineStart : indexedLength;
+            }
+            return read(channel, offset, end, startLine, maxLines, maxBytes, charset);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the last {@code lines} lines, the caller can follow the file by calling
+     * {@link #readCompleteLines(long, int, long, Charset)} from the line after the last complete
+     * line returned.
+     */
+    public List<Line> tail(int lines, long maxBytes, Charset charset) throws IOException {
+        long lineCount = refresh();
+        if (lineCount == 0 || lines <= 0) {
+            return Collections.emptyList();
+        }
+        long startLine = Math.max(1, lineCount - lines + 1);
+        return readLines(startLine, lines, maxBytes, charset);
+    }
+
+    /**
+     * Searches the lines matching (or not matching if {@code invertMatch}) the pattern. The file
+     * is split in chunks which are scanned in parallel.
+     *
+     * @param maxCount stop after the first {@code maxCount} matching lines
+     * @return the matching lines in file order
+     */
+    public List<Line> search(Pattern pattern, boolean invertMatch, int maxCount, Charset charset) throws IOException {
+        if (maxCount <= 0) {
+            return Collections.emptyList();
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+
+            List<SearchTask> tasks = new ArrayList<SearchTask>();
+            long chunkSize = Math.min(MAX_SEARCH_CHUNK_SIZE,
+                    Math.max(MIN_SEARCH_CHUNK_SIZE, size / searchParallelism() + 1));
+            long start = 0;
+            while (start < size) {
+                long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize, size);
+                tasks.add(new SearchTask(channel, start, end, pattern, invertMatch, maxCount, charset));
+                start = end;
+            }
+
+            if (tasks.size() == 1) {
+                return collect(Collections.singletonList(tasks.get(0).call()), maxCount);
+            }
+
+            // chunks are submitted in file order with at most searchParallelism() in flight, and
+            // no more chunks are scanned once the earlier ones have found maxCount matches
+            ThreadPoolExecutor executor = searchExecutor();
+            int parallelism = searchParallelism();
+            List<Future<ChunkResult>> futures = new ArrayList<Future<ChunkResult>>(tasks.size());
+            List<ChunkResult> results = new ArrayList<ChunkResult>(tasks.size());
+            int found = 0;
+            try {
+                for (int i = 0; i < tasks.size() && found < maxCount; ++i) {
+                    while (futures.size() < tasks.size() && futures.size() < i + parallelism) {
+                        futures.add(executor.submit(tasks.get(futures.size())));
+                    }
+                    ChunkResult result = futures.get(i).get();
+                    results.add(result);
+                    found += result.matches.size();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("search interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            } finally {
+                for (SearchTask task : tasks) {
+                    task.cancel();
+                }
+                for (Future<ChunkResult> future : futures) {
+                    future.cancel(false);
+                }
+            }
+            return collect(results, maxCount);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Joins the matches of consecutive chunks, the line numbers in a chunk are relative to the chunk.
+     */
+    private static List<Line> collect(List<ChunkResult> results, int maxCount) {
+        List<Line> matches = new ArrayList<Line>();
+        long lineBase = 0;
+        for (ChunkResult result : results) {
+            for (Line line : result.matches) {
+                if (matches.size() >= maxCount) {
+                    return matches;
+                }
+                matches.add(new Line(lineBase + line.getNumber(), line.getText()));
+            }
+            lineBase += result.lineCount;
+        }
+        return matches;
+    }
+
+    private long refresh(FileChannel channel) throws IOException {
+        long size = channel.size();
+        Object key = fileKey();
+        if (size < indexedLength || (key != null && fileKey != null && !key.equals(fileKey))) {
+            // truncated or rotated
+            reset();
+        }
+        fileKey = key;
+
+        long position = indexedLength;
+        if (position < size) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(SCAN_BUFFER_SIZE, size - position));
+            byte[] bytes = buffer.array();
+            while (position < size) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), size - position));
+                int n = channel.read(buffer, position);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n; ++i) {
+                    if (bytes[i] == '\n') {
+                        completeLines++;
+                        lastLineStart = position + i + 1;
+                        if (completeLines % INDEX_INTERVAL == 0) {
+                            addCheckpoint(lastLineStart);
+                        }
+                    }
+                }
+                position += n;
+            }
+        }
+        indexedLength = position;
+        return lastLineStart < indexedLength ? completeLines + 1 : completeLines;
+    }
+
+    private Object fileKey() {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void reset() {
+        checkpoints[0] = 0;
+        checkpointCount = 1;
+        completeLines = 0;
+        lastLineStart = 0;
+        indexedLength = 0;
+    }
+
+    private void addCheckpoint(long offset) {
+        if (checkpointCount == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+        }
+        checkpoints[checkpointCount++] = offset;
+    }
+
+    /**
+     * Offset of the line, starts from the nearest checkpoint and skips at most INDEX_INTERVAL lines.
+     */
+    private long offsetOf(FileChannel channel, long line) throws IOException {
+        long index = (line - 1) / INDEX_INTERVAL;
+        long offset = checkpoints[(int) index];
+        long skip = (line - 1) - index * INDEX_INTERVAL;
+        if (skip == 0) {
+            return offset;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        while (offset < indexedLength) {
+            buffer.clear();
+            int n = channel.read(buffer, offset);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; ++i) {
+                if (buffer.get(i) == '\n' && --skip == 0) {
+                    return offset + i + 1;
+                }
+            }
+            offset += n;
+        }
+        return indexedLength;
+    }
+
+    private static List<Line> read(FileChannel channel, long offset, long end, long firstLine, int maxLines,
+            long maxBytes, Charset charset) throws IOException {
+        List<Line> lines = new ArrayList<Line>();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        LineBuffer line = new LineBuffer(maxBytes);
+        long totalBytes = 0;
+        long position = offset;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            position += n;
+            for (int i = 0; i < n; ++i) {
+                byte b = buffer.get(i);
+                if (b != '\n') {
+                    line.append(b);
+                    continue;
+                }
+                totalBytes += line.length() + 1;
+                lines.add(new Line(firstLine + lines.size(), line.toString(charset)));
+                line.clear();
+                if (lines.size() >= maxLines || totalBytes >= maxBytes) {
+                    return lines;
+                }
+            }
+        }
+        if (line.length() > 0) {
+            // the unfinished last line
+            lines.add(new Line(firstLine + lines.size(), line.toString(charset), false));
+        }
+        return lines;
+    }
+
+    /**
+     * Start of the first line after {@code position}, or {@code size} if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; ++i) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    private static int searchParallelism() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static ThreadPoolExecutor searchExecutor() {
+        if (searchExecutor == null) {
+            synchronized (LineIndexedFile.class) {
+                if (searchExecutor == null) {
+                    int threads = searchParallelism();
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new SearchThreadFactory());
+                    // idle threads exit, so nothing is left running in the target jvm
+                    executor.allowCoreThreadTimeOut(true);
+                    searchExecutor = executor;
+                }
+            }
+        }
+        return searchExecutor;
+    }
+
+    public static class Line {
+        private final long number;
+        private final String text;
+        private final boolean complete;
+
+        public Line(long number, String text) {
+            this(number, text, true);
+        }
+
+        public Line(long number, String text, boolean complete) {
+            this.number = number;
+            this.text = text;
+            this.complete = complete;
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return false if this is the last line of the file and it does not end with a newline yet
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    private static class ChunkResult {
+        final long lineCount;
+        final List<Line> matches;
+
+        ChunkResult(long lineCount, List<Line> matches) {
+            this.lineCount = lineCount;
+            this.matches = matches;
+        }
+    }
+
+    /**
+     * Scans [start, end) of the file, the chunk starts at a line start and ends after a '\n'
+     * or at the end of file. The chunk is read through a fixed size buffer, so a chunk stretched
+     * by a very long line is fine.
+     */
+    private static class SearchTask implements Callable<ChunkResult> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final Pattern pattern;
+        private final boolean invertMatch;
+        private final int maxCount;
+        private final Charset charset;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        SearchTask(FileChannel channel, long start, long end, Pattern pattern, boolean invertMatch, int maxCount,
+                Charset charset) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.pattern = pattern;
+            this.invertMatch = invertMatch;
+            this.maxCount = maxCount;
+            this.charset = charset;
+        }
+
+        /**
+         * Stops scanning, the result of a cancelled task is not used.
+         */
+        void cancel() {
+            cancelled.set(true);
+        }
+
+        @Override
+        public ChunkResult call() throws IOException {
+            List<Line> matches = new ArrayList<Line>();
+            long lineCount = 0;
+            if (cancelled.get()) {
+                return new ChunkResult(lineCount, matches);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(SCAN_BUFFER_SIZE, end - start));
+            byte[] bytes = buffer.array();
+            LineBuffer line = new LineBuffer(MAX_SEARCH_LINE_BYTES);
+            long position = start;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int n = channel.read(buffer, position);
+                if (n <= 0) {
+                    break;
+                }
+                position += n;
+                int lineStart = 0;
+                for (int i = 0; i < n; ++i) {
+                    if (bytes[i] != '\n') {
+                        continue;
+                    }
+                    line.append(bytes, lineStart, i - lineStart);
+                    lineStart = i + 1;
+                    match(line, ++lineCount, matches);
+                    line.clear();
+                    if (matches.size() >= maxCount) {
+                        // the later lines and chunks are not used, see collect
+                        return new ChunkResult(lineCount, matches);
+                    }
+                }
+                line.append(bytes, lineStart, n - lineStart);
+                if (cancelled.get()) {
+                    break;
+                }
+            }
+            if (line.length() > 0) {
+                match(line, ++lineCount, matches);
+            }
+            return new ChunkResult(lineCount, matches);
+        }
+
+        private void match(LineBuffer line, long number, List<Line> matches) {
+            String text = line.toString(charset);
+            if (pattern.matcher(text).find() != invertMatch) {
+                matches.add(new Line(number, text));
+            }
+        }
+    }
+
+    private static class LineBuffer {
+        private final long maxBytes;
+        private byte[] bytes = new byte[256];
+        /** length of the line, including the truncated bytes */
+        private long length;
+
+        LineBuffer(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        void append(byte b) {
+            if (length >= maxBytes) {
+                // too long, truncated
+                length++;
+                return;
+            }
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[(int) length++] = b;
+        }
+
+        void append(byte[] src, int offset, int count) {
+            int n = (int) Math.max(0, Math.min(count, maxBytes - length));
+            if (n > 0) {
+                int stored = (int) length;
+                if (stored + n > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(stored + n, bytes.length * 2));
+                }
+                System.arraycopy(src, offset, bytes, stored, n);
+            }
+            length += count;
+        }
+
+        long length() {
+            return length;
+        }
+
+        void clear() {
+            length = 0;
+        }
+
+        String toString(Charset charset) {
+            int n = (int) Math.min(length, maxBytes);
+            if (n > 0 && n == length && bytes[n - 1] == '\r') {
+                n--;
+            }
+            return new String(bytes, 0, n, charset);
+        }
+    }
+
+    private static class SearchThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "arthas-file-search-" + index.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -54,6 +54,32 @@ abstract public class ThreadUtil {
         return list;
     }
 
+    /**
+     * 获取指定id的线程，只为这些线程创建ThreadVO
+     *
+     * @param ids thread ids
+     * @return thread id -> ThreadVO, terminated threads are absent
+     */
+    public static Map<Long, ThreadVO> getThreads(long[] ids) {
+        long[] sortedIds = Arrays.copyOf(ids, ids.length);
+        Arrays.sort(sortedIds);
+        Map<Long, ThreadVO> result = new HashMap<Long, ThreadVO>(ids.length * 2);
+        if (ids.length == 0) {
+            return result;
+        }
+        ThreadGroup root = getRoot();
+        Thread[] threads = new Thread[root.activeCount()];
+        while (root.enumerate(threads, true) == threads.length) {
+            threads = new Thread[threads.length * 2];
+        }
+        for (Thread thread : threads) {
+            if (thread != null && Arrays.binarySearch(sortedIds, thread.getId()) >= 0) {
+                result.put(thread.getId(), createThreadVO(thread));
+            }
+        }
+        return result;
+    }
+
     private static ThreadVO createThreadVO(Thread thread) {
         ThreadGroup group = thread.getThreadGroup();
         ThreadVO threadVO = new ThreadVO();
@@ -285,6 +311,9 @@ abstract public class ThreadUtil {
         if (threadInfo.getTime() >= 0 ) {
             sb.append(" time=").append(threadInfo.getTime()).append("ms");
         }
+        if (threadInfo.getAllocRate() > 0) {
+            sb.append(" allocRate=").append(StringUtils.humanReadableByteCount(threadInfo.getAllocRate())).append("/s");
+        }
 
         if (threadInfo.getState() == null) {
             sb.append("\n\n");
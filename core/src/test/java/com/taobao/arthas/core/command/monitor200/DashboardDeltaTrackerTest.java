@@ -0,0 +1,63 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.lang.Thread.State;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.taobao.arthas.core.command.model.DashboardModel;
+import com.taobao.arthas.core.command.model.GcInfoVO;
+import com.taobao.arthas.core.command.model.ThreadVO;
+
+public class DashboardDeltaTrackerTest {
+
+    @Test
+    public void testDeltaAndKeyframe() {
+        DashboardDeltaTracker tracker = new DashboardDeltaTracker(3);
+
+        DashboardModel first = tracker.diff(snapshot(thread(1, "a", 10), thread(2, "b", 20)));
+        Assert.assertTrue(first.getKeyframe());
+        Assert.assertEquals(2, first.getThreads().size());
+        Assert.assertNotNull(first.getGcInfos());
+
+        // thread b changed, thread a removed, thread c added, gc unchanged
+        DashboardModel second = tracker.diff(snapshot(thread(2, "b", 30), thread(3, "c", 0)));
+        Assert.assertFalse(second.getKeyframe());
+        Assert.assertEquals(Long.valueOf(1), second.getSequence());
+        Assert.assertEquals(2, second.getThreads().size());
+        Assert.assertEquals(1, second.getRemovedThreads().size());
+        Assert.assertEquals(1, second.getRemovedThreads().get(0).getId());
+        Assert.assertNull(second.getGcInfos());
+
+        // nothing changed
+        DashboardModel third = tracker.diff(snapshot(thread(2, "b", 30), thread(3, "c", 0)));
+        Assert.assertTrue(third.getThreads().isEmpty());
+        Assert.assertNull(third.getRemovedThreads());
+
+        DashboardModel fourth = tracker.diff(snapshot(thread(2, "b", 30), thread(3, "c", 0)));
+        Assert.assertTrue(fourth.getKeyframe());
+        Assert.assertEquals(2, fourth.getThreads().size());
+        Assert.assertNotNull(fourth.getGcInfos());
+    }
+
+    private static DashboardModel snapshot(ThreadVO... threads) {
+        DashboardModel model = new DashboardModel();
+        model.setThreads(new ArrayList<ThreadVO>(Arrays.asList(threads)));
+        List<GcInfoVO> gcInfos = Collections.singletonList(new GcInfoVO("g1", 1, 2));
+        model.setGcInfos(gcInfos);
+        return model;
+    }
+
+    private static ThreadVO thread(long id, String name, long time) {
+        ThreadVO thread = new ThreadVO();
+        thread.setId(id);
+        thread.setName(name);
+        thread.setState(State.RUNNABLE);
+        thread.setTime(time);
+        return thread;
+    }
+}
@@ -0,0 +1,53 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeapSnapshotTest {
+
+    private static final String BASE = "class_number: 3\n" + "object_number: 30\n" + "\n"
+            + "id  \t#bytes    \tclass_name\n" + "----------------------------------------------------\n"
+            + "1   \t4096      \tbyte[]\n" + "\n" + "\n"
+            + "id  \t#instances  \t#bytes         \tclass_name\n"
+            + "----------------------------------------------------\n"
+            + "1   \t10          \t8192           \tbyte[]\n"
+            + "2   \t20          \t480            \tjava.lang.String\n"
+            + "3   \t0           \t0              \tdemo.Unused\n" + "\n";
+
+    private static final String TARGET = "class_number: 3\n" + "object_number: 60\n" + "\n"
+            + "id  \t#bytes    \tclass_name\n" + "----------------------------------------------------\n"
+            + "1   \t4096      \tbyte[]\n" + "\n" + "\n"
+            + "id  \t#instances  \t#bytes         \tclass_name\n"
+            + "----------------------------------------------------\n"
+            + "1   \t40          \t2400           \tdemo.Leak\n"
+            + "2   \t10          \t8192           \tbyte[]\n"
+            + "3   \t25          \t600            \tjava.lang.String\n" + "\n";
+
+    @Test
+    public void testParseAndRender() {
+        HeapSnapshot snapshot = HeapSnapshot.parse(1, 0, BASE);
+        Assert.assertEquals(30, snapshot.getObjectNumber());
+        Assert.assertEquals(1, snapshot.getTopObjects().size());
+        // classes without instances are skipped
+        Assert.assertEquals(2, snapshot.getClasses().size());
+
+        String rendered = snapshot.render(1, 1);
+        Assert.assertTrue(rendered.contains("byte[]"));
+        Assert.assertFalse(rendered.contains("java.lang.String"));
+        Assert.assertEquals(snapshot.getClasses().size(),
+                HeapSnapshot.parse(2, 0, snapshot.render(10, 10)).getClasses().size());
+    }
+
+    @Test
+    public void testDiff() {
+        HeapSnapshot base = HeapSnapshot.parse(1, 0, BASE);
+        HeapSnapshot target = HeapSnapshot.parse(2, 5000, TARGET);
+        String diff = HeapSnapshot.diff(base, target, 10);
+
+        Assert.assertTrue(diff.startsWith("snapshot: #1 -> #2, 5s\n"));
+        Assert.assertTrue(diff.indexOf("demo.Leak") < diff.indexOf("java.lang.String"));
+        Assert.assertTrue(diff.contains("120            \t600"));
+        // byte[] did not grow
+        Assert.assertFalse(diff.contains("byte[]"));
+    }
+}
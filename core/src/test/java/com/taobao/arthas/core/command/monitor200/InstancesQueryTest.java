@@ -0,0 +1,54 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.taobao.arthas.core.command.express.ExpressFactory;
+
+public class InstancesQueryTest {
+
+    private static Object run(InstancesQuery query, int pageSize, Object... instances) throws Exception {
+        for (int i = 0; i < instances.length; i += pageSize) {
+            if (!query.accept(Arrays.copyOfRange(instances, i, Math.min(instances.length, i + pageSize)))) {
+                break;
+            }
+        }
+        return query.result();
+    }
+
+    @Test
+    public void testWhereSelectLimit() throws Exception {
+        InstancesQuery query = new InstancesQuery(ExpressFactory.unpooledExpress(null), "length() > 1",
+                "toUpperCase()", null, null, false, 2);
+        Object result = run(query, 2, "a", "bb", "c", "dd", "ee");
+        Assert.assertEquals(Arrays.asList("BB", "DD"), result);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGroupByAndSum() throws Exception {
+        List<Object> instances = new ArrayList<Object>();
+        instances.add(Arrays.asList(1, 2));
+        instances.add(Arrays.asList(3));
+        instances.add(Arrays.asList(4, 5));
+        instances.add(Arrays.asList(6, 7));
+
+        Map<String, Object> grouped = (Map<String, Object>) run(new InstancesQuery(
+                ExpressFactory.unpooledExpress(null), null, null, "size()", null, false, -1), 3, instances.toArray());
+        Assert.assertEquals(4L, grouped.get("matched"));
+        Map<Object, Object> groups = (Map<Object, Object>) grouped.get("groups");
+        Assert.assertEquals(3L, groups.get(2));
+        Assert.assertEquals(1L, groups.get(1));
+
+        Map<String, Object> summed = (Map<String, Object>) run(new InstancesQuery(
+                ExpressFactory.unpooledExpress(null), "size() > 1", null, null, "get(0)", false, -1), 3,
+                instances.toArray());
+        Assert.assertEquals(3L, summed.get("matched"));
+        Assert.assertEquals(11L, summed.get("sum"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.text.SimpleDateFormat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProfilerCommandTest {
+
+    @Test
+    public void testParseMillis() {
+        Assert.assertEquals(30 * 1000L, ProfilerCommand.parseMillis("30"));
+        Assert.assertEquals(30 * 1000L, ProfilerCommand.parseMillis("30s"));
+        Assert.assertEquals(500L, ProfilerCommand.parseMillis("500ms"));
+        Assert.assertEquals(5 * 60 * 1000L, ProfilerCommand.parseMillis(" 5M "));
+        Assert.assertEquals(2 * 60 * 60 * 1000L, ProfilerCommand.parseMillis("2h"));
+        Assert.assertEquals(24 * 60 * 60 * 1000L, ProfilerCommand.parseMillis("1d"));
+        try {
+            ProfilerCommand.parseMillis("5x");
+            Assert.fail();
+        } catch (NumberFormatException e) {
+            Assert.assertTrue(e.getMessage().contains("'5x'"));
+        }
+    }
+
+    @Test
+    public void testParseBytes() {
+        Assert.assertEquals(100L, ProfilerCommand.parseBytes("100"));
+        Assert.assertEquals(100L, ProfilerCommand.parseBytes("100b"));
+        Assert.assertEquals(2 * 1024L, ProfilerCommand.parseBytes("2k"));
+        Assert.assertEquals(500 * 1024 * 1024L, ProfilerCommand.parseBytes("500MB"));
+        Assert.assertEquals(3 * 1024 * 1024 * 1024L, ProfilerCommand.parseBytes("3g"));
+        try {
+            ProfilerCommand.parseBytes("lots");
+            Assert.fail();
+        } catch (NumberFormatException e) {
+            Assert.assertTrue(e.getMessage().contains("'lots'"));
+        }
+    }
+
+    @Test
+    public void testParseTime() throws Exception {
+        long now = 1700000000000L;
+        Assert.assertEquals(now - 30 * 60 * 1000L, ProfilerCommand.parseTime("-30m", now));
+        Assert.assertEquals(1690000000000L, ProfilerCommand.parseTime("1690000000000", now));
+        long expected = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2024-01-02 03:04:05").getTime();
+        Assert.assertEquals(expected, ProfilerCommand.parseTime("2024-01-02 03:04:05", now));
+        try {
+            ProfilerCommand.parseTime("yesterday", now);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("'yesterday'"));
+        }
+    }
+
+    @Test
+    public void testFlatMethods() {
+        Assert.assertEquals(0, ProfilerCommand.flatMethods("flat", 0));
+        Assert.assertEquals(20, ProfilerCommand.flatMethods("collapsed", 20));
+        Assert.assertEquals(15, ProfilerCommand.flatMethods("flat=15", 0));
+        try {
+            ProfilerCommand.flatMethods("flat=abc", 0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("usage"));
+        }
+    }
+}
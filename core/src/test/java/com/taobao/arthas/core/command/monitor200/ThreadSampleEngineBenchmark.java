@@ -0,0 +1,106 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.taobao.arthas.core.command.model.ThreadVO;
+import com.taobao.arthas.core.command.monitor200.ThreadSampleEngine.Round;
+import com.taobao.arthas.core.util.ThreadUtil;
+
+/**
+ * Benchmark of thread cpu time collection with 100 ~ 10k parked threads.
+ * <p>
+ * Run with: java -cp core/target/test-classes:... com.taobao.arthas.core.command.monitor200.ThreadSampleEngineBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThreadSampleEngineBenchmark {
+
+    @Param({ "100", "1000", "3000", "10000" })
+    public int threadCount;
+
+    private CountDownLatch stopLatch;
+    private List<Thread> threads;
+    private Round older;
+    private Round newer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stopLatch = new CountDownLatch(1);
+        threads = new ArrayList<Thread>(threadCount);
+        for (int i = 0; i < threadCount; ++i) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        stopLatch.await();
+                    } catch (InterruptedException e) {
+                        // exit
+                    }
+                }
+            }, "benchmark-thread-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        older = ThreadSampleEngine.collect(true);
+        newer = ThreadSampleEngine.collect(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        stopLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    @Benchmark
+    public Round collectPerThread() {
+        return ThreadSampleEngine.collect(false);
+    }
+
+    @Benchmark
+    public Round collectBulk() {
+        return ThreadSampleEngine.collect(true);
+    }
+
+    @Benchmark
+    public List<ThreadVO> top5() {
+        return ThreadSampleEngine.getInstance().topThreads(older, newer, 5, false);
+    }
+
+    @Benchmark
+    public List<ThreadVO> allThreadsSorted() {
+        return ThreadSampleEngine.getInstance().cpuUsage(older, newer, ThreadUtil.getThreads(), false);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(ThreadSampleEngineBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+}
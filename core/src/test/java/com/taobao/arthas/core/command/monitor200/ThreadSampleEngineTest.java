@@ -0,0 +1,110 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.taobao.arthas.core.command.model.ThreadVO;
+import com.taobao.arthas.core.command.monitor200.ThreadSampleEngine.Round;
+import com.taobao.arthas.core.util.ThreadUtil;
+
+public class ThreadSampleEngineTest {
+
+    @After
+    public void after() {
+        ThreadSampleEngine.destroy();
+    }
+
+    @Test
+    public void testWindow() {
+        ThreadSampleEngine engine = ThreadSampleEngine.getInstance();
+        Round[] window = engine.window(100);
+        Assert.assertTrue(window[1].getTimeNanos() - window[0].getTimeNanos() >= 100 * 1000000L);
+
+        // answered from history, no need to wait again
+        long start = System.nanoTime();
+        window = engine.window(100);
+        Assert.assertTrue(System.nanoTime() - start < 100 * 1000000L);
+        Assert.assertTrue(window[1].getTimeNanos() - window[0].getTimeNanos() >= 100 * 1000000L);
+
+        List<ThreadVO> threads = engine.cpuUsage(window[0], window[1], ThreadUtil.getThreads(), false);
+        Assert.assertFalse(threads.isEmpty());
+        for (int i = 1; i < threads.size(); ++i) {
+            Assert.assertTrue(threads.get(i - 1).getDeltaTime() >= threads.get(i).getDeltaTime());
+        }
+    }
+
+    @Test
+    public void testTopIndexes() {
+        long[] keys = new long[] { 5, 1, 9, 3, 9, 7, 0 };
+        Assert.assertArrayEquals(new int[] { 2, 4, 5 }, ThreadSampleEngine.topIndexes(keys, 3));
+        Assert.assertArrayEquals(new int[] { 2, 4, 5, 0, 3, 1, 6 }, ThreadSampleEngine.topIndexes(keys, 100));
+        Assert.assertEquals(0, ThreadSampleEngine.topIndexes(keys, 0).length);
+
+        boolean[] skip = new boolean[] { false, false, true, false, false, false, true };
+        Assert.assertArrayEquals(new int[] { 4, 5 }, ThreadSampleEngine.topIndexes(keys, 2, skip));
+        Assert.assertArrayEquals(new int[] { 4, 5, 0, 3, 1 }, ThreadSampleEngine.topIndexes(keys, 100, skip));
+    }
+
+    @Test
+    public void testTopThreadsRefillTerminated() {
+        long current = Thread.currentThread().getId();
+        // a thread id which does not exist, it is the busiest one but terminated
+        long terminated = Long.MAX_VALUE - 1;
+        long[] ids = new long[] { current, terminated };
+        Round older = new Round(0, ids, new long[] { 0, 0 }, null, new String[0], new long[0]);
+        Round newer = new Round(1000000000L, ids, new long[] { 1000, 900000000 }, null, new String[0],
+                new long[0]);
+
+        List<ThreadVO> threads = ThreadSampleEngine.getInstance().topThreads(older, newer, 1, false);
+        Assert.assertEquals(1, threads.size());
+        Assert.assertEquals(current, threads.get(0).getId());
+    }
+
+    @Test
+    public void testTopThreads() {
+        ThreadSampleEngine engine = ThreadSampleEngine.getInstance();
+        Round[] window = engine.window(50);
+        List<ThreadVO> threads = engine.topThreads(window[0], window[1], 3, false);
+        Assert.assertTrue(threads.size() <= 3);
+        for (ThreadVO thread : threads) {
+            Assert.assertTrue(thread.getId() > 0);
+            Assert.assertNotNull(thread.getName());
+        }
+    }
+
+    @Test
+    public void testTopAllocThreads() throws InterruptedException {
+        final CountDownLatch stop = new CountDownLatch(1);
+        Thread allocator = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<byte[]> garbage = new ArrayList<byte[]>();
+                while (stop.getCount() > 0) {
+                    garbage.add(new byte[1024]);
+                    if (garbage.size() > 1024) {
+                        garbage.clear();
+                    }
+                }
+            }
+        }, "test-allocator");
+        allocator.setDaemon(true);
+        allocator.start();
+        try {
+            ThreadSampleEngine engine = ThreadSampleEngine.getInstance();
+            Round[] window = engine.window(100);
+            Assume.assumeNotNull(window[1].allocatedBytes);
+            List<ThreadVO> threads = engine.topThreads(window[0], window[1], 1, true);
+            Assert.assertEquals(allocator.getId(), threads.get(0).getId());
+            Assert.assertTrue(threads.get(0).getAllocRate() > 0);
+        } finally {
+            stop.countDown();
+            allocator.join();
+        }
+    }
+}
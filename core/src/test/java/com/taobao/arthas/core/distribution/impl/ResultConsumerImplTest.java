@@ -0,0 +1,61 @@
+package com.taobao.arthas.core.distribution.impl;
+
+import com.taobao.arthas.core.command.model.MessageModel;
+import com.taobao.arthas.core.command.model.ResultModel;
+import com.taobao.arthas.core.distribution.ResultListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResultConsumerImplTest {
+
+    @Test
+    public void testListenerReceivesQueuedAndNewResults() {
+        ResultConsumerImpl consumer = new ResultConsumerImpl();
+        consumer.appendResult(new MessageModel("queued"));
+
+        final List<ResultModel> received = new ArrayList<ResultModel>();
+        ResultListener listener = new ResultListener() {
+            @Override
+            public void onResult(ResultModel result) {
+                received.add(result);
+            }
+        };
+        consumer.setResultListener(listener);
+        consumer.appendResult(new MessageModel("pushed"));
+
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals("queued", ((MessageModel) received.get(0)).getMessage());
+        Assert.assertEquals("pushed", ((MessageModel) received.get(1)).getMessage());
+        Assert.assertTrue(consumer.isHealthy());
+    }
+
+    @Test
+    public void testRemoveListener() {
+        ResultConsumerImpl consumer = new ResultConsumerImpl();
+        final List<ResultModel> received = new ArrayList<ResultModel>();
+        ResultListener listener = new ResultListener() {
+            @Override
+            public void onResult(ResultModel result) {
+                received.add(result);
+            }
+        };
+        consumer.setResultListener(listener);
+
+        ResultListener other = new ResultListener() {
+            @Override
+            public void onResult(ResultModel result) {
+            }
+        };
+        Assert.assertFalse(consumer.removeResultListener(other));
+        Assert.assertTrue(consumer.removeResultListener(listener));
+
+        consumer.appendResult(new MessageModel("after remove"));
+        Assert.assertTrue(received.isEmpty());
+        // 没有 listener 时结果回到队列里等待拉取
+        List<ResultModel> results = consumer.pollResults();
+        Assert.assertEquals(1, results.size());
+    }
+}
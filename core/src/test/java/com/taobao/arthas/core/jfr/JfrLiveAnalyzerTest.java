@@ -0,0 +1,19 @@
+package com.taobao.arthas.core.jfr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JfrLiveAnalyzerTest {
+
+    @Test
+    public void testParseNanos() {
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(20), JfrLiveAnalyzer.parseNanos("20 ms"));
+        Assert.assertEquals(10, JfrLiveAnalyzer.parseNanos(" 10  ns"));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), JfrLiveAnalyzer.parseNanos("1 s"));
+        Assert.assertEquals(0, JfrLiveAnalyzer.parseNanos("0 ms"));
+        Assert.assertEquals(0, JfrLiveAnalyzer.parseNanos("everyChunk"));
+        Assert.assertEquals(0, JfrLiveAnalyzer.parseNanos(null));
+    }
+}
@@ -0,0 +1,78 @@
+package com.taobao.arthas.core.jfr;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.taobao.arthas.core.command.model.JFRLiveEntryVO;
+
+public class JfrRollingWindowTest {
+
+    @Test
+    public void testTop() {
+        JfrRollingWindow window = new JfrRollingWindow(60 * 1000);
+        long now = 1000000L;
+        window.add(JfrRollingWindow.ALLOCATIONS, "byte[]", 100, now - 2000);
+        window.add(JfrRollingWindow.ALLOCATIONS, "byte[]", 100, now - 1000);
+        window.add(JfrRollingWindow.ALLOCATIONS, "java.lang.String", 1000, now);
+        window.add(JfrRollingWindow.METHODS, "a.Foo.bar", 0, now);
+
+        List<JFRLiveEntryVO> top = window.top(JfrRollingWindow.ALLOCATIONS, 10, now);
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals("java.lang.String", top.get(0).getName());
+        Assert.assertEquals("byte[]", top.get(1).getName());
+        Assert.assertEquals(2, top.get(1).getCount());
+        Assert.assertEquals(200, top.get(1).getValue());
+
+        Assert.assertEquals(1, window.top(JfrRollingWindow.ALLOCATIONS, 1, now).size());
+        Assert.assertEquals(4, window.events(now));
+    }
+
+    @Test
+    public void testExpire() {
+        JfrRollingWindow window = new JfrRollingWindow(10 * 1000);
+        long now = 1000000L;
+        window.add(JfrRollingWindow.LOCKS, "java.lang.Object", 5, now);
+        Assert.assertEquals(1, window.top(JfrRollingWindow.LOCKS, 10, now).size());
+
+        // out of the window
+        Assert.assertTrue(window.top(JfrRollingWindow.LOCKS, 10, now + 20 * 1000).isEmpty());
+
+        // a newer event reuses the slot, an older one is dropped
+        window.add(JfrRollingWindow.LOCKS, "java.lang.Class", 5, now + 11 * 1000);
+        window.add(JfrRollingWindow.LOCKS, "java.lang.Object", 5, now);
+        List<JFRLiveEntryVO> top = window.top(JfrRollingWindow.LOCKS, 10, now + 11 * 1000);
+        Assert.assertEquals(1, top.size());
+        Assert.assertEquals("java.lang.Class", top.get(0).getName());
+    }
+
+    @Test
+    public void testShorterWindow() {
+        JfrRollingWindow window = new JfrRollingWindow(60 * 1000);
+        long now = 1000000L;
+        window.add(JfrRollingWindow.METHODS, "a.Foo.old", 0, now - 30 * 1000);
+        window.add(JfrRollingWindow.METHODS, "a.Foo.bar", 0, now);
+
+        Assert.assertEquals(2, window.events(now));
+        Assert.assertEquals(1, window.events(now, 10 * 1000));
+        List<JFRLiveEntryVO> top = window.top(JfrRollingWindow.METHODS, 10, now, 10 * 1000);
+        Assert.assertEquals(1, top.size());
+        Assert.assertEquals("a.Foo.bar", top.get(0).getName());
+        // no more than the retained window
+        Assert.assertEquals(2, window.events(now, 600 * 1000));
+    }
+
+    @Test
+    public void testKeyLimit() {
+        JfrRollingWindow window = new JfrRollingWindow(60 * 1000);
+        long now = 1000000L;
+        for (int i = 0; i < JfrRollingWindow.MAX_KEYS_PER_SLOT + 10; i++) {
+            window.add(JfrRollingWindow.METHODS, "m" + i, 0, now);
+        }
+        List<JFRLiveEntryVO> all = window.top(JfrRollingWindow.METHODS, 0, now);
+        Assert.assertEquals(JfrRollingWindow.MAX_KEYS_PER_SLOT + 1, all.size());
+        Assert.assertEquals(JfrRollingWindow.OTHER, all.get(0).getName());
+        Assert.assertEquals(10, all.get(0).getCount());
+    }
+}
@@ -12,9 +12,11 @@ import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -78,7 +80,7 @@ public class ViewFileToolTest {
 
     @Test
     public void should_error_when_file_not_found_or_not_allowed() {
-        String json = tool.viewFile("a.txt", null, null, 10, toolContext);
+        String json = tool.viewFile("a.txt", null, null, 10, null, null, null, null, null, toolContext);
         Map<String, Object> result = parse(json);
         Assert.assertEquals("error", result.get("status"));
         Assert.assertNotNull(result.get("message"));
@@ -92,7 +94,7 @@ public class ViewFileToolTest {
         Path file = allowedDir.toPath().resolve("test.txt");
         Files.write(file, "abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8));
 
-        Map<String, Object> first = parse(tool.viewFile("test.txt", null, 0L, 5, toolContext));
+        Map<String, Object> first = parse(tool.viewFile("test.txt", null, 0L, 5, null, null, null, null, null, toolContext));
         Assert.assertEquals("completed", first.get("status"));
         Assert.assertEquals("abcde", first.get("content"));
 
@@ -100,11 +102,59 @@ public class ViewFileToolTest {
         Assert.assertNotNull(nextCursor);
         Assert.assertFalse(nextCursor.trim().isEmpty());
 
-        Map<String, Object> second = parse(tool.viewFile(null, nextCursor, null, 5, toolContext));
+        Map<String, Object> second = parse(tool.viewFile(null, nextCursor, null, 5, null, null, null, null, null, toolContext));
         Assert.assertEquals("completed", second.get("status"));
         Assert.assertEquals("fghij", second.get("content"));
     }
 
+    @Test
+    public void should_tail_and_follow_lines_with_cursor() throws Exception {
+        File allowedDir = temporaryFolder.newFolder("allowed");
+        setEnv(ViewFileTool.ALLOWED_DIRS_ENV, allowedDir.getAbsolutePath());
+
+        Path file = allowedDir.toPath().resolve("app.log");
+        Files.write(file, "a\nb\nc\n".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, Object> first = parse(tool.viewFile("app.log", null, null, null, null, null, 2, null, null, toolContext));
+        Assert.assertEquals("completed", first.get("status"));
+        Assert.assertEquals("b\nc", first.get("content"));
+
+        Files.write(file, "d\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        String nextCursor = String.valueOf(first.get("nextCursor"));
+        Map<String, Object> second = parse(tool.viewFile(null, nextCursor, null, null, null, null, null, null, null, toolContext));
+        Assert.assertEquals("d", second.get("content"));
+        Assert.assertEquals(Boolean.TRUE, second.get("eof"));
+
+        // the unfinished last line is read again once it is complete
+        Files.write(file, "e".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Map<String, Object> third = parse(tool.viewFile(null, String.valueOf(second.get("nextCursor")), null, null, null,
+                null, null, null, null, toolContext));
+        Assert.assertEquals("e", third.get("content"));
+        Assert.assertEquals(Boolean.TRUE, third.get("eof"));
+
+        Files.write(file, "f\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Map<String, Object> fourth = parse(tool.viewFile(null, String.valueOf(third.get("nextCursor")), null, null, null,
+                null, null, null, null, toolContext));
+        Assert.assertEquals("ef", fourth.get("content"));
+    }
+
+    @Test
+    public void should_return_matching_lines_only() throws Exception {
+        File allowedDir = temporaryFolder.newFolder("allowed");
+        setEnv(ViewFileTool.ALLOWED_DIRS_ENV, allowedDir.getAbsolutePath());
+
+        Path file = allowedDir.toPath().resolve("app.log");
+        Files.write(file, "INFO start\nERROR boom\nINFO end\n".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, Object> result = parse(tool.viewFile("app.log", null, null, null, null, null, null, "ERROR", null, toolContext));
+        Assert.assertEquals("completed", result.get("status"));
+        List<?> matches = (List<?>) result.get("matches");
+        Assert.assertEquals(1, matches.size());
+        Map<?, ?> match = (Map<?, ?>) matches.get(0);
+        Assert.assertEquals(2, ((Number) match.get("line")).intValue());
+        Assert.assertEquals("ERROR boom", match.get("text"));
+    }
+
     @Test
     public void should_reject_absolute_path_outside_allowed_root() throws Exception {
         File allowedDir = temporaryFolder.newFolder("allowed");
@@ -113,7 +163,7 @@ public class ViewFileToolTest {
         File outside = temporaryFolder.newFile("outside.txt");
         Files.write(outside.toPath(), "outside".getBytes(StandardCharsets.UTF_8));
 
-        Map<String, Object> result = parse(tool.viewFile(outside.getAbsolutePath(), null, 0L, 10, toolContext));
+        Map<String, Object> result = parse(tool.viewFile(outside.getAbsolutePath(), null, 0L, 10, null, null, null, null, null, toolContext));
         Assert.assertEquals("error", result.get("status"));
     }
 
@@ -125,7 +175,7 @@ public class ViewFileToolTest {
         File outside = temporaryFolder.newFile("outside.txt");
         Files.write(outside.toPath(), "outside".getBytes(StandardCharsets.UTF_8));
 
-        Map<String, Object> result = parse(tool.viewFile("../outside.txt", null, 0L, 10, toolContext));
+        Map<String, Object> result = parse(tool.viewFile("../outside.txt", null, 0L, 10, null, null, null, null, null, toolContext));
         Assert.assertEquals("error", result.get("status"));
     }
 
@@ -145,7 +195,7 @@ public class ViewFileToolTest {
         String encodedCursor = Base64.getUrlEncoder().withoutPadding()
                 .encodeToString(cursorJson.getBytes(StandardCharsets.UTF_8));
 
-        Map<String, Object> result = parse(tool.viewFile(null, encodedCursor, null, 10, toolContext));
+        Map<String, Object> result = parse(tool.viewFile(null, encodedCursor, null, 10, null, null, null, null, null, toolContext));
         Assert.assertEquals("error", result.get("status"));
     }
 
@@ -157,7 +207,7 @@ public class ViewFileToolTest {
         Path file = allowedDir.toPath().resolve("test.txt");
         Files.write(file, "abc".getBytes(StandardCharsets.UTF_8));
 
-        Map<String, Object> result = parse(tool.viewFile("test.txt", null, -1L, 10, toolContext));
+        Map<String, Object> result = parse(tool.viewFile("test.txt", null, -1L, 10, null, null, null, null, null, toolContext));
         Assert.assertEquals("error", result.get("status"));
     }
 
@@ -178,7 +228,7 @@ public class ViewFileToolTest {
             Assume.assumeNoException("创建符号链接失败，跳过", e);
         }
 
-        Map<String, Object> result = parse(tool.viewFile("link.txt", null, 0L, 10, toolContext));
+        Map<String, Object> result = parse(tool.viewFile("link.txt", null, 0L, 10, null, null, null, null, null, toolContext));
         Assert.assertEquals("error", result.get("status"));
     }
 
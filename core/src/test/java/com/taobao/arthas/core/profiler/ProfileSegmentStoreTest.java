@@ -0,0 +1,49 @@
+package com.taobao.arthas.core.profiler;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProfileSegmentStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRetainAndQuery() throws Exception {
+        File dir = new File(folder.getRoot(), "segments");
+        ProfileSegmentStore store = new ProfileSegmentStore(dir, 3, 0);
+        for (int i = 0; i < 5; i++) {
+            store.add(i * 1000, (i + 1) * 1000, "x;y " + (i + 1) + "\nz 1\n");
+        }
+
+        List<ProfileSegmentStore.Segment> segments = store.segments();
+        Assert.assertEquals(3, segments.size());
+        Assert.assertEquals(2000, segments.get(0).getStart());
+        Assert.assertEquals(5, segments.get(1).getSamples());
+        // 3 segments + index
+        Assert.assertEquals(4, dir.list().length);
+
+        List<ProfileSegmentStore.Segment> range = store.query(3500, 4500);
+        Assert.assertEquals(2, range.size());
+        StackTrie trie = store.merge(range);
+        Assert.assertEquals("x;y 9\nz 2\n", trie.toCollapsed());
+
+        Assert.assertTrue(store.query(6000, 7000).isEmpty());
+    }
+
+    @Test
+    public void testRetainSize() throws Exception {
+        ProfileSegmentStore store = new ProfileSegmentStore(folder.getRoot(), 100, 1);
+        store.add(0, 1000, "x 1\n");
+        store.add(1000, 2000, "y 2\n");
+        // the newest segment is always kept
+        List<ProfileSegmentStore.Segment> segments = store.segments();
+        Assert.assertEquals(1, segments.size());
+        Assert.assertEquals(2, segments.get(0).getSamples());
+    }
+}
@@ -0,0 +1,34 @@
+package com.taobao.arthas.core.profiler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StackDiffTest {
+
+    @Test
+    public void testCollapsedAndTable() throws Exception {
+        StackTrie base = new StackTrie();
+        base.addStack(new String[] { "main", "a" }, 4);
+        base.addStack(new String[] { "main", "b" }, 4);
+        base.addStack(new String[] { "main", "c" }, 2);
+
+        StackTrie target = new StackTrie();
+        target.addStack(new String[] { "main", "a" }, 2);
+        target.addStack(new String[] { "main", "b" }, 10);
+        target.addStack(new String[] { "main", "d", "a" }, 8);
+
+        StackDiff diff = new StackDiff(base, target);
+        Assert.assertEquals(2.0, diff.getBaseScale(), 0.0001);
+        Assert.assertEquals("main;a 4 2\nmain;b 4 10\nmain;d;a 0 8\nmain;c 2 0\n", diff.toCollapsed());
+
+        String table = diff.toTable(1);
+        // self: a 8 -> 10, b 8 -> 10, c 4 -> 0, d 0 -> 0; total: d 0 -> 8 is the largest
+        Assert.assertTrue(table.contains("largest self deltas"));
+        String totals = table.substring(table.indexOf("largest total deltas"));
+        Assert.assertTrue(totals.contains("+8") && totals.contains(" d"));
+
+        String html = diff.toFlameGraphHtml(null);
+        Assert.assertTrue(html.contains("var diff = true;"));
+        Assert.assertTrue(html.contains("'main;d;a 0 8'"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.taobao.arthas.core.profiler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StackTrieTest {
+
+    @Test
+    public void testCollapsedAndFlat() {
+        StackTrie trie = new StackTrie();
+        trie.addStack(new String[] { "java/lang/Thread.run", "a/Foo.bar" }, 3);
+        trie.addStack(new String[] { "java/lang/Thread.run", "a/Foo.bar", "a/Foo.baz" }, 2);
+        trie.addStack(new String[] { "java/lang/Thread.run", "a/Foo.bar" }, 1);
+
+        Assert.assertEquals(6, trie.getTotal());
+        Assert.assertEquals(3, trie.getFrameCount());
+        // root + 3 distinct nodes
+        Assert.assertEquals(4, trie.getNodeCount());
+        Assert.assertEquals("java/lang/Thread.run;a/Foo.bar 4\njava/lang/Thread.run;a/Foo.bar;a/Foo.baz 2\n",
+                trie.toCollapsed());
+
+        String flat = trie.toFlat(1);
+        Assert.assertTrue(flat.contains("a/Foo.bar"));
+        Assert.assertFalse(flat.contains("a/Foo.baz"));
+    }
+
+    @Test
+    public void testMergeAndClear() {
+        StackTrie a = new StackTrie();
+        a.addStack(new String[] { "x", "y" }, 1);
+        StackTrie b = new StackTrie();
+        b.addStack(new String[] { "z" }, 2);
+        b.addStack(new String[] { "x", "y" }, 3);
+
+        a.merge(b);
+        Assert.assertEquals(6, a.getTotal());
+        Assert.assertEquals("x;y 4\nz 2\n", a.toCollapsed());
+
+        a.clear();
+        Assert.assertEquals(0, a.getTotal());
+        Assert.assertEquals("", a.toCollapsed());
+    }
+
+    @Test
+    public void testManyNodes() {
+        StackTrie trie = new StackTrie();
+        for (int i = 0; i < 5000; ++i) {
+            trie.addStack(new String[] { "root", "m" + (i % 1000), "n" + i }, 1);
+        }
+        Assert.assertEquals(5000, trie.getTotal());
+        Assert.assertEquals(1 + 1 + 1000 + 5000, trie.getNodeCount());
+    }
+
+    @Test
+    public void testFlameGraphHtml() throws Exception {
+        StackTrie trie = new StackTrie();
+        trie.addStack(new String[] { "a/It's.run", "<b>" }, 1);
+        String html = trie.toFlameGraphHtml("demo");
+        Assert.assertTrue(html.contains("<title>demo</title>"));
+        Assert.assertTrue(html.contains("'a/It\\'s.run;\\x3cb> 1'"));
+    }
+}
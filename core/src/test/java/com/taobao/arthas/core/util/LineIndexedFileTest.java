@@ -0,0 +1,160 @@
+package com.taobao.arthas.core.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class LineIndexedFileTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadLinesAcrossCheckpoints() throws IOException {
+        File file = temporaryFolder.newFile("a.log");
+        append(file, 0, 5000);
+
+        LineIndexedFile indexedFile = LineIndexedFile.of(file);
+        Assert.assertEquals(5000, indexedFile.getLineCount());
+
+        List<LineIndexedFile.Line> lines = indexedFile.readLines(2047, 3, Long.MAX_VALUE, UTF8);
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals(2047, lines.get(0).getNumber());
+        Assert.assertEquals("line-2047", lines.get(0).getText());
+        Assert.assertEquals("line-2049", lines.get(2).getText());
+
+        Assert.assertTrue(indexedFile.readLines(5001, 10, Long.MAX_VALUE, UTF8).isEmpty());
+        // stop after the line which reaches maxBytes
+        Assert.assertEquals(2, indexedFile.readLines(1, 10, 10, UTF8).size());
+    }
+
+    @Test
+    public void testIndexGrowsWithFile() throws IOException {
+        File file = temporaryFolder.newFile("b.log");
+        append(file, 0, 1500);
+        write(file, "partial", true);
+
+        LineIndexedFile indexedFile = LineIndexedFile.of(file);
+        Assert.assertEquals(1501, indexedFile.getLineCount());
+        LineIndexedFile.Line last = indexedFile.tail(1, Long.MAX_VALUE, UTF8).get(0);
+        Assert.assertEquals(1501, last.getNumber());
+        Assert.assertEquals("partial", last.getText());
+        Assert.assertFalse(last.isComplete());
+        Assert.assertTrue(indexedFile.tail(2, Long.MAX_VALUE, UTF8).get(0).isComplete());
+
+        write(file, "-done\r\n", true);
+        append(file, 1501, 3000);
+        Assert.assertEquals(3000, indexedFile.getLineCount());
+
+        List<LineIndexedFile.Line> tail = indexedFile.tail(2, Long.MAX_VALUE, UTF8);
+        Assert.assertEquals(2999, tail.get(0).getNumber());
+        Assert.assertEquals("line-3000", tail.get(1).getText());
+        Assert.assertEquals("partial-done", indexedFile.readLines(1501, 1, Long.MAX_VALUE, UTF8).get(0).getText());
+        Assert.assertEquals("line-2600", indexedFile.readLines(2600, 1, Long.MAX_VALUE, UTF8).get(0).getText());
+    }
+
+    @Test
+    public void testFollowPartialLine() throws IOException {
+        File file = temporaryFolder.newFile("e.log");
+        append(file, 0, 3);
+        write(file, "par", true);
+
+        LineIndexedFile indexedFile = LineIndexedFile.of(file);
+        List<LineIndexedFile.Line> lines = indexedFile.readCompleteLines(1, Integer.MAX_VALUE, Long.MAX_VALUE, UTF8);
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals("line-3", lines.get(2).getText());
+        long nextLine = lines.get(2).getNumber() + 1;
+        Assert.assertTrue(indexedFile.readCompleteLines(nextLine, Integer.MAX_VALUE, Long.MAX_VALUE, UTF8).isEmpty());
+
+        write(file, "tial", true);
+        Assert.assertTrue(indexedFile.readCompleteLines(nextLine, Integer.MAX_VALUE, Long.MAX_VALUE, UTF8).isEmpty());
+
+        write(file, "\nnext\n", true);
+        lines = indexedFile.readCompleteLines(nextLine, Integer.MAX_VALUE, Long.MAX_VALUE, UTF8);
+        Assert.assertEquals(2, lines.size());
+        Assert.assertEquals(4, lines.get(0).getNumber());
+        Assert.assertEquals("partial", lines.get(0).getText());
+        Assert.assertEquals("next", lines.get(1).getText());
+    }
+
+    @Test
+    public void testIndexRebuiltWhenTruncated() throws IOException {
+        File file = temporaryFolder.newFile("c.log");
+        append(file, 0, 2000);
+        LineIndexedFile indexedFile = LineIndexedFile.of(file);
+        Assert.assertEquals(2000, indexedFile.getLineCount());
+
+        write(file, "first\nsecond\n", false);
+        Assert.assertEquals(2, indexedFile.getLineCount());
+        Assert.assertEquals("second", indexedFile.readLines(2, 1, Long.MAX_VALUE, UTF8).get(0).getText());
+    }
+
+    @Test
+    public void testSearchInParallelChunks() throws IOException {
+        File file = temporaryFolder.newFile("d.log");
+        // about 5M, more than one search chunk
+        append(file, 0, 400000);
+
+        LineIndexedFile indexedFile = LineIndexedFile.of(file);
+        List<LineIndexedFile.Line> matches = indexedFile.search(Pattern.compile("line-\\d*99999$"), false, 100,
+                UTF8);
+        Assert.assertEquals(4, matches.size());
+        Assert.assertEquals(99999, matches.get(0).getNumber());
+        Assert.assertEquals("line-99999", matches.get(0).getText());
+        Assert.assertEquals(399999, matches.get(3).getNumber());
+
+        Assert.assertEquals(2, indexedFile.search(Pattern.compile("99999"), false, 2, UTF8).size());
+        List<LineIndexedFile.Line> inverted = indexedFile.search(Pattern.compile("line"), true, 10, UTF8);
+        Assert.assertTrue(inverted.isEmpty());
+    }
+
+    @Test
+    public void testSearchLongLineAcrossReads() throws IOException {
+        File file = temporaryFolder.newFile("f.log");
+        append(file, 0, 10);
+        StringBuilder sb = new StringBuilder("long-");
+        // longer than the read buffer and the matched prefix of a line
+        for (int i = 0; i < 3 * 1024 * 1024; ++i) {
+            sb.append('x');
+        }
+        write(file, sb.append("-end\n").toString(), true);
+        append(file, 11, 21);
+
+        LineIndexedFile indexedFile = LineIndexedFile.of(file);
+        Assert.assertEquals(21, indexedFile.getLineCount());
+        List<LineIndexedFile.Line> matches = indexedFile.search(Pattern.compile("^long-x+$|line-21$"), false, 10,
+                UTF8);
+        Assert.assertEquals(2, matches.size());
+        Assert.assertEquals(11, matches.get(0).getNumber());
+        Assert.assertEquals(1024 * 1024, matches.get(0).getText().length());
+        Assert.assertEquals(21, matches.get(1).getNumber());
+    }
+
+    private static void append(File file, int from, int to) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from + 1; i <= to; ++i) {
+            sb.append("line-").append(i).append('\n');
+        }
+        write(file, sb.toString(), true);
+    }
+
+    private static void write(File file, String content, boolean append) throws IOException {
+        OutputStream out = new FileOutputStream(file, append);
+        try {
+            out.write(content.getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+    }
+}
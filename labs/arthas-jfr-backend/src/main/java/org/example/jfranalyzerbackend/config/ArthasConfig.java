@@ -8,6 +8,11 @@ import org.springframework.stereotype.Component;
 public class ArthasConfig {
     private String jfrStoragePath;
 
+    /**
+     * 内存中缓存的分析结果数量
+     */
+    private int analysisCacheSize = 8;
+
     public String getJfrStoragePath() {
         return jfrStoragePath;
     }
@@ -15,4 +20,12 @@ public class ArthasConfig {
     public void setJfrStoragePath(String jfrStoragePath) {
         this.jfrStoragePath = jfrStoragePath;
     }
+
+    public int getAnalysisCacheSize() {
+        return analysisCacheSize;
+    }
+
+    public void setAnalysisCacheSize(int analysisCacheSize) {
+        this.analysisCacheSize = analysisCacheSize;
+    }
 }
@@ -2,18 +2,12 @@ package org.example.jfranalyzerbackend.extractor;
 
 import org.example.jfranalyzerbackend.model.AnalysisResult;
 import org.example.jfranalyzerbackend.model.DimensionResult;
-import org.example.jfranalyzerbackend.model.StackTrace;
 import org.example.jfranalyzerbackend.model.Task;
 import org.example.jfranalyzerbackend.model.TaskAllocatedMemory;
 import org.example.jfranalyzerbackend.model.jfr.RecordedEvent;
-import org.example.jfranalyzerbackend.model.jfr.RecordedStackTrace;
-import org.example.jfranalyzerbackend.util.StackTraceUtil;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * 已分配内存事件提取器
@@ -25,8 +19,14 @@ public class AllocatedMemoryExtractor extends AllocationsExtractor {
         super(context);
     }
 
+    @Override
+    public AllocatedMemoryExtractor fork() {
+        return copySettingsTo(new AllocatedMemoryExtractor(context));
+    }
+
     @Override
     void visitObjectAllocationInNewTLAB(RecordedEvent event) {
+        initializeAllocationSampling();
         if (this.objectAllocationSamplingEnabled) {
             return;
         }
@@ -35,6 +35,7 @@ public class AllocatedMemoryExtractor extends AllocationsExtractor {
 
     @Override
     void visitObjectAllocationOutsideTLAB(RecordedEvent event) {
+        initializeAllocationSampling();
         if (this.objectAllocationSamplingEnabled) {
             return;
         }
@@ -47,21 +48,19 @@ public class AllocatedMemoryExtractor extends AllocationsExtractor {
     }
 
     private void processMemoryAllocationEvent(RecordedEvent event, String sizeFieldName) {
-        RecordedStackTrace stackTrace = event.getStackTrace();
-        if (stackTrace == null) {
-            stackTrace = StackTraceUtil.DUMMY_STACK_TRACE;
+        int stackTraceId = event.getStackTraceId();
+        if (stackTraceId < 0) {
+            stackTraceId = context.getNoFrameStackTraceId();
         }
 
         AllocationMetrics memoryMetrics = obtainThreadMetrics(event.getThread());
-        initializeSamplesIfNeeded(memoryMetrics);
 
         long allocationSize = event.getLong(sizeFieldName);
-        updateMemoryMetrics(memoryMetrics, stackTrace, allocationSize);
+        updateMemoryMetrics(memoryMetrics, stackTraceId, allocationSize);
     }
 
-    private void updateMemoryMetrics(AllocationMetrics metrics, RecordedStackTrace stackTrace, long size) {
-        metrics.getSamples().compute(stackTrace, (key, existingSize) -> 
-            existingSize == null ? size : existingSize + size);
+    private void updateMemoryMetrics(AllocationMetrics metrics, int stackTraceId, long size) {
+        metrics.addSample(stackTraceId, size);
         metrics.totalAllocatedBytes += size;
     }
 
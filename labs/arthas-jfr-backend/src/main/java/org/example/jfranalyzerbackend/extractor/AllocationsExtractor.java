@@ -4,12 +4,10 @@ package org.example.jfranalyzerbackend.extractor;
 import org.example.jfranalyzerbackend.enums.EventConstant;
 import org.example.jfranalyzerbackend.model.*;
 import org.example.jfranalyzerbackend.model.jfr.RecordedEvent;
-import org.example.jfranalyzerbackend.model.jfr.RecordedStackTrace;
 import org.example.jfranalyzerbackend.model.jfr.RecordedThread;
-import org.example.jfranalyzerbackend.util.StackTraceUtil;
+import org.example.jfranalyzerbackend.util.IntLongMap;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static org.example.jfranalyzerbackend.enums.EventConstant.OBJECT_ALLOCATION_SAMPLE;
 
@@ -17,9 +15,11 @@ import static org.example.jfranalyzerbackend.enums.EventConstant.OBJECT_ALLOCATI
  * 内存分配事件提取器
  * 负责处理对象分配相关的JFR事件，包括TLAB内分配、TLAB外分配和分配采样
  */
-public class AllocationsExtractor extends Extractor {
+public class AllocationsExtractor extends MergeableExtractor {
     protected boolean objectAllocationSamplingEnabled;
 
+    private boolean allocationSamplingResolved;
+
     private static final List<String> MONITORED_EVENTS = Collections.unmodifiableList(Arrays.asList(
             EventConstant.OBJECT_ALLOCATION_IN_NEW_TLAB,
             EventConstant.OBJECT_ALLOCATION_OUTSIDE_TLAB,
@@ -37,16 +37,28 @@ public class AllocationsExtractor extends Extractor {
 
         public long allocationCount;
         public long totalAllocatedBytes;
+
+        void merge(AllocationMetrics other) {
+            allocationCount += other.allocationCount;
+            totalAllocatedBytes += other.totalAllocatedBytes;
+            mergeSamples(other.getSamples());
+        }
     }
 
     protected final Map<Long, AllocationMetrics> threadMetrics = new HashMap<>();
 
     public AllocationsExtractor(JFRAnalysisContext context) {
         super(context, MONITORED_EVENTS);
-        initializeAllocationSampling();
     }
 
-    private void initializeAllocationSampling() {
+    /**
+     * 活动设置在流式读取时才会注册到上下文中，因此在第一次处理分配事件时再解析
+     */
+    protected void initializeAllocationSampling() {
+        if (allocationSamplingResolved) {
+            return;
+        }
+        allocationSamplingResolved = true;
         try {
             this.objectAllocationSamplingEnabled = this.context.getActiveSettingBool(OBJECT_ALLOCATION_SAMPLE, "enabled");
         } catch (Exception e) {
@@ -54,6 +66,35 @@ public class AllocationsExtractor extends Extractor {
         }
     }
 
+    @Override
+    public AllocationsExtractor fork() {
+        return copySettingsTo(new AllocationsExtractor(context));
+    }
+
+    /**
+     * 将已解析的分配采样设置复制到分叉出的提取器
+     */
+    protected <T extends AllocationsExtractor> T copySettingsTo(T forked) {
+        initializeAllocationSampling();
+        AllocationsExtractor extractor = forked;
+        extractor.objectAllocationSamplingEnabled = this.objectAllocationSamplingEnabled;
+        extractor.allocationSamplingResolved = true;
+        return forked;
+    }
+
+    @Override
+    public void merge(MergeableExtractor other) {
+        AllocationsExtractor partial = (AllocationsExtractor) other;
+        partial.threadMetrics.forEach((threadId, metrics) -> {
+            AllocationMetrics existing = threadMetrics.get(threadId);
+            if (existing == null) {
+                threadMetrics.put(threadId, metrics);
+            } else {
+                existing.merge(metrics);
+            }
+        });
+    }
+
     protected AllocationMetrics obtainThreadMetrics(RecordedThread thread) {
         return threadMetrics.computeIfAbsent(thread.getJavaThreadId(), 
             threadId -> new AllocationMetrics(thread));
@@ -61,6 +102,7 @@ public class AllocationsExtractor extends Extractor {
 
     @Override
     void visitObjectAllocationInNewTLAB(RecordedEvent event) {
+        initializeAllocationSampling();
         if (objectAllocationSamplingEnabled) {
             return;
         }
@@ -69,6 +111,7 @@ public class AllocationsExtractor extends Extractor {
 
     @Override
     void visitObjectAllocationOutsideTLAB(RecordedEvent event) {
+        initializeAllocationSampling();
         if (objectAllocationSamplingEnabled) {
             return;
         }
@@ -81,25 +124,16 @@ public class AllocationsExtractor extends Extractor {
     }
 
     private void processAllocationEvent(RecordedEvent event) {
-        RecordedStackTrace stackTrace = event.getStackTrace();
-        if (stackTrace == null) {
-            stackTrace = StackTraceUtil.DUMMY_STACK_TRACE;
+        int stackTraceId = event.getStackTraceId();
+        if (stackTraceId < 0) {
+            stackTraceId = context.getNoFrameStackTraceId();
         }
 
         AllocationMetrics metrics = obtainThreadMetrics(event.getThread());
-        initializeSamplesIfNeeded(metrics);
-        
-        metrics.getSamples().compute(stackTrace, (key, existingCount) -> 
-            existingCount == null ? 1L : existingCount + 1L);
+        metrics.addSample(stackTraceId, 1L);
         metrics.allocationCount += 1;
     }
 
-    protected void initializeSamplesIfNeeded(AllocationMetrics metrics) {
-        if (metrics.getSamples() == null) {
-            metrics.setSamples(new HashMap<>());
-        }
-    }
-
     private List<TaskAllocations> generateAllocationResults() {
         List<TaskAllocations> allocationResults = new ArrayList<>();
         
@@ -135,13 +169,8 @@ public class AllocationsExtractor extends Extractor {
         return task;
     }
 
-    protected Map<StackTrace, Long> transformSamples(Map<RecordedStackTrace, Long> rawSamples) {
-        return rawSamples.entrySet().stream()
-                .collect(Collectors.toMap(
-                    entry -> StackTraceUtil.build(entry.getKey(), context.getSymbols()),
-                    Map.Entry::getValue,
-                    Long::sum
-                ));
+    protected Map<StackTrace, Long> transformSamples(IntLongMap rawSamples) {
+        return context.buildSamples(rawSamples);
     }
 
     private List<TaskAllocations> sortAllocationsByCount(List<TaskAllocations> allocations) {
@@ -7,16 +7,14 @@ import org.example.jfranalyzerbackend.model.StackTrace;
 import org.example.jfranalyzerbackend.model.Task;
 import org.example.jfranalyzerbackend.model.TaskData;
 import org.example.jfranalyzerbackend.model.jfr.RecordedEvent;
-import org.example.jfranalyzerbackend.model.jfr.RecordedStackTrace;
 import org.example.jfranalyzerbackend.model.jfr.RecordedThread;
-import org.example.jfranalyzerbackend.util.StackTraceUtil;
+import org.example.jfranalyzerbackend.util.IntLongMap;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * 基础值提取器抽象类
@@ -55,16 +53,13 @@ public abstract class BaseValueExtractor extends Extractor {
     }
 
     protected void processValueEvent(RecordedEvent event, long eventValue) {
-        RecordedStackTrace stackTrace = event.getStackTrace();
-        if (stackTrace == null) {
+        int stackTraceId = event.getStackTraceId();
+        if (stackTraceId < 0) {
             return;
         }
 
         ValueMetrics metrics = obtainValueMetrics(event.getThread());
-        initializeSamplesIfNeeded(metrics);
-        
-        metrics.getSamples().compute(stackTrace, (key, existingValue) -> 
-            existingValue == null ? eventValue : existingValue + eventValue);
+        metrics.addSample(stackTraceId, eventValue);
         metrics.totalValue += eventValue;
     }
 
@@ -72,12 +67,6 @@ public abstract class BaseValueExtractor extends Extractor {
         processValueEvent(event, 1);
     }
 
-    private void initializeSamplesIfNeeded(ValueMetrics metrics) {
-        if (metrics.getSamples() == null) {
-            metrics.setSamples(new HashMap<>());
-        }
-    }
-
     /**
      * 生成任务结果列表
      */
@@ -121,13 +110,8 @@ public abstract class BaseValueExtractor extends Extractor {
         return task;
     }
 
-    private Map<StackTrace, Long> transformSamples(Map<RecordedStackTrace, Long> rawSamples) {
-        return rawSamples.entrySet().stream()
-                .collect(Collectors.toMap(
-                    entry -> StackTraceUtil.build(entry.getKey(), context.getSymbols()),
-                    Map.Entry::getValue,
-                    Long::sum
-                ));
+    private Map<StackTrace, Long> transformSamples(IntLongMap rawSamples) {
+        return context.buildSamples(rawSamples);
     }
 
     private <T extends BaseTaskResult> List<T> sortResultsByValue(List<T> results) {
@@ -5,7 +5,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.jfranalyzerbackend.enums.EventConstant;
 import org.example.jfranalyzerbackend.model.*;
 import org.example.jfranalyzerbackend.model.jfr.RecordedEvent;
-import org.example.jfranalyzerbackend.model.jfr.RecordedStackTrace;
 import org.example.jfranalyzerbackend.model.jfr.RecordedThread;
 import org.example.jfranalyzerbackend.util.GCUtil;
 import org.example.jfranalyzerbackend.util.StackTraceUtil;
@@ -15,10 +14,9 @@ import org.example.jfranalyzerbackend.util.TimeUtil;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Slf4j
-public class CPUTimeExtractor extends Extractor {
+public class CPUTimeExtractor extends MergeableExtractor {
 
     private static final List<String> INTERESTED = Collections.unmodifiableList(new ArrayList<>() {
         {
@@ -46,7 +44,58 @@ public class CPUTimeExtractor extends Extractor {
 
         long sampleCount;
 
-        boolean firstThreadCPULoadEventIsFired;
+        // the earliest jdk.ThreadCPULoad is clipped by the thread start when the result is built,
+        // so that the events can be visited in any order and partial results can be merged
+        Instant firstLoadTime;
+
+        float firstLoadUser;
+
+        float firstLoadSystem;
+
+        void addLoad(float user, float system, long nanos) {
+            this.user += (long) (user * nanos);
+            this.system += (long) (system * nanos);
+        }
+
+        void addFirstLoad(Instant time, float user, float system, long period) {
+            if (firstLoadTime == null) {
+                firstLoadTime = time;
+                firstLoadUser = user;
+                firstLoadSystem = system;
+            } else if (time.isBefore(firstLoadTime)) {
+                addLoad(firstLoadUser, firstLoadSystem, period);
+                firstLoadTime = time;
+                firstLoadUser = user;
+                firstLoadSystem = system;
+            } else {
+                addLoad(user, system, period);
+            }
+        }
+
+        void applyFirstLoad(long period) {
+            if (firstLoadTime == null) {
+                return;
+            }
+            long nanos = period;
+            if (start != null) {
+                nanos = Math.min(nanos, Duration.between(start, firstLoadTime).toNanos());
+            }
+            addLoad(firstLoadUser, firstLoadSystem, nanos);
+            firstLoadTime = null;
+        }
+
+        void merge(CpuTaskData other, long period) {
+            if (other.start != null && (start == null || other.start.isBefore(start))) {
+                start = other.start;
+            }
+            user += other.user;
+            system += other.system;
+            sampleCount += other.sampleCount;
+            if (other.firstLoadTime != null) {
+                addFirstLoad(other.firstLoadTime, other.firstLoadUser, other.firstLoadSystem, period);
+            }
+            mergeSamples(other.getSamples());
+        }
     }
 
     private static final int ASYNC_PROFILER_DEFAULT_INTERVAL = 10 * 1000 * 1000;
@@ -75,11 +124,66 @@ public class CPUTimeExtractor extends Extractor {
 
     public CPUTimeExtractor(JFRAnalysisContext context) {
         super(context, INTERESTED);
+    }
 
-        Long id = context.getEventTypeId(EventConstant.THREAD_CPU_LOAD);
-        if (id != null) {
-            threadCPULoadEventId = id;
+    @Override
+    public CPUTimeExtractor fork() {
+        CPUTimeExtractor forked = new CPUTimeExtractor(context);
+        forked.period = period;
+        forked.threadCPULoadEventId = threadCPULoadEventId;
+        forked.profiledByJFR = profiledByJFR;
+        forked.cpuCores = cpuCores;
+        forked.intervalAsyncProfiler = intervalAsyncProfiler;
+        forked.intervalJFR = intervalJFR;
+        forked.concurrentGCThreads = concurrentGCThreads;
+        forked.parallelGCThreads = parallelGCThreads;
+        forked.isWallClockEvents = isWallClockEvents;
+        return forked;
+    }
+
+    @Override
+    public void merge(MergeableExtractor other) {
+        CPUTimeExtractor partial = (CPUTimeExtractor) other;
+        partial.data.forEach((id, taskData) -> {
+            CpuTaskData existing = data.get(id);
+            if (existing == null) {
+                data.put(id, taskData);
+            } else {
+                existing.merge(taskData, period);
+            }
+        });
+
+        profiledByJFR &= partial.profiledByJFR;
+        isWallClockEvents |= partial.isWallClockEvents;
+        if (partial.cpuCores != 0) {
+            cpuCores = partial.cpuCores;
+        }
+        if (partial.intervalAsyncProfiler > 0) {
+            intervalAsyncProfiler = partial.intervalAsyncProfiler;
+        }
+        if (partial.intervalJFR > 0) {
+            intervalJFR = partial.intervalJFR;
+        }
+        if (partial.concurrentGCThreads >= 0) {
+            concurrentGCThreads = partial.concurrentGCThreads;
+        }
+        if (partial.parallelGCThreads >= 0) {
+            parallelGCThreads = partial.parallelGCThreads;
         }
+        concurrentGCWallTime += partial.concurrentGCWallTime;
+        parallelGCWallTime += partial.parallelGCWallTime;
+        serialGCWallTime += partial.serialGCWallTime;
+    }
+
+    private long threadCPULoadEventId() {
+        // the event type ids are registered while the recording is streamed, look it up lazily
+        if (threadCPULoadEventId < 0) {
+            Long id = context.getEventTypeId(EventConstant.THREAD_CPU_LOAD);
+            if (id != null) {
+                threadCPULoadEventId = id;
+            }
+        }
+        return threadCPULoadEventId;
     }
 
     CpuTaskData getThreadData(RecordedThread thread) {
@@ -116,7 +220,7 @@ public class CPUTimeExtractor extends Extractor {
 
     @Override
     void visitActiveSetting(RecordedEvent event) {
-        if (event.getActiveSetting().eventId() == threadCPULoadEventId
+        if (event.getActiveSetting().eventId() == threadCPULoadEventId()
                 && EventConstant.PERIOD.equals(event.getString("name"))) {
             updatePeriod(event.getValue("value"));
         }
@@ -172,23 +276,14 @@ public class CPUTimeExtractor extends Extractor {
             return;
         }
         CpuTaskData cpuTaskData = getThreadData(event.getThread());
-        long nanos = period;
-        if (!cpuTaskData.firstThreadCPULoadEventIsFired) {
-            if (cpuTaskData.start != null) {
-                Duration between = Duration.between(cpuTaskData.start, event.getStartTime());
-                nanos = Math.min(nanos, between.toNanos());
-            }
-            cpuTaskData.firstThreadCPULoadEventIsFired = true;
-        }
-        cpuTaskData.user += (long) (event.getFloat("user") * nanos);
-        cpuTaskData.system += (long) (event.getFloat("system") * nanos);
+        cpuTaskData.addFirstLoad(event.getStartTime(), event.getFloat("user"), event.getFloat("system"), period);
     }
 
     @Override
     void visitExecutionSample(RecordedEvent event) {
-        RecordedStackTrace stackTrace = event.getStackTrace();
-        if (stackTrace == null) {
-            stackTrace = StackTraceUtil.DUMMY_STACK_TRACE;
+        int stackTraceId = event.getStackTraceId();
+        if (stackTraceId < 0) {
+            stackTraceId = context.getNoFrameStackTraceId();
         }
 
         RecordedThread thread = event.getThread("eventThread");
@@ -200,11 +295,7 @@ public class CPUTimeExtractor extends Extractor {
         }
         CpuTaskData cpuTaskData = getThreadData(thread);
 
-        if (cpuTaskData.getSamples() == null) {
-            cpuTaskData.setSamples(new HashMap<>());
-        }
-
-        cpuTaskData.getSamples().compute(stackTrace, (k, count) -> count == null ? 1 : count + 1);
+        cpuTaskData.addSample(stackTraceId, 1);
         cpuTaskData.sampleCount++;
     }
 
@@ -214,6 +305,7 @@ public class CPUTimeExtractor extends Extractor {
             return threadCPUTimes;
         }
         for (CpuTaskData data : this.data.values()) {
+            data.applyFirstLoad(period);
             if (data.getSamples() == null) {
                 continue;
             }
@@ -241,12 +333,7 @@ public class CPUTimeExtractor extends Extractor {
                     threadCPUTime.setSystem(0);
                 }
 
-                threadCPUTime.setSamples(data.getSamples().entrySet().stream().collect(
-                        Collectors.toMap(
-                                e -> StackTraceUtil.build(e.getKey(), context.getSymbols()),
-                                Map.Entry::getValue,
-                                Long::sum)
-                ));
+                threadCPUTime.setSamples(context.buildSamples(data.getSamples()));
             }
 
             threadCPUTimes.add(threadCPUTime);
@@ -259,7 +346,8 @@ public class CPUTimeExtractor extends Extractor {
                 gc.setTask(context.getThread(GC_THREAD));
                 gc.setUser(gcTime);
                 Map<StackTrace, Long> gcSamples = new HashMap<>();
-                gcSamples.put(StackTraceUtil.build(StackTraceUtil.newDummyStackTrace("", "JVM", "GC"), context.getSymbols()), 1L);
+                int gcStackTraceId = context.getStackTraces().intern(StackTraceUtil.newDummyStackTrace("", "JVM", "GC").getFrames());
+                gcSamples.put(context.buildStackTrace(gcStackTraceId), 1L);
                 gc.setSamples(gcSamples);
                 threadCPUTimes.add(gc);
             }
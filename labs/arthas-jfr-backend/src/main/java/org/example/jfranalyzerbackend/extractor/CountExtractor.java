@@ -6,15 +6,13 @@ import org.example.jfranalyzerbackend.model.Task;
 import org.example.jfranalyzerbackend.model.TaskCount;
 import org.example.jfranalyzerbackend.model.TaskData;
 import org.example.jfranalyzerbackend.model.jfr.RecordedEvent;
-import org.example.jfranalyzerbackend.model.jfr.RecordedStackTrace;
 import org.example.jfranalyzerbackend.model.jfr.RecordedThread;
-import org.example.jfranalyzerbackend.util.StackTraceUtil;
+import org.example.jfranalyzerbackend.util.IntLongMap;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * 计数事件提取器基类
@@ -46,25 +44,16 @@ public abstract class CountExtractor extends Extractor {
     }
 
     protected void processCountEvent(RecordedEvent event) {
-        RecordedStackTrace stackTrace = event.getStackTrace();
-        if (stackTrace == null) {
+        int stackTraceId = event.getStackTraceId();
+        if (stackTraceId < 0) {
             return;
         }
 
         CountMetrics metrics = obtainCountMetrics(event.getThread());
-        initializeSamplesIfNeeded(metrics);
-        
-        metrics.getSamples().compute(stackTrace, (key, existingCount) -> 
-            existingCount == null ? 1L : existingCount + 1L);
+        metrics.addSample(stackTraceId, 1L);
         metrics.eventCount += 1;
     }
 
-    private void initializeSamplesIfNeeded(CountMetrics metrics) {
-        if (metrics.getSamples() == null) {
-            metrics.setSamples(new HashMap<>());
-        }
-    }
-
     public List<TaskCount> generateCountResults() {
         List<TaskCount> countResults = new ArrayList<>();
         
@@ -100,13 +89,8 @@ public abstract class CountExtractor extends Extractor {
         return task;
     }
 
-    protected Map<StackTrace, Long> transformSamples(Map<RecordedStackTrace, Long> rawSamples) {
-        return rawSamples.entrySet().stream()
-                .collect(Collectors.toMap(
-                    entry -> StackTraceUtil.build(entry.getKey(), context.getSymbols()),
-                    Map.Entry::getValue,
-                    Long::sum
-                ));
+    protected Map<StackTrace, Long> transformSamples(IntLongMap rawSamples) {
+        return context.buildSamples(rawSamples);
     }
 
     private List<TaskCount> sortCountsByValue(List<TaskCount> counts) {
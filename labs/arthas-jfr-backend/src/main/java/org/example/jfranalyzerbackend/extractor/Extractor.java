@@ -60,6 +60,18 @@ public abstract class Extractor extends EventVisitor {
         return interested.contains(event.getEventType().name());
     }
 
+    public boolean isInterested(String eventType) {
+        return interested.contains(eventType);
+    }
+
+    /**
+     * Whether the events must be visited in start time order. Events of one chunk are only sorted
+     * when some extractor requires it, the others accept them in any order.
+     */
+    public boolean requiresOrderedEvents() {
+        return false;
+    }
+
     public void process(RecordedEvent event) {
         if (accept(event)) {
             DISPATCHER.get(event.getEventType().name()).accept(this, event);
@@ -3,12 +3,17 @@ package org.example.jfranalyzerbackend.extractor;
 
 import lombok.Getter;
 import org.example.jfranalyzerbackend.enums.EventConstant;
+import org.example.jfranalyzerbackend.model.Frame;
 import org.example.jfranalyzerbackend.model.JavaThread;
+import org.example.jfranalyzerbackend.model.StackTrace;
 import org.example.jfranalyzerbackend.model.jfr.RecordedEvent;
 import org.example.jfranalyzerbackend.model.jfr.RecordedThread;
+import org.example.jfranalyzerbackend.model.symbol.StackTraceStore;
 import org.example.jfranalyzerbackend.model.symbol.SymbolBase;
 import org.example.jfranalyzerbackend.model.symbol.SymbolTable;
 import org.example.jfranalyzerbackend.request.AnalysisRequest;
+import org.example.jfranalyzerbackend.util.IntLongMap;
+import org.example.jfranalyzerbackend.util.StackTraceUtil;
 
 
 import java.util.*;
@@ -22,16 +27,68 @@ public class JFRAnalysisContext {
     private final Map<Long, JavaThread> threads = new HashMap<>();
     private final Map<String, Long> threadNameMap = new HashMap<>();
     @Getter
-    private final List<RecordedEvent> events = new ArrayList<>();
-    @Getter
     private final SymbolTable<SymbolBase> symbols = new SymbolTable<>();
     @Getter
+    private final StackTraceStore stackTraces = new StackTraceStore();
+    @Getter
     private final AnalysisRequest request;
     @Getter
     private final Set<Long> executionSampleEventTypeIds = new HashSet<>();
 
+    /**
+     * 没有调用栈的事件使用的调用栈id
+     */
+    @Getter
+    private final int noFrameStackTraceId;
+
+    /**
+     * 按帧id、调用栈id缓存已转换的结果模型，每个帧和调用栈只转换一次
+     */
+    private Frame[] builtFrames = new Frame[0];
+    private StackTrace[] builtStackTraces = new StackTrace[0];
+
     public JFRAnalysisContext(AnalysisRequest request) {
         this.request = request;
+        this.noFrameStackTraceId = stackTraces.intern(StackTraceUtil.DUMMY_STACK_TRACE.getFrames());
+    }
+
+    /**
+     * 将调用栈id转换为结果中的调用栈
+     */
+    public synchronized StackTrace buildStackTrace(int stackTraceId) {
+        if (builtStackTraces.length < stackTraces.size()) {
+            builtStackTraces = Arrays.copyOf(builtStackTraces, stackTraces.size());
+        }
+        StackTrace stackTrace = builtStackTraces[stackTraceId];
+        if (stackTrace != null) {
+            return stackTrace;
+        }
+
+        if (builtFrames.length < stackTraces.frameCount()) {
+            builtFrames = Arrays.copyOf(builtFrames, stackTraces.frameCount());
+        }
+        int[] frameIds = stackTraces.framesOf(stackTraceId);
+        Frame[] frames = new Frame[frameIds.length];
+        for (int i = 0; i < frameIds.length; i++) {
+            Frame frame = builtFrames[frameIds[i]];
+            if (frame == null) {
+                frame = StackTraceUtil.buildFrame(stackTraces.getFrame(frameIds[i]), symbols);
+                builtFrames[frameIds[i]] = frame;
+            }
+            frames[i] = frame;
+        }
+        stackTrace = StackTraceUtil.build(frames, symbols);
+        builtStackTraces[stackTraceId] = stackTrace;
+        return stackTrace;
+    }
+
+    /**
+     * 将 调用栈id -> 采样值 转换为结果中的采样数据
+     */
+    public Map<StackTrace, Long> buildSamples(IntLongMap samples) {
+        Map<StackTrace, Long> result = new HashMap<>(samples.size() * 4 / 3 + 1);
+        samples.forEach((stackTraceId, value) -> result.merge(buildStackTrace(stackTraceId), value, Long::sum));
+        return result;
     }
 
     public synchronized Long getEventTypeId(String event) {
@@ -81,8 +138,4 @@ public class JFRAnalysisContext {
             return javaThread;
         });
     }
-
-    public synchronized void addEvent(RecordedEvent event) {
-        this.events.add(event);
-    }
 }
@@ -0,0 +1,26 @@
+package org.example.jfranalyzerbackend.extractor;
+
+import java.util.List;
+
+/**
+ * An extractor whose events can be processed in ranges in parallel. Each range is processed by a forked
+ * extractor, and the partial results are merged back.
+ */
+public abstract class MergeableExtractor extends Extractor {
+
+    MergeableExtractor(JFRAnalysisContext context, List<String> interested) {
+        super(context, interested);
+    }
+
+    /**
+     * An empty extractor of the same kind sharing the context and the settings visited so far, used to
+     * process one range of the events.
+     */
+    public abstract MergeableExtractor fork();
+
+    /**
+     * Merge the partial result of a forked extractor into this one. The merge must be associative, so that
+     * the partial results of the event ranges can be combined in any grouping.
+     */
+    public abstract void merge(MergeableExtractor other);
+}
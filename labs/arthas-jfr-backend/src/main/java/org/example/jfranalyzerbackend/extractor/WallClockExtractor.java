@@ -8,13 +8,10 @@ import org.example.jfranalyzerbackend.model.DimensionResult;
 import org.example.jfranalyzerbackend.model.TaskData;
 import org.example.jfranalyzerbackend.model.TaskSum;
 import org.example.jfranalyzerbackend.model.jfr.RecordedEvent;
-import org.example.jfranalyzerbackend.model.jfr.RecordedStackTrace;
 import org.example.jfranalyzerbackend.model.jfr.RecordedThread;
-import org.example.jfranalyzerbackend.util.StackTraceUtil;
 
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Slf4j
 public class WallClockExtractor extends Extractor {
@@ -58,11 +55,17 @@ public class WallClockExtractor extends Extractor {
 
     public WallClockExtractor(JFRAnalysisContext context) {
         super(context, INTERESTED);
+    }
 
-        Long id = context.getEventTypeId(EventConstant.WALL_CLOCK_SAMPLE);
-        if (id != null) {
-            methodSampleEventId = context.getEventTypeId(EventConstant.WALL_CLOCK_SAMPLE);
+    private long methodSampleEventId() {
+        // the event type ids are registered while the recording is streamed, look it up lazily
+        if (methodSampleEventId < 0) {
+            Long id = context.getEventTypeId(EventConstant.WALL_CLOCK_SAMPLE);
+            if (id != null) {
+                methodSampleEventId = id;
+            }
         }
+        return methodSampleEventId;
     }
 
     TaskWallClockData getThreadData(RecordedThread thread) {
@@ -75,7 +78,7 @@ public class WallClockExtractor extends Extractor {
             this.isWallClockEvents = true;
         }
 
-        if (event.getActiveSetting().eventId() == methodSampleEventId) {
+        if (event.getActiveSetting().eventId() == methodSampleEventId()) {
             if (EventConstant.WALL.equals(event.getString("name"))) {
                 this.isWallClockEvents = true;
                 this.interval = Long.parseLong(event.getString("value")) * 1000 * 1000;
@@ -88,8 +91,8 @@ public class WallClockExtractor extends Extractor {
 
     @Override
     void visitExecutionSample(RecordedEvent event) {
-        RecordedStackTrace stackTrace = event.getStackTrace();
-        if (stackTrace == null) {
+        int stackTraceId = event.getStackTraceId();
+        if (stackTraceId < 0) {
             return;
         }
 
@@ -102,11 +105,8 @@ public class WallClockExtractor extends Extractor {
         }
         TaskWallClockData taskWallClockData = getThreadData(thread);
 
-        if (taskWallClockData.getSamples() == null) {
-            taskWallClockData.setSamples(new HashMap<>());
-        }
         taskWallClockData.updateTime(event.getStartTimeNanos());
-        taskWallClockData.getSamples().compute(stackTrace, (k, count) -> count == null ? 1 : count + 1);
+        taskWallClockData.addSample(stackTraceId, 1);
         taskWallClockData.sampleCount++;
     }
 
@@ -128,13 +128,8 @@ public class WallClockExtractor extends Extractor {
             TaskSum taskSum = new TaskSum();
             taskSum.setTask(context.getThread(data.getThread()));
             taskSum.setSum(data.sampleCount > 1 ? data.getDuration() : this.interval);
-            data.getSamples().replaceAll((k, v) -> v * (taskSum.getSum() / data.sampleCount));
-            taskSum.setSamples(data.getSamples().entrySet().stream().collect(
-                    Collectors.toMap(
-                            e -> StackTraceUtil.build(e.getKey(), context.getSymbols()),
-                            Map.Entry::getValue,
-                            Long::sum)
-            ));
+            data.getSamples().replaceAll(v -> v * (taskSum.getSum() / data.sampleCount));
+            taskSum.setSamples(context.buildSamples(data.getSamples()));
             map.put(data.getThread().getJavaThreadId(), taskSum);
         }
 
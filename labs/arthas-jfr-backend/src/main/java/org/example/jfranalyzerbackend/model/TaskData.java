@@ -3,10 +3,8 @@ package org.example.jfranalyzerbackend.model;
 
 import lombok.Getter;
 import lombok.Setter;
-import org.example.jfranalyzerbackend.model.jfr.RecordedStackTrace;
 import org.example.jfranalyzerbackend.model.jfr.RecordedThread;
-
-import java.util.Map;
+import org.example.jfranalyzerbackend.util.IntLongMap;
 
 /**
  * 任务数据基类
@@ -22,9 +20,9 @@ public class TaskData {
     private RecordedThread thread;
 
     /**
-     * 堆栈跟踪采样数据映射
+     * 堆栈跟踪采样数据，调用栈id -> 采样值，调用栈id见 {@link org.example.jfranalyzerbackend.model.symbol.StackTraceStore}
      */
-    private Map<RecordedStackTrace, Long> samples;
+    private IntLongMap samples;
 
     /**
      * 构造函数
@@ -33,4 +31,29 @@ public class TaskData {
     public TaskData(RecordedThread thread) {
         this.thread = thread;
     }
+
+    /**
+     * 合并另一份部分结果的采样数据，按堆栈累加
+     * @param other 另一份采样数据
+     */
+    public void mergeSamples(IntLongMap other) {
+        if (other == null) {
+            return;
+        }
+        if (this.samples == null) {
+            this.samples = other;
+            return;
+        }
+        this.samples.addAll(other);
+    }
+
+    /**
+     * 按调用栈id累加采样值
+     */
+    public void addSample(int stackTraceId, long value) {
+        if (this.samples == null) {
+            this.samples = new IntLongMap();
+        }
+        this.samples.add(stackTraceId, value);
+    }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import org.example.jfranalyzerbackend.enums.EventConstant;
+import org.example.jfranalyzerbackend.model.symbol.StackTraceStore;
 import org.example.jfranalyzerbackend.model.symbol.SymbolBase;
 import org.example.jfranalyzerbackend.model.symbol.SymbolTable;
 import org.openjdk.jmc.common.*;
@@ -18,7 +19,6 @@ import org.openjdk.jmc.common.util.LabeledIdentifier;
 import java.lang.reflect.Modifier;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -34,8 +34,11 @@ public class RecordedEvent {
 
     private long startTime;
     private long endTime = -1;
+    /**
+     * 调用栈id，没有调用栈时为-1，见 {@link StackTraceStore}
+     */
     @Getter
-    private RecordedStackTrace stackTrace;
+    private int stackTraceId = -1;
     @Getter
     private RecordedThread thread;
     @Getter
@@ -43,9 +46,9 @@ public class RecordedEvent {
     @Getter
     private ActiveSetting activeSetting = null;
 
-    public static RecordedEvent newInstance(IItem item, SymbolTable<SymbolBase> symbols) {
+    public static RecordedEvent newInstance(IItem item, SymbolTable<SymbolBase> symbols, StackTraceStore stackTraces) {
         RecordedEvent event = new RecordedEvent(item);
-        event.init(symbols);
+        event.init(symbols, stackTraces);
         return event;
     }
 
@@ -53,7 +56,7 @@ public class RecordedEvent {
         this.item = item;
     }
 
-    private void init(SymbolTable<SymbolBase> symbols) {
+    private void init(SymbolTable<SymbolBase> symbols, StackTraceStore stackTraces) {
         IMCThread imcThread = getValue("eventThread");
         if (imcThread == null) {
             imcThread = getValue("sampledThread");
@@ -70,27 +73,16 @@ public class RecordedEvent {
         }
 
         IType<IItem> itemType = ItemToolkit.getItemType(item);
-        String itemTypeId = itemType.getIdentifier();
-
-        // 修复JDK Mission Control库的兼容性问题
-        if ((itemTypeId.startsWith(EventConstant.EXECUTION_SAMPLE) && !itemTypeId.equals(EventConstant.EXECUTION_SAMPLE))) {
-            itemTypeId = EventConstant.EXECUTION_SAMPLE;
-        } else if (itemTypeId.startsWith(EventConstant.OBJECT_ALLOCATION_OUTSIDE_TLAB)
-                && !itemTypeId.equals(EventConstant.OBJECT_ALLOCATION_OUTSIDE_TLAB)) {
-            itemTypeId = EventConstant.OBJECT_ALLOCATION_OUTSIDE_TLAB;
-        } else if (itemTypeId.startsWith(EventConstant.OBJECT_ALLOCATION_IN_NEW_TLAB)
-                && !itemTypeId.equals(EventConstant.OBJECT_ALLOCATION_IN_NEW_TLAB)) {
-            itemTypeId = EventConstant.OBJECT_ALLOCATION_IN_NEW_TLAB;
-        }
+        String itemTypeId = normalizeEventType(itemType.getIdentifier());
 
         this.eventType = new EventType(itemTypeId);
 
         IMCStackTrace s = getValue("stackTrace");
         if (s != null) {
             List<? extends IMCFrame> frames = s.getFrames();
-            RecordedStackTrace st = new RecordedStackTrace();
-            List<RecordedFrame> list = new ArrayList<>();
-            frames.forEach(frame -> {
+            int[] frameIds = new int[frames.size()];
+            int depth = 0;
+            for (IMCFrame frame : frames) {
                 IMCMethod method = frame.getMethod();
 
                 RecordedMethod m = new RecordedMethod();
@@ -119,21 +111,10 @@ public class RecordedEvent {
                 f.setBytecodeIndex(frame.getBCI());
                 f.setType(frame.getType().getName());
 
-                if (symbols.isContains(f)) {
-                    f = (RecordedFrame) symbols.get(f);
-                } else {
-                    symbols.put(f);
-                }
-
-                list.add(f);
-            });
-            st.setFrames(list);
-            if (symbols.isContains(st)) {
-                st = (RecordedStackTrace) symbols.get(st);
-            } else {
-                symbols.put(st);
+                // 帧只驻留在调用栈存储中，调用栈以帧id的前缀树保存，不再为每个调用栈创建帧列表
+                frameIds[depth++] = stackTraces.internFrame(f);
             }
-            stackTrace = st;
+            stackTraceId = stackTraces.intern(frameIds, depth);
         }
 
         if (ACTIVE_SETTING.equals(itemType.getIdentifier())) {
@@ -162,6 +143,23 @@ public class RecordedEvent {
         }
     }
 
+    /**
+     * The event type name used by the extractors for a JMC item type identifier.
+     */
+    public static String normalizeEventType(String itemTypeId) {
+        // 修复JDK Mission Control库的兼容性问题
+        if ((itemTypeId.startsWith(EventConstant.EXECUTION_SAMPLE) && !itemTypeId.equals(EventConstant.EXECUTION_SAMPLE))) {
+            return EventConstant.EXECUTION_SAMPLE;
+        } else if (itemTypeId.startsWith(EventConstant.OBJECT_ALLOCATION_OUTSIDE_TLAB)
+                && !itemTypeId.equals(EventConstant.OBJECT_ALLOCATION_OUTSIDE_TLAB)) {
+            return EventConstant.OBJECT_ALLOCATION_OUTSIDE_TLAB;
+        } else if (itemTypeId.startsWith(EventConstant.OBJECT_ALLOCATION_IN_NEW_TLAB)
+                && !itemTypeId.equals(EventConstant.OBJECT_ALLOCATION_IN_NEW_TLAB)) {
+            return EventConstant.OBJECT_ALLOCATION_IN_NEW_TLAB;
+        }
+        return itemTypeId;
+    }
+
     @SuppressWarnings("unchecked")
     public final <T> T getValue(String name) {
         IType<IItem> itemType = ItemToolkit.getItemType(item);
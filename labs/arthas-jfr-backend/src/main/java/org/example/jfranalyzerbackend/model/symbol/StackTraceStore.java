@@ -0,0 +1,180 @@
+package org.example.jfranalyzerbackend.model.symbol;
+
+import org.example.jfranalyzerbackend.model.jfr.RecordedFrame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 调用栈驻留存储
+ * 每个帧映射为一个int id，调用栈按从栈底到栈顶的顺序存放在共享前缀的trie中，trie节点的id即调用栈id。
+ * 相同前缀的调用栈共享节点，提取器只需按 (线程, 调用栈id) 计数，不再为每个调用栈保存帧列表
+ * <p>
+ * 驻留在解析事件的线程上进行，提取器在事件分发之后只读取已有的节点
+ */
+public class StackTraceStore {
+
+    /**
+     * 根节点，不对应任何帧
+     */
+    public static final int ROOT = 0;
+
+    private static final int NO_NODE = -1;
+
+    private final Map<RecordedFrame, Integer> frameIds = new HashMap<>();
+    private final List<RecordedFrame> frames = new ArrayList<>();
+
+    private int[] parents = new int[1024];
+    private int[] nodeFrames = new int[1024];
+    private int[] depths = new int[1024];
+    private int nodeCount = 1;
+
+    /**
+     * (父节点, 帧) -> 子节点 的开放寻址表
+     */
+    private long[] childKeys = new long[2048];
+    private int[] childValues = new int[2048];
+    private int childCount;
+
+    public StackTraceStore() {
+        parents[ROOT] = NO_NODE;
+        nodeFrames[ROOT] = NO_NODE;
+        Arrays.fill(childValues, NO_NODE);
+    }
+
+    public synchronized int internFrame(RecordedFrame frame) {
+        Integer id = frameIds.get(frame);
+        if (id != null) {
+            return id;
+        }
+        int frameId = frames.size();
+        frames.add(frame);
+        frameIds.put(frame, frameId);
+        return frameId;
+    }
+
+    /**
+     * @param stackFrames 栈顶在前的帧列表，与JFR中的顺序一致
+     * @return 调用栈id
+     */
+    public synchronized int intern(List<RecordedFrame> stackFrames) {
+        int node = ROOT;
+        for (int i = stackFrames.size() - 1; i >= 0; i--) {
+            node = child(node, internFrame(stackFrames.get(i)));
+        }
+        return node;
+    }
+
+    /**
+     * @param frameIds 栈顶在前的帧id
+     * @return 调用栈id
+     */
+    public synchronized int intern(int[] frameIds, int length) {
+        int node = ROOT;
+        for (int i = length - 1; i >= 0; i--) {
+            node = child(node, frameIds[i]);
+        }
+        return node;
+    }
+
+    public RecordedFrame getFrame(int frameId) {
+        return frames.get(frameId);
+    }
+
+    public int frameCount() {
+        return frames.size();
+    }
+
+    public int size() {
+        return nodeCount;
+    }
+
+    /**
+     * 去掉栈顶帧后的调用栈id，根节点返回-1
+     */
+    public int parentOf(int stackTraceId) {
+        return parents[stackTraceId];
+    }
+
+    /**
+     * 栈顶帧id，根节点返回-1
+     */
+    public int frameOf(int stackTraceId) {
+        return nodeFrames[stackTraceId];
+    }
+
+    public int depthOf(int stackTraceId) {
+        return depths[stackTraceId];
+    }
+
+    /**
+     * @return 栈顶在前的帧id
+     */
+    public int[] framesOf(int stackTraceId) {
+        int[] result = new int[depths[stackTraceId]];
+        int node = stackTraceId;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = nodeFrames[node];
+            node = parents[node];
+        }
+        return result;
+    }
+
+    private int child(int parent, int frameId) {
+        long key = ((long) parent << 32) | (frameId & 0xFFFFFFFFL);
+        int mask = childKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (childValues[slot] != NO_NODE) {
+            if (childKeys[slot] == key) {
+                return childValues[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int node = nodeCount++;
+        if (node == parents.length) {
+            int capacity = parents.length << 1;
+            parents = Arrays.copyOf(parents, capacity);
+            nodeFrames = Arrays.copyOf(nodeFrames, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+        }
+        parents[node] = parent;
+        nodeFrames[node] = frameId;
+        depths[node] = depths[parent] + 1;
+
+        childKeys[slot] = key;
+        childValues[slot] = node;
+        if (++childCount * 2 > childKeys.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    private void rehash() {
+        long[] oldKeys = childKeys;
+        int[] oldValues = childValues;
+        childKeys = new long[oldKeys.length << 1];
+        childValues = new int[oldValues.length << 1];
+        Arrays.fill(childValues, NO_NODE);
+        int mask = childKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == NO_NODE) {
+                continue;
+            }
+            int slot = mix(oldKeys[i]) & mask;
+            while (childValues[slot] != NO_NODE) {
+                slot = (slot + 1) & mask;
+            }
+            childKeys[slot] = oldKeys[i];
+            childValues[slot] = oldValues[i];
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,168 @@
+package org.example.jfranalyzerbackend.service.impl;
+
+import org.example.jfranalyzerbackend.config.ArthasConfig;
+import org.example.jfranalyzerbackend.model.AnalysisResult;
+import org.example.jfranalyzerbackend.util.AnalysisResultCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * JFR分析结果缓存
+ * 分析结果以紧凑的二进制格式保存在JFR文件旁边的 {@code .analysis} 文件中，
+ * 并在内存中保留最近使用的若干个结果，同一文件换维度或任务过滤条件查询时无需重新解析JFR
+ */
+@Component
+public class AnalysisResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisResultCache.class);
+
+    public static final String SIDECAR_SUFFIX = ".analysis";
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private final Map<Key, Entry> entries;
+
+    /**
+     * 同一文件的并发分析只执行一次
+     */
+    private final Map<Path, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * 分析选项不同时结果可能不同，选项是缓存键的一部分
+     */
+    private record Key(Path file, String options) {
+    }
+
+    private record Entry(long size, long lastModified, AnalysisResult result) {
+    }
+
+    @Autowired
+    public AnalysisResultCache(ArthasConfig arthasConfig) {
+        int configured = arthasConfig.getAnalysisCacheSize();
+        final int capacity = configured > 0 ? configured : DEFAULT_CAPACITY;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 获取文件的分析结果，依次查找内存缓存、磁盘上的 {@code .analysis} 文件，都未命中时执行分析并保存
+     *
+     * @param file     JFR文件
+     * @param options  分析选项
+     * @param analyzer 未命中时执行的分析
+     */
+    public AnalysisResult get(Path file, Map<String, String> options, Function<Path, AnalysisResult> analyzer) {
+        Path key = file.toAbsolutePath().normalize();
+        String optionsKey = AnalysisResultCodec.optionsKey(options);
+        Key entryKey = new Key(key, optionsKey);
+        Object lock = locks.computeIfAbsent(key, k -> new Object());
+        synchronized (lock) {
+            long size;
+            long lastModified;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+                size = attributes.size();
+                lastModified = attributes.lastModifiedTime().toMillis();
+            } catch (IOException e) {
+                // 文件不可读时交给分析过程报告错误
+                return analyzer.apply(file);
+            }
+
+            Entry entry;
+            synchronized (entries) {
+                entry = entries.get(entryKey);
+            }
+            if (entry != null && entry.size() == size && entry.lastModified() == lastModified) {
+                return entry.result();
+            }
+
+            AnalysisResult result = readSidecar(key, size, lastModified, optionsKey);
+            if (result == null) {
+                result = analyzer.apply(file);
+                writeSidecar(key, result, size, lastModified, optionsKey);
+            }
+            synchronized (entries) {
+                entries.put(entryKey, new Entry(size, lastModified, result));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 删除文件时清理内存缓存和磁盘上的 {@code .analysis} 文件
+     */
+    public void evict(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (entries) {
+            entries.keySet().removeIf(k -> k.file().equals(key));
+        }
+        locks.remove(key);
+        try {
+            Files.deleteIfExists(sidecarOf(key));
+        } catch (IOException e) {
+            logger.warn("分析缓存文件删除失败: {}", e.getMessage());
+        }
+    }
+
+    public static Path sidecarOf(Path file) {
+        return file.resolveSibling(file.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    private AnalysisResult readSidecar(Path file, long size, long lastModified, String options) {
+        Path sidecar = sidecarOf(file);
+        if (!Files.isRegularFile(sidecar)) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            AnalysisResult result = AnalysisResultCodec.read(in, size, lastModified, options);
+            if (result != null) {
+                logger.info("从分析缓存文件加载结果: {}, 耗时 {} ms", sidecar, System.currentTimeMillis() - start);
+            }
+            return result;
+        } catch (Exception e) {
+            logger.warn("分析缓存文件读取失败: {}, {}", sidecar, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSidecar(Path file, AnalysisResult result, long size, long lastModified, String options) {
+        Path sidecar = sidecarOf(file);
+        Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                AnalysisResultCodec.write(result, size, lastModified, options, out);
+            }
+            Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            logger.warn("分析缓存文件写入失败: {}, {}", sidecar, e.getMessage());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // ignore
+            }
+        }
+    }
+}
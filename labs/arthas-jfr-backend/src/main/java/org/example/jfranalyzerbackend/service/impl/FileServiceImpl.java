@@ -47,6 +47,9 @@ public class FileServiceImpl implements FileService {
     @Autowired
     private DeletedFileRepo deletedFileRepo;
 
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
 
     @Override
     public PageView<FileView> retrieveUserFileViews(FileType fileType, int pageNumber, int pageSize) {
@@ -121,6 +124,7 @@ public class FileServiceImpl implements FileService {
         try {
             Path physicalFilePath = Paths.get(arthasConfig.getJfrStoragePath(), fileEntity.getUniqueName());
             Files.deleteIfExists(physicalFilePath);
+            analysisResultCache.evict(physicalFilePath);
         } catch (Exception e) {
             logger.warn("磁盘文件删除失败: {}", e.getMessage());
         }
@@ -1,5 +1,6 @@
 package org.example.jfranalyzerbackend.service.impl;
 
+import org.example.jfranalyzerbackend.model.AnalysisResult;
 import org.example.jfranalyzerbackend.service.JFRAnalysisService;
 import org.example.jfranalyzerbackend.util.PathSecurityUtil;
 import org.example.jfranalyzerbackend.vo.FlameGraph;
@@ -8,6 +9,7 @@ import org.example.jfranalyzerbackend.entity.PerfDimensionFactory;
 import org.example.jfranalyzerbackend.model.PerfDimension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.nio.file.Files;
@@ -25,6 +27,9 @@ import java.util.stream.Collectors;
 public class JFRAnalysisServiceImpl implements JFRAnalysisService {
     private static final Logger logger = LoggerFactory.getLogger(JFRAnalysisServiceImpl.class);
 
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
     @Override
     public Metadata retrieveAnalysisMetadata() {
         // 复用 JFRAnalyzerImpl 的元数据获取逻辑
@@ -46,7 +51,10 @@ public class JFRAnalysisServiceImpl implements JFRAnalysisService {
     public FlameGraph performAnalysisAndGenerateFlameGraph(Path filePath, String analysisDimension, 
                                                           boolean includeTasks, List<String> taskFilter, 
                                                           Map<String, String> analysisOptions) {
-        JFRAnalyzerImpl analyzer = new JFRAnalyzerImpl(filePath, analysisOptions, null);
+        // 同一文件的分析结果会被缓存，切换维度或任务过滤条件时无需重新解析JFR
+        AnalysisResult result = analysisResultCache.get(filePath, analysisOptions,
+                path -> new JFRAnalyzerImpl(path, analysisOptions, null).getResult());
+        JFRAnalyzerImpl analyzer = new JFRAnalyzerImpl(result);
         return analyzer.getFlameGraph(analysisDimension, includeTasks, taskFilter);
     }
 
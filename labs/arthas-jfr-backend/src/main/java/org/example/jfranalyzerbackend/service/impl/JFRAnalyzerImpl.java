@@ -5,6 +5,7 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tomcat.util.http.fileupload.ProgressListener;
 import org.example.jfranalyzerbackend.entity.ProfileDimension;
+import org.example.jfranalyzerbackend.enums.EventConstant;
 import org.example.jfranalyzerbackend.exception.ProfileAnalysisException;
 import org.example.jfranalyzerbackend.extractor.*;
 import org.example.jfranalyzerbackend.model.*;
@@ -12,6 +13,7 @@ import org.example.jfranalyzerbackend.model.jfr.RecordedEvent;
 import org.example.jfranalyzerbackend.request.AnalysisRequest;
 import org.example.jfranalyzerbackend.service.JFRAnalyzer;
 import org.example.jfranalyzerbackend.util.DimensionBuilder;
+import org.example.jfranalyzerbackend.util.JfrChunkReader;
 import org.example.jfranalyzerbackend.vo.FlameGraph;
 import org.example.jfranalyzerbackend.vo.Metadata;
 import org.openjdk.jmc.common.item.IItem;
@@ -25,14 +27,17 @@ import org.openjdk.jmc.flightrecorder.rules.RuleRegistry;
 import org.openjdk.jmc.flightrecorder.rules.Severity;
 import org.example.jfranalyzerbackend.entity.PerfDimensionFactory;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 
 
 
@@ -40,7 +45,24 @@ import java.util.stream.Collectors;
 @Slf4j
 public class JFRAnalyzerImpl implements JFRAnalyzer {
 
+    /**
+     * analysis option: number of threads used to process the events, defaults to the number of cores
+     */
+    public static final String OPTION_PARALLEL_WORKERS = "parallelWorkers";
+
+    /**
+     * analysis option: events of one range processed by a single forked extractor
+     */
+    public static final String OPTION_PARTITION_SIZE = "partitionSize";
+
+    private static final int DEFAULT_PARTITION_SIZE = 8192;
+
+    static final String PROBLEMS_UNAVAILABLE_SUMMARY =
+            "Problems are not analyzed: the recording was read from a stream and the JMC rules need the whole file.";
+    static final String PROBLEMS_UNAVAILABLE_SOLUTION = "Analyze the recording from a file to get the problems.";
+
     private final ProgressListener listener;
+    private final int partitionSize;
     private final JFRAnalysisContext context;
 
     @Getter
@@ -51,8 +73,11 @@ public class JFRAnalyzerImpl implements JFRAnalyzer {
     }
 
     public JFRAnalyzerImpl(Path path, int dimension, Map<String, String> options, ProgressListener listener) {
-        AnalysisRequest request = new AnalysisRequest(path, dimension);
+        AnalysisRequest request = new AnalysisRequest(
+                positiveOption(options, OPTION_PARALLEL_WORKERS, Runtime.getRuntime().availableProcessors()),
+                path, dimension);
         this.listener = listener;
+        this.partitionSize = positiveOption(options, OPTION_PARTITION_SIZE, DEFAULT_PARTITION_SIZE);
         this.context = new JFRAnalysisContext(request);
         try {
             this.result = this.execute(request);
@@ -63,6 +88,28 @@ public class JFRAnalyzerImpl implements JFRAnalyzer {
         }
     }
 
+    private static int positiveOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options == null ? null : options.get(name);
+        if (value != null) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("invalid {}: {}", name, value);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Wrap a result analyzed before, for example one loaded from the {@link AnalysisResultCache}.
+     */
+    public JFRAnalyzerImpl(AnalysisResult result) {
+        this.listener = null;
+        this.partitionSize = DEFAULT_PARTITION_SIZE;
+        this.context = null;
+        this.result = result;
+    }
+
     @Override
     public FlameGraph getFlameGraph(String dimension, boolean include, List<String> taskSet) {
         return createFlameGraph(ProfileDimension.of(dimension), result, include, taskSet);
@@ -111,8 +158,6 @@ public class JFRAnalyzerImpl implements JFRAnalyzer {
         fg.setData(os.toArray(new Object[0][]));
         fg.setThreadSplit(names);
         fg.setSymbolTable(symbolTable.getReverseMap());
-        System.out.println(fg);
-        System.out.println(fg.getSymbolTable());
         return fg;
     }
 
@@ -138,18 +183,13 @@ public class JFRAnalyzerImpl implements JFRAnalyzer {
     private void doTaskResult(BaseTaskResult taskResult, List<Object[]> os, Map<String, Long> names, SymbolMap map) {
         Map<StackTrace, Long> samples = taskResult.getSamples();
         long total = 0;
-        for (StackTrace s : samples.keySet()) {
-            Frame[] frames = s.getFrames();
-            String[] fs = new String[frames.length];
-            for (int i = frames.length - 1, j = 0; i >= 0; i--, j++) {
-                fs[j] = frames[i].toString();
-            }
+        for (Map.Entry<StackTrace, Long> entry : samples.entrySet()) {
             Object[] o = new Object[3];
-            o[0] = map.processSymbols(fs);
-            o[1] = samples.get(s);
+            o[0] = map.processStackTrace(entry.getKey());
+            o[1] = entry.getValue();
             o[2] = taskResult.getTask().getName();
             os.add(o);
-            total += samples.get(s);
+            total += entry.getValue();
         }
         names.put(taskResult.getTask().getName(), total);
     }
@@ -186,15 +226,10 @@ public class JFRAnalyzerImpl implements JFRAnalyzer {
                 samples.values().forEach(sampleCount::addAndGet);
                 long perSampleTime = taskTotalTime / sampleCount.get();
 
-                for (StackTrace s : samples.keySet()) {
-                    Frame[] frames = s.getFrames();
-                    String[] fs = new String[frames.length];
-                    for (int i = frames.length - 1, j = 0; i >= 0; i--, j++) {
-                        fs[j] = frames[i].toString();
-                    }
+                for (Map.Entry<StackTrace, Long> entry : samples.entrySet()) {
                     Object[] o = new Object[3];
-                    o[0] = map.processSymbols(fs);
-                    o[1] = samples.get(s) * perSampleTime;
+                    o[0] = map.processStackTrace(entry.getKey());
+                    o[1] = entry.getValue() * perSampleTime;
                     o[2] = ct.getTask().getName();
                     os.add(o);
                 }
@@ -204,31 +239,42 @@ public class JFRAnalyzerImpl implements JFRAnalyzer {
         }
     }
 
+    /**
+     * Frames and stack traces of the results are interned, so the symbol of a frame and the symbol path of
+     * a stack trace are resolved once by identity, a stack trace shared by many threads is expanded only once.
+     */
     private static class SymbolMap {
         private final Map<String, Integer> map = new HashMap<>();
+        private final Map<Frame, String> frameSymbols = new IdentityHashMap<>();
+        private final Map<StackTrace, String[]> paths = new IdentityHashMap<>();
 
-        String[] processSymbols(String[] fs) {
-            if (fs == null || fs.length == 0) {
-                return fs;
+        synchronized String[] processStackTrace(StackTrace stackTrace) {
+            String[] path = paths.get(stackTrace);
+            if (path != null) {
+                return path;
             }
+            Frame[] frames = stackTrace.getFrames();
+            path = new String[frames.length];
+            for (int i = frames.length - 1, j = 0; i >= 0; i--, j++) {
+                path[j] = symbolOf(frames[i]);
+            }
+            paths.put(stackTrace, path);
+            return path;
+        }
 
-            String[] result = new String[fs.length];
-
-            synchronized (map) {
-                for (int i = 0; i < fs.length; i++) {
-                    String symbol = fs[i];
-                    int id;
-                    if (map.containsKey(symbol)) {
-                        id = map.get(symbol);
-                    } else {
-                        id = map.size() + 1;
-                        map.put(symbol, id);
-                    }
-                    result[i] = String.valueOf(id);
+        private String symbolOf(Frame frame) {
+            String symbol = frameSymbols.get(frame);
+            if (symbol == null) {
+                String name = frame.toString();
+                Integer id = map.get(name);
+                if (id == null) {
+                    id = map.size() + 1;
+                    map.put(name, id);
                 }
+                symbol = String.valueOf(id);
+                frameSymbols.put(frame, symbol);
             }
-
-            return result;
+            return symbol;
         }
 
         Map<Integer, String> getReverseMap() {
@@ -254,15 +300,13 @@ public class JFRAnalyzerImpl implements JFRAnalyzer {
         long startTime = System.currentTimeMillis();
         AnalysisResult r = new AnalysisResult();
 
-        IItemCollection collection = this.loadEvents(request);
-
-        this.analyzeProblemsIfNeeded(request, collection, r);
+        this.analyzeProblemsIfNeeded(request, r);
 
-        this.transformEvents(request, collection);
+        final List<Extractor> extractors = getExtractors(request);
 
-        this.sortEvents();
+        this.streamEvents(request, extractors);
 
-        this.processEvents(request, r);
+        extractors.forEach(item -> item.fillResult(r));
 
         r.setProcessingTimeMillis(System.currentTimeMillis() - startTime);
         log.info(String.format("Analysis took %d milliseconds", r.getProcessingTimeMillis()));
@@ -270,102 +314,198 @@ public class JFRAnalyzerImpl implements JFRAnalyzer {
         return r;
     }
 
-    private void processEvents(AnalysisRequest request, AnalysisResult r) throws Exception {
-
-        List<RecordedEvent> events = this.context.getEvents();
-        final List<Extractor> extractors = getExtractors(request);
+    /**
+     * Read the recording chunk by chunk and dispatch every event to all interested extractors in one pass,
+     * so that the memory is bounded by one chunk plus the aggregated state of the extractors.
+     */
+    private void streamEvents(AnalysisRequest request, List<Extractor> extractors) throws Exception {
+        InputStream in = this.openInput(request);
+        if (in == null) {
+            return;
+        }
 
-        if (request.getParallelWorkers() > 1) {
-            CountDownLatch countDownLatch = new CountDownLatch(extractors.size());
-            ExecutorService es = Executors.newFixedThreadPool(request.getParallelWorkers());
-            extractors.forEach(item -> es.submit(() -> {
-                try {
-                    doExtractorWork(events, item, r);
-                } catch (Exception e) {
-                    log.error(e.getMessage(), e);
-                } finally {
-                    countDownLatch.countDown();
-                }
-            }));
-            countDownLatch.await();
-            es.shutdown();
-        } else {
-            extractors.forEach(item -> {
-                doExtractorWork(events, item, r);
-            });
+        boolean ordered = extractors.stream().anyMatch(Extractor::requiresOrderedEvents);
+        ForkJoinPool pool = request.getParallelWorkers() > 1 ? new ForkJoinPool(request.getParallelWorkers()) : null;
+        try (JfrChunkReader reader = new JfrChunkReader(in)) {
+            if (!JfrChunkReader.isChunkedRecording(in)) {
+                // compressed recordings can only be loaded as a whole by JMC
+                this.processChunk(JfrLoaderToolkit.loadEvents(in), extractors, ordered, pool);
+                return;
+            }
+            int chunks = 0;
+            byte[] chunk;
+            while ((chunk = reader.nextChunk()) != null) {
+                this.processChunk(JfrLoaderToolkit.loadEvents(new ByteArrayInputStream(chunk)), extractors, ordered, pool);
+                chunks++;
+            }
+            log.info("Streamed {} jfr chunks", chunks);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
         }
-//        listener.worked(1);
     }
 
-    private void doExtractorWork(List<RecordedEvent> events, Extractor extractor, AnalysisResult r) {
-        events.forEach(extractor::process);
-        extractor.fillResult(r);
+    private InputStream openInput(AnalysisRequest request) throws Exception {
+        if (request.getInput() != null) {
+            return new BufferedInputStream(Files.newInputStream(request.getInput()));
+        } else if (request.getInputStream() != null) {
+            InputStream in = request.getInputStream();
+            return in.markSupported() ? in : new BufferedInputStream(in);
+        }
+        return null;
     }
 
-    private List<Extractor> getExtractors(AnalysisRequest request) {
-        return getExtractors(request.getDimensions());
-    }
+    private void processChunk(IItemCollection chunk, List<Extractor> extractors, boolean ordered,
+                              ForkJoinPool pool) throws Exception {
+        // active settings go first, extractors look up event type ids and settings when visiting other events
+        List<IItemIterable> interested = new ArrayList<>();
+        for (IItemIterable iterable : chunk) {
+            String eventType = RecordedEvent.normalizeEventType(iterable.getType().getIdentifier());
+            if (EventConstant.ACTIVE_SETTING.equals(eventType)) {
+                for (IItem item : iterable) {
+                    dispatchEvent(this.parseEventItem(item), extractors);
+                }
+            } else if (extractors.stream().anyMatch(extractor -> extractor.isInterested(eventType))) {
+                interested.add(iterable);
+            }
+        }
 
-    private void sortEvents() {
+        if (!ordered && pool == null) {
+            for (IItemIterable iterable : interested) {
+                for (IItem item : iterable) {
+                    dispatchEvent(this.parseEventItem(item), extractors);
+                }
+            }
+            return;
+        }
 
-        this.context.getEvents().sort(Comparator.comparing(RecordedEvent::getStartTime));
+        List<RecordedEvent> events = new ArrayList<>();
+        for (IItemIterable iterable : interested) {
+            for (IItem item : iterable) {
+                events.add(this.parseEventItem(item));
+            }
+        }
+        if (ordered) {
+            events.sort(Comparator.comparingLong(RecordedEvent::getStartTimeNanos));
+        }
 
+        if (pool == null) {
+            events.forEach(event -> dispatchEvent(event, extractors));
+        } else {
+            this.processEventsParallel(events, extractors, pool);
+        }
+//        listener.worked(1);
     }
 
-    private void transformEvents(AnalysisRequest request, IItemCollection collection) throws Exception {
+    /**
+     * Extractors supporting {@link MergeableExtractor#fork()} process the events in ranges on the fork-join pool and
+     * merge their partial results, the others process all events on one worker.
+     */
+    private void processEventsParallel(List<RecordedEvent> events, List<Extractor> extractors,
+                                       ForkJoinPool pool) {
+        List<ForkJoinTask<MergeableExtractor>> partitioned = new ArrayList<>();
+        List<MergeableExtractor> partitionedExtractors = new ArrayList<>();
+        List<ForkJoinTask<?>> others = new ArrayList<>();
+        for (Extractor extractor : extractors) {
+            if (!extractor.requiresOrderedEvents() && extractor instanceof MergeableExtractor) {
+                MergeableExtractor mergeable = (MergeableExtractor) extractor;
+                // fork once on the caller thread, so the settings are resolved before the workers read them
+                mergeable.fork();
+                partitioned.add(pool.submit(new ExtractTask(mergeable, events, 0, events.size(), partitionSize)));
+                partitionedExtractors.add(mergeable);
+            } else {
+                others.add(pool.submit(() -> events.forEach(extractor::process)));
+            }
+        }
 
-        List<IItem> list = collection.stream().flatMap(IItemIterable::stream).collect(Collectors.toList());
+        for (int i = 0; i < partitioned.size(); i++) {
+            try {
+                partitionedExtractors.get(i).merge(partitioned.get(i).join());
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        for (ForkJoinTask<?> task : others) {
+            try {
+                task.join();
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
 
-        if (request.getParallelWorkers() > 1) {
-            parseEventsParallel(list, request.getParallelWorkers());
-        } else {
-            list.forEach(this::parseEventItem);
+    /**
+     * Split the event range until it is small enough, process each range with a forked extractor
+     * and merge the partial results.
+     */
+    private static class ExtractTask extends RecursiveTask<MergeableExtractor> {
+        private final MergeableExtractor prototype;
+        private final List<RecordedEvent> events;
+        private final int from;
+        private final int to;
+        private final int partitionSize;
+
+        ExtractTask(MergeableExtractor prototype, List<RecordedEvent> events, int from, int to, int partitionSize) {
+            this.prototype = prototype;
+            this.events = events;
+            this.from = from;
+            this.to = to;
+            this.partitionSize = partitionSize;
+        }
+
+        @Override
+        protected MergeableExtractor compute() {
+            if (to - from <= partitionSize) {
+                MergeableExtractor partial = prototype.fork();
+                for (int i = from; i < to; i++) {
+                    partial.process(events.get(i));
+                }
+                return partial;
+            }
+            int middle = (from + to) >>> 1;
+            ExtractTask left = new ExtractTask(prototype, events, from, middle, partitionSize);
+            ExtractTask right = new ExtractTask(prototype, events, middle, to, partitionSize);
+            left.fork();
+            MergeableExtractor partial = right.compute();
+            MergeableExtractor merged = left.join();
+            merged.merge(partial);
+            return merged;
         }
+    }
 
+    private static void dispatchEvent(RecordedEvent event, List<Extractor> extractors) {
+        for (Extractor extractor : extractors) {
+            extractor.process(event);
+        }
+    }
 
+    private List<Extractor> getExtractors(AnalysisRequest request) {
+        return getExtractors(request.getDimensions());
     }
 
     private IItemCollection loadEvents(AnalysisRequest request) throws Exception {
         try {
-
-            if (request.getInput() != null) {
-                return JfrLoaderToolkit.loadEvents(request.getInput().toFile());
-            } else if (request.getInputStream() != null) {
-                return JfrLoaderToolkit.loadEvents(request.getInputStream());
-            } else {
-                // 当input和inputStream都为null时，返回空的IItemCollection
-                return org.openjdk.jmc.common.item.ItemCollectionToolkit.EMPTY;
-            }
+            return JfrLoaderToolkit.loadEvents(request.getInput().toFile());
         } finally {
 //            listener.worked(1);
         }
     }
 
 
-    private void analyzeProblemsIfNeeded(AnalysisRequest request, IItemCollection collection, AnalysisResult r) {
+    private void analyzeProblemsIfNeeded(AnalysisRequest request, AnalysisResult r) throws Exception {
 
-        if ((request.getDimensions() & ProfileDimension.PROBLEMS.getValue()) != 0) {
-            this.analyzeProblems(collection, r);
+        // jmc rules need the whole recording, so it is only loaded when problems are requested
+        if ((request.getDimensions() & ProfileDimension.PROBLEMS.getValue()) == 0) {
+            return;
+        }
+        if (request.getInput() != null) {
+            this.analyzeProblems(this.loadEvents(request), r);
+        } else {
+            // 输入流只能读取一次，留给事件流式处理，规则分析需要完整的录制文件
+            r.setProblems(new ArrayList<>());
+            r.getProblems().add(new Problem(PROBLEMS_UNAVAILABLE_SUMMARY, PROBLEMS_UNAVAILABLE_SOLUTION));
         }
-
-    }
-
-    private void parseEventsParallel(List<IItem> list, int workers) throws Exception {
-
-        CountDownLatch countDownLatch = new CountDownLatch(list.size());
-        ExecutorService es = Executors.newFixedThreadPool(workers);
-        list.forEach(item -> es.submit(() -> {
-            try {
-                this.parseEventItem(item);
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
-            } finally {
-                countDownLatch.countDown();
-            }
-        }));
-        countDownLatch.await();
-        es.shutdown();
-//        listener.worked(workers);
     }
 
     private void analyzeProblems(IItemCollection collection, AnalysisResult r) {
@@ -386,17 +526,15 @@ public class JFRAnalyzerImpl implements JFRAnalyzer {
         }
     }
 
-    private void parseEventItem(IItem item) {
-        RecordedEvent event = RecordedEvent.newInstance(item, this.context.getSymbols());
+    private RecordedEvent parseEventItem(IItem item) {
+        RecordedEvent event = RecordedEvent.newInstance(item, this.context.getSymbols(), this.context.getStackTraces());
 
-        synchronized (this.context.getEvents()) {
-            this.context.addEvent(event);
-            if (event.getActiveSetting() != null) {
-                RecordedEvent.ActiveSetting activeSetting = event.getActiveSetting();
-                this.context.putEventTypeId(activeSetting.eventType(), activeSetting.eventId());
-                this.context.putActiveSetting(activeSetting, event);
-            }
+        if (event.getActiveSetting() != null) {
+            RecordedEvent.ActiveSetting activeSetting = event.getActiveSetting();
+            this.context.putEventTypeId(activeSetting.eventType(), activeSetting.eventId());
+            this.context.putActiveSetting(activeSetting, event);
         }
+        return event;
     }
 
     private List<Extractor> getExtractors(int dimensions) {
@@ -0,0 +1,395 @@
+package org.example.jfranalyzerbackend.util;
+
+import org.example.jfranalyzerbackend.model.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Compact binary encoding of an {@link AnalysisResult}.
+ * <p>
+ * Methods, frames and stack traces are written once into tables and referenced by index from the sample maps,
+ * so the encoded size is proportional to the distinct stacks rather than to the number of samples.
+ * Problems are not encoded, they are only computed on demand.
+ * <p>
+ * Layout: magic, version, source file size, source file last modified time, analysis options, processing time,
+ * method table, frame table, stack trace table, then every dimension in {@link #DIMENSIONS} order.
+ */
+public class AnalysisResultCodec {
+
+    private static final int MAGIC = 0x414A4641; // AJFA
+
+    /**
+     * bump when the layout or the analysis changes, stale sidecar files are then ignored
+     */
+    private static final int VERSION = 2;
+
+    private static final byte TASK = 0;
+    private static final byte JAVA_THREAD = 1;
+
+    private static final byte FRAME = 0;
+    private static final byte JAVA_FRAME = 1;
+
+    private static final byte CPU_TIME = 0;
+    private static final byte JAVA_THREAD_CPU_TIME = 1;
+    private static final byte COUNT = 2;
+    private static final byte ALLOCATIONS = 3;
+    private static final byte SUM = 4;
+    private static final byte ALLOCATED_MEMORY = 5;
+
+    private record Dimension(Function<AnalysisResult, DimensionResult<? extends BaseTaskResult>> getter,
+                             BiConsumer<AnalysisResult, DimensionResult<? extends BaseTaskResult>> setter) {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final List<Dimension> DIMENSIONS = List.of(
+            new Dimension(AnalysisResult::getCpuTime, (r, d) -> r.setCpuTime((DimensionResult<TaskCPUTime>) d)),
+            new Dimension(AnalysisResult::getCpuSample, (r, d) -> r.setCpuSample((DimensionResult<TaskCount>) d)),
+            new Dimension(AnalysisResult::getWallClock, (r, d) -> r.setWallClock((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getAllocations, (r, d) -> r.setAllocations((DimensionResult<TaskAllocations>) d)),
+            new Dimension(AnalysisResult::getAllocatedMemory, (r, d) -> r.setAllocatedMemory((DimensionResult<TaskAllocatedMemory>) d)),
+            new Dimension(AnalysisResult::getNativeExecutionSamples, (r, d) -> r.setNativeExecutionSamples((DimensionResult<TaskCount>) d)),
+            new Dimension(AnalysisResult::getFileIOTime, (r, d) -> r.setFileIOTime((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getFileReadSize, (r, d) -> r.setFileReadSize((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getFileWriteSize, (r, d) -> r.setFileWriteSize((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getSocketReadSize, (r, d) -> r.setSocketReadSize((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getSocketReadTime, (r, d) -> r.setSocketReadTime((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getSocketWriteSize, (r, d) -> r.setSocketWriteSize((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getSocketWriteTime, (r, d) -> r.setSocketWriteTime((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getSynchronization, (r, d) -> r.setSynchronization((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getThreadPark, (r, d) -> r.setThreadPark((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getClassLoadCount, (r, d) -> r.setClassLoadCount((DimensionResult<TaskCount>) d)),
+            new Dimension(AnalysisResult::getClassLoadWallTime, (r, d) -> r.setClassLoadWallTime((DimensionResult<TaskSum>) d)),
+            new Dimension(AnalysisResult::getThreadSleepTime, (r, d) -> r.setThreadSleepTime((DimensionResult<TaskSum>) d))
+    );
+
+    /**
+     * @param sourceSize         size of the analyzed file, used to detect a stale encoding
+     * @param sourceLastModified last modified time of the analyzed file, used to detect a stale encoding
+     * @param options            the analysis options the result was computed with, see {@link #optionsKey(Map)}
+     */
+    public static void write(AnalysisResult result, long sourceSize, long sourceLastModified, String options,
+                             DataOutputStream out) throws IOException {
+        Map<Method, Integer> methods = new HashMap<>();
+        Map<Frame, Integer> frames = new HashMap<>();
+        Map<StackTrace, Integer> stackTraces = new HashMap<>();
+        List<Method> methodList = new ArrayList<>();
+        List<Frame> frameList = new ArrayList<>();
+        List<StackTrace> stackTraceList = new ArrayList<>();
+
+        for (Dimension dimension : DIMENSIONS) {
+            DimensionResult<? extends BaseTaskResult> dimensionResult = dimension.getter().apply(result);
+            if (dimensionResult == null || dimensionResult.getList() == null) {
+                continue;
+            }
+            for (BaseTaskResult taskResult : dimensionResult.getList()) {
+                if (taskResult.getSamples() == null) {
+                    continue;
+                }
+                for (StackTrace stackTrace : taskResult.getSamples().keySet()) {
+                    if (stackTraces.putIfAbsent(stackTrace, stackTraceList.size()) != null) {
+                        continue;
+                    }
+                    stackTraceList.add(stackTrace);
+                    for (Frame frame : stackTrace.getFrames()) {
+                        if (frames.putIfAbsent(frame, frameList.size()) == null) {
+                            frameList.add(frame);
+                            if (methods.putIfAbsent(frame.getMethod(), methodList.size()) == null) {
+                                methodList.add(frame.getMethod());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(sourceSize);
+        out.writeLong(sourceLastModified);
+        out.writeUTF(options);
+        out.writeLong(result.getProcessingTimeMillis());
+
+        out.writeInt(methodList.size());
+        for (Method method : methodList) {
+            writeString(out, method.getPackageName());
+            writeString(out, method.getType());
+            writeString(out, method.getName());
+            writeString(out, method.getDescriptor());
+            if (method instanceof JavaMethod javaMethod) {
+                out.writeBoolean(true);
+                out.writeInt(javaMethod.getModifiers());
+                out.writeBoolean(javaMethod.isHidden());
+            } else {
+                out.writeBoolean(false);
+            }
+        }
+
+        out.writeInt(frameList.size());
+        for (Frame frame : frameList) {
+            out.writeInt(methods.get(frame.getMethod()));
+            out.writeInt(frame.getLine());
+            if (frame instanceof JavaFrame javaFrame) {
+                out.writeByte(JAVA_FRAME);
+                out.writeBoolean(javaFrame.isJavaFrame());
+                out.writeByte(javaFrame.getType() == null ? -1 : javaFrame.getType().ordinal());
+                out.writeLong(javaFrame.getBci());
+            } else {
+                out.writeByte(FRAME);
+            }
+        }
+
+        out.writeInt(stackTraceList.size());
+        for (StackTrace stackTrace : stackTraceList) {
+            out.writeBoolean(stackTrace.isTruncated());
+            out.writeInt(stackTrace.getFrames().length);
+            for (Frame frame : stackTrace.getFrames()) {
+                out.writeInt(frames.get(frame));
+            }
+        }
+
+        for (Dimension dimension : DIMENSIONS) {
+            DimensionResult<? extends BaseTaskResult> dimensionResult = dimension.getter().apply(result);
+            if (dimensionResult == null || dimensionResult.getList() == null) {
+                out.writeBoolean(false);
+                continue;
+            }
+            out.writeBoolean(true);
+            out.writeInt(dimensionResult.getList().size());
+            for (BaseTaskResult taskResult : dimensionResult.getList()) {
+                writeTaskResult(out, taskResult, stackTraces);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the decoded result, or null if the encoding is of another version, of another source file
+     * or of other analysis options
+     */
+    public static AnalysisResult read(DataInputStream in, long sourceSize, long sourceLastModified, String options)
+            throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return null;
+        }
+        if (in.readLong() != sourceSize || in.readLong() != sourceLastModified || !in.readUTF().equals(options)) {
+            return null;
+        }
+        AnalysisResult result = new AnalysisResult();
+        result.setProcessingTimeMillis(in.readLong());
+
+        Method[] methods = new Method[in.readInt()];
+        for (int i = 0; i < methods.length; i++) {
+            String packageName = readString(in);
+            String type = readString(in);
+            String name = readString(in);
+            String descriptor = readString(in);
+            Method method;
+            if (in.readBoolean()) {
+                JavaMethod javaMethod = new JavaMethod();
+                javaMethod.setModifiers(in.readInt());
+                javaMethod.setHidden(in.readBoolean());
+                method = javaMethod;
+            } else {
+                method = new Method();
+            }
+            method.setPackageName(packageName);
+            method.setType(type);
+            method.setName(name);
+            method.setDescriptor(descriptor);
+            methods[i] = method;
+        }
+
+        Frame[] frames = new Frame[in.readInt()];
+        for (int i = 0; i < frames.length; i++) {
+            Method method = methods[in.readInt()];
+            int line = in.readInt();
+            Frame frame;
+            if (in.readByte() == JAVA_FRAME) {
+                JavaFrame javaFrame = new JavaFrame();
+                javaFrame.setJavaFrame(in.readBoolean());
+                byte type = in.readByte();
+                javaFrame.setType(type < 0 ? null : JavaFrame.Type.values()[type]);
+                javaFrame.setBci(in.readLong());
+                frame = javaFrame;
+            } else {
+                frame = new Frame();
+            }
+            frame.setMethod(method);
+            frame.setLine(line);
+            frames[i] = frame;
+        }
+
+        StackTrace[] stackTraces = new StackTrace[in.readInt()];
+        for (int i = 0; i < stackTraces.length; i++) {
+            StackTrace stackTrace = new StackTrace();
+            stackTrace.setTruncated(in.readBoolean());
+            Frame[] stackFrames = new Frame[in.readInt()];
+            for (int j = 0; j < stackFrames.length; j++) {
+                stackFrames[j] = frames[in.readInt()];
+            }
+            stackTrace.setFrames(stackFrames);
+            stackTraces[i] = stackTrace;
+        }
+
+        for (Dimension dimension : DIMENSIONS) {
+            if (!in.readBoolean()) {
+                continue;
+            }
+            int size = in.readInt();
+            List<BaseTaskResult> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readTaskResult(in, stackTraces));
+            }
+            DimensionResult<BaseTaskResult> dimensionResult = new DimensionResult<>();
+            dimensionResult.setList(list);
+            dimension.setter().accept(result, dimensionResult);
+        }
+        return result;
+    }
+
+    private static void writeTaskResult(DataOutputStream out, BaseTaskResult taskResult,
+                                        Map<StackTrace, Integer> stackTraces) throws IOException {
+        if (taskResult instanceof TaskCPUTime cpuTime) {
+            out.writeByte(taskResult instanceof JavaThreadCPUTime ? JAVA_THREAD_CPU_TIME : CPU_TIME);
+            out.writeLong(cpuTime.getUser());
+            out.writeLong(cpuTime.getSystem());
+        } else if (taskResult instanceof TaskAllocations allocations) {
+            out.writeByte(ALLOCATIONS);
+            out.writeLong(allocations.getCount());
+            out.writeLong(allocations.getAllocations());
+        } else if (taskResult instanceof TaskCount count) {
+            out.writeByte(COUNT);
+            out.writeLong(count.getCount());
+        } else if (taskResult instanceof TaskAllocatedMemory allocatedMemory) {
+            out.writeByte(ALLOCATED_MEMORY);
+            out.writeLong(allocatedMemory.getSum());
+            out.writeLong(allocatedMemory.getAllocatedMemory());
+        } else if (taskResult instanceof TaskSum sum) {
+            out.writeByte(SUM);
+            out.writeLong(sum.getSum());
+        } else {
+            throw new IOException("unsupported task result: " + taskResult.getClass().getName());
+        }
+
+        writeTask(out, taskResult.getTask());
+
+        Map<StackTrace, Long> samples = taskResult.getSamples();
+        if (samples == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(samples.size());
+        for (Map.Entry<StackTrace, Long> entry : samples.entrySet()) {
+            out.writeInt(stackTraces.get(entry.getKey()));
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static BaseTaskResult readTaskResult(DataInputStream in, StackTrace[] stackTraces) throws IOException {
+        BaseTaskResult taskResult;
+        byte kind = in.readByte();
+        switch (kind) {
+            case CPU_TIME, JAVA_THREAD_CPU_TIME -> {
+                TaskCPUTime cpuTime = kind == JAVA_THREAD_CPU_TIME ? new JavaThreadCPUTime() : new TaskCPUTime();
+                cpuTime.setUser(in.readLong());
+                cpuTime.setSystem(in.readLong());
+                taskResult = cpuTime;
+            }
+            case ALLOCATIONS -> {
+                TaskAllocations allocations = new TaskAllocations();
+                allocations.setCount(in.readLong());
+                allocations.setAllocations(in.readLong());
+                taskResult = allocations;
+            }
+            case COUNT -> {
+                TaskCount count = new TaskCount();
+                count.setCount(in.readLong());
+                taskResult = count;
+            }
+            case ALLOCATED_MEMORY -> {
+                TaskAllocatedMemory allocatedMemory = new TaskAllocatedMemory();
+                allocatedMemory.setSum(in.readLong());
+                allocatedMemory.setAllocatedMemory(in.readLong());
+                taskResult = allocatedMemory;
+            }
+            case SUM -> {
+                TaskSum sum = new TaskSum();
+                sum.setSum(in.readLong());
+                taskResult = sum;
+            }
+            default -> throw new IOException("unsupported task result kind: " + kind);
+        }
+
+        taskResult.setTask(readTask(in));
+
+        int size = in.readInt();
+        if (size < 0) {
+            taskResult.setSamples(null);
+            return taskResult;
+        }
+        Map<StackTrace, Long> samples = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            samples.put(stackTraces[in.readInt()], in.readLong());
+        }
+        taskResult.setSamples(samples);
+        return taskResult;
+    }
+
+    private static void writeTask(DataOutputStream out, Task task) throws IOException {
+        if (task instanceof JavaThread thread) {
+            out.writeByte(JAVA_THREAD);
+            out.writeLong(thread.getJavaId());
+            out.writeLong(thread.getOsId());
+        } else {
+            out.writeByte(TASK);
+        }
+        out.writeLong(task.getId());
+        writeString(out, task.getName());
+        out.writeLong(task.getStart());
+        out.writeLong(task.getEnd());
+    }
+
+    private static Task readTask(DataInputStream in) throws IOException {
+        Task task;
+        if (in.readByte() == JAVA_THREAD) {
+            JavaThread thread = new JavaThread();
+            thread.setJavaId(in.readLong());
+            thread.setOsId(in.readLong());
+            task = thread;
+        } else {
+            task = new Task();
+        }
+        task.setId(in.readLong());
+        task.setName(readString(in));
+        task.setStart(in.readLong());
+        task.setEnd(in.readLong());
+        return task;
+    }
+
+    /**
+     * Canonical form of the analysis options, independent of the map implementation and its order.
+     */
+    public static String optionsKey(Map<String, String> options) {
+        return options == null ? "{}" : new TreeMap<>(options).toString();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.jfranalyzerbackend.util;
+
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * int -> long 的开放寻址哈希表，用于按调用栈id累加采样值，避免装箱和Map.Entry的开销
+ */
+public class IntLongMap {
+
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private long[] values;
+    private int size;
+
+    public IntLongMap() {
+        this(16);
+    }
+
+    public IntLongMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(int key, long value);
+    }
+
+    /**
+     * @param key 非负整数
+     */
+    public void add(int key, long delta) {
+        int slot = slotOf(key);
+        if (keys[slot] == key) {
+            values[slot] += delta;
+            return;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+    }
+
+    public long get(int key) {
+        int slot = slotOf(key);
+        return keys[slot] == key ? values[slot] : 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    public void replaceAll(LongUnaryOperator operator) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                values[i] = operator.applyAsLong(values[i]);
+            }
+        }
+    }
+
+    public void addAll(IntLongMap other) {
+        other.forEach(this::add);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                sum += values[i];
+            }
+        }
+        return sum;
+    }
+
+    private int slotOf(int key) {
+        int mask = keys.length - 1;
+        int slot = (key * 0x9E3779B9) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[oldKeys.length << 1];
+        values = new long[oldValues.length << 1];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.jfranalyzerbackend.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Split a JFR recording into its chunks.
+ * <p>
+ * A recording is a concatenation of self contained chunks, each with its own metadata and constant pools,
+ * so every chunk can be parsed on its own. Reading chunk by chunk keeps the memory bounded by the chunk size
+ * instead of the recording size.
+ * <p>
+ * Chunk header: magic "FLR\0", major version (u2), minor version (u2), chunk size in bytes (u8), ...
+ */
+public class JfrChunkReader implements Closeable {
+
+    private static final byte[] MAGIC = {'F', 'L', 'R', '\0'};
+
+    private static final int HEADER_SIZE = 16;
+
+    private final InputStream in;
+
+    /**
+     * @param in must support mark/reset if {@link #isChunkedRecording(InputStream)} is used on it
+     */
+    public JfrChunkReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Whether the stream starts with an uncompressed JFR chunk. The stream position is not changed.
+     */
+    public static boolean isChunkedRecording(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            return false;
+        }
+        in.mark(MAGIC.length);
+        try {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            return isMagic(magic, 0);
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * @return the bytes of the next chunk, or null at the end of the recording
+     */
+    public byte[] nextChunk() throws IOException {
+        byte[] header = in.readNBytes(HEADER_SIZE);
+        if (header.length == 0) {
+            return null;
+        }
+        if (header.length < HEADER_SIZE || !isMagic(header, 0)) {
+            throw new IOException("invalid jfr chunk header");
+        }
+
+        long size = ByteBuffer.wrap(header, 8, 8).getLong();
+        if (size == 0) {
+            // the recording is still in progress, the last chunk extends to the end of the stream
+            byte[] rest = in.readAllBytes();
+            byte[] chunk = new byte[HEADER_SIZE + rest.length];
+            System.arraycopy(header, 0, chunk, 0, HEADER_SIZE);
+            System.arraycopy(rest, 0, chunk, HEADER_SIZE, rest.length);
+            return chunk;
+        }
+        if (size < HEADER_SIZE || size > Integer.MAX_VALUE - 8) {
+            throw new IOException("invalid jfr chunk size: " + size);
+        }
+
+        byte[] chunk = new byte[(int) size];
+        System.arraycopy(header, 0, chunk, 0, HEADER_SIZE);
+        int read = in.readNBytes(chunk, HEADER_SIZE, chunk.length - HEADER_SIZE);
+        if (read < chunk.length - HEADER_SIZE) {
+            throw new IOException("truncated jfr chunk, expect " + size + " bytes, got " + (HEADER_SIZE + read));
+        }
+        return chunk;
+    }
+
+    private static boolean isMagic(byte[] bytes, int offset) {
+        if (bytes.length - offset < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[offset + i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
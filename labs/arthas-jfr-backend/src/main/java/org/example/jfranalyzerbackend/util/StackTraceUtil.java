@@ -20,58 +20,58 @@ import java.util.List;
 public class StackTraceUtil {
     public static final RecordedStackTrace DUMMY_STACK_TRACE = StackTraceUtil.newDummyStackTrace("", "", "NO Frame");
 
+    /**
+     * 转换单个帧，方法和帧都驻留在符号表中
+     */
+    public static Frame buildFrame(RecordedFrame frame, SymbolTable<SymbolBase> symbols) {
+        Frame dstFrame;
+        if (frame.isJavaFrame()) {
+            dstFrame = new JavaFrame();
+            ((JavaFrame) dstFrame).setJavaFrame(frame.isJavaFrame());
+            ((JavaFrame) dstFrame).setType(JavaFrame.Type.typeOf(frame.getType()));
+            ((JavaFrame) dstFrame).setBci(frame.getBytecodeIndex());
+        } else {
+            dstFrame = new Frame();
+        }
 
-    public static StackTrace build(RecordedStackTrace stackTrace, SymbolTable<SymbolBase> symbols) {
-        StackTrace result = new StackTrace();
-        result.setTruncated(stackTrace.isTruncated());
-
-        List<RecordedFrame> srcFrames = stackTrace.getFrames();
-        Frame[] dstFrames = new Frame[srcFrames.size()];
-        for (int i = 0; i < srcFrames.size(); i++) {
-            RecordedFrame frame = srcFrames.get(i);
-            Frame dstFrame;
-            if (frame.isJavaFrame()) {
-                dstFrame = new JavaFrame();
-                ((JavaFrame) dstFrame).setJavaFrame(frame.isJavaFrame());
-                ((JavaFrame) dstFrame).setType(JavaFrame.Type.typeOf(frame.getType()));
-                ((JavaFrame) dstFrame).setBci(frame.getBytecodeIndex());
-            } else {
-                dstFrame = new Frame();
-            }
-
-            RecordedMethod method = frame.getMethod();
-            JavaMethod dstMethod = new JavaMethod();
-            dstMethod.setPackageName(method.getType().getPackageName());
-            dstMethod.setType(method.getType().getName());
-            dstMethod.setName(method.getName());
-            dstMethod.setDescriptor(method.getDescriptor()); // 直接使用原始描述符
-
-            dstMethod.setModifiers(method.getModifiers());
-            dstMethod.setHidden(method.isHidden());
-            if (symbols.isContains(dstMethod)) {
-                dstMethod = (JavaMethod) symbols.get(dstMethod);
-            } else {
-                symbols.put(dstMethod);
-            }
-
-            dstFrame.setMethod(dstMethod);
-            dstFrame.setLine(frame.getLineNumber());
-            if (symbols.isContains(dstFrame)) {
-                dstFrame = (Frame) symbols.get(dstFrame);
-            } else {
-                symbols.put(dstFrame);
-            }
+        RecordedMethod method = frame.getMethod();
+        JavaMethod dstMethod = new JavaMethod();
+        dstMethod.setPackageName(method.getType().getPackageName());
+        dstMethod.setType(method.getType().getName());
+        dstMethod.setName(method.getName());
+        dstMethod.setDescriptor(method.getDescriptor()); // 直接使用原始描述符
+
+        dstMethod.setModifiers(method.getModifiers());
+        dstMethod.setHidden(method.isHidden());
+        if (symbols.isContains(dstMethod)) {
+            dstMethod = (JavaMethod) symbols.get(dstMethod);
+        } else {
+            symbols.put(dstMethod);
+        }
 
-            dstFrames[i] = dstFrame;
+        dstFrame.setMethod(dstMethod);
+        dstFrame.setLine(frame.getLineNumber());
+        if (symbols.isContains(dstFrame)) {
+            dstFrame = (Frame) symbols.get(dstFrame);
+        } else {
+            symbols.put(dstFrame);
         }
+        return dstFrame;
+    }
 
-        result.setFrames(dstFrames);
+    /**
+     * 由已转换的帧构造调用栈，调用栈驻留在符号表中
+     *
+     * @param frames 栈顶在前的帧
+     */
+    public static StackTrace build(Frame[] frames, SymbolTable<SymbolBase> symbols) {
+        StackTrace result = new StackTrace();
+        result.setFrames(frames);
         if (symbols.isContains(result)) {
             result = (StackTrace) symbols.get(result);
         } else {
             symbols.put(result);
         }
-
         return result;
     }
 
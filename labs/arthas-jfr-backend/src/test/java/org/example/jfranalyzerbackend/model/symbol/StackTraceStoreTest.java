@@ -0,0 +1,99 @@
+package org.example.jfranalyzerbackend.model.symbol;
+
+import org.example.jfranalyzerbackend.model.jfr.RecordedClass;
+import org.example.jfranalyzerbackend.model.jfr.RecordedFrame;
+import org.example.jfranalyzerbackend.model.jfr.RecordedMethod;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class StackTraceStoreTest {
+
+    @Test
+    void internsEqualFramesAndStacks() {
+        StackTraceStore store = new StackTraceStore();
+        int a = store.internFrame(frame("a", 1));
+        assertEquals(a, store.internFrame(frame("a", 1)));
+        assertNotEquals(a, store.internFrame(frame("a", 2)));
+        assertEquals(2, store.frameCount());
+
+        // frames are top first, as in jfr
+        int stack = store.intern(List.of(frame("c", 1), frame("b", 1), frame("main", 1)));
+        assertEquals(stack, store.intern(List.of(frame("c", 1), frame("b", 1), frame("main", 1))));
+        assertEquals(3, store.depthOf(stack));
+        assertEquals("c", store.getFrame(store.frameOf(stack)).getMethod().getName());
+
+        int[] frameIds = store.framesOf(stack);
+        assertEquals(stack, store.intern(frameIds, frameIds.length));
+        assertEquals("main", store.getFrame(frameIds[2]).getMethod().getName());
+    }
+
+    @Test
+    void sharesCommonPrefix() {
+        StackTraceStore store = new StackTraceStore();
+        int bc = store.intern(List.of(frame("c", 1), frame("b", 1), frame("main", 1)));
+        int bd = store.intern(List.of(frame("d", 1), frame("b", 1), frame("main", 1)));
+        int b = store.intern(List.of(frame("b", 1), frame("main", 1)));
+
+        assertNotEquals(bc, bd);
+        assertEquals(b, store.parentOf(bc));
+        assertEquals(b, store.parentOf(bd));
+        assertEquals(StackTraceStore.ROOT, store.parentOf(store.parentOf(b)));
+        assertEquals(-1, store.parentOf(StackTraceStore.ROOT));
+        assertEquals(-1, store.frameOf(StackTraceStore.ROOT));
+        // root, main, b, c, d
+        assertEquals(5, store.size());
+        assertEquals(StackTraceStore.ROOT, store.intern(List.of()));
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+        StackTraceStore store = new StackTraceStore();
+        List<Integer> ids = new ArrayList<>();
+        // 20 distinct leaves under each of 300 callers, more nodes and children than the initial tables hold
+        for (int caller = 0; caller < 300; caller++) {
+            for (int leaf = 0; leaf < 20; leaf++) {
+                ids.add(store.intern(List.of(frame("leaf" + leaf, 1), frame("caller" + caller, 1), frame("main", 1))));
+            }
+        }
+        assertEquals(1 + 1 + 300 + 300 * 20, store.size());
+
+        int i = 0;
+        for (int caller = 0; caller < 300; caller++) {
+            for (int leaf = 0; leaf < 20; leaf++) {
+                int id = store.intern(List.of(frame("leaf" + leaf, 1), frame("caller" + caller, 1), frame("main", 1)));
+                assertEquals(ids.get(i++), id);
+                int[] frames = store.framesOf(id);
+                assertEquals("leaf" + leaf, store.getFrame(frames[0]).getMethod().getName());
+                assertEquals("caller" + caller, store.getFrame(frames[1]).getMethod().getName());
+            }
+        }
+        assertEquals(1 + 1 + 300 + 300 * 20, store.size());
+    }
+
+    @Test
+    void framesAreTheInternedInstances() {
+        StackTraceStore store = new StackTraceStore();
+        RecordedFrame first = frame("a", 1);
+        int id = store.internFrame(first);
+        assertSame(first, store.getFrame(store.internFrame(frame("a", 1))));
+        assertArrayEquals(new int[]{id}, store.framesOf(store.intern(List.of(frame("a", 1)))));
+    }
+
+    private static RecordedFrame frame(String method, int line) {
+        RecordedClass type = new RecordedClass();
+        type.setPackageName("com.example");
+        type.setName("Foo");
+        RecordedMethod m = new RecordedMethod();
+        m.setType(type);
+        m.setName(method);
+        m.setDescriptor("()V");
+        return new RecordedFrame(true, "JIT compiled", 0, line, m);
+    }
+}
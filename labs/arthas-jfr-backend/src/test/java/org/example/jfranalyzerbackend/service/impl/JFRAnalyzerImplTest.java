@@ -0,0 +1,78 @@
+package org.example.jfranalyzerbackend.service.impl;
+
+import org.example.jfranalyzerbackend.model.AnalysisResult;
+import org.example.jfranalyzerbackend.model.BaseTaskResult;
+import org.example.jfranalyzerbackend.model.DimensionResult;
+import org.example.jfranalyzerbackend.model.Frame;
+import org.example.jfranalyzerbackend.model.StackTrace;
+import org.example.jfranalyzerbackend.util.DimensionBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class JFRAnalyzerImplTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rangedAnalysisEqualsSequentialAnalysis() throws IOException {
+        Path file = dir.resolve("two-chunks.jfr");
+        try (InputStream in = getClass().getResourceAsStream("/jfr/two-chunks.jfr")) {
+            Files.copy(in, file);
+        }
+        int dimensions = DimensionBuilder.CPU | DimensionBuilder.ALLOC | DimensionBuilder.MEM;
+
+        AnalysisResult sequential = new JFRAnalyzerImpl(file, dimensions,
+                Map.of(JFRAnalyzerImpl.OPTION_PARALLEL_WORKERS, "1"), null).getResult();
+        // small ranges, so every chunk is processed by many forked extractors and merged
+        AnalysisResult ranged = new JFRAnalyzerImpl(file, dimensions,
+                Map.of(JFRAnalyzerImpl.OPTION_PARALLEL_WORKERS, "4",
+                        JFRAnalyzerImpl.OPTION_PARTITION_SIZE, "16"), null).getResult();
+
+        Map<String, Map<String, Long>> cpuTime = summarize(sequential.getCpuTime());
+        assertFalse(cpuTime.isEmpty());
+        assertEquals(cpuTime, summarize(ranged.getCpuTime()));
+
+        Map<String, Map<String, Long>> allocations = summarize(sequential.getAllocations());
+        assertFalse(allocations.isEmpty());
+        assertEquals(allocations, summarize(ranged.getAllocations()));
+
+        assertEquals(summarize(sequential.getAllocatedMemory()), summarize(ranged.getAllocatedMemory()));
+    }
+
+    /**
+     * task name to the value of the task and the samples of every stack trace, independent of the interned objects
+     */
+    private static Map<String, Map<String, Long>> summarize(DimensionResult<? extends BaseTaskResult> result) {
+        Map<String, Map<String, Long>> summary = new TreeMap<>();
+        if (result == null) {
+            return summary;
+        }
+        for (BaseTaskResult task : result.getList()) {
+            Map<String, Long> samples = summary.computeIfAbsent(task.getTask().getName(), k -> new TreeMap<>());
+            samples.merge("<value>", task.getValue(), Long::sum);
+            for (Map.Entry<StackTrace, Long> entry : task.getSamples().entrySet()) {
+                samples.merge(describe(entry.getKey()), entry.getValue(), Long::sum);
+            }
+        }
+        return summary;
+    }
+
+    private static String describe(StackTrace stackTrace) {
+        StringBuilder sb = new StringBuilder();
+        for (Frame frame : stackTrace.getFrames()) {
+            sb.append(frame).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,208 @@
+package org.example.jfranalyzerbackend.util;
+
+import org.example.jfranalyzerbackend.model.AnalysisResult;
+import org.example.jfranalyzerbackend.model.DimensionResult;
+import org.example.jfranalyzerbackend.model.Frame;
+import org.example.jfranalyzerbackend.model.JavaFrame;
+import org.example.jfranalyzerbackend.model.JavaMethod;
+import org.example.jfranalyzerbackend.model.JavaThread;
+import org.example.jfranalyzerbackend.model.JavaThreadCPUTime;
+import org.example.jfranalyzerbackend.model.Method;
+import org.example.jfranalyzerbackend.model.StackTrace;
+import org.example.jfranalyzerbackend.model.Task;
+import org.example.jfranalyzerbackend.model.TaskAllocatedMemory;
+import org.example.jfranalyzerbackend.model.TaskAllocations;
+import org.example.jfranalyzerbackend.model.TaskCPUTime;
+import org.example.jfranalyzerbackend.model.TaskCount;
+import org.example.jfranalyzerbackend.model.TaskSum;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AnalysisResultCodecTest {
+
+    private static final long SIZE = 1234;
+    private static final long LAST_MODIFIED = 5678;
+    private static final String OPTIONS = AnalysisResultCodec.optionsKey(Map.of("parallelWorkers", "4"));
+
+    @Test
+    void roundTrip() throws IOException {
+        JavaThread thread = new JavaThread();
+        thread.setId(1);
+        thread.setName("main");
+        thread.setJavaId(1);
+        thread.setOsId(42);
+        thread.setStart(10);
+        thread.setEnd(20);
+        Task task = new Task();
+        task.setId(2);
+        task.setName("native");
+
+        StackTrace javaStack = stackTrace(javaFrame("java.lang", "Thread", "run", 10),
+                javaFrame("com.example", "Main", "work", 20));
+        StackTrace nativeStack = stackTrace(frame("libc.so", "read"));
+
+        JavaThreadCPUTime cpuTime = new JavaThreadCPUTime();
+        cpuTime.setTask(thread);
+        cpuTime.setUser(100);
+        cpuTime.setSystem(7);
+        cpuTime.combineSampleData(javaStack, 3);
+        TaskCPUTime nativeCpuTime = new TaskCPUTime();
+        nativeCpuTime.setTask(task);
+        nativeCpuTime.setUser(5);
+        nativeCpuTime.combineSampleData(nativeStack, 1);
+
+        TaskAllocations allocations = new TaskAllocations();
+        allocations.setTask(thread);
+        allocations.setCount(2);
+        allocations.setAllocations(64);
+        allocations.combineSampleData(javaStack, 2);
+
+        TaskAllocatedMemory memory = new TaskAllocatedMemory();
+        memory.setTask(thread);
+        memory.setSum(4096);
+        memory.setAllocatedMemory(4096);
+        memory.combineSampleData(javaStack, 4096);
+
+        TaskCount cpuSample = new TaskCount();
+        cpuSample.setTask(task);
+        cpuSample.setCount(9);
+        cpuSample.combineSampleData(nativeStack, 9);
+
+        TaskSum park = new TaskSum();
+        park.setTask(thread);
+        park.setSum(77);
+
+        AnalysisResult result = new AnalysisResult();
+        result.setProcessingTimeMillis(321);
+        result.setCpuTime(dimension(cpuTime, nativeCpuTime));
+        result.setAllocations(dimension(allocations));
+        result.setAllocatedMemory(dimension(memory));
+        result.setCpuSample(dimension(cpuSample));
+        result.setThreadPark(dimension(park));
+
+        AnalysisResult decoded = AnalysisResultCodec.read(in(encode(result)), SIZE, LAST_MODIFIED, OPTIONS);
+
+        assertEquals(321, decoded.getProcessingTimeMillis());
+        assertNull(decoded.getWallClock());
+
+        TaskCPUTime decodedCpuTime = decoded.getCpuTime().getList().get(0);
+        assertInstanceOf(JavaThreadCPUTime.class, decodedCpuTime);
+        assertEquals(100, decodedCpuTime.getUser());
+        assertEquals(7, decodedCpuTime.getSystem());
+        assertEquals(Map.of(javaStack, 3L), decodedCpuTime.getSamples());
+        JavaThread decodedThread = (JavaThread) decodedCpuTime.getTask();
+        assertEquals("main", decodedThread.getName());
+        assertEquals(42, decodedThread.getOsId());
+        assertEquals(10, decodedThread.getStart());
+        assertEquals(20, decodedThread.getEnd());
+
+        TaskCPUTime decodedNative = decoded.getCpuTime().getList().get(1);
+        assertFalse(decodedNative instanceof JavaThreadCPUTime);
+        assertFalse(decodedNative.getTask() instanceof JavaThread);
+        assertEquals("native", decodedNative.getTask().getName());
+        assertEquals(Map.of(nativeStack, 1L), decodedNative.getSamples());
+
+        TaskAllocations decodedAllocations = decoded.getAllocations().getList().get(0);
+        assertEquals(2, decodedAllocations.getCount());
+        assertEquals(64, decodedAllocations.getAllocations());
+        TaskAllocatedMemory decodedMemory = decoded.getAllocatedMemory().getList().get(0);
+        assertEquals(4096, decodedMemory.getSum());
+        assertEquals(4096, decodedMemory.getAllocatedMemory());
+        assertEquals(9, decoded.getCpuSample().getList().get(0).getCount());
+        assertEquals(77, decoded.getThreadPark().getList().get(0).getSum());
+
+        // stack traces and frames are decoded once and shared between the dimensions
+        StackTrace decodedStack = decodedCpuTime.getSamples().keySet().iterator().next();
+        assertSame(decodedStack, decodedAllocations.getSamples().keySet().iterator().next());
+        JavaFrame top = (JavaFrame) decodedStack.getFrames()[0];
+        assertEquals("run", top.getMethod().getName());
+        assertInstanceOf(JavaMethod.class, top.getMethod());
+        assertEquals(10, top.getLine());
+        assertEquals(JavaFrame.Type.JIT, top.getType());
+        assertEquals(3, top.getBci());
+    }
+
+    @Test
+    void staleEncodingIsIgnored() throws IOException {
+        AnalysisResult result = new AnalysisResult();
+        byte[] encoded = encode(result);
+
+        assertNull(AnalysisResultCodec.read(in(encoded), SIZE + 1, LAST_MODIFIED, OPTIONS));
+        assertNull(AnalysisResultCodec.read(in(encoded), SIZE, LAST_MODIFIED + 1, OPTIONS));
+        assertNull(AnalysisResultCodec.read(in(encoded), SIZE, LAST_MODIFIED, AnalysisResultCodec.optionsKey(null)));
+    }
+
+    @Test
+    void optionsKeyIgnoresOrder() {
+        Map<String, String> a = new LinkedHashMap<>();
+        a.put("b", "2");
+        a.put("a", "1");
+        Map<String, String> b = new TreeMap<>(a);
+        assertEquals(AnalysisResultCodec.optionsKey(a), AnalysisResultCodec.optionsKey(b));
+        assertEquals(AnalysisResultCodec.optionsKey(null), AnalysisResultCodec.optionsKey(Map.of()));
+    }
+
+    private static byte[] encode(AnalysisResult result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AnalysisResultCodec.write(result, SIZE, LAST_MODIFIED, OPTIONS, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream in(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    @SafeVarargs
+    private static <T> DimensionResult<T> dimension(T... items) {
+        DimensionResult<T> result = new DimensionResult<>();
+        for (T item : items) {
+            result.addResultItem(item);
+        }
+        return result;
+    }
+
+    private static StackTrace stackTrace(Frame... frames) {
+        StackTrace stackTrace = new StackTrace();
+        stackTrace.setFrames(frames);
+        return stackTrace;
+    }
+
+    private static JavaFrame javaFrame(String packageName, String type, String name, int line) {
+        JavaMethod method = new JavaMethod();
+        method.setPackageName(packageName);
+        method.setType(type);
+        method.setName(name);
+        method.setDescriptor("()V");
+        method.setModifiers(1);
+        JavaFrame frame = new JavaFrame();
+        frame.setMethod(method);
+        frame.setLine(line);
+        frame.setJavaFrame(true);
+        frame.setType(JavaFrame.Type.JIT);
+        frame.setBci(3);
+        return frame;
+    }
+
+    private static Frame frame(String packageName, String name) {
+        Method method = new Method();
+        method.setPackageName(packageName);
+        method.setName(name);
+        Frame frame = new Frame();
+        frame.setMethod(method);
+        return frame;
+    }
+}
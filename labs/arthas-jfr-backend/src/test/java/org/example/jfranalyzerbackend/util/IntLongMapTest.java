@@ -0,0 +1,69 @@
+package org.example.jfranalyzerbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntLongMapTest {
+
+    @Test
+    void addsToExistingKeys() {
+        IntLongMap map = new IntLongMap();
+        assertTrue(map.isEmpty());
+        map.add(3, 5);
+        map.add(3, 7);
+        map.add(0, 1);
+
+        assertEquals(2, map.size());
+        assertEquals(12, map.get(3));
+        assertEquals(1, map.get(0));
+        assertEquals(0, map.get(4));
+        assertEquals(13, map.sum());
+    }
+
+    @Test
+    void growsAndKeepsValues() {
+        IntLongMap map = new IntLongMap(2);
+        Map<Integer, Long> expected = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            // keys colliding in the low bits as well as spread ones
+            int key = i % 2 == 0 ? i << 10 : i;
+            map.add(key, i);
+            map.add(key, 1);
+            expected.merge(key, i + 1L, Long::sum);
+        }
+
+        assertEquals(expected.size(), map.size());
+        Map<Integer, Long> visited = new HashMap<>();
+        map.forEach((key, value) -> assertNull(visited.put(key, value)));
+        assertEquals(expected, visited);
+        assertEquals(expected.values().stream().mapToLong(Long::longValue).sum(), map.sum());
+    }
+
+    @Test
+    void mergesAndScales() {
+        IntLongMap a = new IntLongMap();
+        a.add(1, 10);
+        a.add(2, 20);
+        IntLongMap b = new IntLongMap();
+        b.add(2, 2);
+        b.add(3, 3);
+
+        a.addAll(b);
+        assertEquals(3, a.size());
+        assertEquals(10, a.get(1));
+        assertEquals(22, a.get(2));
+        assertEquals(3, a.get(3));
+        // the other map is not changed
+        assertEquals(2, b.size());
+
+        a.replaceAll(value -> value * 2);
+        assertEquals(70, a.sum());
+        assertEquals(44, a.get(2));
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.jfranalyzerbackend.util;
+
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The fixture is two small recordings of a busy jvm concatenated, so it has two chunks.
+ */
+class JfrChunkReaderTest {
+
+    static final String FIXTURE = "/jfr/two-chunks.jfr";
+
+    @Test
+    void readsEveryChunk() throws IOException {
+        byte[] recording = readFixture();
+        List<byte[]> chunks = readChunks(new ByteArrayInputStream(recording));
+
+        assertEquals(2, chunks.size());
+        for (byte[] chunk : chunks) {
+            assertEquals('F', chunk[0]);
+            assertEquals('L', chunk[1]);
+            assertEquals('R', chunk[2]);
+            assertEquals(chunk.length, ByteBuffer.wrap(chunk, 8, 8).getLong());
+        }
+        assertArrayEquals(recording, concat(chunks));
+    }
+
+    @Test
+    void readsChunksAcrossShortReads() throws IOException {
+        byte[] recording = readFixture();
+        // a slow stream returning a few bytes per read, chunk boundaries fall in the middle of reads
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(recording)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        List<byte[]> chunks = readChunks(in);
+
+        assertEquals(2, chunks.size());
+        assertArrayEquals(recording, concat(chunks));
+    }
+
+    @Test
+    void everyChunkIsParsableOnItsOwn(@TempDir Path dir) throws IOException {
+        byte[] recording = readFixture();
+        Path whole = dir.resolve("whole.jfr");
+        Files.write(whole, recording);
+
+        int events = 0;
+        int index = 0;
+        for (byte[] chunk : readChunks(new ByteArrayInputStream(recording))) {
+            Path file = dir.resolve("chunk-" + index++ + ".jfr");
+            Files.write(file, chunk);
+            int chunkEvents = RecordingFile.readAllEvents(file).size();
+            assertTrue(chunkEvents > 0);
+            events += chunkEvents;
+        }
+        assertEquals(RecordingFile.readAllEvents(whole).size(), events);
+    }
+
+    @Test
+    void detectsChunkedRecording() throws IOException {
+        byte[] recording = readFixture();
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(recording));
+        assertTrue(JfrChunkReader.isChunkedRecording(in));
+        // the position is not changed
+        assertEquals('F', in.read());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(recording);
+        }
+        assertFalse(JfrChunkReader.isChunkedRecording(
+                new BufferedInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+        // mark/reset is required to peek the magic
+        assertFalse(JfrChunkReader.isChunkedRecording(new FilterInputStream(new ByteArrayInputStream(recording)) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        }));
+    }
+
+    @Test
+    void failsOnTruncatedChunk() throws IOException {
+        byte[] recording = readFixture();
+        byte[] truncated = Arrays.copyOf(recording, recording.length - 100);
+
+        JfrChunkReader reader = new JfrChunkReader(new ByteArrayInputStream(truncated));
+        reader.nextChunk();
+        assertThrows(IOException.class, reader::nextChunk);
+    }
+
+    @Test
+    void readsUnfinishedLastChunk() throws IOException {
+        byte[] recording = readFixture();
+        long firstSize = ByteBuffer.wrap(recording, 8, 8).getLong();
+        // a chunk still being written has size 0 in its header and extends to the end of the stream
+        byte[] inProgress = recording.clone();
+        ByteBuffer.wrap(inProgress, (int) firstSize + 8, 8).putLong(0);
+
+        List<byte[]> chunks = readChunks(new ByteArrayInputStream(inProgress));
+        assertEquals(2, chunks.size());
+        assertEquals(recording.length - firstSize, chunks.get(1).length);
+    }
+
+    static byte[] readFixture() throws IOException {
+        try (InputStream in = JfrChunkReaderTest.class.getResourceAsStream(FIXTURE)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static List<byte[]> readChunks(InputStream in) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        try (JfrChunkReader reader = new JfrChunkReader(in)) {
+            byte[] chunk;
+            while ((chunk = reader.nextChunk()) != null) {
+                chunks.add(chunk);
+            }
+            assertNull(reader.nextChunk());
+        }
+        return chunks;
+    }
+
+    private static byte[] concat(List<byte[]> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            out.write(chunk, 0, chunk.length);
+        }
+        return out.toByteArray();
+    }
+}
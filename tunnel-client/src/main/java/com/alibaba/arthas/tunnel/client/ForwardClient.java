@@ -2,6 +2,7 @@ package com.alibaba.arthas.tunnel.client;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLException;
 
@@ -11,13 +12,12 @@ import org.slf4j.LoggerFactory;
 import com.taobao.arthas.common.ArthasConstants;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.HttpClientCodec;
@@ -27,9 +27,10 @@ import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
-import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
+ * 一个 web console 连接的转发：连接 tunnel server，再连接本地 arthas server，在两者之间转发 websocket frame。
+ * 使用 {@link TunnelClient} 共享的 EventLoopGroup，连接期间会出现在 {@link TunnelClient#getForwards()} 里。
  * 
  * @author hengyunabc 2019-08-28
  *
@@ -37,12 +38,22 @@ import io.netty.util.concurrent.DefaultThreadFactory;
 public class ForwardClient {
     private final static Logger logger = LoggerFactory.getLogger(ForwardClient.class);
     private URI tunnelServerURI;
+    private final TunnelClient tunnelClient;
 
-    public ForwardClient(URI tunnelServerURI) {
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicLong tunnelToLocalBytes = new AtomicLong();
+    private final AtomicLong localToTunnelBytes = new AtomicLong();
+    private volatile Channel channel;
+
+    public ForwardClient(URI tunnelServerURI, TunnelClient tunnelClient) {
         this.tunnelServerURI = tunnelServerURI;
+        this.tunnelClient = tunnelClient;
     }
 
-    public void start() throws URISyntaxException, SSLException, InterruptedException {
+    /**
+     * 异步连接 tunnel server，不会阻塞调用线程
+     */
+    public void start() throws URISyntaxException, SSLException {
         String scheme = tunnelServerURI.getScheme() == null ? "ws" : tunnelServerURI.getScheme();
         final String host = tunnelServerURI.getHost() == null ? "127.0.0.1" : tunnelServerURI.getHost();
         final int port;
@@ -79,40 +90,73 @@ public class ForwardClient {
         final WebSocketClientProtocolHandler websocketClientHandler = new WebSocketClientProtocolHandler(
                 clientProtocolConfig);
 
-        final ForwardClientSocketClientHandler forwardClientSocketClientHandler = new ForwardClientSocketClientHandler();
-
-        final EventLoopGroup group = new NioEventLoopGroup(1, new DefaultThreadFactory("arthas-ForwardClient", true));
-        ChannelFuture closeFuture = null;
-        try {
-            Bootstrap b = new Bootstrap();
-            b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
-            b.group(group).channel(NioSocketChannel.class).handler(new ChannelInitializer<SocketChannel>() {
-                @Override
-                protected void initChannel(SocketChannel ch) {
-                    ChannelPipeline p = ch.pipeline();
-                    if (sslCtx != null) {
-                        p.addLast(sslCtx.newHandler(ch.alloc(), host, port));
-                    }
-                    p.addLast(new HttpClientCodec(), new HttpObjectAggregator(ArthasConstants.MAX_HTTP_CONTENT_LENGTH), websocketClientHandler,
-                            forwardClientSocketClientHandler);
+        final ForwardClientSocketClientHandler forwardClientSocketClientHandler = new ForwardClientSocketClientHandler(
+                this);
+
+        Bootstrap b = new Bootstrap();
+        b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
+        b.group(tunnelClient.getEventLoopGroup()).channel(NioSocketChannel.class).handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) {
+                ChannelPipeline p = ch.pipeline();
+                if (sslCtx != null) {
+                    p.addLast(sslCtx.newHandler(ch.alloc(), host, port));
                 }
-            });
-
-            closeFuture = b.connect(tunnelServerURI.getHost(), port).sync().channel().closeFuture();
-            logger.info("forward client connect to server success, uri: " + tunnelServerURI);
-        } finally {
-            if (closeFuture != null) {
-                closeFuture.addListener(new ChannelFutureListener() {
+                p.addLast(new HttpClientCodec(), new HttpObjectAggregator(ArthasConstants.MAX_HTTP_CONTENT_LENGTH), websocketClientHandler,
+                        forwardClientSocketClientHandler);
+            }
+        });
+
+        ChannelFuture connectFuture = b.connect(tunnelServerURI.getHost(), port);
+        channel = connectFuture.channel();
+        connectFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    logger.error("forward client connect to server error, uri: {}", tunnelServerURI, future.cause());
+                    return;
+                }
+                logger.info("forward client connect to server success, uri: " + tunnelServerURI);
+                tunnelClient.addForward(ForwardClient.this);
+                future.channel().closeFuture().addListener(new ChannelFutureListener() {
                     @Override
-                    public void operationComplete(ChannelFuture channelFuture) throws Exception {
-                        group.shutdownGracefully();
+                    public void operationComplete(ChannelFuture future) {
+                        tunnelClient.removeForward(ForwardClient.this);
                     }
                 });
-            } else {
-                group.shutdownGracefully();
             }
-        }
+        });
+    }
+
+    public URI getTunnelServerURI() {
+        return tunnelServerURI;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * 到 tunnel server 的连接，start 之前为 null
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public long getTunnelToLocalBytes() {
+        return tunnelToLocalBytes.get();
+    }
+
+    public long getLocalToTunnelBytes() {
+        return localToTunnelBytes.get();
+    }
+
+    AtomicLong tunnelToLocalBytes() {
+        return tunnelToLocalBytes;
+    }
 
+    AtomicLong localToTunnelBytes() {
+        return localToTunnelBytes;
     }
 
 }
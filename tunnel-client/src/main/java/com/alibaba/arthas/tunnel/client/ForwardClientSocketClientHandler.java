@@ -1,6 +1,7 @@
 package com.alibaba.arthas.tunnel.client;
 
-import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,29 +16,42 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.ChannelPromise;
-import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.local.LocalAddress;
 import io.netty.channel.local.LocalChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolConfig;
 import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
 import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler.ClientHandshakeStateEvent;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
-import io.netty.util.concurrent.DefaultThreadFactory;
-import io.netty.util.concurrent.GenericFutureListener;
 
 /**
+ * <pre>
+ * tunnel server 的 websocket 握手完成后，连接本地 arthas server，然后在两个连接之间转发 frame。
+ *
+ * 本地连接使用 tunnel 连接的 event loop，连接和握手都是异步的，不会阻塞共享的 event loop。
+ * 本地握手完成之前暂停读取 tunnel 连接，已经读到的 frame 先缓存，握手完成后再转发。
+ * </pre>
+ *
  * @author hengyunabc 2019-08-28
  */
 public class ForwardClientSocketClientHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
 
     private static final Logger logger = LoggerFactory.getLogger(ForwardClientSocketClientHandler.class);
 
-    private ChannelPromise handshakeFuture;
+    private final ForwardClient forwardClient;
+
+    private Channel localChannel;
+
+    /**
+     * 本地握手完成之前收到的 frame
+     */
+    private final List<WebSocketFrame> pendingFrames = new ArrayList<WebSocketFrame>();
+
+    public ForwardClientSocketClientHandler(ForwardClient forwardClient) {
+        this.forwardClient = forwardClient;
+    }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) {
@@ -46,91 +60,116 @@ public class ForwardClientSocketClientHandler extends SimpleChannelInboundHandle
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         logger.info("WebSocket Client disconnected!");
+        releasePendingFrames();
+        if (localChannel != null) {
+            localChannel.close();
+        }
     }
 
     @Override
     public void userEventTriggered(final ChannelHandlerContext ctx, Object evt) {
         if (evt.equals(ClientHandshakeStateEvent.HANDSHAKE_COMPLETE)) {
             try {
+                ctx.channel().config().setAutoRead(false);
                 connectLocalServer(ctx);
             } catch (Throwable e) {
                 logger.error("ForwardClientSocketClientHandler connect local arthas server error", e);
+                ctx.close();
             }
         } else {
             ctx.fireUserEventTriggered(evt);
         }
     }
 
-    private void connectLocalServer(final ChannelHandlerContext ctx) throws InterruptedException, URISyntaxException {
-        final EventLoopGroup group = new NioEventLoopGroup(1, new DefaultThreadFactory("arthas-forward-client-connect-local", true));
-        ChannelFuture closeFuture = null;
-        try {
-            logger.info("ForwardClientSocketClientHandler star connect local arthas server");
-            // 入参URI实际无意义，只为了程序不出错
-            WebSocketClientProtocolConfig clientProtocolConfig = WebSocketClientProtocolConfig.newBuilder()
-                    .webSocketUri("ws://127.0.0.1:8563/ws")
-                    .maxFramePayloadLength(ArthasConstants.MAX_HTTP_CONTENT_LENGTH).build();
-
-            final WebSocketClientProtocolHandler websocketClientHandler = new WebSocketClientProtocolHandler(
-                    clientProtocolConfig);
-
-            final LocalFrameHandler localFrameHandler = new LocalFrameHandler();
-
-            Bootstrap b = new Bootstrap();
-            b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
-            b.group(group).channel(LocalChannel.class)
-                    .handler(new ChannelInitializer<LocalChannel>() {
-                        @Override
-                        protected void initChannel(LocalChannel ch) {
-                            ChannelPipeline p = ch.pipeline();
-                            p.addLast(new HttpClientCodec(), new HttpObjectAggregator(ArthasConstants.MAX_HTTP_CONTENT_LENGTH), websocketClientHandler,
-                                    localFrameHandler);
-                        }
-                    });
-
-            LocalAddress localAddress = new LocalAddress(ArthasConstants.NETTY_LOCAL_ADDRESS);
-            Channel localChannel = b.connect(localAddress).sync().channel();
-            // Channel localChannel = b.connect(localServerURI.getHost(), localServerURI.getPort()).sync().channel();
-            this.handshakeFuture = localFrameHandler.handshakeFuture();
-            handshakeFuture.addListener(new GenericFutureListener<ChannelFuture>() {
-                        @Override
-                        public void operationComplete(ChannelFuture future) throws Exception {
-                            ChannelPipeline pipeline = future.channel().pipeline();
-                            pipeline.remove(localFrameHandler);
-                            pipeline.addLast(new RelayHandler(ctx.channel()));
-                        }
-                    });
+    private void connectLocalServer(final ChannelHandlerContext ctx) {
+        logger.info("ForwardClientSocketClientHandler star connect local arthas server");
+        // 入参URI实际无意义，只为了程序不出错
+        WebSocketClientProtocolConfig clientProtocolConfig = WebSocketClientProtocolConfig.newBuilder()
+                .webSocketUri("ws://127.0.0.1:8563/ws")
+                .maxFramePayloadLength(ArthasConstants.MAX_HTTP_CONTENT_LENGTH).build();
+
+        final WebSocketClientProtocolHandler websocketClientHandler = new WebSocketClientProtocolHandler(
+                clientProtocolConfig);
 
-            handshakeFuture.sync();
-            ctx.pipeline().remove(ForwardClientSocketClientHandler.this);
-            ctx.pipeline().addLast(new RelayHandler(localChannel));
-            logger.info("ForwardClientSocketClientHandler connect local arthas server success");
+        final LocalFrameHandler localFrameHandler = new LocalFrameHandler();
 
-            closeFuture = localChannel.closeFuture();
-        } finally {
-            if (closeFuture != null) {
-                closeFuture.addListener(new ChannelFutureListener() {
+        Bootstrap b = new Bootstrap();
+        b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
+        b.group(ctx.channel().eventLoop()).channel(LocalChannel.class)
+                .handler(new ChannelInitializer<LocalChannel>() {
                     @Override
-                    public void operationComplete(ChannelFuture channelFuture) throws Exception {
-                        group.shutdownGracefully();
+                    protected void initChannel(LocalChannel ch) {
+                        ChannelPipeline p = ch.pipeline();
+                        p.addLast(new HttpClientCodec(), new HttpObjectAggregator(ArthasConstants.MAX_HTTP_CONTENT_LENGTH), websocketClientHandler,
+                                localFrameHandler);
                     }
                 });
-            } else {
-                group.shutdownGracefully();
+
+        ChannelFuture connectFuture = b.connect(new LocalAddress(ArthasConstants.NETTY_LOCAL_ADDRESS));
+        localChannel = connectFuture.channel();
+        // 本地连接断开时，关闭 tunnel 连接
+        localChannel.closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                ChannelUtils.closeOnFlush(ctx.channel());
             }
+        });
+        connectFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    logger.error("ForwardClientSocketClientHandler connect local arthas server error", future.cause());
+                    ctx.close();
+                    return;
+                }
+                localFrameHandler.handshakeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (!future.isSuccess()) {
+                            logger.error("ForwardClientSocketClientHandler local websocket handshake error",
+                                    future.cause());
+                            localChannel.close();
+                            return;
+                        }
+                        startRelay(ctx, localFrameHandler);
+                    }
+                });
+            }
+        });
+    }
+
+    private void startRelay(ChannelHandlerContext ctx, LocalFrameHandler localFrameHandler) {
+        localChannel.pipeline().remove(localFrameHandler);
+        localChannel.pipeline().addLast(new RelayHandler(ctx.channel(), forwardClient.localToTunnelBytes()));
+
+        for (WebSocketFrame frame : pendingFrames) {
+            localChannel.write(frame);
         }
+        pendingFrames.clear();
+        localChannel.flush();
+
+        // 先恢复读取，RelayHandler 加入时如果本地连接不可写会再暂停
+        ctx.channel().config().setAutoRead(true);
+        ctx.pipeline().addLast(new RelayHandler(localChannel, forwardClient.tunnelToLocalBytes()));
+        ctx.pipeline().remove(this);
+        logger.info("ForwardClientSocketClientHandler connect local arthas server success");
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame msg) {
+        pendingFrames.add(msg.retain());
+    }
+
+    private void releasePendingFrames() {
+        for (WebSocketFrame frame : pendingFrames) {
+            frame.release();
+        }
+        pendingFrames.clear();
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         logger.error("ForwardClientSocketClient channel: {}" , ctx.channel(), cause);
-        if (!handshakeFuture.isDone()) {
-            handshakeFuture.setFailure(cause);
-        }
         ctx.close();
     }
 }
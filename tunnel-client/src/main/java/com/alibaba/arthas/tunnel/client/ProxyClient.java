@@ -1,11 +1,17 @@
 package com.alibaba.arthas.tunnel.client;
 
 import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.arthas.tunnel.common.HttpProxyFrame;
 import com.alibaba.arthas.tunnel.common.SimpleHttpResponse;
 import com.taobao.arthas.common.ArthasConstants;
 
@@ -16,150 +22,496 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.local.LocalAddress;
 import io.netty.channel.local.LocalChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.FixedChannelPool;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaderNames;
-import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpObject;
-import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.LastHttpContent;
-import io.netty.util.concurrent.DefaultThreadFactory;
-import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
 
 /**
- * 
+ * <pre>
+ * 代理 tunnel server 发来的 http 请求到本地的 arthas http server。
+ *
+ * 到本地 http server 的 LocalChannel 连接放在连接池里，使用 keep-alive 复用，连接使用 TunnelClient 共享的 EventLoopGroup，
+ * 不会为每个请求新建线程。请求结束时如果本地 server 要求关闭连接，或者响应没有读完，连接不会放回连接池。
+ * </pre>
+ *
  * @author hengyunabc 2020-10-22
  *
  */
 public class ProxyClient {
     private static final Logger logger = LoggerFactory.getLogger(ProxyClient.class);
 
-    public SimpleHttpResponse query(String targetUrl) throws InterruptedException {
-        final Promise<SimpleHttpResponse> httpResponsePromise = GlobalEventExecutor.INSTANCE.newPromise();
+    /**
+     * 到本地 http server 的最大连接数，超过时请求排队等待
+     */
+    private static final int MAX_CONNECTIONS = 16;
+    private static final int MAX_PENDING_ACQUIRES = 256;
+    private static final long ACQUIRE_TIMEOUT_MILLIS = 5000;
 
-        final EventLoopGroup group = new NioEventLoopGroup(1, new DefaultThreadFactory("arthas-ProxyClient", true));
-        ChannelFuture closeFuture = null;
-        try {
-            Bootstrap b = new Bootstrap();
-            b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
-            b.group(group).channel(LocalChannel.class).handler(new ChannelInitializer<LocalChannel>() {
-                @Override
-                protected void initChannel(LocalChannel ch) {
-                    ChannelPipeline p = ch.pipeline();
-                    p.addLast(new HttpClientCodec(), new HttpObjectAggregator(ArthasConstants.MAX_HTTP_CONTENT_LENGTH),
-                            new HttpProxyClientHandler(httpResponsePromise));
-                }
-            });
+    /**
+     * 连接池里的空闲连接超过这个时间后关闭
+     */
+    private static final int IDLE_SECONDS = 60;
 
-            LocalAddress localAddress = new LocalAddress(ArthasConstants.NETTY_LOCAL_ADDRESS);
-            Channel localChannel = b.connect(localAddress).sync().channel();
+    /**
+     * 旧的 TextWebSocketFrame 协议需要一次返回完整的响应，超过这个时间返回错误
+     */
+    private static final long QUERY_TIMEOUT_MILLIS = 5000;
 
-            // Prepare the HTTP request.
-            HttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, targetUrl,
-                    Unpooled.EMPTY_BUFFER);
-            request.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+    private static final AttributeKey<Boolean> ACQUIRED = AttributeKey.valueOf("arthasProxyClientAcquired");
 
-            localChannel.writeAndFlush(request);
+    private final FixedChannelPool pool;
 
-            closeFuture = localChannel.closeFuture();
-            logger.info("proxy client connect to server success, targetUrl: " + targetUrl);
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicLong totalRequests = new AtomicLong();
 
-            return httpResponsePromise.get(5000, TimeUnit.MILLISECONDS);
-        } catch (Throwable e) {
-            logger.error("ProxyClient error, targetUrl: {}", targetUrl, e);
-        } finally {
-            if (closeFuture != null) {
-                closeFuture.addListener(new ChannelFutureListener() {
+    public ProxyClient(EventLoopGroup group) {
+        Bootstrap b = new Bootstrap();
+        b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
+        b.group(group).channel(LocalChannel.class).remoteAddress(new LocalAddress(ArthasConstants.NETTY_LOCAL_ADDRESS));
+
+        pool = new FixedChannelPool(b, new AbstractChannelPoolHandler() {
+            @Override
+            public void channelCreated(Channel ch) {
+                connections.incrementAndGet();
+                ch.closeFuture().addListener(new ChannelFutureListener() {
                     @Override
-                    public void operationComplete(ChannelFuture channelFuture) throws Exception {
-                        group.shutdownGracefully();
+                    public void operationComplete(ChannelFuture future) {
+                        connections.decrementAndGet();
                     }
                 });
+                ch.pipeline().addLast(new HttpClientCodec(), new IdleStateHandler(0, 0, IDLE_SECONDS),
+                        new IdleConnectionHandler());
+            }
+
+            @Override
+            public void channelAcquired(Channel ch) {
+                ch.attr(ACQUIRED).set(Boolean.TRUE);
+            }
+
+            @Override
+            public void channelReleased(Channel ch) {
+                ch.attr(ACQUIRED).set(Boolean.FALSE);
+            }
+        }, ChannelHealthChecker.ACTIVE, FixedChannelPool.AcquireTimeoutAction.FAIL, ACQUIRE_TIMEOUT_MILLIS,
+                MAX_CONNECTIONS, MAX_PENDING_ACQUIRES);
+    }
+
+    /**
+     * 以旧的 TextWebSocketFrame 协议代理请求，返回完整的响应。失败或者超时时返回内容为 error 的响应，不会失败。
+     *
+     * @param executor 通知结果的线程
+     */
+    public Future<SimpleHttpResponse> query(EventExecutor executor, final String targetUrl) {
+        final Promise<SimpleHttpResponse> httpResponsePromise = executor.newPromise();
+        new HttpProxyClientHandler(this, targetUrl, httpResponsePromise).start();
+        return httpResponsePromise;
+    }
+
+    /**
+     * 以 {@link HttpProxyFrame} 二进制协议代理请求：本地 http 响应的 header 和 body 分段写到 tunnel 连接上，不等待完整的响应。
+     *
+     * @return 可以通过 {@link HttpProxyStreamHandler#cancel()} 取消请求
+     */
+    public HttpProxyStreamHandler stream(Channel tunnelChannel, long requestId, String targetUrl) {
+        HttpProxyStreamHandler handler = new HttpProxyStreamHandler(this, tunnelChannel, requestId, targetUrl);
+        handler.start();
+        return handler;
+    }
+
+    /**
+     * 到本地 http server 的连接数，包括空闲的连接
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * 关闭连接池里空闲太久的连接，正在处理请求的连接不关闭
+     */
+    static class IdleConnectionHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent) {
+                if (!Boolean.TRUE.equals(ctx.channel().attr(ACQUIRED).get())) {
+                    ctx.close();
+                }
             } else {
-                group.shutdownGracefully();
+                super.userEventTriggered(ctx, evt);
             }
         }
+    }
+
+    /**
+     * <pre>
+     * 一次到本地 http server 的 GET 请求：从连接池取出连接，把自己加到连接的 pipeline 末尾，响应结束后移除自己并归还连接。
+     * 子类处理响应，所有回调都在连接的 event loop 里调用。
+     * </pre>
+     */
+    abstract static class PooledHttpHandler extends SimpleChannelInboundHandler<HttpObject> {
+        private final ProxyClient client;
+        protected final String targetUrl;
 
-        SimpleHttpResponse httpResponse = new SimpleHttpResponse();
-        try {
-            httpResponse.setContent("error".getBytes("utf-8"));
-        } catch (UnsupportedEncodingException e) {
-            // ignore
+        private volatile Channel channel;
+        private volatile boolean cancelled;
+        private boolean keepAlive;
+        private boolean done;
+
+        PooledHttpHandler(ProxyClient client, String targetUrl) {
+            this.client = client;
+            this.targetUrl = targetUrl;
         }
-        return httpResponse;
-    }
 
-    static class HttpProxyClientHandler extends SimpleChannelInboundHandler<HttpObject> {
+        /**
+         * 收到响应 header
+         */
+        protected abstract void onResponse(HttpResponse response) throws Exception;
 
-        private Promise<SimpleHttpResponse> promise;
+        /**
+         * 收到一段响应 body
+         */
+        protected abstract void onContent(ChannelHandlerContext ctx, HttpContent content) throws Exception;
 
-        private SimpleHttpResponse simpleHttpResponse = new SimpleHttpResponse();
+        /**
+         * 响应已经完整收到
+         */
+        protected abstract void onEnd() throws Exception;
 
-        public HttpProxyClientHandler(Promise<SimpleHttpResponse> promise) {
-            this.promise = promise;
+        /**
+         * 请求失败，或者响应没有读完连接就断开了
+         */
+        protected abstract void onError(String message);
+
+        /**
+         * 请求结束时调用，无论成功还是失败，只调用一次
+         */
+        protected void onComplete() {
         }
 
-        @Override
-        public void channelRead0(ChannelHandlerContext ctx, HttpObject msg) {
-            if (msg instanceof HttpResponse) {
-                HttpResponse response = (HttpResponse) msg;
+        void start() {
+            client.activeRequests.incrementAndGet();
+            client.totalRequests.incrementAndGet();
+            client.pool.acquire().addListener(new FutureListener<Channel>() {
+                @Override
+                public void operationComplete(Future<Channel> future) {
+                    if (!future.isSuccess()) {
+                        logger.error("ProxyClient connect error, targetUrl: {}", targetUrl, future.cause());
+                        onError("connect error: " + future.cause());
+                        complete();
+                        return;
+                    }
+                    final Channel ch = future.getNow();
+                    if (cancelled) {
+                        client.pool.release(ch);
+                        complete();
+                        return;
+                    }
+                    channel = ch;
+                    ch.pipeline().addLast(PooledHttpHandler.this);
 
-                simpleHttpResponse.setStatus(response.status().code());
-                if (!response.headers().isEmpty()) {
-                    for (String name : response.headers().names()) {
-                        for (String value : response.headers().getAll(name)) {
-                            if (logger.isDebugEnabled()) {
-                                logger.debug("header: {}, value: {}", name, value);
+                    HttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, targetUrl,
+                            Unpooled.EMPTY_BUFFER);
+                    ch.writeAndFlush(request).addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) {
+                            if (!future.isSuccess()) {
+                                ch.pipeline().fireExceptionCaught(future.cause());
                             }
+                        }
+                    });
+                }
+            });
+        }
 
-                            simpleHttpResponse.addHeader(name, value);
+        /**
+         * 取消请求，可以在任意线程调用。响应还没有读完的连接会被关闭，不放回连接池。
+         */
+        public void cancel() {
+            cancelled = true;
+            final Channel ch = channel;
+            if (ch != null) {
+                ch.eventLoop().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ChannelHandlerContext ctx = ch.pipeline().context(PooledHttpHandler.this);
+                        if (ctx != null) {
+                            finish(ctx, false);
                         }
                     }
-                }
+                });
+            }
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) throws Exception {
+            if (done) {
+                return;
+            }
+            if (msg instanceof HttpResponse) {
+                HttpResponse response = (HttpResponse) msg;
+                keepAlive = HttpUtil.isKeepAlive(response);
+                onResponse(response);
             }
             if (msg instanceof HttpContent) {
-                HttpContent content = (HttpContent) msg;
+                onContent(ctx, (HttpContent) msg);
+                if (!done && msg instanceof LastHttpContent) {
+                    onEnd();
+                    finish(ctx, keepAlive);
+                }
+            }
+        }
 
-                ByteBuf byteBuf = null;
-                try{
-                    byteBuf = content.content();
-                    byte[] bytes = new byte[byteBuf.readableBytes()];
-                    byteBuf.readBytes(bytes);
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            fail(ctx, "local connection closed before the response is complete");
+            super.channelInactive(ctx);
+        }
 
-                    simpleHttpResponse.setContent(bytes);
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.error("Proxy Client error, targetUrl: {}", targetUrl, cause);
+            fail(ctx, String.valueOf(cause));
+        }
 
-                    promise.setSuccess(simpleHttpResponse);
+        protected void fail(ChannelHandlerContext ctx, String message) {
+            if (!done) {
+                onError(message);
+                finish(ctx, false);
+            }
+        }
 
-                    if (content instanceof LastHttpContent) {
-                        ctx.close();
+        /**
+         * 移除自己，连接可以复用时放回连接池，否则关闭后再归还，让连接池更新连接数
+         */
+        private void finish(ChannelHandlerContext ctx, boolean reuse) {
+            if (done) {
+                return;
+            }
+            done = true;
+            Channel ch = ctx.channel();
+            ctx.pipeline().remove(this);
+            if (reuse) {
+                ch.config().setAutoRead(true);
+            } else {
+                ch.close();
+            }
+            client.pool.release(ch);
+            complete();
+        }
+
+        private void complete() {
+            client.activeRequests.decrementAndGet();
+            onComplete();
+        }
+    }
+
+    /**
+     * 把本地 http 响应按 {@link HttpProxyFrame} 分段写到 tunnel 连接上
+     */
+    static class HttpProxyStreamHandler extends PooledHttpHandler {
+        private final Channel tunnelChannel;
+        private final long requestId;
+        private final Promise<Void> completePromise;
+
+        HttpProxyStreamHandler(ProxyClient client, Channel tunnelChannel, long requestId, String targetUrl) {
+            super(client, targetUrl);
+            this.tunnelChannel = tunnelChannel;
+            this.requestId = requestId;
+            this.completePromise = tunnelChannel.eventLoop().newPromise();
+        }
+
+        /**
+         * 请求结束，包括被取消
+         */
+        public Future<Void> completeFuture() {
+            return completePromise;
+        }
+
+        @Override
+        protected void onResponse(HttpResponse response) throws Exception {
+            Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+            for (String name : response.headers().names()) {
+                // body 会重新分段，逐跳的 header 不转发
+                if (HttpHeaderNames.TRANSFER_ENCODING.contentEqualsIgnoreCase(name)
+                        || HttpHeaderNames.CONNECTION.contentEqualsIgnoreCase(name)) {
+                    continue;
+                }
+                headers.put(name, response.headers().getAll(name));
+            }
+            tunnelChannel.write(new BinaryWebSocketFrame(
+                    Unpooled.wrappedBuffer(HttpProxyFrame.responseHead(requestId, response.status().code(), headers))));
+        }
+
+        @Override
+        protected void onContent(final ChannelHandlerContext ctx, HttpContent msg) {
+            ByteBuf content = msg.content();
+            ChannelFuture lastWrite = null;
+            for (int index = content.readerIndex(); index < content.writerIndex();
+                    index += HttpProxyFrame.MAX_BODY_CHUNK) {
+                int length = Math.min(HttpProxyFrame.MAX_BODY_CHUNK, content.writerIndex() - index);
+                ByteBuf frame = Unpooled.wrappedBuffer(
+                        Unpooled.wrappedBuffer(HttpProxyFrame.header(HttpProxyFrame.BODY, requestId)),
+                        content.retainedSlice(index, length));
+                lastWrite = tunnelChannel.write(new BinaryWebSocketFrame(frame));
+            }
+            if (!(msg instanceof LastHttpContent) && lastWrite != null && !tunnelChannel.isWritable()) {
+                // tunnel 连接的发送缓冲区满了，暂停读取本地响应，直到写出去
+                final Channel localChannel = ctx.channel();
+                localChannel.config().setAutoRead(false);
+                lastWrite.addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        localChannel.config().setAutoRead(true);
                     }
-                }finally {
-                    if (byteBuf != null) {
-                        byteBuf.release();
+                });
+            }
+        }
+
+        @Override
+        protected void onEnd() {
+            tunnelChannel.writeAndFlush(new BinaryWebSocketFrame(
+                    Unpooled.wrappedBuffer(HttpProxyFrame.header(HttpProxyFrame.END, requestId))));
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+            tunnelChannel.flush();
+            super.channelReadComplete(ctx);
+        }
+
+        @Override
+        protected void onError(String message) {
+            tunnelChannel.writeAndFlush(
+                    new BinaryWebSocketFrame(Unpooled.wrappedBuffer(HttpProxyFrame.error(requestId, message))));
+        }
+
+        @Override
+        protected void onComplete() {
+            completePromise.trySuccess(null);
+        }
+    }
+
+    /**
+     * 读取完整的本地 http 响应，用于旧的 TextWebSocketFrame 协议
+     */
+    static class HttpProxyClientHandler extends PooledHttpHandler {
+
+        private final Promise<SimpleHttpResponse> promise;
+
+        private final SimpleHttpResponse simpleHttpResponse = new SimpleHttpResponse();
+
+        private ByteBuf body;
+
+        private ScheduledFuture<?> timeoutFuture;
+
+        HttpProxyClientHandler(ProxyClient client, String targetUrl, Promise<SimpleHttpResponse> promise) {
+            super(client, targetUrl);
+            this.promise = promise;
+        }
+
+        @Override
+        public void handlerAdded(final ChannelHandlerContext ctx) throws Exception {
+            super.handlerAdded(ctx);
+            body = ctx.alloc().buffer();
+            timeoutFuture = ctx.executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    fail(ctx, "timeout");
+                }
+            }, QUERY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+            }
+            if (body != null) {
+                body.release();
+                body = null;
+            }
+            super.handlerRemoved(ctx);
+        }
+
+        @Override
+        protected void onResponse(HttpResponse response) {
+            simpleHttpResponse.setStatus(response.status().code());
+            for (String name : response.headers().names()) {
+                for (String value : response.headers().getAll(name)) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("header: {}, value: {}", name, value);
                     }
+
+                    simpleHttpResponse.addHeader(name, value);
                 }
+            }
+        }
 
+        @Override
+        protected void onContent(ChannelHandlerContext ctx, HttpContent content) throws Exception {
+            if (body.readableBytes() + content.content().readableBytes() > ArthasConstants.MAX_HTTP_CONTENT_LENGTH) {
+                fail(ctx, "response is too large, max: " + ArthasConstants.MAX_HTTP_CONTENT_LENGTH);
+                return;
             }
+            body.writeBytes(content.content());
         }
 
         @Override
-        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-            logger.error("Proxy Client error", cause);
-            ctx.close();
+        protected void onEnd() {
+            byte[] bytes = new byte[body.readableBytes()];
+            body.readBytes(bytes);
+            simpleHttpResponse.setContent(bytes);
+            promise.trySuccess(simpleHttpResponse);
+        }
+
+        @Override
+        protected void onError(String message) {
+            logger.error("ProxyClient error, targetUrl: {}, error: {}", targetUrl, message);
+            SimpleHttpResponse httpResponse = new SimpleHttpResponse();
+            try {
+                httpResponse.setContent("error".getBytes("utf-8"));
+            } catch (UnsupportedEncodingException e) {
+                // ignore
+            }
+            promise.trySuccess(httpResponse);
         }
     }
 }
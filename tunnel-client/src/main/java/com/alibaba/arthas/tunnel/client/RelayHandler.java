@@ -1,20 +1,41 @@
 package com.alibaba.arthas.tunnel.client;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.buffer.ByteBufHolder;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.util.ReferenceCountUtil;
 
+/**
+ * 在 tunnel server 和本地 arthas server 的连接之间转发 frame。一次读取结束时才 flush，
+ * 对端连接不可写时暂停读取本连接，对端的 RelayHandler 收到 channelWritabilityChanged 后再恢复。
+ */
 public final class RelayHandler extends ChannelInboundHandlerAdapter {
     private final static Logger logger = LoggerFactory.getLogger(RelayHandler.class);
     private final Channel relayChannel;
+    /**
+     * 转发的字节数，可以为 null
+     */
+    private final AtomicLong relayedBytes;
 
     public RelayHandler(Channel relayChannel) {
+        this(relayChannel, null);
+    }
+
+    public RelayHandler(Channel relayChannel, AtomicLong relayedBytes) {
         this.relayChannel = relayChannel;
+        this.relayedBytes = relayedBytes;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        updateAutoRead(ctx.channel());
     }
 
     @Override
@@ -25,12 +46,41 @@ public final class RelayHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         if (relayChannel.isActive()) {
-            relayChannel.writeAndFlush(msg);
+            if (relayedBytes != null && msg instanceof ByteBufHolder) {
+                relayedBytes.addAndGet(((ByteBufHolder) msg).content().readableBytes());
+            }
+            relayChannel.write(msg, relayChannel.voidPromise());
+            if (!relayChannel.isWritable()) {
+                relayChannel.flush();
+                updateAutoRead(ctx.channel());
+            }
         } else {
             ReferenceCountUtil.release(msg);
         }
     }
 
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        relayChannel.flush();
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        relayChannel.config().setAutoRead(ctx.channel().isWritable());
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    private void updateAutoRead(Channel channel) {
+        if (!relayChannel.isWritable()) {
+            channel.config().setAutoRead(false);
+            // 对端可能在暂停之前已经恢复了可写
+            if (relayChannel.isWritable()) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         if (relayChannel.isActive()) {
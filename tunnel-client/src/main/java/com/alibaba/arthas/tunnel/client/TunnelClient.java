@@ -3,12 +3,17 @@ package com.alibaba.arthas.tunnel.client;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.SSLException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.arthas.tunnel.common.HttpProxyFrame;
 import com.alibaba.arthas.tunnel.common.MethodConstants;
 import com.alibaba.arthas.tunnel.common.URIConstans;
 import com.taobao.arthas.common.ArthasConstants;
@@ -32,6 +37,7 @@ import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.NettyRuntime;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
@@ -46,9 +52,22 @@ public class TunnelClient {
 
     private int reconnectDelay = 5;
 
+    /**
+     * 注册连接、所有的 ForwardClient 以及到本地 http server 的连接共享的线程数，至少两个线程，因为需要重连 #1284
+     */
+    private static final int EVENT_LOOP_THREADS = Math.max(2, Math.min(4, NettyRuntime.availableProcessors()));
+
     // connect to proxy server
-    // two thread because need to reconnect. #1284
-    private EventLoopGroup eventLoopGroup = new NioEventLoopGroup(2, new DefaultThreadFactory("arthas-TunnelClient", true));
+    private EventLoopGroup eventLoopGroup = new NioEventLoopGroup(EVENT_LOOP_THREADS,
+            new DefaultThreadFactory("arthas-TunnelClient", true));
+
+    private final ProxyClient proxyClient = new ProxyClient(eventLoopGroup);
+
+    /**
+     * 正在转发的 web console 连接
+     */
+    private final Set<ForwardClient> forwards = Collections
+            .newSetFromMap(new ConcurrentHashMap<ForwardClient, Boolean>());
 
     private String appName;
     // agent id, generated by tunnel server. if reconnect, reuse the id
@@ -69,6 +88,7 @@ public class TunnelClient {
         QueryStringEncoder queryEncoder = new QueryStringEncoder(this.tunnelServerUrl);
         queryEncoder.addParam(URIConstans.METHOD, MethodConstants.AGENT_REGISTER);
         queryEncoder.addParam(URIConstans.ARTHAS_VERSION, this.version);
+        queryEncoder.addParam(URIConstans.PROXY_PROTOCOL, HttpProxyFrame.PROTOCOL);
         if (appName != null) {
             queryEncoder.addParam(URIConstans.APP_NAME, appName);
         }
@@ -145,6 +165,8 @@ public class TunnelClient {
                     }
                 }
             });
+            // 重连在 event loop 里执行，新连接可能分配到同一个线程，不能等待。连接失败时 channelUnregistered 会再次重连
+            return connectFuture;
         }
         connectFuture.sync();
 
@@ -152,9 +174,36 @@ public class TunnelClient {
     }
 
     public void stop() {
+        proxyClient.close();
         eventLoopGroup.shutdownGracefully();
     }
 
+    /**
+     * 注册连接、ForwardClient 和 ProxyClient 共享的 EventLoopGroup
+     */
+    public EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    public ProxyClient getProxyClient() {
+        return proxyClient;
+    }
+
+    /**
+     * 正在转发的 web console 连接
+     */
+    public Collection<ForwardClient> getForwards() {
+        return Collections.unmodifiableSet(forwards);
+    }
+
+    void addForward(ForwardClient forwardClient) {
+        forwards.add(forwardClient);
+    }
+
+    void removeForward(ForwardClient forwardClient) {
+        forwards.remove(forwardClient);
+    }
+
     public String getTunnelServerUrl() {
         return tunnelServerUrl;
     }
@@ -4,11 +4,13 @@ package com.alibaba.arthas.tunnel.client;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.arthas.tunnel.common.HttpProxyFrame;
 import com.alibaba.arthas.tunnel.common.MethodConstants;
 import com.alibaba.arthas.tunnel.common.SimpleHttpResponse;
 import com.alibaba.arthas.tunnel.common.URIConstans;
@@ -22,11 +24,14 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.base64.Base64;
 import io.netty.handler.codec.http.QueryStringDecoder;
 import io.netty.handler.codec.http.QueryStringEncoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 
 /**
  * 
@@ -39,6 +44,11 @@ public class TunnelClientSocketClientHandler extends SimpleChannelInboundHandler
     private final TunnelClient tunnelClient;
     private ChannelPromise registerPromise;
 
+    /**
+     * 正在进行的二进制 http proxy 请求，key 为 requestId
+     */
+    private final Map<Long, ProxyClient.HttpProxyStreamHandler> httpProxyStreams = new ConcurrentHashMap<Long, ProxyClient.HttpProxyStreamHandler>();
+
     public TunnelClientSocketClientHandler(TunnelClient tunnelClient) {
         this.tunnelClient = tunnelClient;
     }
@@ -53,8 +63,18 @@ public class TunnelClientSocketClientHandler extends SimpleChannelInboundHandler
     }
 
     @Override
-    public void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
-        if (frame instanceof TextWebSocketFrame) {
+    public void channelRead0(final ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
+        if (frame instanceof BinaryWebSocketFrame) {
+            HttpProxyFrame proxyFrame = HttpProxyFrame.decode(frame.content().nioBuffer());
+            if (proxyFrame.getType() == HttpProxyFrame.REQUEST) {
+                startHttpProxyStream(ctx, proxyFrame.getRequestId(), proxyFrame.payloadAsString());
+            } else if (proxyFrame.getType() == HttpProxyFrame.CANCEL) {
+                ProxyClient.HttpProxyStreamHandler stream = httpProxyStreams.remove(proxyFrame.getRequestId());
+                if (stream != null) {
+                    stream.cancel();
+                }
+            }
+        } else if (frame instanceof TextWebSocketFrame) {
             TextWebSocketFrame textFrame = (TextWebSocketFrame) frame;
             String text = textFrame.text();
 
@@ -87,7 +107,7 @@ public class TunnelClientSocketClientHandler extends SimpleChannelInboundHandler
 
                 logger.info("start ForwardClient, uri: {}", forwardUri);
                 try {
-                    ForwardClient forwardClient = new ForwardClient(forwardUri);
+                    ForwardClient forwardClient = new ForwardClient(forwardUri, tunnelClient);
                     forwardClient.start();
                 } catch (Throwable e) {
                     logger.error("start ForwardClient error, forwardUri: {}", forwardUri, e);
@@ -103,13 +123,14 @@ public class TunnelClientSocketClientHandler extends SimpleChannelInboundHandler
                  * </pre>
                  * 
                  */
-                ProxyClient proxyClient = new ProxyClient();
                 List<String> targetUrls = parameters.get(URIConstans.TARGET_URL);
 
                 List<String> requestIDs = parameters.get(URIConstans.PROXY_REQUEST_ID);
-                String id = null;
+                final String id;
                 if (requestIDs != null && !requestIDs.isEmpty()) {
                     id = requestIDs.get(0);
+                } else {
+                    id = null;
                 }
                 if (id == null) {
                     logger.error("error, http proxy need {}", URIConstans.PROXY_REQUEST_ID);
@@ -118,32 +139,66 @@ public class TunnelClientSocketClientHandler extends SimpleChannelInboundHandler
 
                 if (targetUrls != null && !targetUrls.isEmpty()) {
                     String targetUrl = targetUrls.get(0);
-                    SimpleHttpResponse simpleHttpResponse = proxyClient.query(targetUrl);
-
-                    ByteBuf byteBuf = null;
-                    try{
-                        byteBuf = Base64
-                                .encode(Unpooled.wrappedBuffer(SimpleHttpResponse.toBytes(simpleHttpResponse)));
-                        String requestData = byteBuf.toString(CharsetUtil.UTF_8);
-
-                        QueryStringEncoder queryEncoder = new QueryStringEncoder("");
-                        queryEncoder.addParam(URIConstans.METHOD, MethodConstants.HTTP_PROXY);
-                        queryEncoder.addParam(URIConstans.PROXY_REQUEST_ID, id);
-                        queryEncoder.addParam(URIConstans.PROXY_RESPONSE_DATA, requestData);
-
-                        String url = queryEncoder.toString();
-                        ctx.writeAndFlush(new TextWebSocketFrame(url));
-                    }finally {
-                        if (byteBuf != null) {
-                            byteBuf.release();
-                        }
-                    }
+                    tunnelClient.getProxyClient().query(ctx.executor(), targetUrl)
+                            .addListener(new FutureListener<SimpleHttpResponse>() {
+                                @Override
+                                public void operationComplete(Future<SimpleHttpResponse> future) throws Exception {
+                                    writeHttpProxyResponse(ctx, id, future.getNow());
+                                }
+                            });
                 }
             }
 
         }
     }
 
+    /**
+     * 把 response 转为 byte[]，再转为base64，再统一组合的一个url，再用 TextWebSocketFrame 发回去
+     */
+    private void writeHttpProxyResponse(ChannelHandlerContext ctx, String id, SimpleHttpResponse simpleHttpResponse)
+            throws Exception {
+        ByteBuf byteBuf = null;
+        try{
+            byteBuf = Base64
+                    .encode(Unpooled.wrappedBuffer(SimpleHttpResponse.toBytes(simpleHttpResponse)));
+            String requestData = byteBuf.toString(CharsetUtil.UTF_8);
+
+            QueryStringEncoder queryEncoder = new QueryStringEncoder("");
+            queryEncoder.addParam(URIConstans.METHOD, MethodConstants.HTTP_PROXY);
+            queryEncoder.addParam(URIConstans.PROXY_REQUEST_ID, id);
+            queryEncoder.addParam(URIConstans.PROXY_RESPONSE_DATA, requestData);
+
+            String url = queryEncoder.toString();
+            ctx.writeAndFlush(new TextWebSocketFrame(url));
+        }finally {
+            if (byteBuf != null) {
+                byteBuf.release();
+            }
+        }
+    }
+
+    private void startHttpProxyStream(ChannelHandlerContext ctx, final long requestId, String targetUrl) {
+        logger.info("http proxy stream, requestId: {}, targetUrl: {}", requestId, targetUrl);
+        final ProxyClient.HttpProxyStreamHandler stream = tunnelClient.getProxyClient().stream(ctx.channel(),
+                requestId, targetUrl);
+        httpProxyStreams.put(requestId, stream);
+        stream.completeFuture().addListener(new FutureListener<Void>() {
+            @Override
+            public void operationComplete(Future<Void> future) {
+                httpProxyStreams.remove(requestId, stream);
+            }
+        });
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        for (ProxyClient.HttpProxyStreamHandler stream : httpProxyStreams.values()) {
+            stream.cancel();
+        }
+        httpProxyStreams.clear();
+        super.channelInactive(ctx);
+    }
+
     @Override
     public void channelUnregistered(final ChannelHandlerContext ctx) throws Exception {
         tunnelClient.setConnected(false);
@@ -0,0 +1,172 @@
+package com.alibaba.arthas.tunnel.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <pre>
+ * tunnel server 和 tunnel client 之间的 http proxy 二进制协议，使用 BinaryWebSocketFrame 传输。
+ *
+ * 每个 frame 的格式：version(1 byte) type(1 byte) requestId(8 bytes) payload
+ *
+ * server -> client:
+ *   REQUEST       payload 为 UTF-8 的 targetUrl
+ *   CANCEL        浏览器断开，client 停止读取本地 http 响应
+ * client -> server:
+ *   RESPONSE_HEAD payload 为 status(int) headerCount(int) 以及 headerCount 对 name/value（DataOutput.writeUTF）
+ *   BODY          payload 为一段响应 body，每段最多 MAX_BODY_CHUNK 字节
+ *   END           响应结束
+ *   ERROR         payload 为 UTF-8 的错误信息
+ *
+ * 同一个 agent 连接上可以同时有多个请求，用 requestId 区分；body 分段发送，不需要在任何一端把整个响应放到内存里。
+ * agent 注册时通过 {@link URIConstans#PROXY_PROTOCOL} 参数声明支持这个协议，否则 server 使用原来的 TextWebSocketFrame 方式。
+ * </pre>
+ */
+public class HttpProxyFrame {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * agent 注册时 {@link URIConstans#PROXY_PROTOCOL} 参数的值
+     */
+    public static final String PROTOCOL = "binary-v1";
+
+    public static final byte VERSION = 1;
+
+    public static final byte REQUEST = 1;
+    public static final byte RESPONSE_HEAD = 2;
+    public static final byte BODY = 3;
+    public static final byte END = 4;
+    public static final byte ERROR = 5;
+    public static final byte CANCEL = 6;
+
+    public static final int HEADER_LENGTH = 10;
+
+    public static final int MAX_BODY_CHUNK = 64 * 1024;
+
+    private final byte type;
+    private final long requestId;
+    private final ByteBuffer payload;
+
+    private HttpProxyFrame(byte type, long requestId, ByteBuffer payload) {
+        this.type = type;
+        this.requestId = requestId;
+        this.payload = payload;
+    }
+
+    /**
+     * 解析 frame，payload 与 buffer 共享内容，不会复制
+     */
+    public static HttpProxyFrame decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_LENGTH) {
+            throw new IOException("http proxy frame is too short: " + buffer.remaining());
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("unsupported http proxy frame version: " + version);
+        }
+        byte type = buffer.get();
+        long requestId = buffer.getLong();
+        return new HttpProxyFrame(type, requestId, buffer.slice());
+    }
+
+    public static byte[] header(byte type, long requestId) {
+        return ByteBuffer.allocate(HEADER_LENGTH).put(VERSION).put(type).putLong(requestId).array();
+    }
+
+    public static byte[] request(long requestId, String targetUrl) {
+        return withPayload(REQUEST, requestId, targetUrl.getBytes(UTF_8));
+    }
+
+    public static byte[] error(long requestId, String message) {
+        return withPayload(ERROR, requestId, String.valueOf(message).getBytes(UTF_8));
+    }
+
+    /**
+     * @param headers 同名的 header 可以有多个值，例如 Set-Cookie
+     */
+    public static byte[] responseHead(long requestId, int status, Map<String, List<String>> headers)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.write(header(RESPONSE_HEAD, requestId));
+        out.writeInt(status);
+        int count = 0;
+        for (List<String> values : headers.values()) {
+            count += values.size();
+        }
+        out.writeInt(count);
+        for (Entry<String, List<String>> entry : headers.entrySet()) {
+            for (String value : entry.getValue()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(value);
+            }
+        }
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    private static byte[] withPayload(byte type, long requestId, byte[] payload) {
+        return ByteBuffer.allocate(HEADER_LENGTH + payload.length).put(VERSION).put(type).putLong(requestId)
+                .put(payload).array();
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    /**
+     * REQUEST 的 targetUrl，或者 ERROR 的错误信息
+     */
+    public String payloadAsString() {
+        return UTF_8.decode(payload.duplicate()).toString();
+    }
+
+    /**
+     * RESPONSE_HEAD 的 status
+     */
+    public int status() {
+        return payload.getInt(payload.position());
+    }
+
+    /**
+     * RESPONSE_HEAD 的 headers，保持原来的顺序
+     */
+    public Map<String, List<String>> headers() throws IOException {
+        // response head 很小，复制一份再用 DataInputStream 解析
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        in.readInt();
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i) {
+            String name = in.readUTF();
+            String value = in.readUTF();
+            List<String> values = headers.get(name);
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                headers.put(name, values);
+            }
+            values.add(value);
+        }
+        return headers;
+    }
+}
@@ -53,8 +53,19 @@ public class MethodConstants {
     /**
      * <pre>
      * tunnel server向 tunnel client请求 http中转，比如访问 http://localhost:3658/arthas-output/xxx.html
+     *
+     * 支持 {@link HttpProxyFrame} 的 agent 使用二进制协议，不再使用这个 method
      * </pre>
      */
     public static final String HTTP_PROXY = "httpProxy";
 
+    /**
+     * <pre>
+     * 集群部署时 tunnel server 节点之间的连接，浏览器连到的节点通过它转发到 agent 所在的节点
+     *
+     * ws://192.168.1.11:7777/ws?method=nodeLink
+     * </pre>
+     */
+    public static final String NODE_LINK = "nodeLink";
+
 }
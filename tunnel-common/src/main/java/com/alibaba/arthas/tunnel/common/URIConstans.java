@@ -39,6 +39,13 @@ public class URIConstans {
      * proxy请求的返回值，base64编码
      */
     public static final String PROXY_RESPONSE_DATA = "responseData";
+
+    /**
+     * agent 注册时声明支持的 http proxy 协议
+     *
+     * @see com.alibaba.arthas.tunnel.common.HttpProxyFrame#PROTOCOL
+     */
+    public static final String PROXY_PROTOCOL = "proxyProtocol";
  
     public static final String ARTHAS_VERSION = "arthasVersion";
 
@@ -0,0 +1,59 @@
+package com.alibaba.arthas.tunnel.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class HttpProxyFrameTest {
+
+    @Test
+    public void testRequest() throws IOException {
+        HttpProxyFrame frame = HttpProxyFrame.decode(ByteBuffer.wrap(HttpProxyFrame.request(42, "/arthas-output/中文.html")));
+
+        assertEquals(HttpProxyFrame.REQUEST, frame.getType());
+        assertEquals(42, frame.getRequestId());
+        assertEquals("/arthas-output/中文.html", frame.payloadAsString());
+    }
+
+    @Test
+    public void testResponseHead() throws IOException {
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        headers.put("Content-Type", Arrays.asList("text/html"));
+        headers.put("Set-Cookie", Arrays.asList("a=1", "b=2"));
+
+        HttpProxyFrame frame = HttpProxyFrame
+                .decode(ByteBuffer.wrap(HttpProxyFrame.responseHead(Long.MAX_VALUE, 404, headers)));
+
+        assertEquals(HttpProxyFrame.RESPONSE_HEAD, frame.getType());
+        assertEquals(Long.MAX_VALUE, frame.getRequestId());
+        assertEquals(404, frame.status());
+        assertEquals(headers, frame.headers());
+    }
+
+    @Test
+    public void testBody() throws IOException {
+        byte[] header = HttpProxyFrame.header(HttpProxyFrame.BODY, 7);
+        ByteBuffer buffer = ByteBuffer.allocate(header.length + 3).put(header).put(new byte[] { 1, 2, 3 });
+        buffer.flip();
+
+        HttpProxyFrame frame = HttpProxyFrame.decode(buffer);
+
+        assertEquals(HttpProxyFrame.BODY, frame.getType());
+        assertEquals(3, frame.getPayload().remaining());
+        assertEquals(3, frame.getPayload().get(2));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownVersion() throws IOException {
+        byte[] bytes = HttpProxyFrame.header(HttpProxyFrame.END, 1);
+        bytes[0] = 99;
+        HttpProxyFrame.decode(ByteBuffer.wrap(bytes));
+    }
+}
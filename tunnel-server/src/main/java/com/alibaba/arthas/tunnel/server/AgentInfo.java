@@ -16,6 +16,12 @@ public class AgentInfo {
     private String host;
     private int port;
     private String arthasVersion;
+    /**
+     * agent 支持的 http proxy 协议，老版本的 agent 为 null
+     *
+     * @see com.alibaba.arthas.tunnel.common.HttpProxyFrame#PROTOCOL
+     */
+    private String proxyProtocol;
 
     public ChannelHandlerContext getChannelHandlerContext() {
         return channelHandlerContext;
@@ -49,4 +55,12 @@ public class AgentInfo {
         this.arthasVersion = arthasVersion;
     }
 
+    public String getProxyProtocol() {
+        return proxyProtocol;
+    }
+
+    public void setProxyProtocol(String proxyProtocol) {
+        this.proxyProtocol = proxyProtocol;
+    }
+
 }
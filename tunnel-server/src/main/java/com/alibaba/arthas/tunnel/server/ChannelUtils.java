@@ -3,6 +3,7 @@ package com.alibaba.arthas.tunnel.server;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOutboundBuffer;
 
 public final class ChannelUtils {
 
@@ -15,6 +16,14 @@ public final class ChannelUtils {
         }
     }
 
+    /**
+     * 已经 write 但是还没有写到 socket 的字节数
+     */
+    public static long pendingWriteBytes(Channel ch) {
+        ChannelOutboundBuffer buffer = ch.unsafe().outboundBuffer();
+        return buffer == null ? 0 : buffer.totalPendingWriteBytes();
+    }
+
     private ChannelUtils() {
     }
 }
\ No newline at end of file
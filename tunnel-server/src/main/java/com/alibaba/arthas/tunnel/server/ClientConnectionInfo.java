@@ -24,6 +24,12 @@ public class ClientConnectionInfo {
     @JsonIgnore
     private Promise<Channel> promise;
 
+    /**
+     * agent openTunnel 的连接，转发开始之后才有
+     */
+    @JsonIgnore
+    private Channel agentChannel;
+
     public ChannelHandlerContext getChannelHandlerContext() {
         return channelHandlerContext;
     }
@@ -40,6 +46,14 @@ public class ClientConnectionInfo {
         this.promise = promise;
     }
 
+    public Channel getAgentChannel() {
+        return agentChannel;
+    }
+
+    public void setAgentChannel(Channel agentChannel) {
+        this.agentChannel = agentChannel;
+    }
+
     public String getHost() {
         return host;
     }
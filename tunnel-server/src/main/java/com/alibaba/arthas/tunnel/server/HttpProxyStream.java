@@ -0,0 +1,315 @@
+package com.alibaba.arthas.tunnel.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.arthas.tunnel.common.HttpProxyFrame;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * <pre>
+ * 一次二进制 http proxy 请求，见 {@link HttpProxyFrame}。
+ *
+ * agent 连接的 netty 线程收到 frame 后只放入队列，不会阻塞；队列里有数据时才向 writeExecutor 提交写任务，
+ * 写任务把队列里的 body 写给浏览器，队列空了就退出，不会有线程阻塞等待 agent 的数据。
+ * 队列里的数据超过 HIGH_WATER_MARK 时暂停读取 agent 连接，降到 LOW_WATER_MARK 以下再恢复。
+ * 超过 idleTimeoutMillis 没有收到 agent 的数据时，以超时错误结束。
+ * </pre>
+ */
+public abstract class HttpProxyStream {
+    private final static Logger logger = LoggerFactory.getLogger(HttpProxyStream.class);
+
+    /**
+     * agent 连接上暂停读取的请求数，为 0 时才恢复读取
+     */
+    private static final AttributeKey<AtomicInteger> PAUSED_STREAMS = AttributeKey
+            .valueOf("arthasHttpProxyPausedStreams");
+
+    private static final long HIGH_WATER_MARK = 1024 * 1024;
+    private static final long LOW_WATER_MARK = 256 * 1024;
+
+    private static final Object END = new Object();
+
+    private final long requestId;
+    private final Channel agentChannel;
+    private final Executor writeExecutor;
+    private final long idleTimeoutMillis;
+
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<Object>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    /**
+     * 是否已经提交了写任务，同一时刻只有一个写任务
+     */
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private boolean paused;
+    private volatile boolean headReceived;
+    private volatile boolean finished;
+    private volatile long lastActiveNanos;
+    private volatile ScheduledFuture<?> idleCheck;
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    private final ChannelFutureListener agentCloseListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            onError("agent disconnected");
+        }
+    };
+
+    /**
+     * @param writeExecutor     把 body 写给浏览器的线程池
+     * @param idleTimeoutMillis 等待 agent 下一个 frame 的超时时间
+     */
+    public HttpProxyStream(long requestId, Channel agentChannel, Executor writeExecutor, long idleTimeoutMillis) {
+        this.requestId = requestId;
+        this.agentChannel = agentChannel;
+        this.writeExecutor = writeExecutor;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * 向 agent 发送请求
+     */
+    public void start(String targetUrl) {
+        agentChannel.closeFuture().addListener(agentCloseListener);
+        lastActiveNanos = System.nanoTime();
+        scheduleIdleCheck(idleTimeoutMillis);
+        agentChannel.writeAndFlush(
+                new BinaryWebSocketFrame(Unpooled.wrappedBuffer(HttpProxyFrame.request(requestId, targetUrl))));
+    }
+
+    /**
+     * 收到 agent 的响应 header，在 netty 线程里调用
+     */
+    protected abstract void onResponseHead(int status, Map<String, List<String>> headers);
+
+    /**
+     * 收到响应 header 之前就失败了
+     */
+    protected abstract void onFailure(String message);
+
+    /**
+     * 把一段响应 body 写给浏览器，在 writeExecutor 里调用
+     */
+    protected abstract void onBody(byte[] body) throws IOException;
+
+    /**
+     * 响应 body 结束，error 为 null 表示正常结束，在 writeExecutor 里调用
+     */
+    protected abstract void onBodyEnd(IOException error);
+
+    /**
+     * 处理 agent 发来的 frame，在 netty 线程里调用
+     *
+     * @param content frame 的全部内容，包括 frame header
+     */
+    public void onFrame(HttpProxyFrame frame, ByteBuf content) throws IOException {
+        lastActiveNanos = System.nanoTime();
+        switch (frame.getType()) {
+        case HttpProxyFrame.RESPONSE_HEAD:
+            headReceived = true;
+            onResponseHead(frame.status(), frame.headers());
+            break;
+        case HttpProxyFrame.BODY:
+            int length = content.readableBytes() - HttpProxyFrame.HEADER_LENGTH;
+            if (length > 0 && !finished) {
+                queue.add(content.retainedSlice(content.readerIndex() + HttpProxyFrame.HEADER_LENGTH, length));
+                if (finished) {
+                    // 与 close 并发，close 已经清空了队列
+                    drain();
+                } else if (queuedBytes.addAndGet(length) > HIGH_WATER_MARK) {
+                    pause();
+                }
+                scheduleWrite();
+            }
+            break;
+        case HttpProxyFrame.END:
+            queue.add(END);
+            scheduleWrite();
+            break;
+        case HttpProxyFrame.ERROR:
+            onError(frame.payloadAsString());
+            break;
+        default:
+            logger.warn("unknown http proxy frame type: {}, requestId: {}", frame.getType(), requestId);
+        }
+    }
+
+    private void onError(String message) {
+        if (headReceived) {
+            queue.add(new IOException(message));
+            scheduleWrite();
+        } else {
+            onFailure(message);
+        }
+    }
+
+    /**
+     * 开始把响应 body 写给浏览器，在 onResponseHead 之后调用
+     */
+    public void startWriting() {
+        scheduleWrite();
+    }
+
+    private void scheduleWrite() {
+        if (!queue.isEmpty() && writing.compareAndSet(false, true)) {
+            writeExecutor.execute(writeTask);
+        }
+    }
+
+    /**
+     * 把队列里的 body 写给浏览器，队列空了就返回，下一个 frame 到来时再提交写任务
+     */
+    private void write() {
+        try {
+            Object item;
+            while ((item = queue.poll()) != null) {
+                if (finished) {
+                    ReferenceCountUtil.release(item);
+                    continue;
+                }
+                if (item == END) {
+                    finished = true;
+                    onBodyEnd(null);
+                    return;
+                }
+                if (item instanceof IOException) {
+                    finished = true;
+                    onBodyEnd((IOException) item);
+                    return;
+                }
+                ByteBuf body = (ByteBuf) item;
+                int length = body.readableBytes();
+                byte[] bytes = new byte[length];
+                try {
+                    body.readBytes(bytes);
+                } finally {
+                    body.release();
+                }
+                if (queuedBytes.addAndGet(-length) < LOW_WATER_MARK) {
+                    resume();
+                }
+                try {
+                    onBody(bytes);
+                } catch (IOException e) {
+                    // 浏览器已经断开
+                    logger.debug("http proxy write body error, requestId: {}", requestId, e);
+                    onBodyEnd(e);
+                    close();
+                    return;
+                }
+            }
+        } finally {
+            writing.set(false);
+        }
+        // 退出前有新的数据入队
+        scheduleWrite();
+    }
+
+    private void scheduleIdleCheck(long delayMillis) {
+        idleCheck = agentChannel.eventLoop().schedule(new Runnable() {
+            @Override
+            public void run() {
+                checkIdle();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkIdle() {
+        if (finished) {
+            return;
+        }
+        long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActiveNanos);
+        if (idleMillis >= idleTimeoutMillis) {
+            onError("http proxy response timeout, requestId: " + requestId);
+        } else {
+            scheduleIdleCheck(idleTimeoutMillis - idleMillis);
+        }
+    }
+
+    /**
+     * 请求结束时调用：释放队列中的数据，如果响应还没有结束，通知 agent 停止发送
+     */
+    public void close() {
+        agentChannel.closeFuture().removeListener(agentCloseListener);
+        ScheduledFuture<?> check = idleCheck;
+        if (check != null) {
+            check.cancel(false);
+        }
+        if (!finished) {
+            finished = true;
+            agentChannel.writeAndFlush(new BinaryWebSocketFrame(
+                    Unpooled.wrappedBuffer(HttpProxyFrame.header(HttpProxyFrame.CANCEL, requestId))));
+        }
+        drain();
+    }
+
+    private void drain() {
+        Object item;
+        while ((item = queue.poll()) != null) {
+            ReferenceCountUtil.release(item);
+        }
+        queuedBytes.set(0);
+        resume();
+    }
+
+    private synchronized void pause() {
+        // close 之后不再暂停，否则没有人恢复读取
+        if (!paused && !finished) {
+            paused = true;
+            if (pausedStreams(agentChannel).incrementAndGet() == 1) {
+                agentChannel.config().setAutoRead(false);
+            }
+        }
+    }
+
+    private synchronized void resume() {
+        if (paused) {
+            paused = false;
+            if (pausedStreams(agentChannel).decrementAndGet() == 0) {
+                agentChannel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    private static AtomicInteger pausedStreams(Channel channel) {
+        AtomicInteger counter = channel.attr(PAUSED_STREAMS).get();
+        if (counter == null) {
+            counter = new AtomicInteger();
+            AtomicInteger exist = channel.attr(PAUSED_STREAMS).setIfAbsent(counter);
+            if (exist != null) {
+                counter = exist;
+            }
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,456 @@
+package com.alibaba.arthas.tunnel.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler.ClientHandshakeStateEvent;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * <pre>
+ * tunnel server 节点之间的连接，协议见 {@link NodeLinkFrame}。
+ *
+ * 集群部署时浏览器可能连到任意一个节点。agent 不在本节点时，浏览器所在节点从 TunnelClusterStore 找到 agent 所在的节点，
+ * 通过 {@link NodeLinkClient} 取得到那个节点的 NodeLink，在上面打开一个会话：
+ *
+ *   浏览器所在节点（发起连接的一端）：发送 OPEN，之后把浏览器的 frame 包装为 DATA 发送，收到的 DATA 写给浏览器
+ *   agent 所在节点（接受连接的一端）：收到 OPEN 后和本地浏览器连接一样通知 agent startTunnel，agent openTunnel 之后回复 OPENED，
+ *   在这之前收到的 DATA 先缓存
+ *
+ * 一个 NodeLink 上可以同时有多个会话，用 sessionId 区分。任意一端的连接断开时发送 CLOSE，NodeLink 断开时关闭上面所有会话的连接。
+ * 会话的状态只在 NodeLink 的 event loop 里修改。
+ * NodeLink 的写缓冲超过 high water mark 时暂停读取所有会话的浏览器或者 agent 连接，NodeLink 是共享的，不会因为一个会话慢而暂停读取 NodeLink。
+ * 一个会话的浏览器或者 agent 慢时，由会话的发送窗口（WINDOW，见 {@link NodeLinkFrame}）暂停对端读取这个会话的连接；
+ * agent openTunnel 之前缓存的 DATA 超过 MAX_PENDING_BYTES 时关闭会话。
+ * </pre>
+ */
+public class NodeLink extends SimpleChannelInboundHandler<WebSocketFrame> {
+    private final static Logger logger = LoggerFactory.getLogger(NodeLink.class);
+
+    /**
+     * 等待 agent openTunnel 的时间
+     */
+    private static final long OPEN_TIMEOUT_SECONDS = 20;
+
+    /**
+     * agent openTunnel 之前最多缓存的 DATA 字节数，对端受发送窗口限制，正常不会超过
+     */
+    private static final long MAX_PENDING_BYTES = 4L * NodeLinkFrame.SESSION_WINDOW;
+
+    private final TunnelServer tunnelServer;
+
+    /**
+     * true 表示是接受的连接，agent 在本节点
+     */
+    private final boolean accepted;
+
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+    private final AtomicLong sessionIdGenerator = new AtomicLong();
+
+    private volatile Channel channel;
+    private ChannelPromise handshakeFuture;
+
+    public NodeLink(TunnelServer tunnelServer, boolean accepted) {
+        this.tunnelServer = tunnelServer;
+        this.accepted = accepted;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        channel = ctx.channel();
+        handshakeFuture = ctx.newPromise();
+        if (accepted) {
+            // 接受的连接在握手完成之后才会替换为 NodeLink
+            handshakeFuture.setSuccess();
+        }
+    }
+
+    /**
+     * 发起连接的一端 websocket 握手完成
+     */
+    public ChannelPromise handshakeFuture() {
+        return handshakeFuture;
+    }
+
+    public boolean isActive() {
+        Channel ch = channel;
+        return ch != null && ch.isActive();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * 会话数，以及 NodeLink 和各个会话连接写缓冲里的字节数
+     */
+    public Map<String, Object> stat() {
+        Map<String, Object> stat = new LinkedHashMap<String, Object>();
+        Channel ch = channel;
+        stat.put("sessions", sessions.size());
+        stat.put("writable", ch != null && ch.isWritable());
+        stat.put("pendingWriteBytes", ch == null ? 0 : ChannelUtils.pendingWriteBytes(ch));
+        long sessionPendingWriteBytes = 0;
+        for (Session session : sessions.values()) {
+            Channel localChannel = session.localChannel;
+            if (localChannel != null) {
+                sessionPendingWriteBytes += ChannelUtils.pendingWriteBytes(localChannel);
+            }
+        }
+        stat.put("sessionPendingWriteBytes", sessionPendingWriteBytes);
+        return stat;
+    }
+
+    public void close() {
+        Channel ch = channel;
+        if (ch != null) {
+            ch.close();
+        }
+    }
+
+    /**
+     * 在发起连接的一端打开一个会话，之后 browserChannel 上的 frame 转发给 agent 所在的节点
+     */
+    public void open(String agentId, final Channel browserChannel) {
+        final long sessionId = sessionIdGenerator.incrementAndGet();
+        final Session session = new Session();
+        session.localChannel = browserChannel;
+        sessions.put(sessionId, session);
+        browserChannel.pipeline().addLast(new LocalRelayHandler(sessionId));
+        channel.writeAndFlush(NodeLinkFrame.frame(channel.alloc(), NodeLinkFrame.OPEN, sessionId, agentId));
+
+        browserChannel.eventLoop().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!session.opened && sessions.containsKey(sessionId)) {
+                    logger.error("wait for remote arthas agent open tunnel timeout, sessionId: {}", sessionId);
+                    browserChannel.close();
+                }
+            }
+        }, OPEN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame msg) throws Exception {
+        if (!(msg instanceof BinaryWebSocketFrame)) {
+            return;
+        }
+        NodeLinkFrame frame = NodeLinkFrame.decode(msg.content());
+        long sessionId = frame.getSessionId();
+        switch (frame.getType()) {
+        case NodeLinkFrame.OPEN:
+            onOpen(ctx, sessionId, frame.payloadAsString(msg.content()));
+            break;
+        case NodeLinkFrame.OPENED:
+            Session opened = sessions.get(sessionId);
+            if (opened != null) {
+                opened.opened = true;
+            } else {
+                sendClose(sessionId, null);
+            }
+            break;
+        case NodeLinkFrame.DATA:
+            onData(sessionId, frame.toWebSocketFrame(msg.content()));
+            break;
+        case NodeLinkFrame.WINDOW:
+            Session window = sessions.get(sessionId);
+            if (window != null) {
+                window.sendWindow.addAndGet(frame.payloadAsInt(msg.content()));
+                updateAutoRead(window);
+            }
+            break;
+        case NodeLinkFrame.CLOSE:
+            Session closed = sessions.remove(sessionId);
+            if (closed != null) {
+                logger.info("node link session closed by peer, sessionId: {}, reason: {}", sessionId,
+                        frame.payloadAsString(msg.content()));
+                closed.close();
+            }
+            break;
+        default:
+            logger.warn("unknown node link frame type: {}, sessionId: {}", frame.getType(), sessionId);
+        }
+    }
+
+    private void onData(long sessionId, WebSocketFrame frame) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            frame.release();
+        } else if (session.localChannel == null) {
+            session.pendingBytes += frame.content().readableBytes();
+            if (session.pendingBytes > MAX_PENDING_BYTES) {
+                frame.release();
+                logger.error("node link session pending data exceeds {} bytes before agent open tunnel, sessionId: {}",
+                        MAX_PENDING_BYTES, sessionId);
+                sessions.remove(sessionId);
+                session.close();
+                sendClose(sessionId, "too much data before arthas agent open tunnel");
+                return;
+            }
+            session.pendingFrames.add(frame);
+        } else {
+            writeLocal(sessionId, session, frame);
+            session.localChannel.flush();
+        }
+    }
+
+    /**
+     * 把对端的 DATA 写到本地连接，写到 socket 之后把窗口还给对端
+     */
+    private void writeLocal(final long sessionId, final Session session, WebSocketFrame frame) {
+        final int length = frame.content().readableBytes();
+        session.localChannel.write(frame).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    ack(sessionId, session, length);
+                }
+            }
+        });
+    }
+
+    /**
+     * 攒够半个窗口再发送 WINDOW，对端剩余的窗口不会少于半个窗口减去还没有写完的字节数
+     */
+    private void ack(long sessionId, Session session, int length) {
+        int unacked = session.unacked.addAndGet(length);
+        if (unacked < NodeLinkFrame.SESSION_WINDOW / 2 || !session.unacked.compareAndSet(unacked, 0)) {
+            return;
+        }
+        Channel ch = channel;
+        if (ch != null && ch.isActive() && sessions.get(sessionId) == session) {
+            ch.writeAndFlush(NodeLinkFrame.window(ch.alloc(), sessionId, unacked));
+        }
+    }
+
+    /**
+     * NodeLink 可写并且会话还有发送窗口时才读取会话的本地连接
+     */
+    private void updateAutoRead(Session session) {
+        Channel localChannel = session.localChannel;
+        Channel ch = channel;
+        if (localChannel != null && ch != null) {
+            localChannel.config().setAutoRead(ch.isWritable() && session.sendWindow.get() > 0);
+        }
+    }
+
+    /**
+     * agent 所在的节点收到 OPEN，与 TunnelSocketFrameHandler#connectArthas 一样通知 agent 打开一个新的连接
+     */
+    private void onOpen(final ChannelHandlerContext ctx, final long sessionId, final String agentId) {
+        if (!accepted) {
+            return;
+        }
+        Optional<AgentInfo> findAgent = tunnelServer.findAgent(agentId);
+        if (!findAgent.isPresent()) {
+            logger.error("node link can not find arthas agent by id: {}", agentId);
+            sendClose(sessionId, "Can not find arthas agent by id: " + agentId);
+            return;
+        }
+        final Session session = new Session();
+        sessions.put(sessionId, session);
+
+        final String clientConnectionId = RandomStringUtils.random(20, true, true).toUpperCase();
+        ClientConnectionInfo clientConnectionInfo = new ClientConnectionInfo();
+        clientConnectionInfo.setChannelHandlerContext(ctx);
+
+        // 在 NodeLink 的 event loop 里处理 agent 的连接
+        final Promise<Channel> promise = ctx.executor().newPromise();
+        promise.addListener(new FutureListener<Channel>() {
+            @Override
+            public void operationComplete(Future<Channel> future) throws Exception {
+                tunnelServer.removeClientConnectionInfo(clientConnectionId);
+                if (!future.isSuccess()) {
+                    logger.error("node link wait for agent connect error. agentId: {}, clientConnectionId: {}",
+                            agentId, clientConnectionId);
+                    if (sessions.remove(sessionId) != null) {
+                        session.close();
+                        sendClose(sessionId, "wait for arthas agent open tunnel timeout");
+                    }
+                    return;
+                }
+                Channel agentChannel = future.getNow();
+                if (sessions.get(sessionId) != session) {
+                    // 浏览器已经断开
+                    ChannelUtils.closeOnFlush(agentChannel);
+                    return;
+                }
+                // agentChannel is form arthas agent
+                agentChannel.pipeline().removeLast();
+                agentChannel.pipeline().addLast(new LocalRelayHandler(sessionId));
+                session.localChannel = agentChannel;
+                for (WebSocketFrame frame : session.pendingFrames) {
+                    writeLocal(sessionId, session, frame);
+                }
+                session.pendingFrames.clear();
+                session.pendingBytes = 0;
+                agentChannel.flush();
+                session.opened = true;
+                channel.writeAndFlush(NodeLinkFrame.frame(channel.alloc(), NodeLinkFrame.OPENED, sessionId, null));
+                logger.info("node link open tunnel success, agentId: {}, sessionId: {}", agentId, sessionId);
+            }
+        });
+        clientConnectionInfo.setPromise(promise);
+        tunnelServer.addClientConnectionInfo(clientConnectionId, clientConnectionInfo);
+
+        ctx.executor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                promise.tryFailure(new IllegalStateException("wait for arthas agent open tunnel timeout"));
+            }
+        }, OPEN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        findAgent.get().getChannelHandlerContext().channel().writeAndFlush(
+                new TextWebSocketFrame(TunnelSocketFrameHandler.startTunnelUri(agentId, clientConnectionId)));
+    }
+
+    private void sendClose(long sessionId, String reason) {
+        Channel ch = channel;
+        if (ch != null && ch.isActive()) {
+            ch.writeAndFlush(NodeLinkFrame.frame(ch.alloc(), NodeLinkFrame.CLOSE, sessionId, reason));
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt == ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+            handshakeFuture.trySuccess();
+        } else if (evt == ClientHandshakeStateEvent.HANDSHAKE_TIMEOUT) {
+            handshakeFuture.tryFailure(new IllegalStateException("node link handshake timeout"));
+        } else if (evt instanceof IdleStateEvent) {
+            ctx.writeAndFlush(new PingWebSocketFrame());
+        } else {
+            ctx.fireUserEventTriggered(evt);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        for (Session session : sessions.values()) {
+            updateAutoRead(session);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        handshakeFuture.tryFailure(new IllegalStateException("node link closed before handshake"));
+        logger.info("node link closed: {}, sessions: {}", ctx.channel(), sessions.size());
+        for (Session session : sessions.values()) {
+            session.close();
+        }
+        sessions.clear();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.error("node link error, channel: {}", ctx.channel(), cause);
+        ctx.close();
+    }
+
+    private static class Session {
+        /**
+         * 发起连接的一端为浏览器的连接，接受连接的一端为 agent openTunnel 的连接
+         */
+        volatile Channel localChannel;
+        volatile boolean opened;
+        final List<WebSocketFrame> pendingFrames = new ArrayList<WebSocketFrame>();
+        long pendingBytes;
+        /**
+         * 还可以发送给对端的字节数，在本地连接的 event loop 里减少，收到 WINDOW 时在 NodeLink 的 event loop 里增加
+         */
+        final AtomicLong sendWindow = new AtomicLong(NodeLinkFrame.SESSION_WINDOW);
+        /**
+         * 已经写到本地连接的 socket，还没有通过 WINDOW 还给对端的字节数
+         */
+        final AtomicInteger unacked = new AtomicInteger();
+
+        void close() {
+            for (WebSocketFrame frame : pendingFrames) {
+                ReferenceCountUtil.release(frame);
+            }
+            pendingFrames.clear();
+            if (localChannel != null) {
+                ChannelUtils.closeOnFlush(localChannel);
+            }
+        }
+    }
+
+    /**
+     * 把浏览器或者 agent 连接上的 frame 转发到 NodeLink
+     */
+    private class LocalRelayHandler extends ChannelInboundHandlerAdapter {
+        private final long sessionId;
+
+        LocalRelayHandler(long sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            Channel ch = channel;
+            Session session = sessions.get(sessionId);
+            if (msg instanceof WebSocketFrame && ch.isActive() && session != null) {
+                int length = ((WebSocketFrame) msg).content().readableBytes();
+                List<BinaryWebSocketFrame> frames = NodeLinkFrame.data(ch.alloc(), sessionId, (WebSocketFrame) msg);
+                for (BinaryWebSocketFrame frame : frames) {
+                    ch.write(frame, ch.voidPromise());
+                }
+                if (session.sendWindow.addAndGet(-length) <= 0 || !ch.isWritable()) {
+                    ch.flush();
+                    ctx.channel().config().setAutoRead(false);
+                    // NodeLink 可能在暂停之前已经恢复了可写，或者已经收到了 WINDOW
+                    updateAutoRead(session);
+                }
+            } else {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            channel.flush();
+            ctx.fireChannelReadComplete();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            if (sessions.remove(sessionId) != null) {
+                sendClose(sessionId, null);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.error("node link session error, sessionId: {}", sessionId, cause);
+            ctx.close();
+        }
+    }
+}
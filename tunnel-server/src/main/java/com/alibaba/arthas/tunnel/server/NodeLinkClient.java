@@ -0,0 +1,207 @@
+package com.alibaba.arthas.tunnel.server;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.arthas.tunnel.common.MethodConstants;
+import com.alibaba.arthas.tunnel.common.URIConstans;
+import com.alibaba.arthas.tunnel.server.utils.ConsistentHash;
+import com.taobao.arthas.common.ArthasConstants;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolConfig;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * <pre>
+ * 到其它 tunnel server 节点的 {@link NodeLink} 连接池。
+ *
+ * 到每个节点最多 linksPerNode 个 NodeLink，按需建立，断开后下次使用时重新建立。
+ * agentId 通过一致性 hash 选择其中一个 NodeLink，同一个 agent 的会话总是在同一个 NodeLink 上；调整 linksPerNode 时只有少部分 agent 换到别的 NodeLink。
+ * 节点之间用 tunnel server 的 websocket 端口和 path 连接，method 为 {@link MethodConstants#NODE_LINK}。
+ * </pre>
+ */
+public class NodeLinkClient {
+    private final static Logger logger = LoggerFactory.getLogger(NodeLinkClient.class);
+
+    public static final int DEFAULT_LINKS_PER_NODE = 2;
+
+    private static final int VIRTUAL_NODES = 64;
+
+    private final TunnelServer tunnelServer;
+    private final EventLoopGroup group;
+    private final SslContext sslCtx;
+    private final ConsistentHash<Integer> linkSlots;
+
+    /**
+     * key 为 host:port#slot
+     */
+    private final Map<String, Promise<NodeLink>> links = new ConcurrentHashMap<String, Promise<NodeLink>>();
+
+    public NodeLinkClient(TunnelServer tunnelServer, EventLoopGroup group, int linksPerNode) throws Exception {
+        this.tunnelServer = tunnelServer;
+        this.group = group;
+        if (tunnelServer.isSsl()) {
+            // 每个节点使用的是自签名证书
+            sslCtx = SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+        } else {
+            sslCtx = null;
+        }
+        List<Integer> slots = new ArrayList<Integer>();
+        for (int i = 0; i < Math.max(1, linksPerNode); ++i) {
+            slots.add(i);
+        }
+        linkSlots = new ConsistentHash<Integer>(slots, VIRTUAL_NODES);
+    }
+
+    /**
+     * 取得到 agent 所在节点的 NodeLink，没有可用的连接时新建一个
+     */
+    public Future<NodeLink> link(String host, int port, String agentId) {
+        String key = host + ":" + port + "#" + linkSlots.get(agentId);
+        Promise<NodeLink> promise = links.get(key);
+        if (promise != null && !isBroken(promise)) {
+            return promise;
+        }
+        synchronized (this) {
+            promise = links.get(key);
+            if (promise == null || isBroken(promise)) {
+                promise = connect(key, host, port);
+                links.put(key, promise);
+            }
+        }
+        return promise;
+    }
+
+    private static boolean isBroken(Future<NodeLink> future) {
+        return future.isDone() && (!future.isSuccess() || !future.getNow().isActive());
+    }
+
+    private Promise<NodeLink> connect(final String key, String host, int port) {
+        final Promise<NodeLink> promise = group.next().newPromise();
+        String scheme = sslCtx != null ? "wss" : "ws";
+        URI uri = URI.create(scheme + "://" + host + ":" + port + tunnelServer.getPath() + "?" + URIConstans.METHOD
+                + "=" + MethodConstants.NODE_LINK);
+        logger.info("try to connect node link: {}", uri);
+
+        WebSocketClientProtocolConfig clientProtocolConfig = WebSocketClientProtocolConfig.newBuilder()
+                .webSocketUri(uri).maxFramePayloadLength(ArthasConstants.MAX_HTTP_CONTENT_LENGTH).build();
+        final WebSocketClientProtocolHandler websocketClientHandler = new WebSocketClientProtocolHandler(
+                clientProtocolConfig);
+        final NodeLink nodeLink = new NodeLink(tunnelServer, false);
+
+        Bootstrap b = new Bootstrap();
+        b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
+        b.option(ChannelOption.WRITE_BUFFER_WATER_MARK, tunnelServer.writeBufferWaterMark());
+        b.group(group).channel(NioSocketChannel.class).remoteAddress(host, port)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ChannelPipeline p = ch.pipeline();
+                        p.addLast(new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+                        if (sslCtx != null) {
+                            p.addLast(sslCtx.newHandler(ch.alloc(), host, port));
+                        }
+                        p.addLast(new HttpClientCodec(), new HttpObjectAggregator(ArthasConstants.MAX_HTTP_CONTENT_LENGTH),
+                                websocketClientHandler,
+                                new IdleStateHandler(0, 0, ArthasConstants.WEBSOCKET_IDLE_SECONDS), nodeLink);
+                    }
+                });
+
+        ChannelFuture connectFuture = b.connect();
+        final Channel channel = connectFuture.channel();
+        channel.closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                links.remove(key, promise);
+                promise.tryFailure(new IllegalStateException("node link closed: " + key));
+            }
+        });
+        connectFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    logger.error("connect node link error: {}", key, future.cause());
+                    promise.tryFailure(future.cause());
+                    return;
+                }
+                nodeLink.handshakeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (future.isSuccess()) {
+                            logger.info("node link connected: {}", key);
+                            promise.trySuccess(nodeLink);
+                        } else {
+                            logger.error("node link handshake error: {}", key, future.cause());
+                            promise.tryFailure(future.cause());
+                            channel.close();
+                        }
+                    }
+                });
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * 已经建立的 NodeLink 数量
+     */
+    public int getLinkCount() {
+        int count = 0;
+        for (Promise<NodeLink> promise : links.values()) {
+            if (promise.isSuccess() && promise.getNow().isActive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 每个 NodeLink 的会话数和写缓冲里的字节数
+     */
+    public List<Map<String, Object>> linkStats() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<String, Promise<NodeLink>> entry : links.entrySet()) {
+            Promise<NodeLink> promise = entry.getValue();
+            if (promise.isSuccess() && promise.getNow().isActive()) {
+                Map<String, Object> stat = promise.getNow().stat();
+                stat.put("link", entry.getKey());
+                result.add(stat);
+            }
+        }
+        return result;
+    }
+
+    public void close() {
+        for (Promise<NodeLink> promise : links.values()) {
+            if (promise.isSuccess()) {
+                promise.getNow().close();
+            }
+        }
+        links.clear();
+    }
+}
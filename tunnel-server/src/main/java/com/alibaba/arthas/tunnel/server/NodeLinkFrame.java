@@ -0,0 +1,186 @@
+package com.alibaba.arthas.tunnel.server;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * <pre>
+ * tunnel server 节点之间 {@link NodeLink} 的二进制协议，使用 BinaryWebSocketFrame 传输。
+ *
+ * 每个 frame 的格式：version(1 byte) type(1 byte) flags(1 byte) sessionId(8 bytes) payload
+ *
+ *   OPEN    浏览器所在节点 -> agent 所在节点，payload 为 UTF-8 的 agentId
+ *   OPENED  agent 已经 openTunnel，可以开始转发
+ *   DATA    一个 websocket frame，flags 为 frame 类型以及是否为最后一个分片，payload 为 frame 的内容
+ *   CLOSE   任意一端的连接断开，payload 为 UTF-8 的原因，可以为空
+ *   WINDOW  对端的 DATA 已经写到本地连接的 socket，payload 为 4 字节的字节数，对端可以再发送这么多
+ *
+ * 浏览器和 agent 之间的大 frame 拆成多个分片发送，每个 DATA 最多 MAX_DATA_CHUNK 字节，避免一个会话长时间占用 NodeLink。
+ * 每个会话每个方向最多有 SESSION_WINDOW 字节的 DATA 还没有写到接收端的本地连接，用完之后发送端暂停读取本地连接，
+ * 直到收到 WINDOW。一个会话的浏览器或者 agent 慢只会暂停这个会话，不会在接收端的节点上无限缓存。
+ * </pre>
+ */
+public class NodeLinkFrame {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final byte VERSION = 1;
+
+    public static final byte OPEN = 1;
+    public static final byte OPENED = 2;
+    public static final byte DATA = 3;
+    public static final byte CLOSE = 4;
+    public static final byte WINDOW = 5;
+
+    /**
+     * DATA 的 flags，低两位为 frame 类型
+     */
+    public static final int KIND_MASK = 0x03;
+    public static final int KIND_CONTINUATION = 0;
+    public static final int KIND_TEXT = 1;
+    public static final int KIND_BINARY = 2;
+    public static final int FLAG_FIN = 0x80;
+
+    public static final int HEADER_LENGTH = 11;
+
+    public static final int MAX_DATA_CHUNK = 64 * 1024;
+
+    /**
+     * 每个会话每个方向的初始发送窗口
+     */
+    public static final int SESSION_WINDOW = 1024 * 1024;
+
+    private final byte type;
+    private final int flags;
+    private final long sessionId;
+
+    private NodeLinkFrame(byte type, int flags, long sessionId) {
+        this.type = type;
+        this.flags = flags;
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * 解析 frame header，不会改变 content 的 readerIndex
+     */
+    public static NodeLinkFrame decode(ByteBuf content) throws IOException {
+        if (content.readableBytes() < HEADER_LENGTH) {
+            throw new IOException("node link frame is too short: " + content.readableBytes());
+        }
+        int index = content.readerIndex();
+        byte version = content.getByte(index);
+        if (version != VERSION) {
+            throw new IOException("unsupported node link frame version: " + version);
+        }
+        return new NodeLinkFrame(content.getByte(index + 1), content.getByte(index + 2) & 0xFF,
+                content.getLong(index + 3));
+    }
+
+    public static BinaryWebSocketFrame frame(ByteBufAllocator alloc, byte type, long sessionId, String payload) {
+        byte[] bytes = payload == null ? new byte[0] : payload.getBytes(UTF_8);
+        ByteBuf buf = alloc.buffer(HEADER_LENGTH + bytes.length);
+        writeHeader(buf, type, 0, sessionId);
+        buf.writeBytes(bytes);
+        return new BinaryWebSocketFrame(buf);
+    }
+
+    public static BinaryWebSocketFrame window(ByteBufAllocator alloc, long sessionId, int bytes) {
+        ByteBuf buf = alloc.buffer(HEADER_LENGTH + 4);
+        writeHeader(buf, WINDOW, 0, sessionId);
+        buf.writeInt(bytes);
+        return new BinaryWebSocketFrame(buf);
+    }
+
+    /**
+     * 把浏览器或者 agent 的 websocket frame 包装为 DATA，不复制内容。会释放 frame
+     */
+    public static List<BinaryWebSocketFrame> data(ByteBufAllocator alloc, long sessionId, WebSocketFrame frame) {
+        int kind;
+        if (frame instanceof TextWebSocketFrame) {
+            kind = KIND_TEXT;
+        } else if (frame instanceof BinaryWebSocketFrame) {
+            kind = KIND_BINARY;
+        } else {
+            kind = KIND_CONTINUATION;
+        }
+        ByteBuf content = frame.content();
+        List<BinaryWebSocketFrame> result = new ArrayList<BinaryWebSocketFrame>(1);
+        try {
+            do {
+                int length = Math.min(content.readableBytes(), MAX_DATA_CHUNK);
+                boolean last = length == content.readableBytes();
+                int flags = kind | (last && frame.isFinalFragment() ? FLAG_FIN : 0);
+                ByteBuf header = alloc.buffer(HEADER_LENGTH);
+                writeHeader(header, DATA, flags, sessionId);
+                result.add(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(header, content.readRetainedSlice(length))));
+                kind = KIND_CONTINUATION;
+            } while (content.isReadable());
+        } finally {
+            frame.release();
+        }
+        return result;
+    }
+
+    private static void writeHeader(ByteBuf buf, byte type, int flags, long sessionId) {
+        buf.writeByte(VERSION).writeByte(type).writeByte(flags).writeLong(sessionId);
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * 还原 DATA 里的 websocket frame，与 content 共享内容
+     */
+    public WebSocketFrame toWebSocketFrame(ByteBuf content) {
+        ByteBuf payload = content.retainedSlice(content.readerIndex() + HEADER_LENGTH,
+                content.readableBytes() - HEADER_LENGTH);
+        boolean fin = (flags & FLAG_FIN) != 0;
+        switch (flags & KIND_MASK) {
+        case KIND_TEXT:
+            return new TextWebSocketFrame(fin, 0, payload);
+        case KIND_BINARY:
+            return new BinaryWebSocketFrame(fin, 0, payload);
+        default:
+            return new ContinuationWebSocketFrame(fin, 0, payload);
+        }
+    }
+
+    /**
+     * DATA 里 websocket frame 内容的字节数
+     */
+    public int payloadLength(ByteBuf content) {
+        return content.readableBytes() - HEADER_LENGTH;
+    }
+
+    /**
+     * WINDOW 的字节数
+     */
+    public int payloadAsInt(ByteBuf content) throws IOException {
+        if (content.readableBytes() < HEADER_LENGTH + 4) {
+            throw new IOException("node link window frame is too short: " + content.readableBytes());
+        }
+        return content.getInt(content.readerIndex() + HEADER_LENGTH);
+    }
+
+    /**
+     * OPEN 的 agentId，或者 CLOSE 的原因
+     */
+    public String payloadAsString(ByteBuf content) {
+        return content.toString(content.readerIndex() + HEADER_LENGTH, content.readableBytes() - HEADER_LENGTH,
+                UTF_8);
+    }
+}
@@ -10,6 +10,15 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.util.ReferenceCountUtil;
 
+/**
+ * <pre>
+ * 在浏览器和 agent 的连接之间转发 frame，两个连接上各有一个 RelayHandler。
+ *
+ * 读到的 frame 只 write，一次读取结束时再 flush。对端连接的写缓冲超过 high water mark 后暂停读取本连接，
+ * 对端的 RelayHandler 收到 channelWritabilityChanged 降到 low water mark 以下时再恢复，
+ * 这样 agent 输出很快、浏览器很慢时 tunnel server 上缓存的数据是有上限的。
+ * </pre>
+ */
 public final class RelayHandler extends ChannelInboundHandlerAdapter {
 
     private final static Logger logger = LoggerFactory.getLogger(RelayHandler.class);
@@ -20,6 +29,12 @@ public final class RelayHandler extends ChannelInboundHandlerAdapter {
         this.relayChannel = relayChannel;
     }
 
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        // 安装之前对端可能已经不可写了
+        updateAutoRead(ctx.channel());
+    }
+
     @Override
     public void channelActive(ChannelHandlerContext ctx) {
         ctx.writeAndFlush(Unpooled.EMPTY_BUFFER);
@@ -28,12 +43,41 @@ public final class RelayHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         if (relayChannel.isActive()) {
-            relayChannel.writeAndFlush(msg);
+            relayChannel.write(msg, relayChannel.voidPromise());
+            if (!relayChannel.isWritable()) {
+                relayChannel.flush();
+                updateAutoRead(ctx.channel());
+            }
         } else {
             ReferenceCountUtil.release(msg);
         }
     }
 
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        relayChannel.flush();
+        ctx.fireChannelReadComplete();
+    }
+
+    /**
+     * 本连接的可写状态变化时，暂停或者恢复读取对端
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        relayChannel.config().setAutoRead(ctx.channel().isWritable());
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    private void updateAutoRead(Channel channel) {
+        if (!relayChannel.isWritable()) {
+            channel.config().setAutoRead(false);
+            // 对端可能在暂停之前已经恢复了可写，这时它的 channelWritabilityChanged 不会再恢复读取
+            if (relayChannel.isWritable()) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         if (relayChannel.isActive()) {
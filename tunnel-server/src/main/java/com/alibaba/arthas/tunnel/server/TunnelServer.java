@@ -4,7 +4,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -16,7 +20,9 @@ import com.taobao.arthas.common.ArthasConstants;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
@@ -49,6 +55,12 @@ public class TunnelServer {
      */
     private Map<String, Promise<SimpleHttpResponse>> proxyRequestPromiseMap = new ConcurrentHashMap<>();
 
+    /**
+     * 记录二进制协议的 proxy request，请求结束时由 ProxyController 删除
+     */
+    private Map<Long, HttpProxyStream> httpProxyStreamMap = new ConcurrentHashMap<>();
+    private AtomicLong httpProxyRequestIdGenerator = new AtomicLong();
+
     private EventLoopGroup bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("arthas-TunnelServer-boss", true));
     private EventLoopGroup workerGroup = new NioEventLoopGroup(new DefaultThreadFactory("arthas-TunnelServer-worker", true));
 
@@ -64,6 +76,28 @@ public class TunnelServer {
      */
     private String clientConnectHost;
 
+    /**
+     * 集群部署时到其它节点的 NodeLink 连接池，agent 不在本节点时通过它转发浏览器的连接
+     */
+    private NodeLinkClient nodeLinkClient;
+
+    /**
+     * 到每个其它节点的 NodeLink 数量
+     */
+    private int nodeLinksPerNode = NodeLinkClient.DEFAULT_LINKS_PER_NODE;
+
+    /**
+     * 连接的写缓冲超过 high water mark 后，转发时暂停读取对端，降到 low water mark 以下再恢复
+     */
+    private int writeBufferLowWaterMark = 256 * 1024;
+    private int writeBufferHighWaterMark = 1024 * 1024;
+
+    /**
+     * 把二进制协议 proxy 响应的 body 写给浏览器的线程数，只有队列里有数据时才占用线程
+     */
+    private int httpProxyWriteThreads = 8;
+    private ExecutorService httpProxyWriteExecutor;
+
     public void start() throws Exception {
         // Configure SSL.
         final SslContext sslCtx;
@@ -74,8 +108,15 @@ public class TunnelServer {
             sslCtx = null;
         }
 
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(httpProxyWriteThreads, httpProxyWriteThreads, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new DefaultThreadFactory("arthas-TunnelServer-http-proxy-write", true));
+        executor.allowCoreThreadTimeOut(true);
+        httpProxyWriteExecutor = executor;
+
         ServerBootstrap b = new ServerBootstrap();
         b.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class).handler(new LoggingHandler(LogLevel.INFO))
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark())
                 .childHandler(new TunnelSocketServerInitializer(this, sslCtx));
 
         if (StringUtils.isBlank(host)) {
@@ -86,6 +127,10 @@ public class TunnelServer {
 
         logger.info("Tunnel server listen at {}:{}", host, port);
 
+        if (tunnelClusterStore != null && clientConnectHost != null) {
+            nodeLinkClient = new NodeLinkClient(this, workerGroup, nodeLinksPerNode);
+        }
+
         workerGroup.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
@@ -109,11 +154,17 @@ public class TunnelServer {
     }
 
     public void stop() {
+        if (nodeLinkClient != null) {
+            nodeLinkClient.close();
+        }
         if (channel != null) {
             channel.close();
         }
         bossGroup.shutdownGracefully();
         workerGroup.shutdownGracefully();
+        if (httpProxyWriteExecutor != null) {
+            httpProxyWriteExecutor.shutdownNow();
+        }
     }
 
     public Optional<AgentInfo> findAgent(String id) {
@@ -135,6 +186,32 @@ public class TunnelServer {
         return agentInfo;
     }
     
+    /**
+     * 从 TunnelClusterStore 里查找连在其它节点上的 agent
+     *
+     * @return 没有找到，或者 agent 记录的节点就是本节点时返回 null
+     */
+    public AgentClusterInfo findRemoteAgent(String id) {
+        if (tunnelClusterStore == null) {
+            return null;
+        }
+        AgentClusterInfo info;
+        try {
+            info = tunnelClusterStore.findAgent(id);
+        } catch (Throwable e) {
+            logger.error("find agent from tunnel cluster store error, id: {}", id, e);
+            return null;
+        }
+        if (info == null || info.getClientConnectHost() == null) {
+            return null;
+        }
+        if (info.getClientConnectHost().equals(clientConnectHost) && info.getClientConnectTunnelPort() == port) {
+            // agent 已经从本节点断开，只是集群信息还没有过期
+            return null;
+        }
+        return info;
+    }
+
     public Optional<ClientConnectionInfo> findClientConnection(String id) {
         return Optional.ofNullable(this.clientConnectionInfoMap.get(id));
     }
@@ -168,6 +245,26 @@ public class TunnelServer {
         return this.proxyRequestPromiseMap.get(requestId);
     }
 
+    public long nextHttpProxyRequestId() {
+        return httpProxyRequestIdGenerator.incrementAndGet();
+    }
+
+    public ExecutorService getHttpProxyWriteExecutor() {
+        return httpProxyWriteExecutor;
+    }
+
+    public void addHttpProxyStream(HttpProxyStream stream) {
+        this.httpProxyStreamMap.put(stream.getRequestId(), stream);
+    }
+
+    public void removeHttpProxyStream(long requestId) {
+        this.httpProxyStreamMap.remove(requestId);
+    }
+
+    public HttpProxyStream findHttpProxyStream(long requestId) {
+        return this.httpProxyStreamMap.get(requestId);
+    }
+
     public boolean isSsl() {
         return ssl;
     }
@@ -224,6 +321,46 @@ public class TunnelServer {
         this.clientConnectHost = clientConnectHost;
     }
 
+    public WriteBufferWaterMark writeBufferWaterMark() {
+        return new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark);
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    public int getHttpProxyWriteThreads() {
+        return httpProxyWriteThreads;
+    }
+
+    public void setHttpProxyWriteThreads(int httpProxyWriteThreads) {
+        this.httpProxyWriteThreads = httpProxyWriteThreads;
+    }
+
+    public NodeLinkClient getNodeLinkClient() {
+        return nodeLinkClient;
+    }
+
+    public int getNodeLinksPerNode() {
+        return nodeLinksPerNode;
+    }
+
+    public void setNodeLinksPerNode(int nodeLinksPerNode) {
+        this.nodeLinksPerNode = nodeLinksPerNode;
+    }
+
     public String getPath() {
         return path;
     }
@@ -19,16 +19,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.alibaba.arthas.tunnel.common.HttpProxyFrame;
 import com.alibaba.arthas.tunnel.common.MethodConstants;
 import com.alibaba.arthas.tunnel.common.SimpleHttpResponse;
 import com.alibaba.arthas.tunnel.common.URIConstans;
 import com.alibaba.arthas.tunnel.server.utils.HttpUtils;
 
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
@@ -75,6 +79,8 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
             if (MethodConstants.OPEN_TUNNEL.equals(method)) { // from arthas agent open tunnel
                 String clientConnectionId = parameters.getFirst(URIConstans.CLIENT_CONNECTION_ID);
                 openTunnel(ctx, clientConnectionId);
+            } else if (MethodConstants.NODE_LINK.equals(method)) { // from other tunnel server node
+                ctx.pipeline().replace(this, "nodeLink", new NodeLink(tunnelServer, true));
             }
         } else if (evt instanceof IdleStateEvent) {
             ctx.writeAndFlush(new PingWebSocketFrame());
@@ -86,7 +92,18 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
         // 只有 arthas agent register建立的 channel 才可能有数据到这里
-        if (frame instanceof TextWebSocketFrame) {
+        if (frame instanceof BinaryWebSocketFrame) {
+            HttpProxyFrame proxyFrame = HttpProxyFrame.decode(frame.content().nioBuffer());
+            HttpProxyStream stream = tunnelServer.findHttpProxyStream(proxyFrame.getRequestId());
+            if (stream != null) {
+                stream.onFrame(proxyFrame, frame.content());
+            } else if (proxyFrame.getType() == HttpProxyFrame.RESPONSE_HEAD
+                    || proxyFrame.getType() == HttpProxyFrame.BODY) {
+                // 浏览器已经断开或者超时，通知 agent 停止发送
+                ctx.writeAndFlush(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(
+                        HttpProxyFrame.header(HttpProxyFrame.CANCEL, proxyFrame.getRequestId()))));
+            }
+        } else if (frame instanceof TextWebSocketFrame) {
             TextWebSocketFrame textFrame = (TextWebSocketFrame) frame;
             String text = textFrame.text();
 
@@ -116,6 +133,11 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
                 logger.info("received http proxy response, requestId: {}", requestId);
 
                 Promise<SimpleHttpResponse> promise = tunnelServer.findProxyRequestPromise(requestId);
+                if (promise == null) {
+                    // 浏览器的请求已经超时
+                    logger.info("http proxy request is timeout or finished, requestId: {}", requestId);
+                    return;
+                }
 
                 final String dataRaw = parameters.getFirst(URIConstans.PROXY_RESPONSE_DATA);
                 final String data;
@@ -153,11 +175,7 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
             String clientConnectionId = RandomStringUtils.random(20, true, true).toUpperCase();
 
             logger.info("random clientConnectionId: " + clientConnectionId);
-            // URI uri = new URI("response", null, "/",
-            //        "method=" + MethodConstants.START_TUNNEL + "&id=" + agentId.get(0) + "&clientConnectionId=" + clientConnectionId, null);
-            URI uri = UriComponentsBuilder.newInstance().scheme(URIConstans.RESPONSE).path("/")
-                    .queryParam(URIConstans.METHOD, MethodConstants.START_TUNNEL).queryParam(URIConstans.ID, agentId)
-                    .queryParam(URIConstans.CLIENT_CONNECTION_ID, clientConnectionId).build().toUri();
+            String uri = startTunnelUri(agentId.get(0), clientConnectionId);
 
             logger.info("startTunnel response: " + uri);
 
@@ -184,6 +202,7 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
 
                         outboundChannel.pipeline().addLast(new RelayHandler(tunnelSocketCtx.channel()));
                         tunnelSocketCtx.pipeline().addLast(new RelayHandler(outboundChannel));
+                        clientConnectionInfo.setAgentChannel(outboundChannel);
                     } else {
                         logger.error("wait for agent connect error. agentId: {}, clientConnectionId: {}", agentId,
                                 clientConnectionId);
@@ -201,7 +220,7 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
                 }
             });
 
-            agentCtx.channel().writeAndFlush(new TextWebSocketFrame(uri.toString()));
+            agentCtx.channel().writeAndFlush(new TextWebSocketFrame(uri));
 
             logger.info("browser connect waitting for arthas agent open tunnel");
             boolean watiResult = promise.awaitUninterruptibly(20, TimeUnit.SECONDS);
@@ -215,6 +234,8 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
                         agentId, clientConnectionId);
                 tunnelSocketCtx.close();
             }
+        } else if (connectRemoteArthas(tunnelSocketCtx, agentId.get(0))) {
+            logger.info("browser connect route to remote tunnel server node, agentId: {}", agentId);
         } else {
             tunnelSocketCtx.channel().writeAndFlush(new CloseWebSocketFrame(2000, "Can not find arthas agent by id: "+ agentId));
             logger.error("Can not find arthas agent by id: {}", agentId);
@@ -222,6 +243,53 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
         }
     }
 
+    /**
+     * 集群部署时 agent 可能连在其它节点上，通过 NodeLink 把浏览器的连接转发到 agent 所在的节点
+     *
+     * @return agent 不在其它节点上时返回 false
+     */
+    private boolean connectRemoteArthas(final ChannelHandlerContext tunnelSocketCtx, final String agentId) {
+        NodeLinkClient nodeLinkClient = tunnelServer.getNodeLinkClient();
+        if (nodeLinkClient == null) {
+            return false;
+        }
+        final AgentClusterInfo info = tunnelServer.findRemoteAgent(agentId);
+        if (info == null) {
+            return false;
+        }
+
+        final Channel browserChannel = tunnelSocketCtx.channel();
+        tunnelSocketCtx.pipeline().remove(this);
+        // NodeLink 建立之前不读取浏览器的 frame
+        browserChannel.config().setAutoRead(false);
+        nodeLinkClient.link(info.getClientConnectHost(), info.getClientConnectTunnelPort(), agentId)
+                .addListener(new FutureListener<NodeLink>() {
+                    @Override
+                    public void operationComplete(Future<NodeLink> future) throws Exception {
+                        if (future.isSuccess()) {
+                            future.getNow().open(agentId, browserChannel);
+                            browserChannel.config().setAutoRead(true);
+                        } else {
+                            logger.error("connect to tunnel server node {}:{} error, agentId: {}",
+                                    info.getClientConnectHost(), info.getClientConnectTunnelPort(), agentId,
+                                    future.cause());
+                            browserChannel.writeAndFlush(new CloseWebSocketFrame(2000,
+                                    "Can not connect to tunnel server node of arthas agent: " + agentId))
+                                    .addListener(ChannelFutureListener.CLOSE);
+                        }
+                    }
+                });
+        return true;
+    }
+
+    static String startTunnelUri(String agentId, String clientConnectionId) {
+        // URI uri = new URI("response", null, "/",
+        //        "method=" + MethodConstants.START_TUNNEL + "&id=" + agentId + "&clientConnectionId=" + clientConnectionId, null);
+        return UriComponentsBuilder.newInstance().scheme(URIConstans.RESPONSE).path("/")
+                .queryParam(URIConstans.METHOD, MethodConstants.START_TUNNEL).queryParam(URIConstans.ID, agentId)
+                .queryParam(URIConstans.CLIENT_CONNECTION_ID, clientConnectionId).build().toUri().toString();
+    }
+
     private void agentRegister(ChannelHandlerContext ctx, HandshakeComplete handshake, String requestUri) throws URISyntaxException {
         QueryStringDecoder queryDecoder = new QueryStringDecoder(requestUri);
         Map<String, List<String>> parameters = queryDecoder.parameters();
@@ -284,6 +352,10 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
         if (arthasVersion != null) {
             info.setArthasVersion(arthasVersion);
         }
+        List<String> proxyProtocolList = parameters.get(URIConstans.PROXY_PROTOCOL);
+        if (proxyProtocolList != null && !proxyProtocolList.isEmpty()) {
+            info.setProxyProtocol(proxyProtocolList.get(0));
+        }
 
         tunnelServer.addAgent(id, info);
         ctx.channel().closeFuture().addListener(new GenericFutureListener<Future<? super Void>>() {
@@ -305,7 +377,11 @@ public class TunnelSocketFrameHandler extends SimpleChannelInboundHandler<WebSoc
             logger.info("openTunnel clientConnectionId:" + clientConnectionId);
 
             Promise<Channel> promise = info.getPromise();
-            promise.setSuccess(ctx.channel());
+            if (!promise.trySuccess(ctx.channel())) {
+                // 已经超时
+                logger.error("open tunnel too late, clientConnectionId: {}", clientConnectionId);
+                ctx.close();
+            }
         } else {
             logger.error("Can not find client connection by id: {}", clientConnectionId);
         }
@@ -75,6 +75,22 @@ public class ArthasProperties {
          */
         private String clientConnectHost = InetAddressUtil.getInetAddress();
 
+        /**
+         * 集群部署时，到每个其它 tunnel server 节点的连接数。浏览器连到的节点没有 agent 时，通过这些连接转发到 agent 所在的节点
+         */
+        private int nodeLinksPerNode = 2;
+
+        /**
+         * 浏览器和 agent 之间转发时，一端连接的写缓冲超过 high water mark 后暂停读取另一端，降到 low water mark 以下再恢复
+         */
+        private int writeBufferLowWaterMark = 256 * 1024;
+        private int writeBufferHighWaterMark = 1024 * 1024;
+
+        /**
+         * 把 http proxy 响应 body 写给浏览器的线程数
+         */
+        private int httpProxyWriteThreads = 8;
+
         public String getHost() {
             return host;
         }
@@ -107,6 +123,38 @@ public class ArthasProperties {
             this.clientConnectHost = clientConnectHost;
         }
 
+        public int getNodeLinksPerNode() {
+            return nodeLinksPerNode;
+        }
+
+        public void setNodeLinksPerNode(int nodeLinksPerNode) {
+            this.nodeLinksPerNode = nodeLinksPerNode;
+        }
+
+        public int getWriteBufferLowWaterMark() {
+            return writeBufferLowWaterMark;
+        }
+
+        public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+            this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+        }
+
+        public int getWriteBufferHighWaterMark() {
+            return writeBufferHighWaterMark;
+        }
+
+        public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+            this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+        }
+
+        public int getHttpProxyWriteThreads() {
+            return httpProxyWriteThreads;
+        }
+
+        public void setHttpProxyWriteThreads(int httpProxyWriteThreads) {
+            this.httpProxyWriteThreads = httpProxyWriteThreads;
+        }
+
         public String getPath() {
             return path;
         }
@@ -32,6 +32,10 @@ public class TunnelServerConfiguration {
         tunnelServer.setSsl(arthasProperties.getServer().isSsl());
         tunnelServer.setPath(arthasProperties.getServer().getPath());
         tunnelServer.setClientConnectHost(arthasProperties.getServer().getClientConnectHost());
+        tunnelServer.setNodeLinksPerNode(arthasProperties.getServer().getNodeLinksPerNode());
+        tunnelServer.setWriteBufferLowWaterMark(arthasProperties.getServer().getWriteBufferLowWaterMark());
+        tunnelServer.setWriteBufferHighWaterMark(arthasProperties.getServer().getWriteBufferHighWaterMark());
+        tunnelServer.setHttpProxyWriteThreads(arthasProperties.getServer().getHttpProxyWriteThreads());
         if (tunnelClusterStore != null) {
             tunnelServer.setTunnelClusterStore(tunnelClusterStore);
         }
@@ -1,9 +1,9 @@
 package com.alibaba.arthas.tunnel.server.app.web;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -20,6 +20,7 @@ import org.springframework.web.bind.annotation.ResponseBody;
 
 import com.alibaba.arthas.tunnel.server.AgentClusterInfo;
 import com.alibaba.arthas.tunnel.server.app.configuration.ArthasProperties;
+import com.alibaba.arthas.tunnel.server.cluster.ClusterPage;
 import com.alibaba.arthas.tunnel.server.cluster.TunnelClusterStore;
 
 /**
@@ -32,6 +33,11 @@ public class DetailAPIController {
 
     private final static Logger logger = LoggerFactory.getLogger(DetailAPIController.class);
 
+    /**
+     * 分页接口每页的最大数量
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     ArthasProperties arthasProperties;
 
@@ -48,17 +54,12 @@ public class DetailAPIController {
         Set<String> result = new HashSet<String>();
 
         if (tunnelClusterStore != null) {
-            Collection<String> agentIds = tunnelClusterStore.allAgentIds();
-
-            for (String id : agentIds) {
-                String appName = findAppNameFromAgentId(id);
-                if (appName != null) {
-                    result.add(appName);
-                } else {
-                    logger.warn("illegal agentId: " + id);
-                }
-            }
-
+            String cursor = null;
+            do {
+                ClusterPage<List<String>> page = tunnelClusterStore.appNames(cursor, MAX_PAGE_SIZE);
+                result.addAll(page.getItems());
+                cursor = page.getNextCursor();
+            } while (cursor != null);
         }
 
         return result;
@@ -81,6 +82,49 @@ public class DetailAPIController {
         return Collections.emptyMap();
     }
 
+    /**
+     * 分页列出 appName，cursor 为上一页返回的 nextCursor
+     */
+    @RequestMapping("/api/tunnelAppsPage")
+    @ResponseBody
+    public ClusterPage<List<String>> tunnelAppsPage(@RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        if (!arthasProperties.isEnableDetailPages()) {
+            throw new IllegalAccessError("not allow");
+        }
+
+        if (tunnelClusterStore != null) {
+            return tunnelClusterStore.appNames(cursor, pageSize(limit));
+        }
+
+        return new ClusterPage<List<String>>(Collections.<String>emptyList(), null);
+    }
+
+    /**
+     * 分页列出一个 app 的 agent，cursor 为上一页返回的 nextCursor
+     */
+    @RequestMapping("/api/tunnelAgentInfoPage")
+    @ResponseBody
+    public ClusterPage<Map<String, AgentClusterInfo>> tunnelAgentInfoPage(
+            @RequestParam(value = "app", required = true) String appName,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        if (!arthasProperties.isEnableDetailPages()) {
+            throw new IllegalAccessError("not allow");
+        }
+
+        if (tunnelClusterStore != null) {
+            return tunnelClusterStore.agentInfo(appName, cursor, pageSize(limit));
+        }
+
+        return new ClusterPage<Map<String, AgentClusterInfo>>(Collections.<String, AgentClusterInfo>emptyMap(),
+                null);
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
     /**
      * check if agentId exists
      * @param agentId
@@ -102,13 +146,4 @@ public class DetailAPIController {
         result.put("success", success);
         return result;
     }
-
-    private static String findAppNameFromAgentId(String id) {
-        int index = id.indexOf('_');
-        if (index < 0 || index >= id.length()) {
-            return null;
-        }
-
-        return id.substring(0, index);
-    }
 }
@@ -1,11 +1,13 @@
 package com.alibaba.arthas.tunnel.server.app.web;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -13,23 +15,30 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.ResponseEntity.BodyBuilder;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.alibaba.arthas.tunnel.common.HttpProxyFrame;
 import com.alibaba.arthas.tunnel.common.MethodConstants;
 import com.alibaba.arthas.tunnel.common.SimpleHttpResponse;
 import com.alibaba.arthas.tunnel.common.URIConstans;
 import com.alibaba.arthas.tunnel.server.AgentInfo;
+import com.alibaba.arthas.tunnel.server.HttpProxyStream;
 import com.alibaba.arthas.tunnel.server.TunnelServer;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import io.netty.util.concurrent.Promise;
 
@@ -43,50 +52,214 @@ import io.netty.util.concurrent.Promise;
 public class ProxyController {
     private final static Logger logger = LoggerFactory.getLogger(ProxyController.class);
 
+    /**
+     * 等待 agent 返回响应 header 的超时时间
+     */
+    private static final long RESPONSE_HEAD_TIMEOUT = 15000;
+    /**
+     * 等待下一段响应 body 的超时时间，由 {@link HttpProxyStream} 检查
+     */
+    private static final long BODY_IDLE_TIMEOUT = 60000;
+    /**
+     * 响应 body 的总时长不限制，只限制每段 body 之间的间隔。只对本接口生效，不影响 spring mvc 全局的异步超时
+     */
+    private static final long BODY_NO_TIMEOUT = -1;
+
     @Autowired
     TunnelServer tunnelServer;
 
+    /**
+     * 异步处理，等待 agent 返回结果时不占用 servlet 线程
+     */
     @RequestMapping(value = "/proxy/{agentId}/**")
     @ResponseBody
-    public ResponseEntity<?> execute(@PathVariable(name = "agentId", required = true) String agentId,
-            HttpServletRequest request) throws InterruptedException, ExecutionException, TimeoutException {
+    public DeferredResult<ResponseEntity<ResponseBodyEmitter>> execute(
+            @PathVariable(name = "agentId", required = true) String agentId, HttpServletRequest request) {
 
         String fullPath = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
         String targetUrl = fullPath.substring("/proxy/".length() + agentId.length());
 
         logger.info("http proxy, agentId: {}, targetUrl: {}", agentId, targetUrl);
 
+        DeferredResult<ResponseEntity<ResponseBodyEmitter>> result = new DeferredResult<ResponseEntity<ResponseBodyEmitter>>(
+                RESPONSE_HEAD_TIMEOUT, ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build());
+
         Optional<AgentInfo> findAgent = tunnelServer.findAgent(agentId);
 
         if (findAgent.isPresent()) {
-            String requestId = RandomStringUtils.random(20, true, true).toUpperCase();
+            AgentInfo agentInfo = findAgent.get();
+            if (HttpProxyFrame.PROTOCOL.equals(agentInfo.getProxyProtocol())) {
+                streamProxy(agentInfo, targetUrl, result);
+            } else {
+                legacyProxy(agentId, agentInfo, targetUrl, result);
+            }
+        } else {
+            logger.error("can not find agent by agentId: {}", agentId);
+            result.setResult(ResponseEntity.notFound().build());
+        }
 
-            ChannelHandlerContext agentCtx = findAgent.get().getChannelHandlerContext();
+        return result;
+    }
 
-            Promise<SimpleHttpResponse> httpResponsePromise = GlobalEventExecutor.INSTANCE.newPromise();
+    /**
+     * 二进制协议：收到响应 header 后就开始返回，body 分段转发，见 {@link HttpProxyFrame}
+     */
+    private void streamProxy(AgentInfo agentInfo, String targetUrl,
+            final DeferredResult<ResponseEntity<ResponseBodyEmitter>> result) {
+        final long requestId = tunnelServer.nextHttpProxyRequestId();
+        final HttpProxyStream stream = new HttpProxyStream(requestId, agentInfo.getChannelHandlerContext().channel(),
+                tunnelServer.getHttpProxyWriteExecutor(), BODY_IDLE_TIMEOUT) {
+            private final ResponseBodyEmitter emitter = new ResponseBodyEmitter(BODY_NO_TIMEOUT);
 
-            tunnelServer.addProxyRequestPromise(requestId, httpResponsePromise);
+            @Override
+            protected void onResponseHead(int status, Map<String, List<String>> headers) {
+                BodyBuilder bodyBuilder = ResponseEntity.status(status);
+                for (Entry<String, List<String>> entry : headers.entrySet()) {
+                    bodyBuilder.header(entry.getKey(), entry.getValue().toArray(new String[0]));
+                }
+                final HttpProxyStream self = this;
+                Runnable cleanup = new Runnable() {
+                    @Override
+                    public void run() {
+                        finish(self);
+                    }
+                };
+                emitter.onCompletion(cleanup);
+                emitter.onTimeout(cleanup);
+                emitter.onError(new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable t) {
+                        finish(self);
+                    }
+                });
+                if (result.setResult(bodyBuilder.body(emitter))) {
+                    startWriting();
+                } else {
+                    // 已经超时
+                    finish(this);
+                }
+            }
 
-            URI uri = UriComponentsBuilder.newInstance().scheme(URIConstans.RESPONSE).path("/")
-                    .queryParam(URIConstans.METHOD, MethodConstants.HTTP_PROXY).queryParam(URIConstans.ID, agentId)
-                    .queryParam(URIConstans.TARGET_URL, targetUrl).queryParam(URIConstans.PROXY_REQUEST_ID, requestId)
-                    .build().toUri();
+            @Override
+            protected void onBody(byte[] body) throws IOException {
+                try {
+                    emitter.send(body);
+                } catch (IllegalStateException e) {
+                    // 浏览器断开后 emitter 已经结束
+                    throw new IOException(e);
+                }
+            }
 
-            agentCtx.channel().writeAndFlush(new TextWebSocketFrame(uri.toString()));
-            logger.info("waitting for arthas agent http proxy, agentId: {}, targetUrl: {}", agentId, targetUrl);
+            @Override
+            protected void onBodyEnd(IOException error) {
+                if (error == null) {
+                    emitter.complete();
+                } else {
+                    emitter.completeWithError(error);
+                }
+            }
 
-            SimpleHttpResponse simpleHttpResponse = httpResponsePromise.get(15, TimeUnit.SECONDS);
+            @Override
+            protected void onFailure(String message) {
+                logger.error("http proxy error, requestId: {}, error: {}", requestId, message);
+                result.setResult(ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(text(message)));
+                finish(this);
+            }
+        };
 
-            BodyBuilder bodyBuilder = ResponseEntity.status(simpleHttpResponse.getStatus());
-            for (Entry<String, String> entry : simpleHttpResponse.getHeaders().entrySet()) {
-                bodyBuilder.header(entry.getKey(), entry.getValue());
+        Runnable cleanup = new Runnable() {
+            @Override
+            public void run() {
+                finish(stream);
             }
-            ResponseEntity<byte[]> responseEntity = bodyBuilder.body(simpleHttpResponse.getContent());
-            return responseEntity;
-        } else {
-            logger.error("can not find agent by agentId: {}", agentId);
-        }
+        };
+        result.onTimeout(cleanup);
+        result.onError(new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable t) {
+                finish(stream);
+            }
+        });
+
+        tunnelServer.addHttpProxyStream(stream);
+        stream.start(targetUrl);
+    }
 
-        return ResponseEntity.notFound().build();
+    private void finish(HttpProxyStream stream) {
+        tunnelServer.removeHttpProxyStream(stream.getRequestId());
+        stream.close();
+    }
+
+    /**
+     * 老版本的 agent：通过 TextWebSocketFrame 返回 base64 编码的完整响应
+     */
+    private void legacyProxy(String agentId, AgentInfo agentInfo, String targetUrl,
+            final DeferredResult<ResponseEntity<ResponseBodyEmitter>> result) {
+        String requestId = RandomStringUtils.random(20, true, true).toUpperCase();
+
+        ChannelHandlerContext agentCtx = agentInfo.getChannelHandlerContext();
+
+        final Promise<SimpleHttpResponse> httpResponsePromise = GlobalEventExecutor.INSTANCE.newPromise();
+        httpResponsePromise.addListener(new FutureListener<SimpleHttpResponse>() {
+            @Override
+            public void operationComplete(Future<SimpleHttpResponse> future) throws Exception {
+                tunnelServer.removeProxyRequestPromise(requestId);
+                if (!future.isSuccess()) {
+                    result.setResult(
+                            ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(text(String.valueOf(future.cause()))));
+                    return;
+                }
+                SimpleHttpResponse simpleHttpResponse = future.getNow();
+                BodyBuilder bodyBuilder = ResponseEntity.status(simpleHttpResponse.getStatus());
+                for (Entry<String, String> entry : simpleHttpResponse.getHeaders().entrySet()) {
+                    bodyBuilder.header(entry.getKey(), entry.getValue());
+                }
+                result.setResult(bodyBuilder.body(bytes(simpleHttpResponse.getContent())));
+            }
+        });
+
+        // 超时或者出错时不再等待 agent 的响应
+        Runnable cleanup = new Runnable() {
+            @Override
+            public void run() {
+                tunnelServer.removeProxyRequestPromise(requestId);
+                httpResponsePromise.cancel(false);
+            }
+        };
+        result.onTimeout(cleanup);
+        result.onError(new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable t) {
+                cleanup.run();
+            }
+        });
+
+        tunnelServer.addProxyRequestPromise(requestId, httpResponsePromise);
+
+        URI uri = UriComponentsBuilder.newInstance().scheme(URIConstans.RESPONSE).path("/")
+                .queryParam(URIConstans.METHOD, MethodConstants.HTTP_PROXY).queryParam(URIConstans.ID, agentId)
+                .queryParam(URIConstans.TARGET_URL, targetUrl).queryParam(URIConstans.PROXY_REQUEST_ID, requestId)
+                .build().toUri();
+
+        agentCtx.channel().writeAndFlush(new TextWebSocketFrame(uri.toString()));
+        logger.info("waitting for arthas agent http proxy, agentId: {}, targetUrl: {}", agentId, targetUrl);
+    }
+
+    private static ResponseBodyEmitter text(String message) {
+        return bytes(String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ResponseBodyEmitter bytes(byte[] content) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        try {
+            if (content != null) {
+                // emitter 还没有开始处理时，数据会先缓存起来
+                emitter.send(content);
+            }
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
     }
 }
@@ -1,15 +1,29 @@
 package com.alibaba.arthas.tunnel.server.app.web;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import com.alibaba.arthas.tunnel.server.AgentInfo;
+import com.alibaba.arthas.tunnel.server.ChannelUtils;
+import com.alibaba.arthas.tunnel.server.ClientConnectionInfo;
+import com.alibaba.arthas.tunnel.server.NodeLinkClient;
+import com.alibaba.arthas.tunnel.server.TunnelServer;
+import com.alibaba.arthas.tunnel.server.app.configuration.ArthasProperties;
+
+import io.netty.channel.Channel;
+
 /**
  * arthas agent数据回报的演示接口
  * @author hengyunabc 2019-09-24
@@ -19,6 +33,12 @@ import org.springframework.web.bind.annotation.ResponseBody;
 public class StatController {
     private final static Logger logger = LoggerFactory.getLogger(StatController.class);
 
+    @Autowired
+    ArthasProperties arthasProperties;
+
+    @Autowired
+    TunnelServer tunnelServer;
+
     @RequestMapping(value = "/api/stat")
     @ResponseBody
     public Map<String, Object> execute(@RequestParam(value = "ip", required = true) String ip,
@@ -35,4 +55,54 @@ public class StatController {
 
         return result;
     }
+
+    /**
+     * 每个连接写缓冲里还没有发送出去的字节数，用来观察浏览器或者 agent 是否太慢
+     */
+    @RequestMapping(value = "/api/stat/connections")
+    @ResponseBody
+    public Map<String, Object> connections() {
+        if (!arthasProperties.isEnableDetailPages()) {
+            throw new IllegalAccessError("not allow");
+        }
+
+        List<Map<String, Object>> agents = new ArrayList<Map<String, Object>>();
+        for (Entry<String, AgentInfo> entry : tunnelServer.getAgentInfoMap().entrySet()) {
+            Map<String, Object> agent = channelStat(entry.getValue().getChannelHandlerContext().channel());
+            agent.put("id", entry.getKey());
+            agents.add(agent);
+        }
+
+        List<Map<String, Object>> clientConnections = new ArrayList<Map<String, Object>>();
+        for (Entry<String, ClientConnectionInfo> entry : tunnelServer.getClientConnectionInfoMap().entrySet()) {
+            ClientConnectionInfo info = entry.getValue();
+            Map<String, Object> connection = new LinkedHashMap<String, Object>();
+            connection.put("id", entry.getKey());
+            connection.put("host", info.getHost());
+            connection.put("port", info.getPort());
+            connection.put("client", channelStat(info.getChannelHandlerContext().channel()));
+            Channel agentChannel = info.getAgentChannel();
+            if (agentChannel != null) {
+                connection.put("agent", channelStat(agentChannel));
+            }
+            clientConnections.add(connection);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("agents", agents);
+        result.put("clientConnections", clientConnections);
+        NodeLinkClient nodeLinkClient = tunnelServer.getNodeLinkClient();
+        if (nodeLinkClient != null) {
+            result.put("nodeLinks", nodeLinkClient.linkStats());
+        }
+        return result;
+    }
+
+    private static Map<String, Object> channelStat(Channel channel) {
+        Map<String, Object> stat = new LinkedHashMap<String, Object>();
+        stat.put("pendingWriteBytes", ChannelUtils.pendingWriteBytes(channel));
+        stat.put("writable", channel.isWritable());
+        stat.put("autoRead", channel.config().isAutoRead());
+        return stat;
+    }
 }
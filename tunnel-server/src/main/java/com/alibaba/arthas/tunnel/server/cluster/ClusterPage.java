@@ -0,0 +1,35 @@
+package com.alibaba.arthas.tunnel.server.cluster;
+
+/**
+ * {@link TunnelClusterStore} 分页查询的一页结果，nextCursor 为 null 表示没有下一页
+ * 
+ * @param <T> 一页的内容，例如 agentId 列表
+ */
+public class ClusterPage<T> {
+    private T items;
+    private String nextCursor;
+
+    public ClusterPage() {
+    }
+
+    public ClusterPage(T items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public T getItems() {
+        return items;
+    }
+
+    public void setItems(T items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
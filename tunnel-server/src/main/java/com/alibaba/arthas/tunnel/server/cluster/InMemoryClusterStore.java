@@ -1,8 +1,13 @@
 package com.alibaba.arthas.tunnel.server.cluster;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -76,6 +81,47 @@ public class InMemoryClusterStore implements TunnelClusterStore {
 
     }
 
+    @Override
+    public ClusterPage<List<String>> agentIds(String cursor, int limit) {
+        return page(new TreeSet<String>(allAgentIds()), cursor, limit);
+    }
+
+    @Override
+    public ClusterPage<List<String>> appNames(String cursor, int limit) {
+        TreeSet<String> appNames = new TreeSet<String>();
+        for (String agentId : allAgentIds()) {
+            int index = agentId.indexOf('_');
+            if (index > 0) {
+                appNames.add(agentId.substring(0, index));
+            }
+        }
+        return page(appNames, cursor, limit);
+    }
+
+    @Override
+    public ClusterPage<Map<String, AgentClusterInfo>> agentInfo(String appName, String cursor, int limit) {
+        Map<String, AgentClusterInfo> infos = agentInfo(appName);
+        ClusterPage<List<String>> ids = page(new TreeSet<String>(infos.keySet()), cursor, limit);
+        Map<String, AgentClusterInfo> result = new LinkedHashMap<String, AgentClusterInfo>();
+        for (String agentId : ids.getItems()) {
+            result.put(agentId, infos.get(agentId));
+        }
+        return new ClusterPage<Map<String, AgentClusterInfo>>(result, ids.getNextCursor());
+    }
+
+    private static ClusterPage<List<String>> page(NavigableSet<String> sorted, String cursor, int limit) {
+        limit = Math.max(1, limit);
+        NavigableSet<String> tail = cursor == null || cursor.isEmpty() ? sorted : sorted.tailSet(cursor, false);
+        List<String> items = new ArrayList<String>(Math.min(limit, tail.size()));
+        for (String item : tail) {
+            if (items.size() == limit) {
+                return new ClusterPage<List<String>>(items, items.get(limit - 1));
+            }
+            items.add(item);
+        }
+        return new ClusterPage<List<String>>(items, null);
+    }
+
     public Cache getCache() {
         return cache;
     }
@@ -1,25 +1,51 @@
 package com.alibaba.arthas.tunnel.server.cluster;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.RedisZSetCommands.Range;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 
 import com.alibaba.arthas.tunnel.server.AgentClusterInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
- * 
+ * <pre>
+ * agent 信息保存在 prefix + agentId 里，带过期时间。为了不使用 KEYS 扫描整个 redis，另外维护几个索引：
+ *
+ *   indexPrefix + "agents"        所有 agentId，score 都为 0，用 ZRANGEBYLEX 按字典序分页
+ *   indexPrefix + "expire"        所有 agentId，score 为过期时间，用来清理过期的 agent
+ *   indexPrefix + "app-" + 应用名  一个应用的 agentId，score 都为 0
+ *   indexPrefix + "apps"          所有应用名，score 都为 0
+ *
+ * 索引在 addAgent/removeAgent 时更新；agent 过期时 redis 只会删除 agent 信息，索引里的 agentId 在查询时按 expire 清理，
+ * 每个 purgeIntervalMillis 最多清理一次。清理用 lua 脚本对每个 agentId 重新检查 expire 和 agent 信息，
+ * 期间重新注册的 agent 不会被删除。应用没有 agent 之后，用 lua 脚本原子地检查并从 apps 里删除，避免和 addAgent 并发时误删。
+ * 分页的 cursor 为上一页最后一个元素，下一页从它之后开始，翻页期间有增删也不会重复或者错位。
+ * 索引的 key 不以 prefix 开头，旧版本用 KEYS prefix* 查询时不会读到索引。
+ * </pre>
+ *
  * @author hengyunabc 2020-10-27
  *
  */
@@ -28,10 +54,64 @@ public class RedisTunnelClusterStore implements TunnelClusterStore {
     // 定义jackson对象
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
+    /**
+     * allAgentIds/agentInfo 等返回全部结果的方法，每次从 redis 读取的数量
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * 每次查询最多清理的过期 agent 数量
+     */
+    private static final int MAX_EXPIRED_PER_PURGE = 1000;
+
+    /**
+     * 应用的 agent 索引为空时，从应用索引里删除应用名
+     */
+    private static final RedisScript<Long> REMOVE_EMPTY_APP_SCRIPT = new DefaultRedisScript<Long>(
+            "if redis.call('ZCARD', KEYS[1]) == 0 then return redis.call('ZREM', KEYS[2], ARGV[1]) end return 0",
+            Long.class);
+
+    /**
+     * 从索引里删除过期的 agent。KEYS: expire, agents, apps, n 个 agent 信息的 key, n 个应用的 agent 索引；
+     * ARGV: now, n 个 agentId, n 个应用名（没有应用时为空字符串）。
+     * 删除前重新检查 expire 里的时间，并且 agent 信息已经不存在，addAgent 会先写 agent 信息再更新索引，
+     * 所以在读取过期列表之后重新注册的 agent 不会被删除
+     */
+    private static final RedisScript<Long> PURGE_EXPIRED_SCRIPT = new DefaultRedisScript<Long>(
+            "local now = tonumber(ARGV[1]) "
+                    + "local n = (#KEYS - 3) / 2 "
+                    + "local removed = 0 "
+                    + "for i = 1, n do "
+                    + "  local id = ARGV[1 + i] "
+                    + "  local score = redis.call('ZSCORE', KEYS[1], id) "
+                    + "  if score and tonumber(score) <= now and redis.call('EXISTS', KEYS[3 + i]) == 0 then "
+                    + "    redis.call('ZREM', KEYS[1], id) "
+                    + "    redis.call('ZREM', KEYS[2], id) "
+                    + "    local app = ARGV[1 + n + i] "
+                    + "    if app ~= '' then "
+                    + "      redis.call('ZREM', KEYS[3 + n + i], id) "
+                    + "      if redis.call('ZCARD', KEYS[3 + n + i]) == 0 then "
+                    + "        redis.call('ZREM', KEYS[3], app) "
+                    + "      end "
+                    + "    end "
+                    + "    removed = removed + 1 "
+                    + "  end "
+                    + "end "
+                    + "return removed",
+            Long.class);
+
     private String prefix = "arthas-tunnel-agent-";
 
+    private String indexPrefix = "arthas-tunnel-index-";
+
     private StringRedisTemplate redisTemplate;
 
+    /**
+     * 两次清理过期 agent 的最小间隔
+     */
+    private long purgeIntervalMillis = 10 * 1000;
+    private final AtomicLong lastPurgeMillis = new AtomicLong();
+
     @Override
     public AgentClusterInfo findAgent(String agentId) {
         try {
@@ -49,17 +129,48 @@ public class RedisTunnelClusterStore implements TunnelClusterStore {
     }
 
     @Override
-    public void removeAgent(String agentId) {
-        ValueOperations<String, String> opsForValue = redisTemplate.opsForValue();
-        opsForValue.getOperations().delete(prefix + agentId);
+    public void removeAgent(final String agentId) {
+        final String appName = appName(agentId);
+        redisTemplate.executePipelined(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                stringConnection.del(prefix + agentId);
+                stringConnection.zRem(agentsIndex(), agentId);
+                stringConnection.zRem(expireIndex(), agentId);
+                if (appName != null) {
+                    stringConnection.zRem(appIndex(appName), agentId);
+                }
+                return null;
+            }
+        });
+        // 应用没有 agent 之后从应用索引里删除
+        if (appName != null) {
+            removeAppIfEmpty(appName);
+        }
     }
 
     @Override
-    public void addAgent(String agentId, AgentClusterInfo info, long timeout, TimeUnit timeUnit) {
+    public void addAgent(final String agentId, AgentClusterInfo info, final long timeout, final TimeUnit timeUnit) {
         try {
-            ValueOperations<String, String> opsForValue = redisTemplate.opsForValue();
-            String infoStr = MAPPER.writeValueAsString(info);
-            opsForValue.set(prefix + agentId, infoStr, timeout, timeUnit);
+            final String infoStr = MAPPER.writeValueAsString(info);
+            final String appName = appName(agentId);
+            final long expireAt = System.currentTimeMillis() + timeUnit.toMillis(timeout);
+            redisTemplate.executePipelined(new RedisCallback<Object>() {
+                @Override
+                public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                    StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                    stringConnection.set(prefix + agentId, infoStr, Expiration.from(timeout, timeUnit),
+                            SetOption.upsert());
+                    stringConnection.zAdd(agentsIndex(), 0, agentId);
+                    stringConnection.zAdd(expireIndex(), expireAt, agentId);
+                    if (appName != null) {
+                        stringConnection.zAdd(appIndex(appName), 0, agentId);
+                        stringConnection.zAdd(appsIndex(), 0, appName);
+                    }
+                    return null;
+                }
+            });
         } catch (Throwable e) {
             logger.error("try to add agentInfo error. agentId:{}", agentId, e);
             throw new RuntimeException(e);
@@ -74,52 +185,167 @@ public class RedisTunnelClusterStore implements TunnelClusterStore {
         this.redisTemplate = redisTemplate;
     }
 
+    public long getPurgeIntervalMillis() {
+        return purgeIntervalMillis;
+    }
+
+    public void setPurgeIntervalMillis(long purgeIntervalMillis) {
+        this.purgeIntervalMillis = purgeIntervalMillis;
+    }
+
     @Override
     public Collection<String> allAgentIds() {
-        ValueOperations<String, String> opsForValue = redisTemplate.opsForValue();
-
-        int length = prefix.length();
-        final Set<String> redisValues = opsForValue.getOperations().keys(prefix + "*");
-        if (redisValues != null) {
-            final ArrayList<String> result = new ArrayList<>(redisValues.size());
-            for (String value : redisValues) {
-                result.add(value.substring(length));
-            }
-            return result;
-        } else {
-            logger.error("try to get allAgentIds error. redis returned null.");
-            return Collections.emptyList();
-        }
+        List<String> result = new ArrayList<String>();
+        String cursor = null;
+        do {
+            ClusterPage<List<String>> page = agentIds(cursor, BATCH_SIZE);
+            result.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return result;
     }
 
     @Override
     public Map<String, AgentClusterInfo> agentInfo(String appName) {
+        Map<String, AgentClusterInfo> result = new LinkedHashMap<String, AgentClusterInfo>();
+        String cursor = null;
+        do {
+            ClusterPage<Map<String, AgentClusterInfo>> page = agentInfo(appName, cursor, BATCH_SIZE);
+            result.putAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return result;
+    }
+
+    @Override
+    public ClusterPage<List<String>> agentIds(String cursor, int limit) {
+        purgeExpired();
+        return range(agentsIndex(), cursor, limit);
+    }
+
+    @Override
+    public ClusterPage<List<String>> appNames(String cursor, int limit) {
+        purgeExpired();
+        return range(appsIndex(), cursor, limit);
+    }
+
+    @Override
+    public ClusterPage<Map<String, AgentClusterInfo>> agentInfo(String appName, String cursor, int limit) {
         try {
+            purgeExpired();
+            ClusterPage<List<String>> ids = range(appIndex(appName), cursor, limit);
 
-            ValueOperations<String, String> opsForValue = redisTemplate.opsForValue();
+            Map<String, AgentClusterInfo> result = new LinkedHashMap<String, AgentClusterInfo>();
+            if (!ids.getItems().isEmpty()) {
+                List<String> keys = new ArrayList<String>(ids.getItems().size());
+                for (String agentId : ids.getItems()) {
+                    keys.add(prefix + agentId);
+                }
+                List<String> values = redisTemplate.opsForValue().multiGet(keys);
+                Iterator<String> iterator = values.iterator();
+                for (String agentId : ids.getItems()) {
+                    String infoStr = iterator.next();
+                    // 已经过期，但是还没有从索引里清理
+                    if (infoStr != null) {
+                        result.put(agentId, MAPPER.readValue(infoStr, AgentClusterInfo.class));
+                    }
+                }
+            }
+            return new ClusterPage<Map<String, AgentClusterInfo>>(result, ids.getNextCursor());
+        } catch (Throwable e) {
+            logger.error("try to query agentInfo error. appName:{}", appName, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 从 score 都为 0 的索引里读取 cursor 之后的 limit 个元素
+     */
+    private ClusterPage<List<String>> range(String index, String cursor, int limit) {
+        limit = Math.max(1, limit);
+        Range range = Range.range();
+        if (cursor != null && !cursor.isEmpty()) {
+            range = range.gt(cursor);
+        }
+        // 多读一个，判断是否还有下一页
+        Set<String> members = redisTemplate.opsForZSet().rangeByLex(index, range,
+                Limit.limit().offset(0).count(limit + 1));
+        List<String> items = members == null ? new ArrayList<String>() : new ArrayList<String>(members);
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            nextCursor = items.get(limit - 1);
+        }
+        return new ClusterPage<List<String>>(items, nextCursor);
+    }
 
-            String prefixWithAppName = prefix + appName + "_";
+    /**
+     * 从索引里删除已经过期的 agent，agent 信息已经被 redis 删除了。距离上次清理不到 purgeIntervalMillis 时直接返回
+     */
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        long last = lastPurgeMillis.get();
+        if (now - last < purgeIntervalMillis || !lastPurgeMillis.compareAndSet(last, now)) {
+            return;
+        }
+        ZSetOperations<String, String> opsForZSet = redisTemplate.opsForZSet();
+        final Set<String> expired = opsForZSet.rangeByScore(expireIndex(), Double.NEGATIVE_INFINITY, now, 0,
+                MAX_EXPIRED_PER_PURGE);
+        if (expired == null || expired.isEmpty()) {
+            return;
+        }
+        int n = expired.size();
+        List<String> keys = new ArrayList<String>(3 + 2 * n);
+        keys.add(expireIndex());
+        keys.add(agentsIndex());
+        keys.add(appsIndex());
+        Object[] args = new Object[1 + 2 * n];
+        args[0] = String.valueOf(now);
+        int i = 0;
+        for (String agentId : expired) {
+            keys.add(prefix + agentId);
+            args[1 + i++] = agentId;
+        }
+        for (String agentId : expired) {
+            String appName = appName(agentId);
+            // 没有应用时占位，脚本里不会访问这个 key
+            keys.add(appName == null ? expireIndex() : appIndex(appName));
+            args[1 + i++] = appName == null ? "" : appName;
+        }
+        Long removed = redisTemplate.execute(PURGE_EXPIRED_SCRIPT, keys, args);
+        logger.info("purge expired agents from index, count: {}", removed);
+    }
 
-            ArrayList<String> keys = new ArrayList<>(opsForValue.getOperations().keys(prefixWithAppName + "*"));
+    private void removeAppIfEmpty(String appName) {
+        // 检查和删除在同一个脚本里执行，期间 addAgent 不会插入
+        redisTemplate.execute(REMOVE_EMPTY_APP_SCRIPT, Arrays.asList(appIndex(appName), appsIndex()), appName);
+    }
 
-            List<String> values = opsForValue.getOperations().opsForValue().multiGet(keys);
+    private String agentsIndex() {
+        return indexPrefix + "agents";
+    }
 
-            Map<String, AgentClusterInfo> result = new HashMap<>();
+    private String expireIndex() {
+        return indexPrefix + "expire";
+    }
 
-            Iterator<String> iterator = values.iterator();
+    private String appsIndex() {
+        return indexPrefix + "apps";
+    }
 
-            for (String key : keys) {
-                String infoStr = iterator.next();
-                AgentClusterInfo info = MAPPER.readValue(infoStr, AgentClusterInfo.class);
-                String agentId = key.substring(prefix.length());
-                result.put(agentId, info);
-            }
+    private String appIndex(String appName) {
+        return indexPrefix + "app-" + appName;
+    }
 
-            return result;
-        } catch (Throwable e) {
-            logger.error("try to query agentInfo error. appName:{}", appName, e);
-            throw new RuntimeException(e);
+    /**
+     * agentId 的格式为 appName_xxx，没有 appName 时返回 null
+     */
+    private static String appName(String agentId) {
+        int index = agentId.indexOf('_');
+        if (index <= 0) {
+            return null;
         }
+        return agentId.substring(0, index);
     }
 
 }
@@ -1,6 +1,7 @@
 package com.alibaba.arthas.tunnel.server.cluster;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -22,4 +23,21 @@ public interface TunnelClusterStore {
     public Collection<String> allAgentIds();
 
     public Map<String, AgentClusterInfo> agentInfo(String appName);
+
+    /**
+     * 按字典序分页列出 agentId
+     * 
+     * @param cursor 上一页的 {@link ClusterPage#getNextCursor()}，第一页为 null
+     */
+    public ClusterPage<List<String>> agentIds(String cursor, int limit);
+
+    /**
+     * 按字典序分页列出有 agent 的 appName
+     */
+    public ClusterPage<List<String>> appNames(String cursor, int limit);
+
+    /**
+     * 按 agentId 的字典序分页列出一个 app 的 agent
+     */
+    public ClusterPage<Map<String, AgentClusterInfo>> agentInfo(String appName, String cursor, int limit);
 }
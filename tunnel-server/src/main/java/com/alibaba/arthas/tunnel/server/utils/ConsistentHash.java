@@ -0,0 +1,48 @@
+package com.alibaba.arthas.tunnel.server.utils;
+
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * 一致性 hash 环，每个节点在环上有 virtualNodes 个虚拟节点。增加或者删除一个节点时，只有大约 1/n 的 key 会改变所属的节点。
+ */
+public class ConsistentHash<T> {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final TreeMap<Long, T> ring = new TreeMap<Long, T>();
+
+    public ConsistentHash(Collection<T> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("nodes can not be empty");
+        }
+        for (T node : nodes) {
+            for (int i = 0; i < virtualNodes; ++i) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public T get(String key) {
+        Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * FNV-1a 64 位 hash，再用 murmur3 的 fmix64 打散
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,139 @@
+package com.alibaba.arthas.tunnel.server;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * NodeLink 会话的发送窗口
+ */
+public class NodeLinkTest {
+
+    @Test
+    public void testPauseWhenSendWindowIsUsedUp() throws IOException {
+        EmbeddedChannel link = new EmbeddedChannel(new NodeLink(new TunnelServer(), false));
+        EmbeddedChannel browser = new EmbeddedChannel();
+        NodeLink nodeLink = link.pipeline().get(NodeLink.class);
+        nodeLink.open("agent", browser);
+        long sessionId = decode(link.readOutbound(), NodeLinkFrame.OPEN);
+
+        int half = NodeLinkFrame.SESSION_WINDOW / 2;
+        browser.writeInbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[half])));
+        Assertions.assertThat(browser.config().isAutoRead()).isTrue();
+        browser.writeInbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[half])));
+        // 窗口用完，暂停读取浏览器
+        Assertions.assertThat(browser.config().isAutoRead()).isFalse();
+        releaseAll(link);
+
+        link.writeInbound(NodeLinkFrame.window(ByteBufAllocator.DEFAULT, sessionId, half));
+        Assertions.assertThat(browser.config().isAutoRead()).isTrue();
+
+        // 其它会话的 WINDOW 不影响这个会话
+        browser.writeInbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[half])));
+        Assertions.assertThat(browser.config().isAutoRead()).isFalse();
+        link.writeInbound(NodeLinkFrame.window(ByteBufAllocator.DEFAULT, sessionId + 1, half));
+        Assertions.assertThat(browser.config().isAutoRead()).isFalse();
+
+        releaseAll(link);
+        link.finishAndReleaseAll();
+        browser.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testReturnWindowAfterLocalWrite() throws IOException {
+        EmbeddedChannel link = new EmbeddedChannel(new NodeLink(new TunnelServer(), false));
+        EmbeddedChannel browser = new EmbeddedChannel();
+        link.pipeline().get(NodeLink.class).open("agent", browser);
+        long sessionId = decode(link.readOutbound(), NodeLinkFrame.OPEN);
+
+        int chunk = NodeLinkFrame.MAX_DATA_CHUNK;
+        int chunks = NodeLinkFrame.SESSION_WINDOW / 2 / chunk;
+        for (int i = 0; i < chunks - 1; i++) {
+            writeData(link, sessionId, chunk);
+        }
+        // 不到半个窗口，还没有发送 WINDOW
+        Assertions.assertThat((Object) link.readOutbound()).isNull();
+
+        writeData(link, sessionId, chunk);
+        BinaryWebSocketFrame window = link.readOutbound();
+        NodeLinkFrame frame = NodeLinkFrame.decode(window.content());
+        Assertions.assertThat(frame.getType()).isEqualTo(NodeLinkFrame.WINDOW);
+        Assertions.assertThat(frame.getSessionId()).isEqualTo(sessionId);
+        Assertions.assertThat(frame.payloadAsInt(window.content())).isEqualTo(chunks * chunk);
+        window.release();
+
+        Assertions.assertThat(browser.outboundMessages()).hasSize(chunks);
+        link.finishAndReleaseAll();
+        browser.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testPendingDataIsCapped() throws IOException {
+        TunnelServer tunnelServer = new TunnelServer();
+        EmbeddedChannel agentControl = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        AgentInfo agentInfo = new AgentInfo();
+        agentInfo.setChannelHandlerContext(agentControl.pipeline().firstContext());
+        tunnelServer.addAgent("agent", agentInfo);
+
+        EmbeddedChannel link = new EmbeddedChannel(new NodeLink(tunnelServer, true));
+        long sessionId = 1;
+        link.writeInbound(NodeLinkFrame.frame(ByteBufAllocator.DEFAULT, NodeLinkFrame.OPEN, sessionId, "agent"));
+        // 通知 agent startTunnel
+        Assertions.assertThat((Object) agentControl.readOutbound()).isInstanceOf(TextWebSocketFrame.class);
+        Assertions.assertThat(link.pipeline().get(NodeLink.class).getSessionCount()).isEqualTo(1);
+
+        // agent openTunnel 之前对端不应该发送超过窗口的数据
+        int chunks = 4 * NodeLinkFrame.SESSION_WINDOW / NodeLinkFrame.MAX_DATA_CHUNK;
+        for (int i = 0; i < chunks; i++) {
+            writeData(link, sessionId, NodeLinkFrame.MAX_DATA_CHUNK);
+        }
+        Assertions.assertThat((Object) link.readOutbound()).isNull();
+        writeData(link, sessionId, 1);
+
+        BinaryWebSocketFrame close = link.readOutbound();
+        Assertions.assertThat(NodeLinkFrame.decode(close.content()).getType()).isEqualTo(NodeLinkFrame.CLOSE);
+        close.release();
+        Assertions.assertThat(link.pipeline().get(NodeLink.class).getSessionCount()).isEqualTo(0);
+
+        link.finishAndReleaseAll();
+        agentControl.finishAndReleaseAll();
+    }
+
+    private static void writeData(EmbeddedChannel link, long sessionId, int length) {
+        List<BinaryWebSocketFrame> frames = NodeLinkFrame.data(ByteBufAllocator.DEFAULT, sessionId,
+                new TextWebSocketFrame(Unpooled.wrappedBuffer(new byte[length])));
+        for (BinaryWebSocketFrame frame : frames) {
+            link.writeInbound(frame);
+        }
+    }
+
+    private static long decode(WebSocketFrame webSocketFrame, byte type) throws IOException {
+        try {
+            ByteBuf content = webSocketFrame.content();
+            NodeLinkFrame frame = NodeLinkFrame.decode(content);
+            Assertions.assertThat(frame.getType()).isEqualTo(type);
+            return frame.getSessionId();
+        } finally {
+            webSocketFrame.release();
+        }
+    }
+
+    private static void releaseAll(EmbeddedChannel channel) {
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.alibaba.arthas.tunnel.server.cluster;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.alibaba.arthas.tunnel.server.AgentClusterInfo;
+
+import redis.embedded.RedisServer;
+
+/**
+ * 使用 embedded redis 测试 RedisTunnelClusterStore 的索引和分页
+ */
+public class RedisTunnelClusterStoreTest {
+
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private RedisTunnelClusterStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        int port = freePort();
+        redisServer = RedisServer.builder().port(port).bind("127.0.0.1").build();
+        redisServer.start();
+
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        store = new RedisTunnelClusterStore();
+        store.setRedisTemplate(redisTemplate);
+    }
+
+    @After
+    public void tearDown() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    public void testIndexAndPagination() {
+        for (int i = 0; i < 25; i++) {
+            store.addAgent(String.format("app1_%02d", i), info("host" + i), 1, TimeUnit.HOURS);
+        }
+        store.addAgent("app2_a", info("hostA"), 1, TimeUnit.HOURS);
+        store.addAgent("noapp", info("hostB"), 1, TimeUnit.HOURS);
+
+        Assertions.assertThat(store.allAgentIds()).hasSize(27).contains("app1_00", "app2_a", "noapp");
+        Assertions.assertThat(store.appNames(null, 10).getItems()).containsExactly("app1", "app2");
+
+        List<String> ids = new ArrayList<String>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ClusterPage<Map<String, AgentClusterInfo>> page = store.agentInfo("app1", cursor, 10);
+            ids.addAll(page.getItems().keySet());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+        Assertions.assertThat(pages).isEqualTo(3);
+        Assertions.assertThat(ids).hasSize(25).startsWith("app1_00").endsWith("app1_24");
+        Assertions.assertThat(store.agentInfo("app1").get("app1_07").getHost()).isEqualTo("host7");
+
+        store.removeAgent("app2_a");
+        Assertions.assertThat(store.agentInfo("app2")).isEmpty();
+        Assertions.assertThat(store.appNames(null, 10).getItems()).containsExactly("app1");
+
+        // 不使用 KEYS，索引的 key 不以 agent 的 prefix 开头
+        Assertions.assertThat(redisTemplate.keys("arthas-tunnel-agent-*")).hasSize(26);
+    }
+
+    @Test
+    public void testPurgeIsRateLimited() throws InterruptedException {
+        store.addAgent("app1_live", info("live"), 1, TimeUnit.HOURS);
+        Assertions.assertThat(store.allAgentIds()).containsExactly("app1_live");
+
+        store.addAgent("app2_dead", info("dead"), 1, TimeUnit.SECONDS);
+        Thread.sleep(1500);
+        // 刚清理过，过期的 agent 还在索引里，但是查不到 agent 信息
+        Assertions.assertThat(store.allAgentIds()).contains("app2_dead");
+        Assertions.assertThat(store.agentInfo("app2")).isEmpty();
+
+        store.setPurgeIntervalMillis(0);
+        Assertions.assertThat(store.allAgentIds()).containsExactly("app1_live");
+        Assertions.assertThat(store.appNames(null, 10).getItems()).containsExactly("app1");
+    }
+
+    @Test
+    public void testRemoveAgentKeepsAppWithAgents() {
+        store.addAgent("app1_a", info("a"), 1, TimeUnit.HOURS);
+        store.addAgent("app1_b", info("b"), 1, TimeUnit.HOURS);
+
+        store.removeAgent("app1_a");
+        Assertions.assertThat(store.appNames(null, 10).getItems()).containsExactly("app1");
+        store.removeAgent("app1_b");
+        Assertions.assertThat(store.appNames(null, 10).getItems()).isEmpty();
+        // 重新注册的 agent 会把应用加回来
+        store.addAgent("app1_a", info("a"), 1, TimeUnit.HOURS);
+        Assertions.assertThat(store.appNames(null, 10).getItems()).containsExactly("app1");
+    }
+
+    @Test
+    public void testExpiredAgentsArePurgedFromIndex() throws InterruptedException {
+        store.addAgent("app1_live", info("live"), 1, TimeUnit.HOURS);
+        store.addAgent("app1_dead", info("dead"), 1, TimeUnit.SECONDS);
+        store.addAgent("app2_dead", info("dead"), 1, TimeUnit.SECONDS);
+
+        Thread.sleep(1500);
+
+        Assertions.assertThat(store.allAgentIds()).containsExactly("app1_live");
+        Assertions.assertThat(store.agentInfo("app1")).containsOnlyKeys("app1_live");
+        Assertions.assertThat(store.appNames(null, 10).getItems()).containsExactly("app1");
+    }
+
+    @Test
+    public void testPurgeKeepsReRegisteredAgent() throws InterruptedException {
+        store.addAgent("app1_back", info("back"), 1, TimeUnit.SECONDS);
+        store.addAgent("app2_back", info("back"), 1, TimeUnit.SECONDS);
+        Thread.sleep(1500);
+
+        // addAgent 的 pipeline 只执行了一部分：agent 信息已经写入，expire 索引里还是过期的时间
+        redisTemplate.opsForValue().set("arthas-tunnel-agent-app1_back", "{}", 1, TimeUnit.HOURS);
+        redisTemplate.opsForValue().set("arthas-tunnel-agent-app2_back", "{}", 1, TimeUnit.HOURS);
+        // expire 索引已经更新，agent 信息被 redis 删除之前
+        redisTemplate.opsForZSet().add("arthas-tunnel-index-expire", "app2_back",
+                System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        redisTemplate.delete("arthas-tunnel-agent-app2_back");
+
+        store.setPurgeIntervalMillis(0);
+        Assertions.assertThat(store.allAgentIds()).containsExactly("app1_back", "app2_back");
+        Assertions.assertThat(store.appNames(null, 10).getItems()).containsExactly("app1", "app2");
+
+        redisTemplate.delete("arthas-tunnel-agent-app1_back");
+        Assertions.assertThat(store.allAgentIds()).containsExactly("app2_back");
+        Assertions.assertThat(store.appNames(null, 10).getItems()).containsExactly("app2");
+    }
+
+    private static AgentClusterInfo info(String host) {
+        AgentClusterInfo info = new AgentClusterInfo();
+        info.setHost(host);
+        info.setClientConnectHost("127.0.0.1");
+        return info;
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.alibaba.arthas.tunnel.server.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class ConsistentHashTest {
+
+    @Test
+    public void testSameKeySameNode() {
+        ConsistentHash<Integer> hash = new ConsistentHash<Integer>(Arrays.asList(0, 1, 2), 64);
+        for (int i = 0; i < 100; ++i) {
+            String agentId = "app_" + i;
+            Assertions.assertThat(hash.get(agentId)).isEqualTo(hash.get(agentId));
+        }
+    }
+
+    @Test
+    public void testBalanced() {
+        ConsistentHash<Integer> hash = new ConsistentHash<Integer>(Arrays.asList(0, 1, 2, 3), 64);
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 10000; ++i) {
+            Integer node = hash.get("app_" + i);
+            Integer count = counts.get(node);
+            counts.put(node, count == null ? 1 : count + 1);
+        }
+        Assertions.assertThat(counts).hasSize(4);
+        for (int count : counts.values()) {
+            Assertions.assertThat(count).isBetween(1500, 3500);
+        }
+    }
+
+    @Test
+    public void testAddNodeMovesFewKeys() {
+        ConsistentHash<Integer> before = new ConsistentHash<Integer>(Arrays.asList(0, 1, 2), 64);
+        ConsistentHash<Integer> after = new ConsistentHash<Integer>(Arrays.asList(0, 1, 2, 3), 64);
+        int moved = 0;
+        for (int i = 0; i < 10000; ++i) {
+            String agentId = "app_" + i;
+            Integer node = after.get(agentId);
+            if (!node.equals(before.get(agentId))) {
+                // 只会移动到新的节点上
+                Assertions.assertThat(node).isEqualTo(3);
+                moved++;
+            }
+        }
+        Assertions.assertThat(moved).isBetween(1000, 4000);
+    }
+}